@@ -21,6 +21,7 @@
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.security.GeneralSecurityException;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -47,7 +48,7 @@
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
 public class CryptoOutputStream extends FilterOutputStream implements 
-    Syncable, CanSetDropBehind {
+    Syncable, CanSetDropBehind, WritableByteChannel {
   private final byte[] oneByteBuf = new byte[1];
   private final CryptoCodec codec;
   private final Encryptor encryptor;
@@ -174,15 +175,26 @@ private void encrypt() throws IOException {
       outBuffer.position(padding);
       padding = 0;
     }
+    writeOutBuffer();
+  }
+
+  /**
+   * Write the encrypted data in {@link #outBuffer} to the underlying stream.
+   * When the underlying stream is a {@link WritableByteChannel}, e.g. a
+   * socket, the direct buffer is written as is, without a copy to the heap.
+   */
+  private void writeOutBuffer() throws IOException {
     final int len = outBuffer.remaining();
-    
-    /*
-     * If underlying stream supports {@link ByteBuffer} write in future, needs
-     * refine here. 
-     */
-    final byte[] tmp = getTmpBuf();
-    outBuffer.get(tmp, 0, len);
-    out.write(tmp, 0, len);
+    if (out instanceof WritableByteChannel) {
+      final WritableByteChannel channel = (WritableByteChannel) out;
+      while (outBuffer.hasRemaining()) {
+        channel.write(outBuffer);
+      }
+    } else {
+      final byte[] tmp = getTmpBuf();
+      outBuffer.get(tmp, 0, len);
+      out.write(tmp, 0, len);
+    }
     
     streamOffset += len;
     if (encryptor.isContextReset()) {
@@ -195,6 +207,48 @@ private void encrypt() throws IOException {
       updateEncryptor();
     }
   }
+
+  /**
+   * Encrypt the remaining data of <code>src</code> and write it to the
+   * underlying stream. A direct buffer is handed to the encryptor as is, so
+   * the plain text is never copied into {@link #inBuffer}; other buffers go
+   * through the same path as {@link #write(byte[], int, int)}.
+   * @param src the data, from its position to its limit.
+   * @return the number of bytes written, which is all the remaining data.
+   * @throws IOException
+   */
+  @Override
+  public synchronized int write(ByteBuffer src) throws IOException {
+    checkStream();
+    final int len = src.remaining();
+    // encrypt what has been buffered so far so the stream offset is current
+    encrypt();
+    while (src.hasRemaining()) {
+      final int n = Math.min(src.remaining(), bufferSize);
+      final ByteBuffer chunk = src.duplicate();
+      chunk.limit(chunk.position() + n);
+      if (src.isDirect() && padding == 0) {
+        outBuffer.clear();
+        encryptor.encrypt(chunk, outBuffer);
+        outBuffer.flip();
+        writeOutBuffer();
+      } else {
+        final int m = Math.min(n, inBuffer.remaining());
+        chunk.limit(chunk.position() + m);
+        inBuffer.put(chunk);
+        if (!inBuffer.hasRemaining()) {
+          encrypt();
+        }
+      }
+      src.position(chunk.position());
+    }
+    return len;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return !closed;
+  }
   
   /** Update the {@link #encryptor}: calculate counter and {@link #padding}. */
   private void updateEncryptor() throws IOException {
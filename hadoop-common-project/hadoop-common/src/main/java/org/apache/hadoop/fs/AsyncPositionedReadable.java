@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Implementers of this interface provide a positioned read API which does
+ * not block the caller until the data is read.
+ *
+ * This does not imply non-blocking I/O: an implementation may still block a
+ * thread of its own for each read in flight.  E.g. HDFS fetches each block of
+ * a read in a thread of a shared pool, of 16 threads by default, so the reads
+ * beyond that are queued.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface AsyncPositionedReadable {
+  /**
+   * Start reading up to buf.remaining() bytes, from the given position of the
+   * file into buf, and return without waiting for the data.
+   *
+   * The buffer must not be accessed until the returned future is done.  Once
+   * the read succeeds, the position of the buffer is advanced by the number
+   * of bytes read, like in {@link ByteBufferReadable#read(ByteBuffer)}; the
+   * bytes are only fewer than buf.remaining() if the end of the file was
+   * reached.  The position of the stream is not changed, and several reads
+   * can be in flight at the same time.
+   *
+   * @param position position in the file to read from
+   * @param buf the buffer to read into
+   * @return a future of the number of bytes read, or of -1 if position is at
+   *         or after the end of the file.  If the read fails, getting the
+   *         result of the future throws an ExecutionException caused by the
+   *         IOException.
+   * @throws IOException if the read could not be started, e.g. because the
+   *         stream was closed
+   */
+  Future<Integer> readAsync(long position, ByteBuffer buf) throws IOException;
+}
@@ -147,6 +147,17 @@ public class CommonConfigurationKeysPublic {
     "io.skip.checksum.errors";
   /** Default value for IO_SKIP_CHECKSUM_ERRORS_KEY */
   public static final boolean IO_SKIP_CHECKSUM_ERRORS_DEFAULT = false;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_VECTORED_READ_MAX_MERGE_GAP_KEY =
+    "io.vectored.read.max.merge.gap";
+  /** Default value for IO_VECTORED_READ_MAX_MERGE_GAP_KEY */
+  public static final int     IO_VECTORED_READ_MAX_MERGE_GAP_DEFAULT = 4096;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_VECTORED_READ_MAX_MERGED_SIZE_KEY =
+    "io.vectored.read.max.merged.size";
+  /** Default value for IO_VECTORED_READ_MAX_MERGED_SIZE_KEY */
+  public static final int     IO_VECTORED_READ_MAX_MERGED_SIZE_DEFAULT =
+    1024 * 1024;
   /**
    * @deprecated Moved to mapreduce, see mapreduce.task.io.sort.mb
    * in mapred-default.xml
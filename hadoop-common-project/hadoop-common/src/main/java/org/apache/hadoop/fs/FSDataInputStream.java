@@ -21,6 +21,8 @@
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -35,7 +37,8 @@
 public class FSDataInputStream extends DataInputStream
     implements Seekable, PositionedReadable, 
       ByteBufferReadable, HasFileDescriptor, CanSetDropBehind, CanSetReadahead,
-      HasEnhancedByteBufferAccess, CanUnbuffer {
+      HasEnhancedByteBufferAccess, CanUnbuffer, AsyncPositionedReadable,
+      VectoredReadable {
   /**
    * Map ByteBuffers that we have handed out to readers to ByteBufferPool 
    * objects
@@ -146,6 +149,29 @@ public int read(ByteBuffer buf) throws IOException {
     throw new UnsupportedOperationException("Byte-buffer read unsupported by input stream");
   }
 
+  @Override
+  public Future<Integer> readAsync(long position, ByteBuffer buf)
+      throws IOException {
+    if (in instanceof AsyncPositionedReadable) {
+      return ((AsyncPositionedReadable) in).readAsync(position, buf);
+    }
+
+    throw new UnsupportedOperationException(
+        "Asynchronous read unsupported by input stream");
+  }
+
+  @Override
+  public List<ByteBuffer> readVectored(List<FileRange> ranges)
+      throws IOException {
+    if (in instanceof VectoredReadable) {
+      return ((VectoredReadable) in).readVectored(ranges);
+    }
+
+    return VectoredReadUtils.readVectored(this, ranges,
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGE_GAP_DEFAULT,
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGED_SIZE_DEFAULT);
+  }
+
   @Override
   public FileDescriptor getFileDescriptor() throws IOException {
     if (in instanceof HasFileDescriptor) {
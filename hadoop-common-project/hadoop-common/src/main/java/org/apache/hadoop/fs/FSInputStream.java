@@ -19,6 +19,7 @@
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -32,7 +33,7 @@
 @InterfaceAudience.LimitedPrivate({"HDFS"})
 @InterfaceStability.Unstable
 public abstract class FSInputStream extends InputStream
-    implements Seekable, PositionedReadable {
+    implements Seekable, PositionedReadable, VectoredReadable {
   /**
    * Seek to the given offset from the start of the file.
    * The next read() will be from that location.  Can't
@@ -88,4 +89,17 @@ public void readFully(long position, byte[] buffer)
     throws IOException {
     readFully(position, buffer, 0, buffer.length);
   }
+
+  /**
+   * Read the ranges one merged range at a time with
+   * {@link #readFully(long, byte[], int, int)}.  Streams which can do better,
+   * e.g. read the ranges in parallel, should override this.
+   */
+  @Override
+  public List<ByteBuffer> readVectored(List<FileRange> ranges)
+      throws IOException {
+    return VectoredReadUtils.readVectored(this, ranges,
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGE_GAP_DEFAULT,
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGED_SIZE_DEFAULT);
+  }
 }
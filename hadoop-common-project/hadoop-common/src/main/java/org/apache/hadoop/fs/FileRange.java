@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A range of bytes of a file, to be read by
+ * {@link VectoredReadable#readVectored(java.util.List)}.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class FileRange {
+  private final long offset;
+  private final int length;
+
+  /**
+   * @param offset the position in the file of the first byte of the range
+   * @param length the number of bytes in the range
+   */
+  public FileRange(long offset, int length) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("Negative offset " + offset);
+    }
+    if (length < 0) {
+      throw new IllegalArgumentException("Negative length " + length);
+    }
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  /** @return the position in the file just after the range. */
+  public long getEnd() {
+    return offset + length;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof FileRange)) {
+      return false;
+    }
+    FileRange that = (FileRange) o;
+    return offset == that.offset && length == that.length;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (offset ^ (offset >>> 32)) * 31 + length;
+  }
+
+  @Override
+  public String toString() {
+    return "range[" + offset + "," + getEnd() + ")";
+  }
+}
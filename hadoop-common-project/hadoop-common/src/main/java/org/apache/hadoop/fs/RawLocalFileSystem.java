@@ -34,7 +34,9 @@
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.StringTokenizer;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -178,6 +180,45 @@ public int read(long position, byte[] b, int off, int len)
       }
     }
     
+    /**
+     * Read each merged range straight into a direct buffer through the
+     * channel of the file, without copying it from a heap buffer.
+     */
+    @Override
+    public List<ByteBuffer> readVectored(List<FileRange> ranges)
+        throws IOException {
+      Configuration conf = getConf();
+      if (conf == null) {
+        conf = new Configuration();
+      }
+      ByteBuffer[] results = new ByteBuffer[ranges.size()];
+      for (VectoredReadUtils.CombinedRange combined :
+          VectoredReadUtils.mergeRanges(ranges,
+              VectoredReadUtils.getMaxMergeGap(conf),
+              VectoredReadUtils.getMaxMergedSize(conf))) {
+        ByteBuffer data = ByteBuffer.allocateDirect(combined.getLength());
+        long pos = combined.getOffset();
+        try {
+          while (data.hasRemaining()) {
+            int value = fis.getChannel().read(data, pos);
+            if (value < 0) {
+              throw new EOFException("End of file reached before reading "
+                  + combined + " fully.");
+            }
+            pos += value;
+            statistics.incrementBytesRead(value);
+          }
+        } catch (EOFException e) {
+          throw e;
+        } catch (IOException e) {
+          throw new FSError(e);
+        }
+        data.flip();
+        VectoredReadUtils.sliceCombinedRange(ranges, combined, data, results);
+      }
+      return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
     @Override
     public long skip(long n) throws IOException {
       long value = fis.skip(n);
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Helpers for the implementations of {@link VectoredReadable}: the ranges
+ * to read are sorted and merged into fewer, larger ranges, which are read
+ * by the file system, and the results are sliced back into the requested
+ * ranges.
+ */
+@InterfaceAudience.Private
+public final class VectoredReadUtils {
+  private VectoredReadUtils() {
+  }
+
+  /**
+   * A range to read from the file system, made of one or more of the
+   * requested ranges and of the gaps between them.
+   */
+  public static final class CombinedRange {
+    private final long offset;
+    private long end;
+    private final List<Integer> indices = new ArrayList<Integer>();
+
+    CombinedRange(long offset, long end) {
+      this.offset = offset;
+      this.end = end;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public int getLength() {
+      return (int) (end - offset);
+    }
+
+    /** @return the indices of the requested ranges in this range. */
+    public List<Integer> getIndices() {
+      return indices;
+    }
+
+    @Override
+    public String toString() {
+      return "combined" + new FileRange(offset, getLength()) + indices;
+    }
+  }
+
+  public static int getMaxMergeGap(Configuration conf) {
+    return conf.getInt(
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGE_GAP_KEY,
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGE_GAP_DEFAULT);
+  }
+
+  public static int getMaxMergedSize(Configuration conf) {
+    return conf.getInt(
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGED_SIZE_KEY,
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGED_SIZE_DEFAULT);
+  }
+
+  /**
+   * Sort the ranges by offset, and merge the ranges which are at most
+   * maxGap bytes apart, as long as the merged range is not longer than
+   * maxMergedSize.  Overlapping ranges are always merged, whatever the size.
+   *
+   * @param ranges the requested ranges
+   * @param maxGap the largest gap between two ranges to read together
+   * @param maxMergedSize the largest size of a merged range
+   * @return the ranges to read, sorted by offset
+   */
+  public static List<CombinedRange> mergeRanges(final List<FileRange> ranges,
+      int maxGap, int maxMergedSize) {
+    Integer[] order = new Integer[ranges.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        long offsetA = ranges.get(a).getOffset();
+        long offsetB = ranges.get(b).getOffset();
+        return offsetA < offsetB ? -1 : (offsetA == offsetB ? 0 : 1);
+      }
+    });
+
+    List<CombinedRange> combined = new ArrayList<CombinedRange>();
+    CombinedRange current = null;
+    for (int i : order) {
+      FileRange range = ranges.get(i);
+      if (current != null) {
+        long end = Math.max(current.end, range.getEnd());
+        boolean overlaps = range.getOffset() < current.end;
+        if (overlaps || (range.getOffset() - current.end <= maxGap
+            && end - current.offset <= maxMergedSize)) {
+          current.end = end;
+          current.indices.add(i);
+          continue;
+        }
+      }
+      current = new CombinedRange(range.getOffset(), range.getEnd());
+      current.indices.add(i);
+      combined.add(current);
+    }
+    return combined;
+  }
+
+  /**
+   * Slice the buffer of a combined range into the requested ranges it is
+   * made of.
+   *
+   * @param ranges the requested ranges
+   * @param combined the combined range
+   * @param data the bytes of the combined range, from position 0
+   * @param results the results, indexed like the requested ranges
+   */
+  public static void sliceCombinedRange(List<FileRange> ranges,
+      CombinedRange combined, ByteBuffer data, ByteBuffer[] results) {
+    for (int i : combined.getIndices()) {
+      FileRange range = ranges.get(i);
+      ByteBuffer slice = data.duplicate();
+      int start = (int) (range.getOffset() - combined.getOffset());
+      slice.limit(start + range.getLength());
+      slice.position(start);
+      results[i] = slice.slice();
+    }
+  }
+
+  /**
+   * Read the ranges from a stream which can only read one range at a time,
+   * merging the ranges which are close to each other.
+   */
+  public static List<ByteBuffer> readVectored(PositionedReadable stream,
+      List<FileRange> ranges, int maxGap, int maxMergedSize)
+      throws IOException {
+    ByteBuffer[] results = new ByteBuffer[ranges.size()];
+    for (CombinedRange combined :
+        mergeRanges(ranges, maxGap, maxMergedSize)) {
+      byte[] bytes = new byte[combined.getLength()];
+      stream.readFully(combined.getOffset(), bytes, 0, bytes.length);
+      ByteBuffer data = ByteBuffer.allocateDirect(bytes.length);
+      data.put(bytes);
+      data.flip();
+      sliceCombinedRange(ranges, combined, data, results);
+    }
+    return Collections.unmodifiableList(Arrays.asList(results));
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Implementers of this interface can read several ranges of a file with one
+ * call, which lets them merge the ranges which are close to each other and
+ * read the ranges in parallel.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface VectoredReadable {
+  /**
+   * Read the given ranges of the file.  The ranges may be in any order and
+   * may overlap.  The position of the stream is not changed.
+   *
+   * @param ranges the ranges to read
+   * @return one buffer per range, in the order of the ranges, holding the
+   *         bytes of the range between its position 0 and its limit.  The
+   *         buffers of ranges which were read together may share memory, so
+   *         they must be treated as read-only.  Whether the buffers are
+   *         direct depends on the implementation: the default one of
+   *         {@link FSInputStream} returns direct buffers, while HDFS returns
+   *         heap buffers, which it fills without an extra copy.  Callers
+   *         must not rely on either, e.g. on {@link ByteBuffer#hasArray()}.
+   * @throws EOFException if a range goes past the end of the file
+   * @throws IOException if the read fails
+   */
+  List<ByteBuffer> readVectored(List<FileRange> ranges) throws IOException;
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawDecoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawEncoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureDecoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureEncoder;
+
+/**
+ * An erasure coding schema: the codec, and the number of data and parity
+ * units coded together. The schema is written as
+ * <code>codec-dataUnits-parityUnits</code>, e.g. <code>RS-6-3</code>.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class ECSchema {
+  /** The Reed-Solomon codec. */
+  public static final String CODEC_RS = "RS";
+
+  /** The schema used when none is specified, RS with 6+3 units. */
+  public static final ECSchema DEFAULT = new ECSchema(CODEC_RS, 6, 3);
+
+  private final String codecName;
+  private final int numDataUnits;
+  private final int numParityUnits;
+
+  public ECSchema(String codecName, int numDataUnits, int numParityUnits) {
+    if (!CODEC_RS.equalsIgnoreCase(codecName)) {
+      throw new HadoopIllegalArgumentException("Unknown codec " + codecName);
+    }
+    if (numDataUnits <= 0 || numParityUnits <= 0) {
+      throw new HadoopIllegalArgumentException("Invalid number of units: "
+          + numDataUnits + " data, " + numParityUnits + " parity");
+    }
+    // the units are the points of a code over GF(2^8)
+    if (numDataUnits + numParityUnits > 256) {
+      throw new HadoopIllegalArgumentException("Too many units: "
+          + numDataUnits + " data + " + numParityUnits + " parity > 256");
+    }
+    this.codecName = CODEC_RS;
+    this.numDataUnits = numDataUnits;
+    this.numParityUnits = numParityUnits;
+  }
+
+  /**
+   * Parse a schema from its string form, e.g. <code>RS-6-3</code>.
+   * @throws HadoopIllegalArgumentException if the schema is malformed
+   */
+  public static ECSchema valueOf(String s) {
+    final String[] parts = s.trim().split("-");
+    if (parts.length != 3) {
+      throw new HadoopIllegalArgumentException("Invalid schema " + s
+          + ", expected codec-dataUnits-parityUnits");
+    }
+    try {
+      return new ECSchema(parts[0], Integer.parseInt(parts[1]),
+          Integer.parseInt(parts[2]));
+    } catch (NumberFormatException e) {
+      throw new HadoopIllegalArgumentException("Invalid schema " + s + ": "
+          + e.getMessage());
+    }
+  }
+
+  public String getCodecName() {
+    return codecName;
+  }
+
+  public int getNumDataUnits() {
+    return numDataUnits;
+  }
+
+  public int getNumParityUnits() {
+    return numParityUnits;
+  }
+
+  /** @return the number of data and parity units. */
+  public int getNumUnits() {
+    return numDataUnits + numParityUnits;
+  }
+
+  /** @return a new encoder for this schema. */
+  public RawErasureEncoder createRawEncoder() {
+    return new RSRawEncoder(numDataUnits, numParityUnits);
+  }
+
+  /** @return a new decoder for this schema. */
+  public RawErasureDecoder createRawDecoder() {
+    return new RSRawDecoder(numDataUnits, numParityUnits);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ECSchema)) {
+      return false;
+    }
+    final ECSchema that = (ECSchema) obj;
+    return codecName.equals(that.codecName)
+        && numDataUnits == that.numDataUnits
+        && numParityUnits == that.numParityUnits;
+  }
+
+  @Override
+  public int hashCode() {
+    return (codecName.hashCode() * 31 + numDataUnits) * 31 + numParityUnits;
+  }
+
+  @Override
+  public String toString() {
+    return codecName + "-" + numDataUnits + "-" + numParityUnits;
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Base of the raw coders, with the checks of the arguments.
+ */
+@InterfaceAudience.Private
+public abstract class AbstractRawErasureCoder implements RawErasureCoder {
+  private final int numDataUnits;
+  private final int numParityUnits;
+
+  protected AbstractRawErasureCoder(int numDataUnits, int numParityUnits) {
+    if (numDataUnits <= 0 || numParityUnits <= 0
+        || numDataUnits + numParityUnits > 256) {
+      throw new HadoopIllegalArgumentException("Invalid number of units: "
+          + numDataUnits + " data, " + numParityUnits + " parity");
+    }
+    this.numDataUnits = numDataUnits;
+    this.numParityUnits = numParityUnits;
+  }
+
+  @Override
+  public int getNumDataUnits() {
+    return numDataUnits;
+  }
+
+  @Override
+  public int getNumParityUnits() {
+    return numParityUnits;
+  }
+
+  /** @return the number of data and parity units. */
+  protected int getNumUnits() {
+    return numDataUnits + numParityUnits;
+  }
+
+  /**
+   * Check the number of units and that they all have the same length.
+   * @return the length of the units
+   */
+  protected static int checkUnits(byte[][] inputs, int numInputs,
+      byte[][] outputs, int numOutputs, boolean allowNullInputs) {
+    checkCount("inputs", inputs.length, numInputs);
+    checkCount("outputs", outputs.length, numOutputs);
+    int len = -1;
+    for (byte[] input : inputs) {
+      if (input == null) {
+        if (!allowNullInputs) {
+          throw new HadoopIllegalArgumentException("Null input");
+        }
+        continue;
+      }
+      len = checkLength(len, input.length);
+    }
+    for (byte[] output : outputs) {
+      if (output == null) {
+        throw new HadoopIllegalArgumentException("Null output");
+      }
+      len = checkLength(len, output.length);
+    }
+    return len;
+  }
+
+  /**
+   * As {@link #checkUnits(byte[][], int, byte[][], int, boolean)}, with the
+   * remaining bytes of the buffers.
+   */
+  protected static int checkUnits(ByteBuffer[] inputs, int numInputs,
+      ByteBuffer[] outputs, int numOutputs, boolean allowNullInputs) {
+    checkCount("inputs", inputs.length, numInputs);
+    checkCount("outputs", outputs.length, numOutputs);
+    int len = -1;
+    for (ByteBuffer input : inputs) {
+      if (input == null) {
+        if (!allowNullInputs) {
+          throw new HadoopIllegalArgumentException("Null input");
+        }
+        continue;
+      }
+      len = checkLength(len, input.remaining());
+    }
+    for (ByteBuffer output : outputs) {
+      if (output == null) {
+        throw new HadoopIllegalArgumentException("Null output");
+      }
+      len = checkLength(len, output.remaining());
+    }
+    return len;
+  }
+
+  private static void checkCount(String what, int count, int expected) {
+    if (count != expected) {
+      throw new HadoopIllegalArgumentException("Invalid number of " + what
+          + ": " + count + ", expected " + expected);
+    }
+  }
+
+  private static int checkLength(int len, int unitLen) {
+    if (len >= 0 && unitLen != len) {
+      throw new HadoopIllegalArgumentException("Units of different lengths: "
+          + unitLen + " != " + len);
+    }
+    return unitLen;
+  }
+}
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.GF256;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
+
+/**
+ * A pure Java Reed-Solomon decoder, for the units encoded by
+ * {@link RSRawEncoder}.
+ * <p>
+ * The erased units are computed from the first available units, as many as
+ * the data units: the matrix mapping the data units to them is inverted,
+ * giving the data units, from which the erased parity units are encoded
+ * again. The decoding matrix of the last erasure pattern is kept, since a
+ * reader usually decodes many stripes with the same missing units. Each call
+ * reads it once and replaces it as a whole, so concurrent calls never see a
+ * matrix built for another pattern, and threads can share the decoder.
+ */
+@InterfaceAudience.Private
+public class RSRawDecoder extends AbstractRawErasureCoder
+    implements RawErasureDecoder {
+  private final int[][] encodeMatrix;
+  private final int[] zeroOffsets;
+
+  /** The decoding matrix of an erasure pattern. */
+  private static class DecodingState {
+    private final int[] validIndexes;
+    private final int[] erasedIndexes;
+    private final int[][] decodeRows;
+
+    DecodingState(int[] validIndexes, int[] erasedIndexes,
+        int[][] decodeRows) {
+      this.validIndexes = validIndexes;
+      this.erasedIndexes = erasedIndexes;
+      this.decodeRows = decodeRows;
+    }
+
+    boolean matches(int[] validIndexes, int[] erasedIndexes) {
+      return Arrays.equals(validIndexes, this.validIndexes)
+          && Arrays.equals(erasedIndexes, this.erasedIndexes);
+    }
+  }
+
+  // the decoding state of the last call
+  private volatile DecodingState cachedState;
+
+  public RSRawDecoder(int numDataUnits, int numParityUnits) {
+    super(numDataUnits, numParityUnits);
+    this.encodeMatrix = RSUtil.genCauchyMatrix(numDataUnits, numParityUnits);
+    this.zeroOffsets = new int[numDataUnits + numParityUnits];
+  }
+
+  @Override
+  public void decode(byte[][] inputs, int[] erasedIndexes, byte[][] outputs) {
+    final int len = checkUnits(inputs, getNumUnits(), outputs,
+        erasedIndexes.length, true);
+    final int[] validIndexes = getValidIndexes(inputs);
+    final int[][] decodeRows = prepareDecoding(validIndexes, erasedIndexes);
+    final byte[][] validInputs = new byte[validIndexes.length][];
+    for (int i = 0; i < validIndexes.length; i++) {
+      validInputs[i] = inputs[validIndexes[i]];
+    }
+    RSUtil.encodeData(decodeRows, validInputs, zeroOffsets, len, outputs,
+        zeroOffsets);
+  }
+
+  @Override
+  public void decode(ByteBuffer[] inputs, int[] erasedIndexes,
+      ByteBuffer[] outputs) {
+    final int len = checkUnits(inputs, getNumUnits(), outputs,
+        erasedIndexes.length, true);
+    final int[] validIndexes = getValidIndexes(inputs);
+    final int[][] decodeRows = prepareDecoding(validIndexes, erasedIndexes);
+    final ByteBuffer[] validInputs = new ByteBuffer[validIndexes.length];
+    for (int i = 0; i < validIndexes.length; i++) {
+      validInputs[i] = inputs[validIndexes[i]];
+    }
+    RSUtil.encodeData(decodeRows, validInputs, len, outputs);
+  }
+
+  /** @return the indexes of the first available units. */
+  private int[] getValidIndexes(Object[] inputs) {
+    final int[] validIndexes = new int[getNumDataUnits()];
+    int n = 0;
+    for (int i = 0; i < inputs.length && n < validIndexes.length; i++) {
+      if (inputs[i] != null) {
+        validIndexes[n++] = i;
+      }
+    }
+    if (n < validIndexes.length) {
+      throw new HadoopIllegalArgumentException("Not enough units to decode: "
+          + n + " < " + validIndexes.length);
+    }
+    return validIndexes;
+  }
+
+  /** @return the rows mapping the valid units to the erased units. */
+  private int[][] prepareDecoding(int[] validIndexes, int[] erasedIndexes) {
+    final DecodingState state = cachedState;
+    if (state != null && state.matches(validIndexes, erasedIndexes)) {
+      return state.decodeRows;
+    }
+    for (int erased : erasedIndexes) {
+      if (erased < 0 || erased >= getNumUnits()) {
+        throw new HadoopIllegalArgumentException("Invalid erased index "
+            + erased);
+      }
+    }
+
+    final int numDataUnits = getNumDataUnits();
+    final int[][] validMatrix = new int[numDataUnits][];
+    for (int i = 0; i < numDataUnits; i++) {
+      validMatrix[i] = encodeMatrix[validIndexes[i]].clone();
+    }
+    // maps the valid units to the data units
+    final int[][] inverse = GF256.invertMatrix(validMatrix);
+
+    final int[][] rows = new int[erasedIndexes.length][];
+    for (int i = 0; i < erasedIndexes.length; i++) {
+      final int erased = erasedIndexes[i];
+      if (erased < numDataUnits) {
+        rows[i] = inverse[erased];
+      } else {
+        // encode the parity unit from the decoded data units
+        final int[] encodeRow = encodeMatrix[erased];
+        rows[i] = new int[numDataUnits];
+        for (int j = 0; j < numDataUnits; j++) {
+          int c = 0;
+          for (int t = 0; t < numDataUnits; t++) {
+            c ^= GF256.mul(encodeRow[t], inverse[t][j]);
+          }
+          rows[i][j] = c;
+        }
+      }
+    }
+    cachedState = new DecodingState(validIndexes, erasedIndexes.clone(),
+        rows);
+    return rows;
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
+
+/**
+ * A pure Java Reed-Solomon encoder. The parity units are computed with a
+ * Cauchy matrix over GF(2^8), see {@link RSUtil#genCauchyMatrix}. The
+ * encoder has no mutable state, so threads can share it.
+ */
+@InterfaceAudience.Private
+public class RSRawEncoder extends AbstractRawErasureCoder
+    implements RawErasureEncoder {
+  /** The parity rows of the encoding matrix. */
+  private final int[][] parityRows;
+  private final int[] zeroOffsets;
+
+  public RSRawEncoder(int numDataUnits, int numParityUnits) {
+    super(numDataUnits, numParityUnits);
+    final int[][] matrix = RSUtil.genCauchyMatrix(numDataUnits,
+        numParityUnits);
+    this.parityRows = Arrays.copyOfRange(matrix, numDataUnits,
+        matrix.length);
+    this.zeroOffsets = new int[Math.max(numDataUnits, numParityUnits)];
+  }
+
+  @Override
+  public void encode(byte[][] inputs, byte[][] outputs) {
+    final int len = checkUnits(inputs, getNumDataUnits(), outputs,
+        getNumParityUnits(), false);
+    RSUtil.encodeData(parityRows, inputs, zeroOffsets, len, outputs,
+        zeroOffsets);
+  }
+
+  @Override
+  public void encode(ByteBuffer[] inputs, ByteBuffer[] outputs) {
+    final int len = checkUnits(inputs, getNumDataUnits(), outputs,
+        getNumParityUnits(), false);
+    RSUtil.encodeData(parityRows, inputs, len, outputs);
+  }
+}
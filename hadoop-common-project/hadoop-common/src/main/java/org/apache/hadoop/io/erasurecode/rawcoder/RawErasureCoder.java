@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A raw erasure coder codes the units of a stripe: the data units, and the
+ * parity units computed from them. All the units of a call have the same
+ * length. Unless an implementation says otherwise, the coders are not thread
+ * safe.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface RawErasureCoder {
+  /** @return the number of data units in a stripe. */
+  public int getNumDataUnits();
+
+  /** @return the number of parity units in a stripe. */
+  public int getNumParityUnits();
+}
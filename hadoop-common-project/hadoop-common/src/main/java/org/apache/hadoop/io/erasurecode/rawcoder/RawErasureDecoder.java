@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Recover erased units of a stripe from the units which are available.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface RawErasureDecoder extends RawErasureCoder {
+  /**
+   * Decode erased units.
+   * @param inputs all the units of the stripe, the data units followed by
+   *          the parity units, with null for the units which are not
+   *          available. At least as many units as data units must be
+   *          available.
+   * @param erasedIndexes the indexes in <code>inputs</code> of the units to
+   *          recover
+   * @param outputs the recovered units, in the order of
+   *          <code>erasedIndexes</code>
+   */
+  public void decode(byte[][] inputs, int[] erasedIndexes, byte[][] outputs);
+
+  /**
+   * As {@link #decode(byte[][], int[], byte[][])}, from the position to the
+   * limit of the buffers. The positions of the buffers are not changed.
+   */
+  public void decode(ByteBuffer[] inputs, int[] erasedIndexes,
+      ByteBuffer[] outputs);
+}
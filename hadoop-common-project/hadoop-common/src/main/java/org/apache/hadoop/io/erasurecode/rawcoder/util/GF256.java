@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder.util;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Arithmetic in the Galois field GF(2^8), with the primitive polynomial
+ * x^8 + x^4 + x^3 + x^2 + 1. Addition is XOR; multiplication is done with
+ * log and exp tables, and with a full product table for the inner loops of
+ * the coders.
+ */
+@InterfaceAudience.Private
+public final class GF256 {
+  private static final int PRIMITIVE_POLYNOMIAL = 0x11D;
+
+  /** exp[i] = 2^i, doubled to avoid a modulo when adding logs. */
+  private static final int[] EXP = new int[255 * 2];
+  /** log[2^i] = i, log[0] is undefined. */
+  private static final int[] LOG = new int[256];
+  /** MUL[a][b] = a * b. */
+  private static final byte[][] MUL = new byte[256][256];
+
+  static {
+    int x = 1;
+    for (int i = 0; i < 255; i++) {
+      EXP[i] = x;
+      EXP[i + 255] = x;
+      LOG[x] = i;
+      x <<= 1;
+      if (x >= 256) {
+        x ^= PRIMITIVE_POLYNOMIAL;
+      }
+    }
+    for (int a = 0; a < 256; a++) {
+      for (int b = 0; b < 256; b++) {
+        MUL[a][b] = (byte) mul(a, b);
+      }
+    }
+  }
+
+  private GF256() {
+  }
+
+  public static int add(int a, int b) {
+    return a ^ b;
+  }
+
+  public static int mul(int a, int b) {
+    if (a == 0 || b == 0) {
+      return 0;
+    }
+    return EXP[LOG[a] + LOG[b]];
+  }
+
+  public static int inverse(int a) {
+    if (a == 0) {
+      throw new ArithmeticException("0 has no inverse");
+    }
+    return EXP[255 - LOG[a]];
+  }
+
+  public static int div(int a, int b) {
+    return mul(a, inverse(b));
+  }
+
+  /** @return the table of the products with <code>a</code>. */
+  public static byte[] mulTable(int a) {
+    return MUL[a];
+  }
+
+  /**
+   * Invert a square matrix with Gauss-Jordan elimination.
+   * @param matrix the matrix, which is destroyed
+   * @return the inverse
+   * @throws IllegalArgumentException if the matrix is singular
+   */
+  public static int[][] invertMatrix(int[][] matrix) {
+    final int n = matrix.length;
+    final int[][] inverse = new int[n][n];
+    for (int i = 0; i < n; i++) {
+      inverse[i][i] = 1;
+    }
+
+    for (int col = 0; col < n; col++) {
+      // find a pivot and move it onto the diagonal
+      int pivot = col;
+      while (pivot < n && matrix[pivot][col] == 0) {
+        pivot++;
+      }
+      if (pivot == n) {
+        throw new IllegalArgumentException("The matrix is singular");
+      }
+      if (pivot != col) {
+        swap(matrix, pivot, col);
+        swap(inverse, pivot, col);
+      }
+
+      // scale the pivot row to get a 1 on the diagonal
+      final int scale = inverse(matrix[col][col]);
+      for (int j = 0; j < n; j++) {
+        matrix[col][j] = mul(matrix[col][j], scale);
+        inverse[col][j] = mul(inverse[col][j], scale);
+      }
+
+      // eliminate the column from the other rows
+      for (int i = 0; i < n; i++) {
+        final int factor = matrix[i][col];
+        if (i == col || factor == 0) {
+          continue;
+        }
+        for (int j = 0; j < n; j++) {
+          matrix[i][j] ^= mul(factor, matrix[col][j]);
+          inverse[i][j] ^= mul(factor, inverse[col][j]);
+        }
+      }
+    }
+    return inverse;
+  }
+
+  private static void swap(int[][] matrix, int i, int j) {
+    final int[] row = matrix[i];
+    matrix[i] = matrix[j];
+    matrix[j] = row;
+  }
+}
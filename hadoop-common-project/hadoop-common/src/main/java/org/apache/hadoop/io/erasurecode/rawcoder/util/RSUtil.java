@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder.util;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Utilities for the Reed-Solomon coders.
+ */
+@InterfaceAudience.Private
+public final class RSUtil {
+  private RSUtil() {
+  }
+
+  /**
+   * Generate the encoding matrix of a systematic code: the identity on the
+   * first <code>numDataUnits</code> rows, and a Cauchy matrix on the
+   * parity rows. Any <code>numDataUnits</code> rows of the matrix form an
+   * invertible matrix, so any erasures up to the number of parity units can
+   * be recovered.
+   */
+  public static int[][] genCauchyMatrix(int numDataUnits,
+      int numParityUnits) {
+    final int[][] matrix = new int[numDataUnits + numParityUnits][];
+    for (int i = 0; i < numDataUnits; i++) {
+      matrix[i] = new int[numDataUnits];
+      matrix[i][i] = 1;
+    }
+    for (int i = numDataUnits; i < matrix.length; i++) {
+      matrix[i] = new int[numDataUnits];
+      for (int j = 0; j < numDataUnits; j++) {
+        // i != j, so i ^ j is never 0
+        matrix[i][j] = GF256.inverse(i ^ j);
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * Compute each output as the linear combination of the inputs with the
+   * coefficients of its row: outputs[i] = sum(rows[i][j] * inputs[j]).
+   */
+  public static void encodeData(int[][] rows, byte[][] inputs,
+      int[] inputOffsets, int len, byte[][] outputs, int[] outputOffsets) {
+    for (int i = 0; i < outputs.length; i++) {
+      final byte[] output = outputs[i];
+      final int outOff = outputOffsets[i];
+      for (int p = 0; p < len; p++) {
+        output[outOff + p] = 0;
+      }
+      for (int j = 0; j < inputs.length; j++) {
+        final int c = rows[i][j];
+        if (c == 0) {
+          continue;
+        }
+        final byte[] input = inputs[j];
+        final int inOff = inputOffsets[j];
+        if (c == 1) {
+          for (int p = 0; p < len; p++) {
+            output[outOff + p] ^= input[inOff + p];
+          }
+        } else {
+          final byte[] table = GF256.mulTable(c);
+          for (int p = 0; p < len; p++) {
+            output[outOff + p] ^= table[input[inOff + p] & 0xff];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * As {@link #encodeData(int[][], byte[][], int[], int, byte[][], int[])},
+   * for buffers, from their position to their limit. The positions of the
+   * buffers are not changed.
+   */
+  public static void encodeData(int[][] rows, ByteBuffer[] inputs, int len,
+      ByteBuffer[] outputs) {
+    for (int i = 0; i < outputs.length; i++) {
+      final ByteBuffer output = outputs[i];
+      final int outOff = output.position();
+      for (int p = 0; p < len; p++) {
+        output.put(outOff + p, (byte) 0);
+      }
+      for (int j = 0; j < inputs.length; j++) {
+        final int c = rows[i][j];
+        if (c == 0) {
+          continue;
+        }
+        final ByteBuffer input = inputs[j];
+        final int inOff = input.position();
+        final byte[] table = GF256.mulTable(c);
+        for (int p = 0; p < len; p++) {
+          output.put(outOff + p, (byte) (output.get(outOff + p)
+              ^ table[input.get(inOff + p) & 0xff]));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.retry;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.Client.ConnectionId;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RpcConstants;
+import org.apache.hadoop.ipc.RpcInvocationHandler;
+import org.apache.hadoop.ipc.StandbyException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link FailoverProxyProvider} sending the methods annotated as
+ * {@link ReadOnly} to the replicas of a server which are not active, such as
+ * standby NameNodes, and every other method to the active server.
+ * <p>
+ * The provider keeps the last state id reported by any server it has called,
+ * and sends it with every request through an {@link AlignmentContext}, so that
+ * a replica only serves a read once it has caught up with the state seen by
+ * the client. Hence the reads of a client never go backwards, and they see the
+ * writes made through the same provider. The reads are sent to the active
+ * server until it has reported its state, usually in the response to the
+ * first call of the client.
+ * <p>
+ * A read failing on a replica with a {@link StandbyException}, e.g. since the
+ * replica is too far behind, or with a communication error is tried on the next
+ * replica, and then on the active server once <code>maxReadAttempts</code>
+ * replicas have failed. The failures of the active server are left to the
+ * {@link RetryPolicy} of the enclosing {@link RetryInvocationHandler}.
+ */
+@InterfaceStability.Evolving
+public class ConsistentReadFailoverProxyProvider<T>
+    implements FailoverProxyProvider<T> {
+  public static final Log LOG =
+      LogFactory.getLog(ConsistentReadFailoverProxyProvider.class);
+
+  /**
+   * The state id of the servers seen by the client, which never decreases.
+   * It is {@link RpcConstants#INVALID_STATE_ID} until a server has reported
+   * its state.
+   */
+  private static class ClientAlignmentContext implements AlignmentContext {
+    private final AtomicLong lastSeenStateId =
+        new AtomicLong(RpcConstants.INVALID_STATE_ID);
+
+    @Override
+    public long getLastSeenStateId() {
+      return lastSeenStateId.get();
+    }
+
+    @Override
+    public void receiveResponseState(long stateId) {
+      for (long last = lastSeenStateId.get(); stateId > last;
+          last = lastSeenStateId.get()) {
+        if (lastSeenStateId.compareAndSet(last, stateId)) {
+          return;
+        }
+      }
+    }
+  }
+
+  private final FailoverProxyProvider<T> activeProvider;
+  private final FailoverProxyProvider<T> readProvider;
+  private final int maxReadAttempts;
+  /** The methods of the interface annotated as {@link ReadOnly}. */
+  private final Set<Method> readOnlyMethods = new HashSet<Method>();
+  private final ClientAlignmentContext alignmentContext =
+      new ClientAlignmentContext();
+
+  /** The proxy returned by {@link #getProxy()} for the current active. */
+  private ProxyInfo<T> currentProxy;
+  private T currentActive;
+
+  /**
+   * @param activeProvider the provider of the proxies to the active server.
+   * @param readProvider the provider of the proxies to the replicas serving
+   *          the reads, which may include the active server, in which case
+   *          it is skipped.
+   * @param maxReadAttempts the number of replicas to try for a read before
+   *          sending it to the active server.
+   */
+  public ConsistentReadFailoverProxyProvider(
+      FailoverProxyProvider<T> activeProvider,
+      FailoverProxyProvider<T> readProvider, int maxReadAttempts) {
+    Preconditions.checkArgument(
+        activeProvider.getInterface() == readProvider.getInterface(),
+        "The providers must have the same interface");
+    this.activeProvider = activeProvider;
+    this.readProvider = readProvider;
+    this.maxReadAttempts = maxReadAttempts;
+    for (Method method : getInterface().getMethods()) {
+      if (method.isAnnotationPresent(ReadOnly.class)) {
+        readOnlyMethods.add(method);
+      }
+    }
+  }
+
+  /** @return the last state id of the servers seen by the client. */
+  public long getLastSeenStateId() {
+    return alignmentContext.getLastSeenStateId();
+  }
+
+  @Override
+  public Class<T> getInterface() {
+    return activeProvider.getInterface();
+  }
+
+  @Override
+  public synchronized ProxyInfo<T> getProxy() {
+    final ProxyInfo<T> active = activeProvider.getProxy();
+    if (currentProxy == null || currentActive != active.proxy) {
+      final T proxy = getInterface().cast(Proxy.newProxyInstance(
+          getInterface().getClassLoader(), new Class<?>[] {getInterface()},
+          new ConsistentReadInvocationHandler(active)));
+      currentProxy = new ProxyInfo<T>(proxy, active.proxyInfo);
+      currentActive = active.proxy;
+    }
+    return currentProxy;
+  }
+
+  @Override
+  public synchronized void performFailover(T proxy) {
+    activeProvider.performFailover(currentActive);
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOUtils.cleanup(LOG, activeProvider, readProvider);
+  }
+
+  /**
+   * @return whether a read failing with the given exception should be tried
+   *         on another server.
+   */
+  private static boolean shouldTryAnotherServer(Throwable t) {
+    if (t instanceof RemoteException) {
+      return StandbyException.class.getName().equals(
+          ((RemoteException) t).getClassName());
+    }
+    return t instanceof IOException;
+  }
+
+  private static Object invoke(Object proxy, Method method, Object[] args)
+      throws Throwable {
+    try {
+      if (!method.isAccessible()) {
+        method.setAccessible(true);
+      }
+      return method.invoke(proxy, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private class ConsistentReadInvocationHandler
+      implements RpcInvocationHandler {
+    private final ProxyInfo<T> active;
+
+    ConsistentReadInvocationHandler(ProxyInfo<T> active) {
+      this.active = active;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      Client.setAlignmentContext(alignmentContext);
+      try {
+        // until the client has seen the state of the active server, e.g.
+        // for its first call, a standby could serve a read from any state
+        if (readOnlyMethods.contains(method) && alignmentContext
+            .getLastSeenStateId() != RpcConstants.INVALID_STATE_ID) {
+          for (int i = 0; i < maxReadAttempts; i++) {
+            final ProxyInfo<T> reader = readProvider.getProxy();
+            try {
+              if (!isActive(reader)) {
+                return ConsistentReadFailoverProxyProvider.invoke(
+                    reader.proxy, method, args);
+              }
+            } catch (Throwable t) {
+              if (!shouldTryAnotherServer(t)) {
+                throw t;
+              }
+              if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to invoke " + method.getName() + " over "
+                    + reader.proxyInfo + ", trying another server", t);
+              }
+            }
+            synchronized (readProvider) {
+              // do not skip a reader if another call already failed over
+              if (readProvider.getProxy().proxy == reader.proxy) {
+                readProvider.performFailover(reader.proxy);
+              }
+            }
+          }
+        }
+        return ConsistentReadFailoverProxyProvider.invoke(
+            active.proxy, method, args);
+      } finally {
+        Client.setAlignmentContext(null);
+      }
+    }
+
+    private boolean isActive(ProxyInfo<T> reader) {
+      return active.proxyInfo != null
+          && active.proxyInfo.equals(reader.proxyInfo);
+    }
+
+    @Override
+    public ConnectionId getConnectionId() {
+      return RPC.getConnectionIdForProxy(active.proxy);
+    }
+
+    @Override
+    public void close() throws IOException {
+      // the proxies are closed by the providers
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * An AlignmentContext carries the state of a server, such as the last
+ * transaction id applied to a namespace, between the server and its clients
+ * through the RPC headers.
+ *
+ * A server sets its context with {@link Server#setAlignmentContext}, so that
+ * every response reports the state of the server. A client sets its context
+ * with {@link Client#setAlignmentContext} before a call, so that the request
+ * reports the last state it has seen, which the server can read with
+ * {@link Server#getClientStateId()}, and the response updates it.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Evolving
+public interface AlignmentContext {
+  /**
+   * @return the last state id seen by a client, or the current state id of
+   *         a server.
+   */
+  long getLastSeenStateId();
+
+  /**
+   * Receive the state id reported by a server in a response.
+   * Servers ignore it.
+   * @param stateId the state id of the server.
+   */
+  void receiveResponseState(long stateId);
+}
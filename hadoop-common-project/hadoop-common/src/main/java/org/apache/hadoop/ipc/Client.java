@@ -124,6 +124,18 @@ public static void setCallIdAndRetryCount(int cid, int rc) {
     retryCount.set(rc);
   }
 
+  private static final ThreadLocal<AlignmentContext> alignmentContext =
+      new ThreadLocal<AlignmentContext>();
+
+  /**
+   * Set the alignment context of the calls made by the current thread, so
+   * that the requests carry its last seen state id and the responses update
+   * it. The context is kept until it is set again, with null to clear it.
+   */
+  public static void setAlignmentContext(AlignmentContext context) {
+    alignmentContext.set(context);
+  }
+
   private Hashtable<ConnectionId, Connection> connections =
     new Hashtable<ConnectionId, Connection>();
 
@@ -310,6 +322,7 @@ static class Call {
     Writable rpcResponse;       // null if rpc has error
     IOException error;          // exception, null if success
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
+    final AlignmentContext alignmentContext; // null if the call has no state
     boolean done;               // true when call is done
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
@@ -330,6 +343,8 @@ private Call(RPC.RpcKind rpcKind, Writable param) {
       } else {
         this.retry = rc;
       }
+
+      this.alignmentContext = Client.alignmentContext.get();
     }
 
     /** Indicate when the call is complete and the
@@ -1030,7 +1045,9 @@ public void sendRpcRequest(final Call call)
       final DataOutputBuffer d = new DataOutputBuffer();
       RpcRequestHeaderProto header = ProtoUtil.makeRpcRequestHeader(
           call.rpcKind, OperationProto.RPC_FINAL_PACKET, call.id, call.retry,
-          clientId);
+          clientId, call.alignmentContext == null ?
+              RpcConstants.INVALID_STATE_ID :
+              call.alignmentContext.getLastSeenStateId());
       header.writeDelimitedTo(d);
       call.rpcRequest.write(d);
 
@@ -1110,6 +1127,9 @@ private void receiveRpcResponse() {
           Writable value = ReflectionUtils.newInstance(valueClass, conf);
           value.readFields(in);                 // read value
           calls.remove(callId);
+          if (call.alignmentContext != null && header.hasStateId()) {
+            call.alignmentContext.receiveResponseState(header.getStateId());
+          }
           call.setRpcResponse(value);
           
           // verify that length was correct
@@ -332,6 +332,17 @@ public static byte[] getClientId() {
     Call call = CurCall.get();
     return call != null ? call.clientId : RpcConstants.DUMMY_CLIENT_ID;
   }
+
+  /**
+   * @return the last state id of the server seen by the client of the current
+   *         RPC call, or {@link RpcConstants#INVALID_STATE_ID} if the client
+   *         did not send any.
+   * @see AlignmentContext
+   */
+  public static long getClientStateId() {
+    Call call = CurCall.get();
+    return call != null ? call.clientStateId : RpcConstants.INVALID_STATE_ID;
+  }
   
   /** Returns remote address as a string when invoked inside an RPC.
    *  Returns null in case of an error.
@@ -379,6 +390,8 @@ public static boolean isRpcInvocation() {
   private final boolean tcpNoDelay; // if T then disable Nagle's Algorithm
 
   volatile private boolean running = true;         // true while server runs
+  // the state of the server reported to the clients, if any
+  private volatile AlignmentContext alignmentContext;
   private CallQueueManager<Call> callQueue;
 
   // maintains the set of client connections and handles idle timeouts
@@ -515,6 +528,11 @@ public static class Call implements Schedulable {
     private final RPC.RpcKind rpcKind;
     private final byte[] clientId;
     private final Span traceSpan; // the tracing span on the server side
+    // the last state id of the server seen by the client
+    private long clientStateId = RpcConstants.INVALID_STATE_ID;
+    // number of parties that must finish before the response is sent, the
+    // handler of the call being the first one
+    private final AtomicInteger responseWaitCount = new AtomicInteger(1);
 
     public Call(int id, int retryCount, Writable param, 
         Connection connection) {
@@ -550,6 +568,30 @@ public void setResponse(ByteBuffer response) {
       this.rpcResponse = response;
     }
 
+    /**
+     * Defer sending the response of this call. The handler sets up the
+     * response as usual when the call returns, but the response is only
+     * sent to the client once {@link #sendResponse()} has been called for
+     * every call to this method. May only be called by the handler of the
+     * call, before the call returns.
+     */
+    public void postponeResponse() {
+      int count = responseWaitCount.incrementAndGet();
+      assert count > 1 : "response has already been sent";
+    }
+
+    /**
+     * Send the response of this call, unless it is still postponed by
+     * another party or the handler has not finished the call yet.
+     */
+    public void sendResponse() throws IOException {
+      int count = responseWaitCount.decrementAndGet();
+      assert count >= 0 : "response has already been sent";
+      if (count == 0) {
+        connection.sendResponse(this);
+      }
+    }
+
     // For Schedulable
     @Override
     public UserGroupInformation getUserGroupInformation() {
@@ -1051,6 +1093,12 @@ private boolean processResponse(LinkedList<Call> responseQueue,
     //
     void doRespond(Call call) throws IOException {
       synchronized (call.connection.responseQueue) {
+        // SASL enforces its own message ordering, so responses are only
+        // wrapped when they are queued, since postponed responses may be
+        // sent in a different order than they were set up
+        if (call.connection.useWrap) {
+          wrapWithSasl(call);
+        }
         call.connection.responseQueue.addLast(call);
         if (call.connection.responseQueue.size() == 1) {
           processResponse(call.connection.responseQueue, true);
@@ -1222,6 +1270,11 @@ private boolean isIdle() {
       return rpcCount.get() == 0;
     }
     
+    /* Queue the response of a call to the responder */
+    private void sendResponse(Call call) throws IOException {
+      responder.doRespond(call);
+    }
+
     /* Decrement the outstanding RPC count */
     private void decRpcCount() {
       rpcCount.decrementAndGet();
@@ -1961,6 +2014,9 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       Call call = new Call(header.getCallId(), header.getRetryCount(),
           rpcRequest, this, ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), traceSpan);
+      if (header.hasStateId()) {
+        call.clientStateId = header.getStateId();
+      }
 
       callQueue.put(call);              // queue the call; maybe blocked here
       incRpcCount();  // Increment the rpc count
@@ -2179,23 +2235,18 @@ public Writable run() throws Exception {
             }
           }
           CurCall.set(null);
-          synchronized (call.connection.responseQueue) {
-            // setupResponse() needs to be sync'ed together with 
-            // responder.doResponse() since setupResponse may use
-            // SASL to encrypt response data and SASL enforces
-            // its own message ordering.
-            setupResponse(buf, call, returnStatus, detailedErr, 
-                value, errorClass, error);
-            
-            // Discard the large buf and reset it back to smaller size 
-            // to free up heap
-            if (buf.size() > maxRespSize) {
-              LOG.warn("Large response size " + buf.size() + " for call "
-                  + call.toString());
-              buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
-            }
-            responder.doRespond(call);
+          setupResponse(buf, call, returnStatus, detailedErr,
+              value, errorClass, error);
+
+          // Discard the large buf and reset it back to smaller size
+          // to free up heap
+          if (buf.size() > maxRespSize) {
+            LOG.warn("Large response size " + buf.size() + " for call "
+                + call.toString());
+            buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
           }
+          // the response is sent now, or later by whoever postponed it
+          call.sendResponse();
         } catch (InterruptedException e) {
           if (running) {                          // unexpected -- log it
             LOG.info(Thread.currentThread().getName() + " unexpectedly interrupted", e);
@@ -2402,6 +2453,10 @@ private void setupResponse(ByteArrayOutputStream responseBuf,
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    final AlignmentContext context = alignmentContext;
+    if (context != null) {
+      headerBuilder.setStateId(context.getLastSeenStateId());
+    }
 
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
@@ -2447,9 +2502,6 @@ private void setupResponse(ByteArrayOutputStream responseBuf,
       out.writeInt(fullLength);
       header.writeDelimitedTo(out);
     }
-    if (call.connection.useWrap) {
-      wrapWithSasl(responseBuf, call);
-    }
     call.setResponse(ByteBuffer.wrap(responseBuf.toByteArray()));
   }
   
@@ -2478,17 +2530,13 @@ private void setupResponseOldVersionFatal(ByteArrayOutputStream response,
     WritableUtils.writeString(out, errorClass);
     WritableUtils.writeString(out, error);
 
-    if (call.connection.useWrap) {
-      wrapWithSasl(response, call);
-    }
     call.setResponse(ByteBuffer.wrap(response.toByteArray()));
   }
   
   
-  private void wrapWithSasl(ByteArrayOutputStream response, Call call)
-      throws IOException {
+  private void wrapWithSasl(Call call) throws IOException {
     if (call.connection.saslServer != null) {
-      byte[] token = response.toByteArray();
+      byte[] token = call.rpcResponse.array();
       // synchronization may be needed since there can be multiple Handler
       // threads using saslServer to wrap responses.
       synchronized (call.connection.saslServer) {
@@ -2497,7 +2545,7 @@ private void wrapWithSasl(ByteArrayOutputStream response, Call call)
       if (LOG.isDebugEnabled())
         LOG.debug("Adding saslServer wrapped token of size " + token.length
             + " as call response.");
-      response.reset();
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
       // rebuild with sasl header and payload
       RpcResponseHeaderProto saslHeader = RpcResponseHeaderProto.newBuilder()
           .setCallId(AuthProtocol.SASL.callId)
@@ -2513,6 +2561,7 @@ private void wrapWithSasl(ByteArrayOutputStream response, Call call)
       DataOutputStream out = new DataOutputStream(response);
       out.writeInt(saslResponse.getLength());
       saslResponse.write(out);
+      call.setResponse(ByteBuffer.wrap(response.toByteArray()));
     }
   }
   
@@ -2523,6 +2572,14 @@ Configuration getConf() {
   /** Sets the socket buffer size used for responding to RPCs */
   public void setSocketSendBufSize(int size) { this.socketSendBufferSize = size; }
 
+  /**
+   * Sets the context whose state id is reported in every response, so that
+   * the clients can tell which state of the server they have seen.
+   */
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
     responder.start();
@@ -22,6 +22,7 @@
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
 import java.util.EnumSet;
 import java.util.Random;
 
@@ -39,6 +40,7 @@
 import org.apache.hadoop.io.RandomDatum;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -166,6 +168,40 @@ private void writeCheck(int bufferSize) throws Exception {
     }
   }
 
+  /** Test crypto writing from direct and heap byte buffers. */
+  @Test(timeout=120000)
+  public void testByteBufferWrite() throws Exception {
+    OutputStream out = getOutputStream(smallBufferSize);
+    Assume.assumeTrue(out instanceof WritableByteChannel);
+    WritableByteChannel channel = (WritableByteChannel) out;
+    
+    // Interleave array and buffer writes of sizes which are not multiples
+    // of the buffer size.
+    ByteBuffer direct = ByteBuffer.allocateDirect(4 * smallBufferSize);
+    int pos = 0;
+    for (int i = 0; pos < dataLen; i++) {
+      int n = Math.min(dataLen - pos, smallBufferSize * (i % 3 + 1) + 7);
+      if (i % 3 == 0) {
+        out.write(data, pos, n);
+      } else if (i % 3 == 1) {
+        direct.clear();
+        direct.put(data, pos, n);
+        direct.flip();
+        Assert.assertEquals(n, channel.write(direct));
+        Assert.assertFalse(direct.hasRemaining());
+      } else {
+        Assert.assertEquals(n, channel.write(ByteBuffer.wrap(data, pos, n)));
+      }
+      pos += n;
+    }
+    out.close();
+    Assert.assertFalse(channel.isOpen());
+    
+    InputStream in = getInputStream(defaultBufferSize);
+    readCheck(in);
+    in.close();
+  }
+  
   /** Test crypto with different IV. */
   @Test(timeout=120000)
   public void testCryptoIV() throws Exception {
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestVectoredReadUtils {
+  private static final String TEST_ROOT_DIR =
+      System.getProperty("test.build.data", "build/test/data")
+      + "/work-dir/vectoredread";
+  private static final Path TEST_PATH = new Path(TEST_ROOT_DIR, "test-file");
+
+  private final File base = new File(TEST_ROOT_DIR);
+  private byte[] data;
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setup() throws IOException {
+    conf = new Configuration();
+    conf.setInt(
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGE_GAP_KEY, 10);
+    conf.setInt(
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGED_SIZE_KEY,
+        1000);
+    fs = FileSystem.getLocal(conf).getRawFileSystem();
+    data = new byte[10000];
+    new Random(0xBADC0DE).nextBytes(data);
+    FSDataOutputStream out = fs.create(TEST_PATH, true);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+  }
+
+  @After
+  public void after() throws IOException {
+    FileUtil.fullyDelete(base);
+  }
+
+  private static void assertCombined(CombinedRange combined, long offset,
+      int length, Integer... indices) {
+    assertEquals(offset, combined.getOffset());
+    assertEquals(length, combined.getLength());
+    assertEquals(Arrays.asList(indices), combined.getIndices());
+  }
+
+  @Test
+  public void testMergeRanges() {
+    List<FileRange> ranges = Arrays.asList(
+        new FileRange(200, 100),
+        new FileRange(0, 10),
+        new FileRange(15, 5),
+        new FileRange(250, 100),
+        new FileRange(1000, 600),
+        new FileRange(1605, 600),
+        new FileRange(31, 1));
+    List<CombinedRange> combined =
+        VectoredReadUtils.mergeRanges(ranges, 10, 1000);
+    assertEquals(5, combined.size());
+    // ranges with a small gap are merged
+    assertCombined(combined.get(0), 0, 20, 1, 2);
+    // but not when the gap is larger than the maximum
+    assertCombined(combined.get(1), 31, 1, 6);
+    // overlapping ranges are merged
+    assertCombined(combined.get(2), 200, 150, 0, 3);
+    // close ranges are not merged when the result is too large
+    assertCombined(combined.get(3), 1000, 600, 4);
+    assertCombined(combined.get(4), 1605, 600, 5);
+
+    assertEquals(0,
+        VectoredReadUtils.mergeRanges(
+            Arrays.<FileRange>asList(), 10, 1000).size());
+  }
+
+  private void checkResults(List<FileRange> ranges, List<ByteBuffer> bufs) {
+    assertEquals(ranges.size(), bufs.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      FileRange range = ranges.get(i);
+      ByteBuffer buf = bufs.get(i);
+      assertEquals(0, buf.position());
+      assertEquals(range.getLength(), buf.remaining());
+      for (int j = 0; j < range.getLength(); j++) {
+        assertEquals("Range " + i + " byte " + j,
+            data[(int) range.getOffset() + j], buf.get(j));
+      }
+    }
+  }
+
+  @Test
+  public void testReadVectored() throws IOException {
+    List<FileRange> ranges = Arrays.asList(
+        new FileRange(5000, 2000),
+        new FileRange(0, 10),
+        new FileRange(12, 100),
+        new FileRange(50, 10),
+        new FileRange(9999, 1),
+        new FileRange(1000, 0));
+    FSDataInputStream in = fs.open(TEST_PATH);
+    try {
+      in.seek(42);
+      checkResults(ranges, in.readVectored(ranges));
+      // the position of the stream is not changed
+      assertEquals(42, in.getPos());
+
+      // the generic implementation gives the same results
+      checkResults(ranges,
+          VectoredReadUtils.readVectored(in, ranges, 10, 1000));
+
+      try {
+        in.readVectored(Arrays.asList(new FileRange(9990, 11)));
+        fail("Vectored read past the end of the file should fail");
+      } catch (EOFException e) {
+        // expected
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.io.erasurecode.ECSchema;
+import org.junit.Test;
+
+/**
+ * Test the Reed-Solomon raw coders.
+ */
+public class TestRSRawCoder {
+  private static final int UNIT_LENGTH = 1024;
+  private final Random random = new Random();
+
+  private byte[][] randomUnits(int n) {
+    final byte[][] units = new byte[n][UNIT_LENGTH];
+    for (byte[] unit : units) {
+      random.nextBytes(unit);
+    }
+    return units;
+  }
+
+  /**
+   * Encode random data, erase random units up to the number of parity
+   * units and check they are decoded.
+   */
+  private void testCoding(int numDataUnits, int numParityUnits) {
+    final RawErasureEncoder encoder =
+        new RSRawEncoder(numDataUnits, numParityUnits);
+    final RawErasureDecoder decoder =
+        new RSRawDecoder(numDataUnits, numParityUnits);
+    final int numUnits = numDataUnits + numParityUnits;
+
+    final byte[][] data = randomUnits(numDataUnits);
+    final byte[][] parity = new byte[numParityUnits][UNIT_LENGTH];
+    encoder.encode(data, parity);
+    final byte[][] units = new byte[numUnits][];
+    System.arraycopy(data, 0, units, 0, numDataUnits);
+    System.arraycopy(parity, 0, units, numDataUnits, numParityUnits);
+
+    final List<Integer> indexes = new ArrayList<Integer>();
+    for (int i = 0; i < numUnits; i++) {
+      indexes.add(i);
+    }
+    for (int n = 1; n <= numParityUnits; n++) {
+      Collections.shuffle(indexes, random);
+      final int[] erased = new int[n];
+      final byte[][] inputs = units.clone();
+      for (int i = 0; i < n; i++) {
+        erased[i] = indexes.get(i);
+        inputs[erased[i]] = null;
+      }
+      final byte[][] outputs = new byte[n][UNIT_LENGTH];
+      decoder.decode(inputs, erased, outputs);
+      for (int i = 0; i < n; i++) {
+        assertArrayEquals("unit " + erased[i], units[erased[i]], outputs[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testCoding() {
+    testCoding(6, 3);
+    testCoding(10, 4);
+    testCoding(3, 2);
+    testCoding(1, 1);
+  }
+
+  @Test
+  public void testCodingBuffers() {
+    final ECSchema schema = ECSchema.DEFAULT;
+    final int k = schema.getNumDataUnits();
+    final int m = schema.getNumParityUnits();
+    final byte[][] data = randomUnits(k);
+    final byte[][] parity = new byte[m][UNIT_LENGTH];
+    schema.createRawEncoder().encode(data, parity);
+
+    // direct buffers which do not start at 0
+    final ByteBuffer[] inputs = new ByteBuffer[k];
+    for (int i = 0; i < k; i++) {
+      inputs[i] = ByteBuffer.allocateDirect(UNIT_LENGTH + 1);
+      inputs[i].put((byte) 0).put(data[i]).flip().position(1);
+    }
+    final ByteBuffer[] outputs = new ByteBuffer[m];
+    for (int i = 0; i < m; i++) {
+      outputs[i] = ByteBuffer.allocateDirect(UNIT_LENGTH);
+    }
+    schema.createRawEncoder().encode(inputs, outputs);
+    for (int i = 0; i < m; i++) {
+      assertEquals(0, outputs[i].position());
+      final byte[] bytes = new byte[UNIT_LENGTH];
+      outputs[i].get(bytes);
+      assertArrayEquals(parity[i], bytes);
+    }
+
+    // decode the first data unit and the last parity unit
+    final ByteBuffer[] units = new ByteBuffer[k + m];
+    for (int i = 1; i < k; i++) {
+      units[i] = ByteBuffer.wrap(data[i]);
+    }
+    for (int i = 0; i < m - 1; i++) {
+      units[k + i] = ByteBuffer.wrap(parity[i]);
+    }
+    final ByteBuffer[] recovered = new ByteBuffer[] {
+        ByteBuffer.allocate(UNIT_LENGTH), ByteBuffer.allocate(UNIT_LENGTH) };
+    schema.createRawDecoder().decode(units, new int[] {0, k + m - 1},
+        recovered);
+    assertArrayEquals(data[0], recovered[0].array());
+    assertArrayEquals(parity[m - 1], recovered[1].array());
+  }
+
+  /**
+   * Threads sharing a decoder, each with its own erasure pattern, must not
+   * use the decoding matrix of another pattern.
+   */
+  @Test(timeout=60000)
+  public void testConcurrentDecoding() throws Exception {
+    final int k = 6;
+    final int m = 3;
+    final byte[][] data = randomUnits(k);
+    final byte[][] parity = new byte[m][UNIT_LENGTH];
+    new RSRawEncoder(k, m).encode(data, parity);
+    final byte[][] units = new byte[k + m][];
+    System.arraycopy(data, 0, units, 0, k);
+    System.arraycopy(parity, 0, units, k, m);
+
+    final RawErasureDecoder decoder = new RSRawDecoder(k, m);
+    final ExecutorService executor = Executors.newFixedThreadPool(k);
+    try {
+      final List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int i = 0; i < k; i++) {
+        final int erased = i;
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            final byte[][] inputs = units.clone();
+            inputs[erased] = null;
+            for (int n = 0; n < 200; n++) {
+              final byte[][] outputs = new byte[1][UNIT_LENGTH];
+              decoder.decode(inputs, new int[] {erased}, outputs);
+              assertArrayEquals("unit " + erased, units[erased], outputs[0]);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTooManyErasures() {
+    final RawErasureDecoder decoder = new RSRawDecoder(3, 2);
+    final byte[][] inputs = randomUnits(5);
+    inputs[0] = inputs[1] = inputs[2] = null;
+    try {
+      decoder.decode(inputs, new int[] {0, 1, 2}, new byte[3][UNIT_LENGTH]);
+      fail("Decoded with less units than the data units");
+    } catch (HadoopIllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSchema() {
+    final ECSchema schema = ECSchema.valueOf("RS-10-4");
+    assertEquals(10, schema.getNumDataUnits());
+    assertEquals(4, schema.getNumParityUnits());
+    assertEquals("RS-10-4", schema.toString());
+    assertEquals(schema, ECSchema.valueOf(schema.toString()));
+    for (String invalid : new String[] {"RS-6", "XOR-2-1", "RS-0-3",
+        "RS-200-100", "RS-a-3"}) {
+      try {
+        ECSchema.valueOf(invalid);
+        fail("Parsed invalid schema " + invalid);
+      } catch (HadoopIllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+}
@@ -260,6 +260,58 @@ public void internalTestSerial(int handlerCount, boolean handlerSleep,
     server.stop();
   }
 	
+  /**
+   * Test that the response of a postponed call is only sent once the party
+   * that postponed it is done with the call.
+   */
+  @Test(timeout=60000)
+  public void testPostponedResponse() throws Exception {
+    final TestServer server = new TestServer(1, false);
+    final List<Server.Call> postponed =
+        Collections.synchronizedList(new ArrayList<Server.Call>());
+    server.callListener = new Runnable() {
+      @Override
+      public void run() {
+        Server.Call call = Server.getCurCall().get();
+        call.postponeResponse();
+        postponed.add(call);
+      }
+    };
+    final InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    final Client client = new Client(LongWritable.class, conf);
+    try {
+      final LongWritable param = new LongWritable(RANDOM.nextLong());
+      final AtomicBoolean done = new AtomicBoolean(false);
+      Thread caller = new Thread() {
+        @Override
+        public void run() {
+          try {
+            LongWritable value = (LongWritable) client.call(param, addr,
+                null, null, 0, conf);
+            done.set(param.equals(value));
+          } catch (IOException e) {
+            LOG.error("Call failed", e);
+          }
+        }
+      };
+      caller.start();
+      while (postponed.isEmpty()) {
+        Thread.sleep(10);
+      }
+      // the handler has finished, but the response must still be held back
+      Thread.sleep(500);
+      assertTrue(caller.isAlive());
+
+      postponed.get(0).sendResponse();
+      caller.join();
+      assertTrue(done.get());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test(timeout=60000)
   public void testStandAloneClient() throws IOException {
     Client client = new Client(LongWritable.class, conf);
@@ -27,6 +27,7 @@
 import org.apache.hadoop.hdfs.shortcircuit.DomainSocketFactory;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitCache;
 import org.apache.hadoop.hdfs.util.ByteArrayManager;
+import org.apache.hadoop.hdfs.util.ByteArrayManagerMetrics;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
@@ -117,6 +118,8 @@ private ClientContext(String name, Conf conf) {
     this.domainSocketFactory = new DomainSocketFactory(conf);
 
     this.byteArrayManager = ByteArrayManager.newInstance(conf.writeByteArrayManagerConf);
+    ByteArrayManagerMetrics.register("ByteArrayManager-" + name,
+        byteArrayManager);
   }
 
   public static String confAsString(Conf conf) {
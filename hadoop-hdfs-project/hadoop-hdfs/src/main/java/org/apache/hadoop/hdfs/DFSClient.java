@@ -67,6 +67,7 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -84,6 +85,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -230,6 +232,8 @@
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /********************************************************
  * DFSClient can connect to a Hadoop Filesystem and 
@@ -276,6 +280,8 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   private static final DFSHedgedReadMetrics HEDGED_READ_METRIC =
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
+  private static ListeningExecutorService ASYNC_READ_EXECUTOR;
+  private final FileMetadataCache metadataCache;
   private final Sampler<?> traceSampler;
 
   /**
@@ -719,6 +725,7 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
     if (numThreads > 0) {
       this.initThreadsNumForHedgedReads(numThreads);
     }
+    this.metadataCache = new FileMetadataCache(conf);
     this.saslClient = new SaslDataTransferClient(
       conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
       TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
@@ -1222,14 +1229,21 @@ public LocatedBlocks getLocatedBlocks(String src, long start)
 
   /*
    * This is just a wrapper around callGetBlockLocations, but non-static so that
-   * we can stub it out for tests.
+   * we can stub it out for tests.  The locations of closed files are served
+   * from the metadata cache when it is enabled.
    */
   @VisibleForTesting
   public LocatedBlocks getLocatedBlocks(String src, long start, long length)
       throws IOException {
+    LocatedBlocks blocks = metadataCache.getLocatedBlocks(src, start, length);
+    if (blocks != null) {
+      return blocks;
+    }
     TraceScope scope = getPathTraceScope("getBlockLocations", src);
     try {
-      return callGetBlockLocations(namenode, src, start, length);
+      blocks = callGetBlockLocations(namenode, src, start, length);
+      metadataCache.putLocatedBlocks(src, start, blocks);
+      return blocks;
     } finally {
       scope.close();
     }
@@ -1709,10 +1723,167 @@ public DFSOutputStream create(String src,
         src, masked, flag, createParent, replication, blockSize, progress,
         buffersize, dfsClientConf.createChecksum(checksumOpt),
         getFavoredNodesStr(favoredNodes));
+    metadataCache.invalidate(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
 
+  /**
+   * Create, write and close many small files, with one call to the
+   * namenode creating all the files and one completing them, instead of
+   * a create and a complete call for each file. The data of the files is
+   * still written one file at a time, each file through its own pipeline
+   * of datanodes after its own addBlock call to the namenode.
+   * <p>
+   * If writing a file fails, the streams of the files are aborted, and the
+   * files which have not been completed are left open until the namenode
+   * recovers their lease.
+   *
+   * @param srcs the paths of the files
+   * @param contents the data of the file at the same index
+   * @param permission permission of the files, masked with the umask
+   * @param flag must contain {@link CreateFlag#CREATE}; existing files can't
+   *          be overwritten in a batch
+   * @param createParent create missing parent directories if true
+   * @param replication block replication
+   * @param blockSize maximum block size
+   *
+   * @see ClientProtocol#createFiles
+   * @see ClientProtocol#completeFiles
+   */
+  public void createFiles(String[] srcs, byte[][] contents,
+      FsPermission permission, EnumSet<CreateFlag> flag, boolean createParent,
+      short replication, long blockSize) throws IOException {
+    checkOpen();
+    Preconditions.checkArgument(srcs.length == contents.length,
+        "Expected the contents of %s files, got %s", srcs.length,
+        contents.length);
+    if (permission == null) {
+      permission = FsPermission.getFileDefault();
+    }
+    FsPermission masked = permission.applyUMask(dfsClientConf.uMask);
+    TraceScope scope = Trace.startSpan("createFiles", traceSampler);
+    try {
+      final HdfsFileStatus[] stats;
+      try {
+        stats = namenode.createFiles(srcs, masked, clientName,
+            new EnumSetWritable<CreateFlag>(flag), createParent, replication,
+            blockSize);
+        for (String src : srcs) {
+          metadataCache.invalidate(src);
+        }
+      } catch (RemoteException re) {
+        throw re.unwrapRemoteException(AccessControlException.class,
+                                       DSQuotaExceededException.class,
+                                       FileAlreadyExistsException.class,
+                                       FileNotFoundException.class,
+                                       ParentNotDirectoryException.class,
+                                       NSQuotaExceededException.class,
+                                       SafeModeException.class,
+                                       UnresolvedPathException.class,
+                                       SnapshotAccessControlException.class);
+      }
+
+      final ExtendedBlock[] lasts = new ExtendedBlock[srcs.length];
+      final long[] fileIds = new long[srcs.length];
+      final List<DFSOutputStream> streams = new ArrayList<DFSOutputStream>();
+      try {
+        final DataChecksum checksum = dfsClientConf.createChecksum();
+        for (int i = 0; i < srcs.length; i++) {
+          fileIds[i] = stats[i].getFileId();
+          if (contents[i].length == 0) {
+            continue;
+          }
+          final DFSOutputStream out = DFSOutputStream.newStreamForCreatedFile(
+              this, srcs[i], stats[i], flag, checksum);
+          streams.add(out);
+          beginFileLease(fileIds[i], out);
+          out.write(contents[i]);
+          lasts[i] = out.closeWithoutCompleting();
+        }
+        completeFiles(srcs, lasts, fileIds);
+      } catch (IOException e) {
+        for (DFSOutputStream out : streams) {
+          out.abort();
+        }
+        throw e;
+      } finally {
+        for (DFSOutputStream out : streams) {
+          endFileLease(out.getFileId());
+        }
+        for (String src : srcs) {
+          metadataCache.invalidate(src);
+        }
+      }
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * Complete the files with {@link ClientProtocol#completeFiles}, retrying
+   * the files whose last block is not minimally replicated yet.
+   */
+  private void completeFiles(String[] srcs, ExtendedBlock[] lasts,
+      long[] fileIds) throws IOException {
+    final long start = Time.monotonicNow();
+    long sleeptime = dfsClientConf.blockWriteLocateFollowingInitialDelayMs;
+    int retries = dfsClientConf.nBlockWriteLocateFollowingRetry;
+    while (true) {
+      final boolean[] completed;
+      try {
+        completed = namenode.completeFiles(srcs, clientName, lasts, fileIds);
+      } catch (RemoteException re) {
+        throw re.unwrapRemoteException(AccessControlException.class,
+                                       FileNotFoundException.class,
+                                       SafeModeException.class,
+                                       UnresolvedPathException.class);
+      }
+      int pending = 0;
+      for (boolean c : completed) {
+        if (!c) {
+          pending++;
+        }
+      }
+      if (pending == 0) {
+        return;
+      }
+      final int hdfsTimeout = getHdfsTimeout();
+      if (!clientRunning || (hdfsTimeout > 0
+          && start + hdfsTimeout < Time.monotonicNow())) {
+        throw new IOException("Unable to close files because dfsclient "
+            + " was unable to contact the HDFS servers. clientRunning "
+            + clientRunning + " hdfsTimeout " + hdfsTimeout);
+      }
+      if (retries == 0) {
+        throw new IOException("Unable to close " + pending + " files because"
+            + " their last block does not have enough number of replicas.");
+      }
+      retries--;
+      try {
+        Thread.sleep(sleeptime);
+      } catch (InterruptedException ie) {
+        throw new InterruptedIOException("Interrupted while closing files");
+      }
+      sleeptime *= 2;
+
+      // only retry the pending files
+      final String[] pendingSrcs = new String[pending];
+      final ExtendedBlock[] pendingLasts = new ExtendedBlock[pending];
+      final long[] pendingIds = new long[pending];
+      for (int i = 0, j = 0; i < completed.length; i++) {
+        if (!completed[i]) {
+          pendingSrcs[j] = srcs[i];
+          pendingLasts[j] = lasts[i];
+          pendingIds[j++] = fileIds[i];
+        }
+      }
+      srcs = pendingSrcs;
+      lasts = pendingLasts;
+      fileIds = pendingIds;
+    }
+  }
+
   private String[] getFavoredNodesStr(InetSocketAddress[] favoredNodes) {
     String[] favoredNodeStrs = null;
     if (favoredNodes != null) {
@@ -1770,6 +1941,7 @@ public DFSOutputStream primitiveCreate(String src,
           flag, createParent, replication, blockSize, progress, buffersize,
           checksum, null);
     }
+    metadataCache.invalidate(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1826,6 +1998,7 @@ private DFSOutputStream callAppend(String src, int buffersize,
     try {
       LastBlockWithStatus blkWithStatus = namenode.append(src, clientName,
           new EnumSetWritable<>(flag, CreateFlag.class));
+      metadataCache.invalidate(src);
       return DFSOutputStream.newStreamForAppend(this, src, flag, buffersize,
           progress, blkWithStatus.getLastBlock(),
           blkWithStatus.getFileStatus(), dfsClientConf.createChecksum(),
@@ -1904,7 +2077,9 @@ public boolean setReplication(String src, short replication)
       throws IOException {
     TraceScope scope = getPathTraceScope("setReplication", src);
     try {
-      return namenode.setReplication(src, replication);
+      boolean result = namenode.setReplication(src, replication);
+      metadataCache.invalidate(src);
+      return result;
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      FileNotFoundException.class,
@@ -1927,6 +2102,7 @@ public void setStoragePolicy(String src, String policyName)
     TraceScope scope = getPathTraceScope("setStoragePolicy", src);
     try {
       namenode.setStoragePolicy(src, policyName);
+      metadataCache.invalidate(src);
     } catch (RemoteException e) {
       throw e.unwrapRemoteException(AccessControlException.class,
                                     FileNotFoundException.class,
@@ -1961,7 +2137,10 @@ public boolean rename(String src, String dst) throws IOException {
     checkOpen();
     TraceScope scope = getSrcDstTraceScope("rename", src, dst);
     try {
-      return namenode.rename(src, dst);
+      boolean result = namenode.rename(src, dst);
+      metadataCache.invalidateTree(src);
+      metadataCache.invalidateTree(dst);
+      return result;
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      NSQuotaExceededException.class,
@@ -1982,6 +2161,10 @@ public void concat(String trg, String [] srcs) throws IOException {
     TraceScope scope = Trace.startSpan("concat", traceSampler);
     try {
       namenode.concat(trg, srcs);
+      metadataCache.invalidate(trg);
+      for (String src : srcs) {
+        metadataCache.invalidate(src);
+      }
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      UnresolvedPathException.class,
@@ -2000,6 +2183,8 @@ public void rename(String src, String dst, Options.Rename... options)
     TraceScope scope = getSrcDstTraceScope("rename2", src, dst);
     try {
       namenode.rename2(src, dst, options);
+      metadataCache.invalidateTree(src);
+      metadataCache.invalidateTree(dst);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      DSQuotaExceededException.class,
@@ -2027,7 +2212,9 @@ public boolean truncate(String src, long newLength) throws IOException {
     }
     TraceScope scope = getPathTraceScope("truncate", src);
     try {
-      return namenode.truncate(src, newLength, clientName);
+      boolean result = namenode.truncate(src, newLength, clientName);
+      metadataCache.invalidate(src);
+      return result;
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class);
@@ -2057,7 +2244,9 @@ public boolean delete(String src, boolean recursive) throws IOException {
     checkOpen();
     TraceScope scope = getPathTraceScope("delete", src);
     try {
-      return namenode.delete(src, recursive);
+      boolean result = namenode.delete(src, recursive);
+      metadataCache.invalidateTree(src);
+      return result;
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      FileNotFoundException.class,
@@ -2119,9 +2308,15 @@ public DirectoryListing listPaths(String src,  byte[] startAfter,
    */
   public HdfsFileStatus getFileInfo(String src) throws IOException {
     checkOpen();
+    HdfsFileStatus status = metadataCache.getFileInfo(src);
+    if (status != null) {
+      return status;
+    }
     TraceScope scope = getPathTraceScope("getFileInfo", src);
     try {
-      return namenode.getFileInfo(src);
+      status = namenode.getFileInfo(src);
+      metadataCache.putFileInfo(src, status);
+      return status;
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      FileNotFoundException.class,
@@ -2457,6 +2652,7 @@ public void setPermission(String src, FsPermission permission)
     TraceScope scope = getPathTraceScope("setPermission", src);
     try {
       namenode.setPermission(src, permission);
+      metadataCache.invalidate(src);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      FileNotFoundException.class,
@@ -2482,6 +2678,7 @@ public void setOwner(String src, String username, String groupname)
     TraceScope scope = getPathTraceScope("setOwner", src);
     try {
       namenode.setOwner(src, username, groupname);
+      metadataCache.invalidate(src);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      FileNotFoundException.class,
@@ -3122,6 +3319,7 @@ public void setTimes(String src, long mtime, long atime) throws IOException {
     TraceScope scope = getPathTraceScope("setTimes", src);
     try {
       namenode.setTimes(src, mtime, atime);
+      metadataCache.invalidate(src);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      FileNotFoundException.class,
@@ -3183,6 +3381,7 @@ public void modifyAclEntries(String src, List<AclEntry> aclSpec)
     TraceScope scope = getPathTraceScope("modifyAclEntries", src);
     try {
       namenode.modifyAclEntries(src, aclSpec);
+      metadataCache.invalidate(src);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      AclException.class,
@@ -3202,6 +3401,7 @@ public void removeAclEntries(String src, List<AclEntry> aclSpec)
     TraceScope scope = Trace.startSpan("removeAclEntries", traceSampler);
     try {
       namenode.removeAclEntries(src, aclSpec);
+      metadataCache.invalidate(src);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      AclException.class,
@@ -3220,6 +3420,7 @@ public void removeDefaultAcl(String src) throws IOException {
     TraceScope scope = Trace.startSpan("removeDefaultAcl", traceSampler);
     try {
       namenode.removeDefaultAcl(src);
+      metadataCache.invalidate(src);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      AclException.class,
@@ -3238,6 +3439,7 @@ public void removeAcl(String src) throws IOException {
     TraceScope scope = Trace.startSpan("removeAcl", traceSampler);
     try {
       namenode.removeAcl(src);
+      metadataCache.invalidate(src);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      AclException.class,
@@ -3256,6 +3458,7 @@ public void setAcl(String src, List<AclEntry> aclSpec) throws IOException {
     TraceScope scope = Trace.startSpan("setAcl", traceSampler);
     try {
       namenode.setAcl(src, aclSpec);
+      metadataCache.invalidate(src);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      AclException.class,
@@ -3325,6 +3528,7 @@ public void setXAttr(String src, String name, byte[] value,
     TraceScope scope = getPathTraceScope("setXAttr", src);
     try {
       namenode.setXAttr(src, XAttrHelper.buildXAttr(name, value), flag);
+      metadataCache.invalidate(src);
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      FileNotFoundException.class,
@@ -3405,6 +3609,7 @@ public void removeXAttr(String src, String name) throws IOException {
     TraceScope scope = getPathTraceScope("removeXAttr", src);
     try {
       namenode.removeXAttr(src, XAttrHelper.buildXAttr(name));
+      metadataCache.invalidate(src);
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      FileNotFoundException.class,
@@ -3525,6 +3730,45 @@ DFSHedgedReadMetrics getHedgedReadMetrics() {
     return HEDGED_READ_METRIC;
   }
 
+  /**
+   * @return the cache of the block locations and status of the files, with
+   *         its hit and miss counts
+   */
+  FileMetadataCache getMetadataCache() {
+    return metadataCache;
+  }
+
+  /**
+   * Get the executor of the asynchronous reads, shared by all the clients,
+   * and create it on first use.
+   */
+  ListeningExecutorService getAsyncReadExecutor() {
+    synchronized (DFSClient.class) {
+      if (ASYNC_READ_EXECUTOR == null) {
+        int num = Math.max(1, conf.getInt(
+            DFSConfigKeys.DFS_CLIENT_READ_ASYNC_THREADPOOL_SIZE_KEY,
+            DFSConfigKeys.DFS_CLIENT_READ_ASYNC_THREADPOOL_SIZE_DEFAULT));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(num, num, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new Daemon.DaemonFactory() {
+              private final AtomicInteger threadIndex = new AtomicInteger(0);
+              @Override
+              public Thread newThread(Runnable r) {
+                Thread t = super.newThread(r);
+                t.setName("asyncRead-" + threadIndex.getAndIncrement());
+                return t;
+              }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        ASYNC_READ_EXECUTOR = MoreExecutors.listeningDecorator(executor);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Using asynchronous reads; pool threads=" + num);
+        }
+      }
+      return ASYNC_READ_EXECUTOR;
+    }
+  }
+
   public KeyProvider getKeyProvider() {
     return clientContext.getKeyProviderCache().get(conf);
   }
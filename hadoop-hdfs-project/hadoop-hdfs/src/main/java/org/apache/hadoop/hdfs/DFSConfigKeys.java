@@ -83,6 +83,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long    DFS_DATANODE_MAX_LOCKED_MEMORY_DEFAULT = 0;
   public static final String  DFS_DATANODE_FSDATASETCACHE_MAX_THREADS_PER_VOLUME_KEY = "dfs.datanode.fsdatasetcache.max.threads.per.volume";
   public static final int     DFS_DATANODE_FSDATASETCACHE_MAX_THREADS_PER_VOLUME_DEFAULT = 4;
+  public static final String  DFS_DATANODE_CACHE_HOT_BLOCK_MIN_READS_KEY = "dfs.datanode.cache.hot-block.min-reads";
+  public static final int     DFS_DATANODE_CACHE_HOT_BLOCK_MIN_READS_DEFAULT = 3;
+  public static final String  DFS_DATANODE_CACHE_HOT_BLOCK_HALF_LIFE_MS_KEY = "dfs.datanode.cache.hot-block.half-life.ms";
+  public static final long    DFS_DATANODE_CACHE_HOT_BLOCK_HALF_LIFE_MS_DEFAULT = 10 * 60 * 1000;
+  public static final String  DFS_DATANODE_CACHE_HOT_BLOCK_MAX_REPORTED_KEY = "dfs.datanode.cache.hot-block.max-reported";
+  public static final int     DFS_DATANODE_CACHE_HOT_BLOCK_MAX_REPORTED_DEFAULT = 1000;
+  public static final String  DFS_DATANODE_REPLICA_LOCK_STRIPES_KEY = "dfs.datanode.replica.lock.stripes";
+  public static final int     DFS_DATANODE_REPLICA_LOCK_STRIPES_DEFAULT = 1024;
   public static final String  DFS_DATANODE_LAZY_WRITER_INTERVAL_SEC = "dfs.datanode.lazywriter.interval.sec";
   public static final int     DFS_DATANODE_LAZY_WRITER_INTERVAL_DEFAULT_SEC = 60;
   public static final String  DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_KEY = "dfs.datanode.ram.disk.replica.tracker";
@@ -93,6 +101,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long    DFS_DATANODE_RAM_DISK_LOW_WATERMARK_BYTES_DEFAULT = DFS_BLOCK_SIZE_DEFAULT;
   public static final String  DFS_DATANODE_NETWORK_COUNTS_CACHE_MAX_SIZE_KEY = "dfs.datanode.network.counts.cache.max.size";
   public static final int     DFS_DATANODE_NETWORK_COUNTS_CACHE_MAX_SIZE_DEFAULT = Integer.MAX_VALUE;
+  public static final String  DFS_DATANODE_REPLICA_CACHE_EXPIRY_MS_KEY = "dfs.datanode.replica.cache.expiry.ms";
+  public static final long    DFS_DATANODE_REPLICA_CACHE_EXPIRY_MS_DEFAULT = 5 * 60 * 1000;
+  public static final String  DFS_DATANODE_REPLICA_CACHE_SAVE_INTERVAL_MS_KEY = "dfs.datanode.replica.cache.save.interval.ms";
+  public static final long    DFS_DATANODE_REPLICA_CACHE_SAVE_INTERVAL_MS_DEFAULT = 0;
 
   // This setting is for testing/internal use only.
   public static final String  DFS_DATANODE_DUPLICATE_REPLICA_DELETION = "dfs.datanode.duplicate.replica.deletion";
@@ -205,6 +217,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   
   public static final String  DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH = "dfs.namenode.edits.noeditlogchannelflush";
   public static final boolean DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY = "dfs.namenode.edits.asynclogging";
+  public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = false;
   
   public static final String  DFS_LIST_LIMIT = "dfs.ls.limit";
   public static final int     DFS_LIST_LIMIT_DEFAULT = 1000;
@@ -212,6 +226,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_CONTENT_SUMMARY_CACHE_THRESHOLD_KEY = "dfs.content-summary.cache.threshold";
+  public static final long    DFS_CONTENT_SUMMARY_CACHE_THRESHOLD_DEFAULT = 0;
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String  DFS_DATANODE_SYNCONCLOSE_KEY = "dfs.datanode.synconclose";
@@ -239,6 +255,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS =
       "dfs.namenode.path.based.cache.refresh.interval.ms";
   public static final long    DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS_DEFAULT = 30000L;
+  public static final String  DFS_NAMENODE_CACHING_AUTO_ENABLED_KEY = "dfs.namenode.caching.auto.enabled";
+  public static final boolean DFS_NAMENODE_CACHING_AUTO_ENABLED_DEFAULT = false;
+  public static final String  DFS_NAMENODE_CACHING_AUTO_REPLICATION_KEY = "dfs.namenode.caching.auto.replication";
+  public static final short   DFS_NAMENODE_CACHING_AUTO_REPLICATION_DEFAULT = 1;
+  public static final String  DFS_NAMENODE_CACHING_AUTO_CAPACITY_PERCENT_KEY = "dfs.namenode.caching.auto.capacity.percent";
+  public static final float   DFS_NAMENODE_CACHING_AUTO_CAPACITY_PERCENT_DEFAULT = 50.0f;
+  public static final String  DFS_NAMENODE_CACHING_AUTO_EXPIRY_MS_KEY = "dfs.namenode.caching.auto.expiry.ms";
+  public static final long    DFS_NAMENODE_CACHING_AUTO_EXPIRY_MS_DEFAULT = 5 * 60 * 1000;
 
   /** Pending period of block deletion since NameNode startup */
   public static final String  DFS_NAMENODE_STARTUP_DELAY_BLOCK_DELETION_SEC_KEY = "dfs.namenode.startup.delay.block.deletion.sec";
@@ -274,6 +298,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION =
       "dfs.namenode.replication.work.multiplier.per.iteration";
   public static final int DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION_DEFAULT = 2;
+  public static final String DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY = "dfs.namenode.replication.work.threads";
+  public static final int DFS_NAMENODE_REPLICATION_WORK_THREADS_DEFAULT = 1;
 
   //Delegation token related keys
   public static final String  DFS_NAMENODE_DELEGATION_KEY_UPDATE_INTERVAL_KEY = "dfs.namenode.delegation.key.update-interval";
@@ -294,6 +320,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long    DFS_NAMENODE_MIN_BLOCK_SIZE_DEFAULT = 1024*1024;
   public static final String  DFS_NAMENODE_MAX_BLOCKS_PER_FILE_KEY = "dfs.namenode.fs-limits.max-blocks-per-file";
   public static final long    DFS_NAMENODE_MAX_BLOCKS_PER_FILE_DEFAULT = 1024*1024;
+  public static final String  DFS_NAMENODE_MAX_FILES_PER_BATCH_KEY = "dfs.namenode.fs-limits.max-files-per-batch";
+  public static final int     DFS_NAMENODE_MAX_FILES_PER_BATCH_DEFAULT = 1000;
   public static final String  DFS_NAMENODE_MAX_XATTRS_PER_INODE_KEY = "dfs.namenode.fs-limits.max-xattrs-per-inode";
   public static final int     DFS_NAMENODE_MAX_XATTRS_PER_INODE_DEFAULT = 32;
   public static final String  DFS_NAMENODE_MAX_XATTR_SIZE_KEY = "dfs.namenode.fs-limits.max-xattr-size";
@@ -327,6 +355,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT = false;
   public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY = "dfs.namenode.audit.log.async";
   public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT = false;
+  public static final String  DFS_NAMENODE_FSLOCK_PATH_LOCK_STRIPES_KEY = "dfs.namenode.fslock.path-lock.stripes";
+  public static final int     DFS_NAMENODE_FSLOCK_PATH_LOCK_STRIPES_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_FSLOCK_PATH_LOCK_DEPTH_KEY = "dfs.namenode.fslock.path-lock.depth";
+  public static final int     DFS_NAMENODE_FSLOCK_PATH_LOCK_DEPTH_DEFAULT = 1;
+  public static final String  DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY = "dfs.namenode.write-lock-reporting-threshold-ms";
+  public static final long    DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT = 1000L;
+  public static final String  DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_KEY = "dfs.namenode.read-lock-reporting-threshold-ms";
+  public static final long    DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_DEFAULT = 5000L;
+  public static final String  DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY = "dfs.namenode.lock.detailed-metrics.enabled";
+  public static final boolean DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT = false;
 
   public static final String  DFS_BALANCER_MOVEDWINWIDTH_KEY = "dfs.balancer.movedWinWidth";
   public static final long    DFS_BALANCER_MOVEDWINWIDTH_DEFAULT = 5400*1000L;
@@ -349,6 +387,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DATANODE_DIRECTORYSCAN_INTERVAL_DEFAULT = 21600;
   public static final String  DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY = "dfs.datanode.directoryscan.threads";
   public static final int     DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT = 1;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_SLICES_KEY = "dfs.datanode.directoryscan.slices";
+  public static final int     DFS_DATANODE_DIRECTORYSCAN_SLICES_DEFAULT = 1;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY = "dfs.datanode.directoryscan.throttle.limit.ms.per.sec";
+  public static final int     DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT = 1000;
   public static final String  DFS_DATANODE_DNS_INTERFACE_KEY = "dfs.datanode.dns.interface";
   public static final String  DFS_DATANODE_DNS_INTERFACE_DEFAULT = "default";
   public static final String  DFS_DATANODE_DNS_NAMESERVER_KEY = "dfs.datanode.dns.nameserver";
@@ -362,12 +404,18 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_HTTP_ADDRESS_DEFAULT = "0.0.0.0:" + DFS_DATANODE_HTTP_DEFAULT_PORT;
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY = "dfs.datanode.max.transfer.threads";
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String  DFS_DATANODE_TRANSFER_NIO_ENABLED_KEY = "dfs.datanode.transfer.nio.enabled";
+  public static final boolean DFS_DATANODE_TRANSFER_NIO_ENABLED_DEFAULT = false;
+  public static final String  DFS_DATANODE_TRANSFER_NIO_WORKER_THREADS_KEY = "dfs.datanode.transfer.nio.worker.threads";
+  public static final int     DFS_DATANODE_TRANSFER_NIO_WORKER_THREADS_DEFAULT = 512;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 0;
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
   public static final long    DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND_DEFAULT = 1048576L;
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
+  public static final String  DFS_DATANODE_TRANSFER_DIRECT_BUFFERS_ENABLED_KEY = "dfs.datanode.transfer.direct.buffers.enabled";
+  public static final boolean DFS_DATANODE_TRANSFER_DIRECT_BUFFERS_ENABLED_DEFAULT = false;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
   public static final long    DFS_HEARTBEAT_INTERVAL_DEFAULT = 3;
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_RETRY_INTERVAL_MS = "dfs.namenode.path.based.cache.retry.interval.ms";
@@ -406,6 +454,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
 
   public static final String DFS_BLOCK_REPLICATOR_CLASSNAME_KEY = "dfs.block.replicator.classname";
   public static final Class<BlockPlacementPolicyDefault> DFS_BLOCK_REPLICATOR_CLASSNAME_DEFAULT = BlockPlacementPolicyDefault.class;
+  public static final String  DFS_NAMENODE_LOAD_AWARE_PLACEMENT_CANDIDATES_KEY = "dfs.namenode.load-aware-placement.candidates";
+  public static final int     DFS_NAMENODE_LOAD_AWARE_PLACEMENT_CANDIDATES_DEFAULT = 2;
+  public static final String  DFS_NAMENODE_LOAD_AWARE_PLACEMENT_LOAD_WEIGHT_KEY = "dfs.namenode.load-aware-placement.load.weight";
+  public static final double  DFS_NAMENODE_LOAD_AWARE_PLACEMENT_LOAD_WEIGHT_DEFAULT = 1.0;
+  public static final String  DFS_NAMENODE_LOAD_AWARE_PLACEMENT_UTILIZATION_WEIGHT_KEY = "dfs.namenode.load-aware-placement.utilization.weight";
+  public static final double  DFS_NAMENODE_LOAD_AWARE_PLACEMENT_UTILIZATION_WEIGHT_DEFAULT = 1.0;
+  public static final String  DFS_NAMENODE_LOAD_AWARE_PLACEMENT_PENDING_WEIGHT_KEY = "dfs.namenode.load-aware-placement.pending.weight";
+  public static final double  DFS_NAMENODE_LOAD_AWARE_PLACEMENT_PENDING_WEIGHT_DEFAULT = 1.0;
   public static final String  DFS_REPLICATION_MAX_KEY = "dfs.replication.max";
   public static final int     DFS_REPLICATION_MAX_DEFAULT = 512;
 
@@ -417,6 +473,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_BLOCKREPORT_INITIAL_DELAY_DEFAULT = 0;
   public static final String  DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY = "dfs.blockreport.split.threshold";
   public static final long    DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT = 1000 * 1000;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY = "dfs.namenode.blockreport.queue.size";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT = 1024;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_KEY = "dfs.namenode.blockreport.max.lock.hold.time";
+  public static final long    DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_DEFAULT = 4;
   public static final String  DFS_CACHEREPORT_INTERVAL_MSEC_KEY = "dfs.cachereport.intervalMsec";
   public static final long    DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
   public static final String  DFS_BLOCK_INVALIDATE_LIMIT_KEY = "dfs.block.invalidate.limit";
@@ -435,6 +495,20 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_IMAGE_COMPRESSION_CODEC_DEFAULT =
                                    "org.apache.hadoop.io.compress.DefaultCodec";
 
+  // properties for sectioned fsimage loading
+  public static final String DFS_IMAGE_PARALLEL_LOAD_KEY =
+                                   "dfs.image.parallel.load";
+  public static final boolean DFS_IMAGE_PARALLEL_LOAD_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY =
+                                   "dfs.image.parallel.target.sections";
+  public static final int DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT = 12;
+  public static final String DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY =
+                                   "dfs.image.parallel.inode.threshold";
+  public static final long DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT = 1000000;
+  public static final String DFS_IMAGE_PARALLEL_THREADS_KEY =
+                                   "dfs.image.parallel.threads";
+  public static final int DFS_IMAGE_PARALLEL_THREADS_DEFAULT = 4;
+
   public static final String DFS_IMAGE_TRANSFER_RATE_KEY =
                                            "dfs.image.transfer.bandwidthPerSec";
   public static final long DFS_IMAGE_TRANSFER_RATE_DEFAULT = 0;  //no throttling
@@ -455,6 +529,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long    DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_DEFAULT = 1024L * 1024L * 1024L * 10L; // 10 GB
   public static final String  DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY = "dfs.datanode.available-space-volume-choosing-policy.balanced-space-preference-fraction";
   public static final float   DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_DEFAULT = 0.75f;
+  public static final String  DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_KEY = "dfs.datanode.disk-load-aware-volume-choosing-policy.slow-volume-threshold";
+  public static final float   DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_DEFAULT = 2.0f;
+  public static final String  DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_KEY = "dfs.datanode.disk-load-aware-volume-choosing-policy.min-load-us";
+  public static final long    DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_DEFAULT = 1000;
   public static final String  DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY = "dfs.datanode.socket.write.timeout";
   public static final String  DFS_DATANODE_STARTUP_KEY = "dfs.datanode.startup";
   public static final String  DFS_NAMENODE_PLUGINS_KEY = "dfs.namenode.plugins";
@@ -521,8 +599,18 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_HA_LOGROLL_PERIOD_DEFAULT = 2 * 60; // 2m
   public static final String DFS_HA_TAILEDITS_PERIOD_KEY = "dfs.ha.tail-edits.period";
   public static final int DFS_HA_TAILEDITS_PERIOD_DEFAULT = 60; // 1m
+  public static final String DFS_HA_TAILEDITS_INPROGRESS_KEY = "dfs.ha.tail-edits.in-progress";
+  public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
+  public static final String DFS_HA_TAILEDITS_INPROGRESS_PERIOD_MS_KEY = "dfs.ha.tail-edits.in-progress.period.ms";
+  public static final long DFS_HA_TAILEDITS_INPROGRESS_PERIOD_MS_DEFAULT = 100;
+  public static final String DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY = "dfs.ha.tail-edits.qjm.rpc.max-txns";
+  public static final int DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT = 5000;
   public static final String DFS_HA_LOGROLL_RPC_TIMEOUT_KEY = "dfs.ha.log-roll.rpc.timeout";
   public static final int DFS_HA_LOGROLL_RPC_TIMEOUT_DEFAULT = 20000; // 20s
+  public static final String DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY = "dfs.namenode.state.context.enabled";
+  public static final boolean DFS_NAMENODE_STATE_CONTEXT_ENABLED_DEFAULT = false;
+  public static final String DFS_NAMENODE_STATE_CONTEXT_MAX_WAIT_MS_KEY = "dfs.namenode.state.context.max-wait.ms";
+  public static final long DFS_NAMENODE_STATE_CONTEXT_MAX_WAIT_MS_DEFAULT = 100;
   public static final String DFS_HA_FENCE_METHODS_KEY = "dfs.ha.fencing.methods";
   public static final String DFS_HA_AUTO_FAILOVER_ENABLED_KEY = "dfs.ha.automatic-failover.enabled";
   public static final boolean DFS_HA_AUTO_FAILOVER_ENABLED_DEFAULT = false;
@@ -557,6 +645,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_JOURNALNODE_HTTPS_ADDRESS_KEY = "dfs.journalnode.https-address";
   public static final int     DFS_JOURNALNODE_HTTPS_PORT_DEFAULT = 8481;
   public static final String  DFS_JOURNALNODE_HTTPS_ADDRESS_DEFAULT = "0.0.0.0:" + DFS_JOURNALNODE_HTTPS_PORT_DEFAULT;
+  public static final String  DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY = "dfs.journalnode.edit-cache-size.bytes";
+  public static final int     DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT = 1024 * 1024;
 
   public static final String  DFS_JOURNALNODE_KEYTAB_FILE_KEY = "dfs.journalnode.keytab.file";
   public static final String  DFS_JOURNALNODE_KERBEROS_PRINCIPAL_KEY = "dfs.journalnode.kerberos.principal";
@@ -863,4 +953,21 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE =
       "dfs.client.hedged.read.threadpool.size";
   public static final int     DEFAULT_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE = 0;
+
+  // asynchronous read properties
+  public static final String  DFS_CLIENT_READ_ASYNC_THREADPOOL_SIZE_KEY =
+      "dfs.client.read.async.threadpool.size";
+  public static final int     DFS_CLIENT_READ_ASYNC_THREADPOOL_SIZE_DEFAULT = 16;
+
+  // client metadata cache properties
+  public static final String  DFS_CLIENT_METADATA_CACHE_ENABLED_KEY =
+      "dfs.client.metadata.cache.enabled";
+  public static final boolean DFS_CLIENT_METADATA_CACHE_ENABLED_DEFAULT = false;
+  public static final String  DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_KEY =
+      "dfs.client.metadata.cache.expiry.ms";
+  public static final long    DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_DEFAULT =
+      30000;
+  public static final String  DFS_CLIENT_METADATA_CACHE_SIZE_KEY =
+      "dfs.client.metadata.cache.size";
+  public static final int     DFS_CLIENT_METADATA_CACHE_SIZE_DEFAULT = 10000;
 }
@@ -19,12 +19,14 @@
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -45,6 +47,8 @@
 
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.AsyncPositionedReadable;
 import org.apache.hadoop.fs.ByteBufferReadable;
 import org.apache.hadoop.fs.ByteBufferUtil;
 import org.apache.hadoop.fs.CanSetDropBehind;
@@ -52,10 +56,13 @@
 import org.apache.hadoop.fs.CanUnbuffer;
 import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.UnresolvedLinkException;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.VectoredReadable;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
@@ -80,6 +87,10 @@
 import org.apache.htrace.TraceScope;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 /****************************************************************
  * DFSInputStream provides bytes from a named file.  It handles 
@@ -88,7 +99,8 @@
 @InterfaceAudience.Private
 public class DFSInputStream extends FSInputStream
 implements ByteBufferReadable, CanSetDropBehind, CanSetReadahead,
-    HasEnhancedByteBufferAccess, CanUnbuffer {
+    HasEnhancedByteBufferAccess, CanUnbuffer, AsyncPositionedReadable,
+    VectoredReadable {
   @VisibleForTesting
   public static boolean tcpReadsDisabledForTesting = false;
   private long hedgedReadOpsLoopNumForTesting = 0;
@@ -478,7 +490,8 @@ private void fetchBlockAt(long offset) throws IOException {
       if (targetBlockIdx < 0) { // block is not cached
         targetBlockIdx = LocatedBlocks.getInsertIndex(targetBlockIdx);
       }
-      // fetch blocks
+      // fetch blocks, with new tokens, from the namenode
+      dfsClient.getMetadataCache().invalidate(src);
       final LocatedBlocks newBlocks = dfsClient.getLocatedBlocks(src, offset);
       if (newBlocks == null) {
         throw new IOException("Could not find target position " + offset);
@@ -971,6 +984,8 @@ private DNAddrPair chooseDataNode(LocatedBlock block,
         } catch (InterruptedException iex) {
         }
         deadNodes.clear(); //2nd option is to remove only nodes[blockId]
+        // the cached locations may be the stale ones
+        dfsClient.getMetadataCache().invalidate(src);
         openInfo();
         block = getBlockAt(block.getStartOffset());
         failures++;
@@ -1398,27 +1413,11 @@ private int pread(long position, byte[] buffer, int offset, int length)
     // corresponding to position and realLen
     List<LocatedBlock> blockRange = getBlockRange(position, realLen);
     int remaining = realLen;
-    Map<ExtendedBlock,Set<DatanodeInfo>> corruptedBlockMap 
-      = new HashMap<ExtendedBlock, Set<DatanodeInfo>>();
     for (LocatedBlock blk : blockRange) {
       long targetStart = position - blk.getStartOffset();
-      long bytesToRead = Math.min(remaining, blk.getBlockSize() - targetStart);
-      try {
-        if (dfsClient.isHedgedReadsEnabled()) {
-          hedgedFetchBlockByteRange(blk.getStartOffset(), targetStart,
-              targetStart + bytesToRead - 1, buffer, offset,
-              corruptedBlockMap);
-        } else {
-          fetchBlockByteRange(blk.getStartOffset(), targetStart,
-              targetStart + bytesToRead - 1, buffer, offset,
-              corruptedBlockMap);
-        }
-      } finally {
-        // Check and report if any block replicas are corrupted.
-        // BlockMissingException may be caught if all block replicas are
-        // corrupted.
-        reportCheckSumFailure(corruptedBlockMap, blk.getLocations().length);
-      }
+      int bytesToRead = (int) Math.min(remaining,
+          blk.getBlockSize() - targetStart);
+      preadFromBlock(blk, targetStart, bytesToRead, buffer, offset);
 
       remaining -= bytesToRead;
       position += bytesToRead;
@@ -1430,6 +1429,171 @@ private int pread(long position, byte[] buffer, int offset, int length)
     }
     return realLen;
   }
+
+  /**
+   * Read a byte range of a single block into buffer, from any of the
+   * replicas of the block.
+   */
+  private void preadFromBlock(LocatedBlock blk, long targetStart,
+      int bytesToRead, byte[] buffer, int offset) throws IOException {
+    Map<ExtendedBlock,Set<DatanodeInfo>> corruptedBlockMap 
+      = new HashMap<ExtendedBlock, Set<DatanodeInfo>>();
+    try {
+      if (dfsClient.isHedgedReadsEnabled()) {
+        hedgedFetchBlockByteRange(blk.getStartOffset(), targetStart,
+            targetStart + bytesToRead - 1, buffer, offset,
+            corruptedBlockMap);
+      } else {
+        fetchBlockByteRange(blk.getStartOffset(), targetStart,
+            targetStart + bytesToRead - 1, buffer, offset,
+            corruptedBlockMap);
+      }
+    } finally {
+      // Check and report if any block replicas are corrupted.
+      // BlockMissingException may be caught if all block replicas are
+      // corrupted.
+      reportCheckSumFailure(corruptedBlockMap, blk.getLocations().length);
+    }
+  }
+
+  /**
+   * Start an asynchronous positional read.  The byte range of each block is
+   * fetched by a separate task of the asynchronous read executor of the
+   * DFSClient, so the blocks of a read, and the reads in flight, are fetched
+   * in parallel from their datanodes.  Each task still blocks its thread
+   * while reading, so at most dfs.client.read.async.threadpool.size blocks
+   * are fetched at once by all the streams of the JVM.  The block locations
+   * are looked up before returning, which may require an RPC to the
+   * NameNode.  If a block fails, the read fails once all the blocks are
+   * done, with the failure of the first failed block.
+   */
+  @Override
+  public Future<Integer> readAsync(long position, final ByteBuffer buf)
+      throws IOException {
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    failures = 0;
+    long filelen = getFileLength();
+    if ((position < 0) || (position >= filelen)) {
+      return Futures.immediateFuture(-1);
+    }
+    final int realLen = (int) Math.min(buf.remaining(), filelen - position);
+    if (realLen == 0) {
+      return Futures.immediateFuture(0);
+    }
+
+    List<LocatedBlock> blockRange = getBlockRange(position, realLen);
+    final List<ListenableFuture<Integer>> parts =
+        new ArrayList<ListenableFuture<Integer>>(blockRange.size());
+    ListeningExecutorService executor = dfsClient.getAsyncReadExecutor();
+    int offset = 0;
+    for (final LocatedBlock blk : blockRange) {
+      final long targetStart = position - blk.getStartOffset();
+      final int bytesToRead = (int) Math.min(realLen - offset,
+          blk.getBlockSize() - targetStart);
+      final ByteBuffer part = buf.duplicate();
+      part.position(buf.position() + offset);
+      part.limit(part.position() + bytesToRead);
+      parts.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws IOException {
+          if (part.hasArray()) {
+            preadFromBlock(blk, targetStart, bytesToRead, part.array(),
+                part.arrayOffset() + part.position());
+          } else {
+            byte[] tmp = new byte[bytesToRead];
+            preadFromBlock(blk, targetStart, bytesToRead, tmp, 0);
+            part.put(tmp);
+          }
+          return bytesToRead;
+        }
+      }));
+      offset += bytesToRead;
+      position += bytesToRead;
+    }
+    assert offset == realLen : "Wrong number of bytes to read.";
+
+    // Wait for all the parts, even if some fail, so that none of them is
+    // still writing to the buffer once the returned future is done.
+    return Futures.transform(Futures.successfulAsList(parts),
+        new AsyncFunction<List<Integer>, Integer>() {
+          @Override
+          public ListenableFuture<Integer> apply(List<Integer> input)
+              throws InterruptedException {
+            for (ListenableFuture<Integer> part : parts) {
+              try {
+                part.get();
+              } catch (ExecutionException e) {
+                // the first failure in the order of the blocks
+                return Futures.immediateFailedFuture(e.getCause());
+              }
+            }
+            buf.position(buf.position() + realLen);
+            if (dfsClient.stats != null) {
+              dfsClient.stats.incrementBytesRead(realLen);
+            }
+            return Futures.immediateFuture(realLen);
+          }
+        });
+  }
+
+  /**
+   * Read the ranges, merged into fewer larger ranges, in parallel with
+   * {@link #readAsync(long, ByteBuffer)}.  The merged ranges which span
+   * several blocks are also read from the blocks in parallel.  The returned
+   * buffers are heap buffers, unlike the direct buffers of the default
+   * implementation, so that the blocks are read into them without a copy.
+   */
+  @Override
+  public List<ByteBuffer> readVectored(List<FileRange> ranges)
+      throws IOException {
+    Configuration conf = dfsClient.getConfiguration();
+    List<VectoredReadUtils.CombinedRange> combinedRanges =
+        VectoredReadUtils.mergeRanges(ranges,
+            VectoredReadUtils.getMaxMergeGap(conf),
+            VectoredReadUtils.getMaxMergedSize(conf));
+    List<ByteBuffer> buffers =
+        new ArrayList<ByteBuffer>(combinedRanges.size());
+    List<Future<Integer>> reads =
+        new ArrayList<Future<Integer>>(combinedRanges.size());
+    for (VectoredReadUtils.CombinedRange combined : combinedRanges) {
+      ByteBuffer data = ByteBuffer.allocate(combined.getLength());
+      buffers.add(data);
+      reads.add(readAsync(combined.getOffset(), data));
+    }
+
+    ByteBuffer[] results = new ByteBuffer[ranges.size()];
+    for (int i = 0; i < combinedRanges.size(); i++) {
+      VectoredReadUtils.CombinedRange combined = combinedRanges.get(i);
+      int nread;
+      try {
+        nread = reads.get(i).get();
+      } catch (InterruptedException e) {
+        for (Future<Integer> read : reads) {
+          read.cancel(true);
+        }
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while reading "
+            + combined + " of " + src);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException("Failed to read " + combined + " of " + src,
+            e.getCause());
+      }
+      if (Math.max(nread, 0) < combined.getLength()) {
+        throw new EOFException("End of file reached before reading "
+            + combined + " of " + src + " fully.");
+      }
+      ByteBuffer data = buffers.get(i);
+      data.flip();
+      VectoredReadUtils.sliceCombinedRange(ranges, combined, data, results);
+    }
+    return Collections.unmodifiableList(Arrays.asList(results));
+  }
   
   /**
    * DFSInputStream reports checksum failure.
@@ -37,6 +37,7 @@
 import org.apache.hadoop.fs.Syncable;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream.SyncFlag;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.DSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
@@ -276,6 +277,19 @@ static DFSOutputStream newStreamForCreate(DFSClient dfsClient, String src,
     }
   }
 
+  /**
+   * Construct a new output stream for a file which has been created by
+   * {@link ClientProtocol#createFiles}.
+   */
+  static DFSOutputStream newStreamForCreatedFile(DFSClient dfsClient,
+      String src, HdfsFileStatus stat, EnumSet<CreateFlag> flag,
+      DataChecksum checksum) throws IOException {
+    final DFSOutputStream out = new DFSOutputStream(dfsClient, src, stat,
+        flag, null, checksum, null);
+    out.start();
+    return out;
+  }
+
   /** Construct a new output stream for append. */
   private DFSOutputStream(DFSClient dfsClient, String src,
       EnumSet<CreateFlag> flags, Progressable progress, LocatedBlock lastBlock,
@@ -771,24 +785,7 @@ protected synchronized void closeImpl() throws IOException {
     }
 
     try {
-      flushBuffer();       // flush from all upper layers
-
-      if (currentPacket != null) {
-        streamer.waitAndQueuePacket(currentPacket);
-        currentPacket = null;
-      }
-
-      if (streamer.getBytesCurBlock() != 0) {
-        // send an empty packet to mark the end of the block
-        currentPacket = createPacket(0, 0, streamer.getBytesCurBlock(),
-            streamer.getAndIncCurrentSeqno(), true);
-        currentPacket.setSyncBlock(shouldSyncBlock);
-      }
-
-      flushInternal();             // flush all data to Datanodes
-      // get last block before destroying the streamer
-      ExtendedBlock lastBlock = streamer.getBlock();
-      closeThreads(false);
+      ExtendedBlock lastBlock = flushAndEndLastBlock();
       TraceScope scope = Trace.startSpan("completeFile", Sampler.NEVER);
       try {
         completeFile(lastBlock);
@@ -797,6 +794,53 @@ protected synchronized void closeImpl() throws IOException {
       }
       dfsClient.endFileLease(fileId);
     } catch (ClosedChannelException e) {
+    } finally {
+      setClosed();
+      // the file may have been looked up while it was being written
+      dfsClient.getMetadataCache().invalidate(src);
+    }
+  }
+
+  /**
+   * Flush all data to the Datanodes, end the last block and stop the
+   * streamer.
+   * @return the last block of the file
+   */
+  private ExtendedBlock flushAndEndLastBlock() throws IOException {
+    flushBuffer();       // flush from all upper layers
+
+    if (currentPacket != null) {
+      streamer.waitAndQueuePacket(currentPacket);
+      currentPacket = null;
+    }
+
+    if (streamer.getBytesCurBlock() != 0) {
+      // send an empty packet to mark the end of the block
+      currentPacket = createPacket(0, 0, streamer.getBytesCurBlock(),
+          streamer.getAndIncCurrentSeqno(), true);
+      currentPacket.setSyncBlock(shouldSyncBlock);
+    }
+
+    flushInternal();             // flush all data to Datanodes
+    // get last block before destroying the streamer
+    ExtendedBlock lastBlock = streamer.getBlock();
+    closeThreads(false);
+    return lastBlock;
+  }
+
+  /**
+   * Close the stream without completing the file, which is left to the
+   * caller along with ending the lease of the file, e.g. to complete many
+   * files with {@link ClientProtocol#completeFiles}.
+   * @return the last block of the file to complete it with
+   */
+  synchronized ExtendedBlock closeWithoutCompleting() throws IOException {
+    if (isClosed()) {
+      IOException e = streamer.getLastException().getAndSet(null);
+      throw e != null ? e : new ClosedChannelException();
+    }
+    try {
+      return flushAndEndLastBlock();
     } finally {
       setClosed();
     }
@@ -841,6 +885,7 @@ protected void completeFile(ExtendedBlock last) throws IOException {
         }
       }
     }
+    dfsClient.getMetadataCache().invalidate(src);
   }
 
   @VisibleForTesting
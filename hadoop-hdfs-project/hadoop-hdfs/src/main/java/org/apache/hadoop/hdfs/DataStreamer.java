@@ -214,6 +214,8 @@ private static void releaseBuffer(List<DFSPacket> packets, ByteArrayManager bam)
   private final LinkedList<DFSPacket> ackQueue = new LinkedList<>();
   private final AtomicReference<CachingStrategy> cachingStrategy;
   private final ByteArrayManager byteArrayManager;
+  private final byte[] heartbeatBuf =
+      new byte[PacketHeader.PKT_MAX_HEADER_LEN];
   private static final BlockStoragePolicySuite blockStoragePolicySuite =
       BlockStoragePolicySuite.createDefaultSuite();
   //persist blocks on namenode
@@ -1664,12 +1666,13 @@ void queuePacket(DFSPacket packet) {
   }
 
   /**
-   * For heartbeat packets, create buffer directly by new byte[]
-   * since heartbeats should not be blocked.
+   * For heartbeat packets, do not use the ByteArrayManager since heartbeats
+   * should not be blocked. They are only sent by this thread and never
+   * acked, so they all use the same buffer.
    */
   private DFSPacket createHeartbeatPacket() throws InterruptedIOException {
-    final byte[] buf = new byte[PacketHeader.PKT_MAX_HEADER_LEN];
-    return new DFSPacket(buf, 0, 0, DFSPacket.HEART_BEAT_SEQNO, 0, false);
+    return new DFSPacket(heartbeatBuf, 0, 0, DFSPacket.HEART_BEAT_SEQNO, 0,
+        false);
   }
 
   private LoadingCache<DatanodeInfo, DatanodeInfo> initExcludedNodes() {
@@ -436,6 +436,31 @@ public HdfsDataOutputStream next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
   
+  /**
+   * Create many small files with the given contents, with a single call to
+   * the namenode creating all the files and a single call completing them.
+   * The data of the files is still written one file at a time, each with
+   * its own addBlock call. The files are created with their parent
+   * directories, and must not exist yet. Symlinks in the paths are not
+   * resolved.
+   *
+   * @see DFSClient#createFiles
+   */
+  public void createFiles(Path[] paths, byte[][] contents,
+      FsPermission permission, short replication, long blockSize)
+      throws IOException {
+    statistics.incrementWriteOps(1);
+    final String[] srcs = new String[paths.length];
+    long bytes = 0;
+    for (int i = 0; i < paths.length; i++) {
+      srcs[i] = getPathName(fixRelativePart(paths[i]));
+      bytes += contents[i].length;
+    }
+    dfs.createFiles(srcs, contents, permission,
+        EnumSet.of(CreateFlag.CREATE), true, replication, blockSize);
+    statistics.incrementBytesWritten(bytes);
+  }
+
   @Override
   public FSDataOutputStream create(final Path f, final FsPermission permission,
     final EnumSet<CreateFlag> cflags, final int bufferSize,
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A client side cache of the block locations and of the status of files, to
+ * save the NameNode the calls of the clients which open the same files over
+ * and over.
+ *
+ * Only the block locations of closed files are cached, and only when the
+ * NameNode returned all the blocks of the file, so that the locations of
+ * any range of the file can be served from the cache.  Only the status of
+ * files whose locations are cached is cached, so neither the status of
+ * files under construction nor the one of directories is.  The entries
+ * expire after a configurable time, and are dropped when this client changes
+ * the file, or when a read finds that the locations are stale.  The changes
+ * made by other clients are only seen once the entries expire, so the cache
+ * is only meant for files which are not modified after they are closed.
+ *
+ * This class has a number of metrics variables that are publicly accessible,
+ * we can grab them from client side, like HBase.
+ */
+@InterfaceAudience.Private
+public class FileMetadataCache {
+  public final AtomicLong locationsHits = new AtomicLong();
+  public final AtomicLong locationsMisses = new AtomicLong();
+  public final AtomicLong statusHits = new AtomicLong();
+  public final AtomicLong statusMisses = new AtomicLong();
+
+  private final boolean enabled;
+  private final Cache<String, LocatedBlocks> locations;
+  private final Cache<String, HdfsFileStatus> statuses;
+
+  public FileMetadataCache(Configuration conf) {
+    this.enabled = conf.getBoolean(
+        DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_ENABLED_DEFAULT);
+    long expiryMs = conf.getLong(
+        DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_KEY,
+        DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_DEFAULT);
+    int size = conf.getInt(
+        DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_SIZE_DEFAULT);
+    this.locations = CacheBuilder.newBuilder()
+        .maximumSize(size)
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .build();
+    this.statuses = CacheBuilder.newBuilder()
+        .maximumSize(size)
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Get the locations of the blocks of a range of a file from the cache.
+   *
+   * @return the blocks overlapping the range, like the NameNode would
+   *         return them, or null if the locations of the file are not
+   *         cached
+   */
+  LocatedBlocks getLocatedBlocks(String src, long start, long length) {
+    if (!enabled) {
+      return null;
+    }
+    LocatedBlocks all = locations.getIfPresent(src);
+    if (all == null) {
+      locationsMisses.incrementAndGet();
+      return null;
+    }
+    locationsHits.incrementAndGet();
+    // The caller may change the list, e.g. DFSInputStream inserts the
+    // blocks it fetches later, so the cached list is never returned.
+    long end = start + length;
+    List<LocatedBlock> blocks = new ArrayList<LocatedBlock>();
+    for (LocatedBlock blk : all.getLocatedBlocks()) {
+      long blkEnd = blk.getStartOffset() + blk.getBlockSize();
+      if (blkEnd > start && (blk.getStartOffset() < end || blocks.isEmpty())) {
+        blocks.add(blk);
+      }
+    }
+    return new LocatedBlocks(all.getFileLength(), false, blocks,
+        all.getLastLocatedBlock(), true, all.getFileEncryptionInfo());
+  }
+
+  /**
+   * Cache the block locations returned by the NameNode for a range of a
+   * file, if the file is closed and the locations of all its blocks were
+   * returned.
+   */
+  void putLocatedBlocks(String src, long start, LocatedBlocks blocks) {
+    if (!enabled || blocks == null || start != 0
+        || blocks.isUnderConstruction() || !blocks.isLastBlockComplete()) {
+      return;
+    }
+    List<LocatedBlock> list = blocks.getLocatedBlocks();
+    LocatedBlock last = blocks.getLastLocatedBlock();
+    if (last != null && !list.isEmpty()
+        && list.get(list.size() - 1).getBlock().equals(last.getBlock())) {
+      locations.put(src, new LocatedBlocks(blocks.getFileLength(), false,
+          new ArrayList<LocatedBlock>(list), last, true,
+          blocks.getFileEncryptionInfo()));
+    }
+  }
+
+  /**
+   * @return the cached status of the file, or null if it is not cached
+   */
+  HdfsFileStatus getFileInfo(String src) {
+    if (!enabled) {
+      return null;
+    }
+    HdfsFileStatus status = statuses.getIfPresent(src);
+    if (status == null) {
+      statusMisses.incrementAndGet();
+    } else {
+      statusHits.incrementAndGet();
+    }
+    return status;
+  }
+
+  /**
+   * Cache the status of a file returned by the NameNode, if the file is
+   * known to be closed.  The status does not tell whether the file is under
+   * construction, so it is only cached if the locations of the file are
+   * cached, which they only are for closed files, with the same length.
+   */
+  void putFileInfo(String src, HdfsFileStatus status) {
+    if (!enabled || status == null || status.isDir() || status.isSymlink()) {
+      return;
+    }
+    LocatedBlocks closed = locations.getIfPresent(src);
+    if (closed != null && closed.getFileLength() == status.getLen()) {
+      statuses.put(src, status);
+    }
+  }
+
+  /**
+   * Drop the cached locations and status of a file.
+   */
+  void invalidate(String src) {
+    if (enabled) {
+      locations.invalidate(src);
+      statuses.invalidate(src);
+    }
+  }
+
+  /**
+   * Drop the cached locations and status of a path, and of all the paths
+   * under it.
+   */
+  void invalidateTree(String src) {
+    if (!enabled) {
+      return;
+    }
+    invalidate(src);
+    String prefix = src.endsWith(Path.SEPARATOR) ? src : src + Path.SEPARATOR;
+    invalidatePrefix(locations, prefix);
+    invalidatePrefix(statuses, prefix);
+  }
+
+  private static void invalidatePrefix(Cache<String, ?> cache,
+      String prefix) {
+    List<String> keys = new ArrayList<String>();
+    for (String key : cache.asMap().keySet()) {
+      if (key.startsWith(prefix)) {
+        keys.add(key);
+      }
+    }
+    cache.invalidateAll(keys);
+  }
+
+  public long getLocationsHits() {
+    return locationsHits.longValue();
+  }
+
+  public long getLocationsMisses() {
+    return locationsMisses.longValue();
+  }
+
+  public long getStatusHits() {
+    return statusHits.longValue();
+  }
+
+  public long getStatusMisses() {
+    return statusMisses.longValue();
+  }
+}
@@ -56,6 +56,7 @@
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.retry.AtMostOnce;
 import org.apache.hadoop.io.retry.Idempotent;
+import org.apache.hadoop.io.retry.ReadOnly;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.KerberosInfo;
 import org.apache.hadoop.security.token.Token;
@@ -126,6 +127,7 @@ public interface ClientProtocol {
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public LocatedBlocks getBlockLocations(String src,
                                          long offset,
                                          long length) 
@@ -443,6 +445,66 @@ public boolean complete(String src, String clientName,
       throws AccessControlException, FileNotFoundException, SafeModeException,
       UnresolvedLinkException, IOException;
 
+  /**
+   * Create many files in a single call, as with
+   * {@link #create(String, FsPermission, String, EnumSetWritable, boolean,
+   * short, long, CryptoProtocolVersion[])} for each of them. The files are
+   * created under a single acquisition of the namespace lock, and their
+   * edits are synced together. This is intended for ingesting many small
+   * files, which are then closed with {@link #completeFiles}.
+   * <p>
+   * Existing files cannot be overwritten in a batch. The files are checked
+   * before any of them is created; if one of them still cannot be created,
+   * e.g. because of a quota, the files created before it by this call are
+   * deleted again and the error is thrown. Files in an encryption zone
+   * cannot be created in a batch.
+   *
+   * @param srcs paths of the files being created
+   * @param masked masked permission of the files
+   * @param clientName name of the current client
+   * @param flag must contain {@link CreateFlag#CREATE} and not
+   *          {@link CreateFlag#OVERWRITE}
+   * @param createParent create missing parent directories if true
+   * @param replication block replication factor
+   * @param blockSize maximum block size
+   *
+   * @return the status of the created files, in the order of
+   *         <code>srcs</code>
+   *
+   * @throws AccessControlException If access is denied
+   * @throws FileAlreadyExistsException If a file already exists, or is
+   *           given twice
+   * @throws SafeModeException create not allowed in safemode
+   * @throws IOException If an I/O error occurred, see also
+   *           {@link #create}
+   */
+  @AtMostOnce
+  public HdfsFileStatus[] createFiles(String[] srcs, FsPermission masked,
+      String clientName, EnumSetWritable<CreateFlag> flag,
+      boolean createParent, short replication, long blockSize)
+      throws AccessControlException, FileAlreadyExistsException,
+      SafeModeException, IOException;
+
+  /**
+   * Complete many files in a single call, as with {@link #complete} for each
+   * of them, under a single acquisition of the namespace lock. The arrays
+   * hold the arguments of each file at the same index.
+   *
+   * @return for each file, whether it has been closed, or false if its
+   *         blocks are not minimally replicated yet, in which case the
+   *         caller should try again.
+   *
+   * @throws AccessControlException If access is denied
+   * @throws FileNotFoundException If a file is not found
+   * @throws SafeModeException complete not allowed in safemode
+   * @throws IOException If an I/O error occurred
+   */
+  @Idempotent
+  public boolean[] completeFiles(String[] srcs, String clientName,
+      ExtendedBlock[] lasts, long[] fileIds)
+      throws AccessControlException, FileNotFoundException, SafeModeException,
+      IOException;
+
   /**
    * The client wants to report corrupted blocks (blocks with specified
    * locations on datanodes).
@@ -624,6 +686,7 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public DirectoryListing getListing(String src,
                                      byte[] startAfter,
                                      boolean needLocation)
@@ -731,6 +794,7 @@ public DatanodeStorageReport[] getDatanodeStorageReport(
    * @throws UnresolvedLinkException if the path contains a symlink. 
    */
   @Idempotent
+  @ReadOnly
   public long getPreferredBlockSize(String filename) 
       throws IOException, UnresolvedLinkException;
 
@@ -904,6 +968,7 @@ public CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred        
    */
   @Idempotent
+  @ReadOnly
   public HdfsFileStatus getFileInfo(String src) throws AccessControlException,
       FileNotFoundException, UnresolvedLinkException, IOException;
   
@@ -918,6 +983,7 @@ public HdfsFileStatus getFileInfo(String src) throws AccessControlException,
    * @throws IOException If an I/O error occurred     
    */
   @Idempotent
+  @ReadOnly
   public boolean isFileClosed(String src) throws AccessControlException,
       FileNotFoundException, UnresolvedLinkException, IOException;
   
@@ -934,6 +1000,7 @@ public boolean isFileClosed(String src) throws AccessControlException,
    * @throws IOException If an I/O error occurred        
    */
   @Idempotent
+  @ReadOnly
   public HdfsFileStatus getFileLinkInfo(String src)
       throws AccessControlException, UnresolvedLinkException, IOException;
   
@@ -947,6 +1014,7 @@ public HdfsFileStatus getFileLinkInfo(String src)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public ContentSummary getContentSummary(String path)
       throws AccessControlException, FileNotFoundException,
       UnresolvedLinkException, IOException;
@@ -1064,6 +1132,7 @@ public void createSymlink(String target, String link, FsPermission dirPerm,
    *           or an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public String getLinkTarget(String path) throws AccessControlException,
       FileNotFoundException, IOException; 
   
@@ -1335,6 +1404,7 @@ public void removeAclEntries(String src, List<AclEntry> aclSpec)
    * Gets the ACLs of files and directories.
    */
   @Idempotent
+  @ReadOnly
   public AclStatus getAclStatus(String src) throws IOException;
   
   /**
@@ -1392,6 +1462,7 @@ public void setXAttr(String src, XAttr xAttr, EnumSet<XAttrSetFlag> flag)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   public List<XAttr> getXAttrs(String src, List<XAttr> xAttrs) 
       throws IOException;
 
@@ -1407,6 +1478,7 @@ public List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   public List<XAttr> listXAttrs(String src)
       throws IOException;
   
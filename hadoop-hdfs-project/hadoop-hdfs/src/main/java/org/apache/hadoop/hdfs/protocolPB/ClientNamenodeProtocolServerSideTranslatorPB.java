@@ -36,6 +36,7 @@
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.EncryptionZone;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
@@ -69,10 +70,15 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CheckAccessRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CheckAccessResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteFileProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteFilesRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteFilesResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ConcatRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ConcatResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateFilesRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateFilesResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateSnapshotRequestProto;
@@ -539,6 +545,55 @@ public CompleteResponseProto complete(RpcController controller,
       throw new ServiceException(e);
     }
   }
+
+  @Override
+  public CreateFilesResponseProto createFiles(RpcController controller,
+      CreateFilesRequestProto req) throws ServiceException {
+    try {
+      HdfsFileStatus[] result = server.createFiles(
+          req.getSrcList().toArray(new String[req.getSrcCount()]),
+          PBHelper.convert(req.getMasked()), req.getClientName(),
+          PBHelper.convertCreateFlag(req.getCreateFlag()),
+          req.getCreateParent(), (short) req.getReplication(),
+          req.getBlockSize());
+      CreateFilesResponseProto.Builder builder =
+          CreateFilesResponseProto.newBuilder();
+      for (HdfsFileStatus stat : result) {
+        builder.addFs(PBHelper.convert(stat));
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public CompleteFilesResponseProto completeFiles(RpcController controller,
+      CompleteFilesRequestProto req) throws ServiceException {
+    try {
+      final int n = req.getFilesCount();
+      String[] srcs = new String[n];
+      ExtendedBlock[] lasts = new ExtendedBlock[n];
+      long[] fileIds = new long[n];
+      for (int i = 0; i < n; i++) {
+        CompleteFileProto file = req.getFiles(i);
+        srcs[i] = file.getSrc();
+        lasts[i] = file.hasLast() ? PBHelper.convert(file.getLast()) : null;
+        fileIds[i] = file.hasFileId() ? file.getFileId()
+            : INodeId.GRANDFATHER_INODE_ID;
+      }
+      boolean[] result = server.completeFiles(srcs, req.getClientName(),
+          lasts, fileIds);
+      CompleteFilesResponseProto.Builder builder =
+          CompleteFilesResponseProto.newBuilder();
+      for (boolean r : result) {
+        builder.addResult(r);
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
   
   @Override
   public ReportBadBlocksResponseProto reportBadBlocks(RpcController controller,
@@ -86,8 +86,12 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CheckAccessRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteFileProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteFilesRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ConcatRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateFilesRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateFilesResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateSnapshotRequestProto;
@@ -465,6 +469,62 @@ public boolean complete(String src, String clientName,
     }
   }
 
+  @Override
+  public HdfsFileStatus[] createFiles(String[] srcs, FsPermission masked,
+      String clientName, EnumSetWritable<CreateFlag> flag,
+      boolean createParent, short replication, long blockSize)
+      throws AccessControlException, FileAlreadyExistsException,
+      SafeModeException, IOException {
+    CreateFilesRequestProto req = CreateFilesRequestProto.newBuilder()
+        .addAllSrc(Arrays.asList(srcs))
+        .setMasked(PBHelper.convert(masked))
+        .setClientName(clientName)
+        .setCreateFlag(PBHelper.convertCreateFlag(flag))
+        .setCreateParent(createParent)
+        .setReplication(replication)
+        .setBlockSize(blockSize)
+        .build();
+    try {
+      CreateFilesResponseProto res = rpcProxy.createFiles(null, req);
+      HdfsFileStatus[] result = new HdfsFileStatus[res.getFsCount()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = PBHelper.convert(res.getFs(i));
+      }
+      return result;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public boolean[] completeFiles(String[] srcs, String clientName,
+      ExtendedBlock[] lasts, long[] fileIds)
+      throws AccessControlException, FileNotFoundException, SafeModeException,
+      IOException {
+    CompleteFilesRequestProto.Builder req =
+        CompleteFilesRequestProto.newBuilder().setClientName(clientName);
+    for (int i = 0; i < srcs.length; i++) {
+      CompleteFileProto.Builder file = CompleteFileProto.newBuilder()
+          .setSrc(srcs[i])
+          .setFileId(fileIds[i]);
+      if (lasts[i] != null) {
+        file.setLast(PBHelper.convert(lasts[i]));
+      }
+      req.addFiles(file);
+    }
+    try {
+      List<Boolean> res = rpcProxy.completeFiles(null, req.build())
+          .getResultList();
+      boolean[] result = new boolean[res.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = res.get(i);
+      }
+      return result;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public void reportBadBlocks(LocatedBlock[] blocks) throws IOException {
     ReportBadBlocksRequestProto req = ReportBadBlocksRequestProto.newBuilder()
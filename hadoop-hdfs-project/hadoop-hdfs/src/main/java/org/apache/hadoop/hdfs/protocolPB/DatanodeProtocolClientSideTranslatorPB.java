@@ -22,6 +22,7 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -205,7 +206,8 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
 
   @Override
   public DatanodeCommand cacheReport(DatanodeRegistration registration,
-      String poolId, List<Long> blockIds) throws IOException {
+      String poolId, List<Long> blockIds, Map<Long, Long> hotBlocks)
+      throws IOException {
     CacheReportRequestProto.Builder builder =
         CacheReportRequestProto.newBuilder()
         .setRegistration(PBHelper.convert(registration))
@@ -213,6 +215,10 @@ public DatanodeCommand cacheReport(DatanodeRegistration registration,
     for (Long blockId : blockIds) {
       builder.addBlocks(blockId);
     }
+    for (Map.Entry<Long, Long> e : hotBlocks.entrySet()) {
+      builder.addHotBlocks(e.getKey());
+      builder.addHotBlockReads(e.getValue());
+    }
     
     CacheReportResponseProto resp;
     try {
@@ -19,7 +19,9 @@
 package org.apache.hadoop.hdfs.protocolPB;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
@@ -179,11 +181,18 @@ public BlockReportResponseProto blockReport(RpcController controller,
   public CacheReportResponseProto cacheReport(RpcController controller,
       CacheReportRequestProto request) throws ServiceException {
     DatanodeCommand cmd = null;
+    Map<Long, Long> hotBlocks = new HashMap<Long, Long>();
+    int numHotBlocks = Math.min(request.getHotBlocksCount(),
+        request.getHotBlockReadsCount());
+    for (int i = 0; i < numHotBlocks; i++) {
+      hotBlocks.put(request.getHotBlocks(i), request.getHotBlockReads(i));
+    }
     try {
       cmd = impl.cacheReport(
           PBHelper.convert(request.getRegistration()),
           request.getBlockPoolId(),
-          request.getBlocksList());
+          request.getBlocksList(),
+          hotBlocks);
     } catch (IOException e) {
       throw new ServiceException(e);
     }
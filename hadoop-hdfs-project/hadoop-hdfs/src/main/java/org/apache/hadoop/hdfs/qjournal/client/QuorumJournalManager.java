@@ -36,6 +36,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -77,6 +78,11 @@ public class QuorumJournalManager implements JournalManager {
   private final int newEpochTimeoutMs;
   private final int writeTxnsTimeoutMs;
 
+  // Whether the in-progress edits are read over RPC from the caches of the
+  // JournalNodes, and how many transactions to fetch at once.
+  private final boolean inProgressTailingEnabled;
+  private final int maxTxnsPerRpc;
+
   // Since these don't occur during normal operation, we can
   // use rather lengthy timeouts, and don't need to make them
   // configurable.
@@ -142,6 +148,15 @@ public QuorumJournalManager(Configuration conf,
     this.writeTxnsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
+
+    this.inProgressTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT);
+    Preconditions.checkArgument(maxTxnsPerRpc > 0, "%s must be positive",
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -462,10 +477,91 @@ public void close() throws IOException {
     loggers.close();
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * When the in-progress tailing is enabled, the in-progress edits are first
+   * fetched over RPC from the caches of the JournalNodes, and only the edits
+   * written to a majority of them, which can no longer be lost, are returned.
+   * If the caches do not hold the edits since the given transaction, the log
+   * segments are read from the JournalNodes over HTTP instead.
+   */
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
       long fromTxnId, boolean inProgressOk) throws IOException {
+    if (inProgressOk && inProgressTailingEnabled) {
+      try {
+        selectRpcInputStreams(streams, fromTxnId);
+        return;
+      } catch (IOException ioe) {
+        LOG.info("Could not fetch the edits since txid " + fromTxnId +
+            " from the caches of the JournalNodes, reading the log segments " +
+            "instead: " + ioe.getMessage());
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Failed to fetch the cached edits", ioe);
+        }
+      }
+    }
+    selectStreamingInputStreams(streams, fromTxnId, inProgressOk);
+  }
 
+  /**
+   * Select the edits since the given transaction from the caches of the
+   * JournalNodes, up to the last transaction which a majority of them have
+   * written.
+   */
+  private void selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> resps =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+
+    final List<Long> lastTxIds = Lists.newArrayList();
+    for (GetJournaledEditsResponseProto resp : resps.values()) {
+      lastTxIds.add(Math.max(fromTxnId - 1, getLastTxId(resp)));
+    }
+    Collections.sort(lastTxIds);
+    final long durableTxId =
+        lastTxIds.get(lastTxIds.size() - loggers.getMajoritySize());
+    if (durableTxId < fromTxnId) {
+      LOG.debug("No new edits since txid " + fromTxnId +
+          " written to a majority of the JournalNodes");
+      return;
+    }
+
+    // use the response with the fewest edits beyond the durable ones
+    Map.Entry<AsyncLogger, GetJournaledEditsResponseProto> selected = null;
+    for (Map.Entry<AsyncLogger, GetJournaledEditsResponseProto> e :
+        resps.entrySet()) {
+      long lastTxId = getLastTxId(e.getValue());
+      if (lastTxId >= durableTxId && (selected == null ||
+          lastTxId < getLastTxId(selected.getValue()))) {
+        selected = e;
+      }
+    }
+    final GetJournaledEditsResponseProto resp = selected.getValue();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Selected txids " + resp.getFromTxnId() + "-" + durableTxId +
+          " from the cache of " + selected.getKey());
+    }
+    final PriorityQueue<EditLogInputStream> allStreams =
+        new PriorityQueue<EditLogInputStream>(1,
+            JournalSet.EDIT_LOG_INPUT_STREAM_COMPARATOR);
+    allStreams.add(EditLogFileInputStream.fromByteString(resp.getEditLog(),
+        "RPC from " + selected.getKey(), resp.getFromTxnId(), durableTxId,
+        true));
+    JournalSet.chainAndMakeRedundantStreams(streams, allStreams, fromTxnId);
+  }
+
+  private static long getLastTxId(GetJournaledEditsResponseProto resp) {
+    return resp.getFromTxnId() + resp.getTxnCount() - 1;
+  }
+
+  private void selectStreamingInputStreams(
+      Collection<EditLogInputStream> streams, long fromTxnId,
+      boolean inProgressOk) throws IOException {
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId, inProgressOk);
     Map<AsyncLogger, RemoteEditLogManifest> resps =
@@ -475,6 +571,22 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
     LOG.debug("selectInputStream manifests:\n" +
         Joiner.on("\n").withKeyValueSeparator(": ").join(resps));
     
+    // When tailing the in-progress edits, do not read the edits which a
+    // majority of the JournalNodes have not written yet, as they may be lost.
+    long durableTxId = Long.MAX_VALUE;
+    if (inProgressOk && inProgressTailingEnabled) {
+      final List<Long> lastTxIds = Lists.newArrayList();
+      for (RemoteEditLogManifest manifest : resps.values()) {
+        long lastTxId = fromTxnId - 1;
+        for (RemoteEditLog remoteLog : manifest.getLogs()) {
+          lastTxId = Math.max(lastTxId, remoteLog.getEndTxId());
+        }
+        lastTxIds.add(lastTxId);
+      }
+      Collections.sort(lastTxIds);
+      durableTxId = lastTxIds.get(lastTxIds.size() - loggers.getMajoritySize());
+    }
+
     final PriorityQueue<EditLogInputStream> allStreams = 
         new PriorityQueue<EditLogInputStream>(64,
             JournalSet.EDIT_LOG_INPUT_STREAM_COMPARATOR);
@@ -483,11 +595,18 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
       RemoteEditLogManifest manifest = e.getValue();
       
       for (RemoteEditLog remoteLog : manifest.getLogs()) {
+        long endTxId = remoteLog.getEndTxId();
+        if (remoteLog.isInProgress()) {
+          endTxId = Math.min(endTxId, durableTxId);
+          if (endTxId < remoteLog.getStartTxId()) {
+            continue;
+          }
+        }
         URL url = logger.buildURLToFetchLogs(remoteLog.getStartTxId());
 
         EditLogInputStream elis = EditLogFileInputStream.fromUrl(
             connectionFactory, url, remoteLog.getStartTxId(),
-            remoteLog.getEndTxId(), remoteLog.isInProgress());
+            endTxId, remoteLog.isInProgress());
         allStreams.add(elis);
       }
     }
@@ -39,6 +39,7 @@
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PersistedRecoveryPaxosData;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -132,6 +133,9 @@ public class Journal implements Closeable {
 
   private final JournalMetrics metrics;
 
+  /** The most recent edits, served to the clients tailing the journal. */
+  private final JournaledEditsCache cache;
+
   /**
    * Time threshold for sync calls, beyond which a warning should be logged to the console.
    */
@@ -148,6 +152,8 @@ public class Journal implements Closeable {
     this.fjm = storage.getJournalManager();
     
     this.metrics = JournalMetrics.create(this);
+
+    this.cache = new JournaledEditsCache(conf);
     
     EditLogFile latest = scanStorageForLatestEdits();
     if (latest != null) {
@@ -216,6 +222,7 @@ void format(NamespaceInfo nsInfo) throws IOException {
         nsInfo);
     storage.format(nsInfo);
     refreshCachedData();
+    cache.clear();
   }
 
   /**
@@ -327,6 +334,8 @@ private void abortCurSegment() throws IOException {
     
     curSegment.abort();
     curSegment = null;
+    // the edits written to the aborted segment may be replaced
+    cache.clear();
     curSegmentTxId = HdfsConstants.INVALID_TXID;
   }
 
@@ -377,6 +386,7 @@ synchronized void journal(RequestInfo reqInfo,
     sw.start();
     curSegment.flush(shouldFsync);
     sw.stop();
+    cache.storeEdits(firstTxnId, lastTxnId, records);
 
     long nanoSeconds = sw.now();
     metrics.addSync(
@@ -546,6 +556,7 @@ public synchronized void startLogSegment(RequestInfo reqInfo, long txid,
     purgePaxosDecision(txid);
     
     curSegment = fjm.startLogSegment(txid, layoutVersion);
+    cache.setLayoutVersion(layoutVersion);
     curSegmentTxId = txid;
     nextTxId = txid;
   }
@@ -663,6 +674,17 @@ public RemoteEditLogManifest getEditLogManifest(long sinceTxId,
     return new RemoteEditLogManifest(logs);
   }
 
+  /**
+   * @see QJournalProtocol#getJournaledEdits(String, long, int)
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(long sinceTxId,
+      int maxTxns) throws IOException {
+    // No need to checkRequest() here - anyone may read the edits. The cache
+    // is not synchronized with the writes, so that the readers do not wait
+    // for the edits being synced.
+    return cache.retrieveEdits(sinceTxId, maxTxns);
+  }
+
   /**
    * @return the current state of the given segment, or null if the
    * segment does not exist.
@@ -1060,10 +1082,12 @@ public synchronized void doRollback() throws IOException {
     // directory will be renamed.  It will be reopened lazily on next access.
     IOUtils.cleanup(LOG, committedTxnId);
     storage.getJournalManager().doRollback();
+    cache.clear();
   }
 
   synchronized void discardSegments(long startTxId) throws IOException {
     storage.getJournalManager().discardSegments(startTxId);
+    cache.clear();
     // we delete all the segments after the startTxId. let's reset committedTxnId 
     committedTxnId.set(startTxId - 1);
   }
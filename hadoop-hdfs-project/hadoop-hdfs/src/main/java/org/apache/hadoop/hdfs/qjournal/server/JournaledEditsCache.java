@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
+
+/**
+ * An in-memory cache of the most recent edits written to a {@link Journal},
+ * from which the clients tailing the journal fetch the edits of the
+ * in-progress segment over RPC, without the JournalNode reading its disk.
+ * <p>
+ * The cache holds the batches of edits as they were sent by the writer, over
+ * a contiguous range of transactions, and evicts the oldest batches once it
+ * exceeds its capacity. It spans several segments as long as their layout
+ * version does not change. The journal clears the cache whenever the edits it
+ * has written may be replaced, e.g. on a new epoch or during a recovery.
+ * <p>
+ * The cache has its own lock, so that reading it does not wait for the
+ * journal to sync the edits being written.
+ */
+class JournaledEditsCache {
+
+  /**
+   * Thrown when the cache does not hold the edits starting at the requested
+   * transaction, which must then be read from the log segments on disk.
+   */
+  static class CacheMissException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CacheMissException(String msg) {
+      super(msg);
+    }
+  }
+
+  private final int capacity;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** The batches of edits, keyed by their first transaction ID. */
+  private final NavigableMap<Long, byte[]> batches =
+      new TreeMap<Long, byte[]>();
+  private long highestTxId = HdfsConstants.INVALID_TXID;
+  private int size = 0;
+
+  /** The layout version of the cached edits, or 0 if unknown. */
+  private int layoutVersion = 0;
+  /** The header of an edit log file of the layout version. */
+  private byte[] layoutHeader;
+
+  JournaledEditsCache(Configuration conf) {
+    capacity = conf.getInt(DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT);
+  }
+
+  /**
+   * Set the layout version of the edits written next, at the start of a new
+   * segment. The cache is cleared if it holds edits of another version.
+   */
+  void setLayoutVersion(int newLayoutVersion) throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (newLayoutVersion == layoutVersion) {
+        return;
+      }
+      clearBatches();
+      DataOutputBuffer header = new DataOutputBuffer();
+      EditLogFileOutputStream.writeHeader(newLayoutVersion, header);
+      layoutHeader = Arrays.copyOf(header.getData(), header.getLength());
+      layoutVersion = newLayoutVersion;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Add a batch of edits which has been written to the journal. If it does
+   * not follow the cached edits, they are dropped first.
+   */
+  void storeEdits(long firstTxId, long lastTxId, byte[] records) {
+    lock.writeLock().lock();
+    try {
+      if (layoutVersion == 0) {
+        return;
+      }
+      if (!batches.isEmpty() && firstTxId != highestTxId + 1) {
+        clearBatches();
+      }
+      batches.put(firstTxId, records);
+      highestTxId = lastTxId;
+      size += records.length;
+      while (size > capacity && !batches.isEmpty()) {
+        size -= batches.pollFirstEntry().getValue().length;
+      }
+      if (batches.isEmpty()) {
+        highestTxId = HdfsConstants.INVALID_TXID;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Fetch the cached edits since the given transaction, starting at the
+   * beginning of the batch which contains it.
+   *
+   * @param sinceTxId the first transaction requested.
+   * @param maxTxns the number of transactions after which no more batches
+   *          are added to the response.
+   * @return the edits prefixed by the header of an edit log file, or no edits
+   *         if the journal has not written any since the given transaction.
+   * @throws CacheMissException if the cache does not hold the transaction.
+   */
+  GetJournaledEditsResponseProto retrieveEdits(long sinceTxId, int maxTxns)
+      throws CacheMissException {
+    lock.readLock().lock();
+    try {
+      if (batches.isEmpty() || sinceTxId < batches.firstKey()) {
+        throw new CacheMissException("The cache of the journal does not hold "
+            + "txid " + sinceTxId + ", it holds "
+            + (batches.isEmpty() ? "no edits" :
+                "txids " + batches.firstKey() + "-" + highestTxId));
+      }
+      if (sinceTxId > highestTxId) {
+        return GetJournaledEditsResponseProto.newBuilder()
+            .setFromTxnId(sinceTxId)
+            .setTxnCount(0)
+            .build();
+      }
+
+      final long fromTxId = batches.floorKey(sinceTxId);
+      long toTxId = fromTxId;
+      int length = layoutHeader.length;
+      for (Map.Entry<Long, byte[]> e : batches.tailMap(fromTxId).entrySet()) {
+        if (toTxId - fromTxId >= maxTxns) {
+          break;
+        }
+        final Long next = batches.higherKey(e.getKey());
+        toTxId = next != null ? next : highestTxId + 1;
+        length += e.getValue().length;
+      }
+
+      final ByteString.Output out = ByteString.newOutput(length);
+      out.write(layoutHeader, 0, layoutHeader.length);
+      for (byte[] records : batches.subMap(fromTxId, toTxId).values()) {
+        out.write(records, 0, records.length);
+      }
+      return GetJournaledEditsResponseProto.newBuilder()
+          .setFromTxnId(fromTxId)
+          .setTxnCount((int) (toTxId - fromTxId))
+          .setEditLog(out.toByteString())
+          .build();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Drop all the cached edits. */
+  void clear() {
+    lock.writeLock().lock();
+    try {
+      clearBatches();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void clearBatches() {
+    batches.clear();
+    highestTxId = HdfsConstants.INVALID_TXID;
+    size = 0;
+  }
+
+  @VisibleForTesting
+  int getSize() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -20,6 +20,7 @@
 import static org.apache.hadoop.util.ExitUtil.terminate;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -35,6 +36,14 @@
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
@@ -87,7 +96,9 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -159,6 +170,10 @@ public long getPostponedMisreplicatedBlocksCount() {
   public int getPendingDataNodeMessageCount() {
     return pendingDNMessages.count();
   }
+  /** Used by metrics */
+  public int getBlockReportQueueLength() {
+    return blockReportThread.queue.size();
+  }
 
   /**replicationRecheckInterval is how often namenode checks for new replication work*/
   private final long replicationRecheckInterval;
@@ -225,6 +240,11 @@ public int getPendingDataNodeMessageCount() {
   final float blocksInvalidateWorkPct;
   final int blocksReplWorkMultiplier;
 
+  /** Number of threads choosing the targets of the replication work. */
+  private final int replicationWorkThreads;
+  /** Chooses the targets in parallel, null if there is a single thread. */
+  private final ExecutorService replicationWorkExecutor;
+
   /** variable to enable check for enough racks */
   final boolean shouldCheckForEnoughRacks;
   
@@ -234,6 +254,19 @@ public int getPendingDataNodeMessageCount() {
   // Max number of blocks to log info about during a block report.
   private final long maxNumBlocksToLog;
 
+  /**
+   * The number of reported blocks after which the time the write lock has
+   * been held by a full block report is checked.
+   */
+  private static final int BLOCK_REPORT_LOCK_CHECK_INTERVAL = 1000;
+  /** Max time in msec to hold the write lock while processing a report. */
+  private final long blockReportMaxLockHoldTime;
+  /** Processes the full block reports, one report at a time. */
+  private final BlockReportProcessingThread blockReportThread;
+  /** The number of queued block report operations of each DataNode. */
+  private final Map<String, Integer> queuedBlockOps =
+      new HashMap<String, Integer>();
+
   /**
    * When running inside a Standby node, the node may receive block reports
    * from datanodes before receiving the corresponding namespace edits from
@@ -331,6 +364,17 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
 
     this.blocksInvalidateWorkPct = DFSUtil.getInvalidateWorkPctPerIteration(conf);
     this.blocksReplWorkMultiplier = DFSUtil.getReplWorkMultiplier(conf);
+    this.replicationWorkThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_DEFAULT);
+    Preconditions.checkArgument(replicationWorkThreads > 0,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY + " = '"
+        + replicationWorkThreads + "' is invalid. "
+        + "It should be a positive, non-zero integer value.");
+    this.replicationWorkExecutor = replicationWorkThreads == 1 ? null
+        : Executors.newFixedThreadPool(replicationWorkThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("ReplicationWork-%d").build());
 
     this.replicationRecheckInterval = 
       conf.getInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 
@@ -343,6 +387,12 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
     this.maxNumBlocksToLog =
         conf.getLong(DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_KEY,
             DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_DEFAULT);
+    this.blockReportMaxLockHoldTime = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_DEFAULT);
+    this.blockReportThread = new BlockReportProcessingThread(conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT));
     this.numBlocksPerIteration = conf.getInt(
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT,
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT_DEFAULT);
@@ -353,8 +403,10 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
     LOG.info("maxReplicationStreams      = " + maxReplicationStreams);
     LOG.info("shouldCheckForEnoughRacks  = " + shouldCheckForEnoughRacks);
     LOG.info("replicationRecheckInterval = " + replicationRecheckInterval);
+    LOG.info("replicationWorkThreads     = " + replicationWorkThreads);
     LOG.info("encryptDataTransfer        = " + encryptDataTransfer);
     LOG.info("maxNumBlocksToLog          = " + maxNumBlocksToLog);
+    LOG.info("blockReportMaxLockHoldTime = " + blockReportMaxLockHoldTime);
   }
 
   private static BlockTokenSecretManager createBlockTokenSecretManager(
@@ -452,14 +504,20 @@ public void activate(Configuration conf) {
     pendingReplications.start();
     datanodeManager.activate(conf);
     this.replicationThread.start();
+    this.blockReportThread.start();
   }
 
   public void close() {
     try {
       replicationThread.interrupt();
+      blockReportThread.interrupt();
       replicationThread.join(3000);
+      blockReportThread.join(3000);
     } catch (InterruptedException ie) {
     }
+    if (replicationWorkExecutor != null) {
+      replicationWorkExecutor.shutdownNow();
+    }
     datanodeManager.close();
     pendingReplications.stop();
     blocksMap.close();
@@ -1307,6 +1365,14 @@ int computeReplicationWork(int blocksToProcess) {
       // Choose the blocks to be replicated
       blocksToReplicate = neededReplications
           .chooseUnderReplicatedBlocks(blocksToProcess);
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        for (int priority = 0; priority < UnderReplicatedBlocks.LEVEL;
+             priority++) {
+          metrics.setNeededReplications(priority,
+              neededReplications.size(priority));
+        }
+      }
     } finally {
       namesystem.writeUnlock();
     }
@@ -1392,21 +1458,13 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
       namesystem.writeUnlock();
     }
 
-    final Set<Node> excludedNodes = new HashSet<Node>();
-    for(ReplicationWork rw : work){
-      // Exclude all of the containing nodes from being targets.
-      // This list includes decommissioning or corrupt nodes.
-      excludedNodes.clear();
-      for (DatanodeDescriptor dn : rw.containingNodes) {
-        excludedNodes.add(dn);
-      }
-
-      // choose replication targets: NOT HOLDING THE GLOBAL LOCK
-      // It is costly to extract the filename for which chooseTargets is called,
-      // so for now we pass in the block collection itself.
-      rw.chooseTargets(blockplacement, storagePolicySuite, excludedNodes);
+    // choose replication targets: NOT HOLDING THE GLOBAL LOCK
+    if (!chooseTargets(work)) {
+      // interrupted, e.g. on shutdown; nothing has been scheduled yet
+      return 0;
     }
 
+    final int[] scheduledPerPriority = new int[UnderReplicatedBlocks.LEVEL];
     namesystem.writeLock();
     try {
       for(ReplicationWork rw : work){
@@ -1458,6 +1516,7 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
           // Add block to the to be replicated list
           rw.srcNode.addBlockToBeReplicated(block, targets);
           scheduledWork++;
+          scheduledPerPriority[priority]++;
           DatanodeStorageInfo.incrementBlocksScheduled(targets);
 
           // Move the block-replication into a "pending" state.
@@ -1478,6 +1537,15 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
       namesystem.writeUnlock();
     }
 
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      for (int priority = 0; priority < scheduledPerPriority.length;
+           priority++) {
+        metrics.incrReplicationsScheduled(priority,
+            scheduledPerPriority[priority]);
+      }
+    }
+
     if (blockLog.isInfoEnabled()) {
       // log which blocks have been scheduled for replication
       for(ReplicationWork rw : work){
@@ -1501,6 +1569,70 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
     return scheduledWork;
   }
 
+  /**
+   * Choose the targets of the replication work, which is split among the
+   * replication work threads if there are several of them.
+   *
+   * @return false if the thread was interrupted before all the targets were
+   *         chosen; the interrupt status is restored in that case.
+   */
+  private boolean chooseTargets(List<ReplicationWork> work) {
+    if (replicationWorkExecutor == null || work.size() < 2) {
+      chooseTargets(work, new HashSet<Node>());
+      return true;
+    }
+
+    final int numTasks = Math.min(replicationWorkThreads, work.size());
+    final int perTask = (work.size() + numTasks - 1) / numTasks;
+    final List<ReplicationWork> workList = new ArrayList<ReplicationWork>(work);
+    final List<Future<?>> futures = new ArrayList<Future<?>>(numTasks);
+    for (int from = 0; from < workList.size(); from += perTask) {
+      final List<ReplicationWork> part = workList.subList(from,
+          Math.min(from + perTask, workList.size()));
+      futures.add(replicationWorkExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          chooseTargets(part, new HashSet<Node>());
+        }
+      }));
+    }
+    try {
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } catch (InterruptedException ie) {
+      for (Future<?> f : futures) {
+        f.cancel(true);
+      }
+      // the cancelled parts may never run
+      for (ReplicationWork rw : workList) {
+        rw.releasePendingWithoutTargets();
+      }
+      Thread.currentThread().interrupt();
+      LOG.info("Interrupted while choosing replication targets");
+      return false;
+    } catch (ExecutionException ee) {
+      throw Throwables.propagate(ee.getCause());
+    }
+    return true;
+  }
+
+  private void chooseTargets(List<ReplicationWork> work,
+      Set<Node> excludedNodes) {
+    for(ReplicationWork rw : work){
+      // Exclude all of the containing nodes from being targets.
+      // This list includes decommissioning or corrupt nodes.
+      excludedNodes.clear();
+      for (DatanodeDescriptor dn : rw.containingNodes) {
+        excludedNodes.add(dn);
+      }
+
+      // It is costly to extract the filename for which chooseTargets is called,
+      // so for now we pass in the block collection itself.
+      rw.chooseTargets(blockplacement, storagePolicySuite, excludedNodes);
+    }
+  }
+
   /** Choose target for WebHDFS redirection. */
   public DatanodeStorageInfo[] chooseTarget4WebHDFS(String src,
       DatanodeDescriptor clientnode, Set<Node> excludes, long blocksize) {
@@ -1776,8 +1908,10 @@ public boolean processReport(final DatanodeID nodeID,
     namesystem.writeLock();
     final long startTime = Time.monotonicNow(); //after acquiring write lock
     final long endTime;
+    final long lockHoldTime;
     DatanodeDescriptor node;
     Collection<Block> invalidatedBlocks = null;
+    BlockReportLockTracker lockTracker = null;
 
     try {
       node = datanodeManager.getDatanode(nodeID);
@@ -1802,12 +1936,13 @@ public boolean processReport(final DatanodeID nodeID,
         return !node.hasStaleStorages();
       }
 
+      lockTracker = new BlockReportLockTracker(storageInfo, startTime);
       if (storageInfo.numBlocks() == 0) {
         // The first block report can be processed a lot more efficiently than
         // ordinary block reports.  This shortens restart times.
-        processFirstBlockReport(storageInfo, newReport);
+        processFirstBlockReport(storageInfo, newReport, lockTracker);
       } else {
-        invalidatedBlocks = processReport(storageInfo, newReport);
+        invalidatedBlocks = processReport(storageInfo, newReport, lockTracker);
       }
       
       storageInfo.receivedBlockReport();
@@ -1836,6 +1971,8 @@ public boolean processReport(final DatanodeID nodeID,
       }
     } finally {
       endTime = Time.monotonicNow();
+      lockHoldTime = lockTracker == null ? endTime - startTime
+          : lockTracker.getLockHoldTime(endTime);
       namesystem.writeUnlock();
     }
 
@@ -1850,11 +1987,14 @@ public boolean processReport(final DatanodeID nodeID,
     final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
     if (metrics != null) {
       metrics.addBlockReport((int) (endTime - startTime));
+      metrics.addBlockReportLockHold(lockHoldTime);
+      metrics.incrBlockReportLockYields(lockTracker.getNumYields());
     }
     blockLog.info("BLOCK* processReport: from storage {} node {}, " +
-        "blocks: {}, hasStaleStorage: {}, processing time: {} msecs", storage
-        .getStorageID(), nodeID, newReport.getNumberOfBlocks(),
-        node.hasStaleStorages(), (endTime - startTime));
+        "blocks: {}, hasStaleStorage: {}, processing time: {} msecs, " +
+        "lock hold time: {} msecs, lock yields: {}", storage.getStorageID(),
+        nodeID, newReport.getNumberOfBlocks(), node.hasStaleStorages(),
+        (endTime - startTime), lockHoldTime, lockTracker.getNumYields());
     return !node.hasStaleStorages();
   }
 
@@ -1960,35 +2100,48 @@ void rescanPostponedMisreplicatedBlocks() {
   
   private Collection<Block> processReport(
       final DatanodeStorageInfo storageInfo,
-      final BlockListAsLongs report) throws IOException {
+      final BlockListAsLongs report,
+      final BlockReportLockTracker lockTracker) throws IOException {
     // Normal case:
     // Modify the (block-->datanode) map, according to the difference
     // between the old and new block report.
     //
-    Collection<BlockInfoContiguous> toAdd = new LinkedList<BlockInfoContiguous>();
     Collection<Block> toRemove = new TreeSet<Block>();
-    Collection<Block> toInvalidate = new LinkedList<Block>();
-    Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<BlockToMarkCorrupt>();
-    Collection<StatefulBlockInfo> toUC = new LinkedList<StatefulBlockInfo>();
-    reportDiff(storageInfo, report,
-        toAdd, toRemove, toInvalidate, toCorrupt, toUC);
-   
+    Collection<Block> invalidated = new LinkedList<Block>();
+    int numBlocksAdded = reportDiff(storageInfo, report,
+        toRemove, invalidated, lockTracker);
+    if (numBlocksAdded > maxNumBlocksToLog) {
+      blockLog.info("BLOCK* processReport: logged info for {} of {} " +
+          "reported.", maxNumBlocksToLog, numBlocksAdded);
+    }
+
+    DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    for (Block b : toRemove) {
+      removeStoredBlock(b, node);
+    }
+    return invalidated;
+  }
+
+  /**
+   * Process the changes computed from the part of a full block report seen
+   * since the previous call, and clear the given collections.
+   * @param numBlocksAdded the number of blocks added by the previous calls
+   * @return the number of blocks added by the report so far
+   */
+  private int processReportDiff(final DatanodeStorageInfo storageInfo,
+      final Collection<BlockInfoContiguous> toAdd,
+      final Collection<Block> toInvalidate,
+      final Collection<BlockToMarkCorrupt> toCorrupt,
+      final Collection<StatefulBlockInfo> toUC,
+      int numBlocksAdded) throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) { 
       addStoredBlockUnderConstruction(b, storageInfo);
     }
-    for (Block b : toRemove) {
-      removeStoredBlock(b, node);
-    }
-    int numBlocksLogged = 0;
     for (BlockInfoContiguous b : toAdd) {
-      addStoredBlock(b, storageInfo, null, numBlocksLogged < maxNumBlocksToLog);
-      numBlocksLogged++;
-    }
-    if (numBlocksLogged > maxNumBlocksToLog) {
-      blockLog.info("BLOCK* processReport: logged info for {} of {} " +
-          "reported.", maxNumBlocksToLog, numBlocksLogged);
+      addStoredBlock(b, storageInfo, null, numBlocksAdded < maxNumBlocksToLog);
+      numBlocksAdded++;
     }
     for (Block b : toInvalidate) {
       addToInvalidates(b, node);
@@ -1996,8 +2149,11 @@ private Collection<Block> processReport(
     for (BlockToMarkCorrupt b : toCorrupt) {
       markBlockAsCorrupt(b, storageInfo, node);
     }
-
-    return toInvalidate;
+    toUC.clear();
+    toAdd.clear();
+    toInvalidate.clear();
+    toCorrupt.clear();
+    return numBlocksAdded;
   }
 
   /**
@@ -2049,16 +2205,21 @@ public void markBlockReplicasAsCorrupt(BlockInfoContiguous block,
    * the next block report.
    * @param storageInfo - DatanodeStorageInfo that sent the report
    * @param report - the initial block report, to be processed
+   * @param lockTracker - releases the write lock once held for too long
    * @throws IOException 
    */
   private void processFirstBlockReport(
       final DatanodeStorageInfo storageInfo,
-      final BlockListAsLongs report) throws IOException {
+      final BlockListAsLongs report,
+      final BlockReportLockTracker lockTracker) throws IOException {
     if (report == null) return;
     assert (namesystem.hasWriteLock());
     assert (storageInfo.numBlocks() == 0);
 
     for (BlockReportReplica iblk : report) {
+      if (lockTracker.shouldYield()) {
+        lockTracker.yieldLock();
+      }
       ReplicaState reportedState = iblk.getState();
       
       if (shouldPostponeBlocksFromFuture &&
@@ -2104,53 +2265,77 @@ private void processFirstBlockReport(
         }
         //and fall through to next clause
       }      
-      //add replica if appropriate
-      if (reportedState == ReplicaState.FINALIZED) {
+      //add replica if appropriate, unless it has been reported by an
+      //incremental block report while the write lock was released
+      if (reportedState == ReplicaState.FINALIZED
+          && storedBlock.findStorageInfo(storageInfo) < 0) {
         addStoredBlockImmediate(storedBlock, storageInfo);
       }
     }
   }
 
-  private void reportDiff(DatanodeStorageInfo storageInfo, 
+  /**
+   * Process the reported blocks, and collect the blocks of the storage which
+   * have not been reported. The changes computed from the reported blocks
+   * are processed whenever the write lock is about to be released, so that
+   * they are never based on a stale state of the namesystem.
+   * @return the number of added blocks
+   */
+  private int reportDiff(DatanodeStorageInfo storageInfo, 
       BlockListAsLongs newReport, 
-      Collection<BlockInfoContiguous> toAdd,              // add to DatanodeDescriptor
       Collection<Block> toRemove,           // remove from DatanodeDescriptor
-      Collection<Block> toInvalidate,       // should be removed from DN
-      Collection<BlockToMarkCorrupt> toCorrupt, // add to corrupt replicas list
-      Collection<StatefulBlockInfo> toUC) { // add to under-construction list
+      Collection<Block> invalidated,        // removed from DN
+      BlockReportLockTracker lockTracker) throws IOException {
+    Collection<BlockInfoContiguous> toAdd = new LinkedList<BlockInfoContiguous>();
+    Collection<Block> toInvalidate = new LinkedList<Block>();
+    Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<BlockToMarkCorrupt>();
+    Collection<StatefulBlockInfo> toUC = new LinkedList<StatefulBlockInfo>();
+    int numBlocksAdded = 0;
 
     // place a delimiter in the list which separates blocks 
     // that have been reported from those that have not
-    BlockInfoContiguous delimiter = new BlockInfoContiguous(new Block(), (short) 1);
-    AddBlockResult result = storageInfo.addBlock(delimiter);
-    assert result == AddBlockResult.ADDED 
-        : "Delimiting block cannot be present in the node";
+    storageInfo.addReportDelimiter();
     int headIndex = 0; //currently the delimiter is in the head of the list
     int curIndex;
 
     if (newReport == null) {
       newReport = BlockListAsLongs.EMPTY;
     }
-    // scan the report and process newly reported blocks
-    for (BlockReportReplica iblk : newReport) {
-      ReplicaState iState = iblk.getState();
-      BlockInfoContiguous storedBlock = processReportedBlock(storageInfo,
-          iblk, iState, toAdd, toInvalidate, toCorrupt, toUC);
-
-      // move block to the head of the list
-      if (storedBlock != null &&
-          (curIndex = storedBlock.findStorageInfo(storageInfo)) >= 0) {
-        headIndex = storageInfo.moveBlockToHead(storedBlock, curIndex, headIndex);
+    try {
+      // scan the report and process newly reported blocks
+      for (BlockReportReplica iblk : newReport) {
+        if (lockTracker.shouldYield()) {
+          invalidated.addAll(toInvalidate);
+          numBlocksAdded = processReportDiff(storageInfo, toAdd, toInvalidate,
+              toCorrupt, toUC, numBlocksAdded);
+          lockTracker.yieldLock();
+          // the head of the list may have changed in the meantime
+          headIndex = storageInfo.getHeadIndex();
+        }
+        ReplicaState iState = iblk.getState();
+        BlockInfoContiguous storedBlock = processReportedBlock(storageInfo,
+            iblk, iState, toAdd, toInvalidate, toCorrupt, toUC);
+
+        // move block to the head of the list
+        if (storedBlock != null &&
+            (curIndex = storedBlock.findStorageInfo(storageInfo)) >= 0) {
+          headIndex = storageInfo.moveBlockToHead(storedBlock, curIndex, headIndex);
+        }
       }
+
+      // collect blocks that have not been reported
+      // all of them are next to the delimiter
+      Iterator<BlockInfoContiguous> it =
+          storageInfo.getBlocksAfterReportDelimiter();
+      while(it.hasNext())
+        toRemove.add(it.next());
+    } finally {
+      storageInfo.removeReportDelimiter();
     }
 
-    // collect blocks that have not been reported
-    // all of them are next to the delimiter
-    Iterator<BlockInfoContiguous> it =
-        storageInfo.new BlockIterator(delimiter.getNext(0));
-    while(it.hasNext())
-      toRemove.add(it.next());
-    storageInfo.removeBlock(delimiter);
+    invalidated.addAll(toInvalidate);
+    return processReportDiff(storageInfo, toAdd, toInvalidate, toCorrupt, toUC,
+        numBlocksAdded);
   }
 
   /**
@@ -3628,6 +3813,225 @@ public int numOfUnderReplicatedBlocks() {
     return neededReplications.size();
   }
 
+  /**
+   * Queue an operation on the replicas reported by a DataNode, a full block
+   * report or an incremental report received while other operations of the
+   * same DataNode are queued. The operations are processed one at a time by
+   * the block report processing thread, in the order they were queued, and
+   * the caller returns once the operation is queued. It only waits when the
+   * queue is full, i.e. when dfs.namenode.blockreport.queue.size operations
+   * are already waiting.
+   * <p>
+   * The operation must handle its own failures, e.g. by logging them: the
+   * DataNode has already been answered.
+   */
+  public void enqueueBlockOp(final DatanodeID nodeID, final Runnable action)
+      throws IOException {
+    final String uuid = nodeID.getDatanodeUuid();
+    updateQueuedBlockOps(uuid, 1);
+    boolean queued = false;
+    try {
+      blockReportThread.enqueue(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            action.run();
+          } catch (RuntimeException e) {
+            LOG.error("Failed to process the block report operation of "
+                + nodeID, e);
+          } finally {
+            updateQueuedBlockOps(uuid, -1);
+          }
+        }
+      });
+      queued = true;
+    } finally {
+      if (!queued) {
+        updateQueuedBlockOps(uuid, -1);
+      }
+    }
+  }
+
+  /**
+   * @return whether operations of the DataNode are queued and not processed
+   *         yet, in which case its later reports must be queued after them,
+   *         so that an incremental report is not undone by an older full
+   *         block report
+   */
+  public boolean hasQueuedBlockOps(DatanodeID nodeID) {
+    synchronized (queuedBlockOps) {
+      return queuedBlockOps.containsKey(nodeID.getDatanodeUuid());
+    }
+  }
+
+  private void updateQueuedBlockOps(String uuid, int delta) {
+    synchronized (queuedBlockOps) {
+      final Integer count = queuedBlockOps.get(uuid);
+      final int newCount = (count == null ? 0 : count) + delta;
+      if (newCount > 0) {
+        queuedBlockOps.put(uuid, newCount);
+      } else {
+        queuedBlockOps.remove(uuid);
+      }
+    }
+  }
+
+  /**
+   * Wait for the operations queued so far to be processed.
+   */
+  @VisibleForTesting
+  public void flushBlockOps() throws IOException {
+    final FutureTask<Void> marker = new FutureTask<Void>(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }, null);
+    blockReportThread.enqueue(marker);
+    try {
+      marker.get();
+    } catch (ExecutionException ee) {
+      throw new IOException(ee.getCause());
+    } catch (CancellationException ce) {
+      throw new IOException("Block report processing has been stopped", ce);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(
+          "Interrupted while waiting for the block reports to be processed");
+    }
+  }
+
+  /**
+   * Check that a DataNode sending a full block report is registered and
+   * alive, so that it registers again otherwise, before the report is queued.
+   * @return whether all the storages of the DataNode have been reported
+   *         since the NameNode started, before the report being sent
+   */
+  public boolean checkBlockReportNode(DatanodeID nodeID) throws IOException {
+    namesystem.readLock();
+    try {
+      final DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
+      if (node == null || !node.isAlive) {
+        throw new IOException(
+            "ProcessReport from dead or unregistered node: " + nodeID);
+      }
+      return !node.hasStaleStorages();
+    } finally {
+      namesystem.readUnlock();
+    }
+  }
+
+  /**
+   * Processes the queued block report operations, one at a time.
+   */
+  private class BlockReportProcessingThread extends Thread {
+    private final BlockingQueue<Runnable> queue;
+
+    BlockReportProcessingThread(int queueSize) {
+      super("Block report processor");
+      queue = new ArrayBlockingQueue<Runnable>(queueSize);
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (namesystem.isRunning()) {
+          queue.take().run();
+        }
+      } catch (InterruptedException ie) {
+        LOG.info("Stopping {}.", getName());
+      } finally {
+        // release the threads waiting for the remaining operations
+        for (Runnable r; (r = queue.poll()) != null; ) {
+          if (r instanceof FutureTask) {
+            ((FutureTask<?>) r).cancel(false);
+          }
+        }
+      }
+    }
+
+    void enqueue(Runnable action) throws IOException {
+      if (!isAlive()) {
+        // not started yet or already stopped
+        action.run();
+        return;
+      }
+      if (!queue.offer(action)) {
+        LOG.debug("Block report queue is full, waiting to queue a report");
+        try {
+          queue.put(action);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(
+              "Interrupted while waiting to queue a block report");
+        }
+      }
+      if (!isAlive() && queue.remove(action)
+          && action instanceof FutureTask) {
+        ((FutureTask<?>) action).cancel(false);
+      }
+    }
+  }
+
+  /**
+   * Tracks the time the write lock is held while processing the full block
+   * report of a storage, and releases the lock for other operations once it
+   * has been held for longer than the configured maximum.
+   */
+  private class BlockReportLockTracker {
+    private final DatanodeStorageInfo storageInfo;
+    private long lockAcquiredTime;
+    private long lockHoldTime = 0;
+    private int numYields = 0;
+    private int numBlocks = 0;
+
+    BlockReportLockTracker(DatanodeStorageInfo storageInfo,
+        long lockAcquiredTime) {
+      this.storageInfo = storageInfo;
+      this.lockAcquiredTime = lockAcquiredTime;
+    }
+
+    /**
+     * Called once for every reported block.
+     * @return true if the write lock should be released.
+     */
+    boolean shouldYield() {
+      if (blockReportMaxLockHoldTime <= 0
+          || ++numBlocks % BLOCK_REPORT_LOCK_CHECK_INTERVAL != 0) {
+        return false;
+      }
+      return Time.monotonicNow() - lockAcquiredTime
+          >= blockReportMaxLockHoldTime;
+    }
+
+    /**
+     * Release and reacquire the write lock.
+     * @throws IOException if the storage has been removed in the meantime.
+     */
+    void yieldLock() throws IOException {
+      lockHoldTime += Time.monotonicNow() - lockAcquiredTime;
+      numYields++;
+      namesystem.writeUnlock();
+      namesystem.writeLock();
+      lockAcquiredTime = Time.monotonicNow();
+
+      final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+      if (!node.isAlive ||
+          node.getStorageInfo(storageInfo.getStorageID()) != storageInfo) {
+        throw new IOException("Storage " + storageInfo + " of " + node
+            + " was removed while processing its block report");
+      }
+    }
+
+    long getLockHoldTime(long now) {
+      return lockHoldTime + now - lockAcquiredTime;
+    }
+
+    int getNumYields() {
+      return numYields;
+    }
+  }
+
   /**
    * Periodically calls computeReplicationWork().
    */
@@ -3681,9 +4085,11 @@ int computeDatanodeWork() {
       return 0;
     }
 
+    // the targets of the work are chosen in parallel by the replication
+    // work threads, so as much more work is computed per iteration
     final int numlive = heartbeatManager.getLiveDatanodeCount();
     final int blocksToProcess = numlive
-        * this.blocksReplWorkMultiplier;
+        * this.blocksReplWorkMultiplier * this.replicationWorkThreads;
     final int nodesToProcess = (int) Math.ceil(numlive
         * this.blocksInvalidateWorkPct);
 
@@ -3728,6 +4134,7 @@ private static class ReplicationWork {
 
     private DatanodeStorageInfo targets[];
     private final int priority;
+    private boolean pendingWithoutTargets;
 
     public ReplicationWork(Block block,
         BlockCollection bc,
@@ -3740,6 +4147,7 @@ public ReplicationWork(Block block,
       this.bc = bc;
       this.srcNode = srcNode;
       this.srcNode.incrementPendingReplicationWithoutTargets();
+      this.pendingWithoutTargets = true;
       this.containingNodes = containingNodes;
       this.liveReplicaStorages = liveReplicaStorages;
       this.additionalReplRequired = additionalReplRequired;
@@ -3756,6 +4164,17 @@ private void chooseTargets(BlockPlacementPolicy blockplacement,
             excludedNodes, block.getNumBytes(),
             storagePolicySuite.getPolicy(bc.getStoragePolicyID()));
       } finally {
+        releasePendingWithoutTargets();
+      }
+    }
+
+    /**
+     * Decrement the pending count of the source node, at most once, either
+     * when the targets are chosen or when the work is abandoned.
+     */
+    private synchronized void releasePendingWithoutTargets() {
+      if (pendingWithoutTargets) {
+        pendingWithoutTargets = false;
         srcNode.decrementPendingReplicationWithoutTargets();
       }
     }
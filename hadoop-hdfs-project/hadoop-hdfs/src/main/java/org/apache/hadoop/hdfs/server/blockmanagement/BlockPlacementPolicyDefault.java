@@ -646,8 +646,7 @@ protected DatanodeStorageInfo chooseRandom(int numOfReplicas,
     boolean badTarget = false;
     DatanodeStorageInfo firstChosen = null;
     while(numOfReplicas > 0 && numOfAvailableNodes > 0) {
-      DatanodeDescriptor chosenNode = 
-          (DatanodeDescriptor)clusterMap.chooseRandom(scope);
+      DatanodeDescriptor chosenNode = chooseDataNode(scope, excludedNodes);
       if (excludedNodes.add(chosenNode)) { //was not in the excluded list
         if (LOG.isDebugEnabled()) {
           builder.append("\nNode ").append(NodeBase.getPath(chosenNode)).append(" [");
@@ -708,6 +707,16 @@ protected DatanodeStorageInfo chooseRandom(int numOfReplicas,
     return firstChosen;
   }
 
+  /**
+   * Choose a datanode from the given <i>scope</i> at random. The node may be
+   * one of the <i>excludedNodes</i>, in which case the caller tries again.
+   * @return the chosen node.
+   */
+  protected DatanodeDescriptor chooseDataNode(String scope,
+      Set<Node> excludedNodes) {
+    return (DatanodeDescriptor)clusterMap.chooseRandom(scope);
+  }
+
   /**
    * If the given storage is a good target, add it to the result list and
    * update the set of excluded nodes.
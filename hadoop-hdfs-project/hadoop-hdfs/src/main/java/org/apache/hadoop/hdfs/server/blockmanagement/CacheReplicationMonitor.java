@@ -24,10 +24,12 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -47,6 +49,8 @@
 import org.apache.hadoop.hdfs.server.namenode.INode;
 import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
 import org.apache.hadoop.hdfs.server.namenode.INodeFile;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 import org.apache.hadoop.util.GSet;
@@ -140,6 +144,11 @@ public class CacheReplicationMonitor extends Thread implements Closeable {
    */
   private long scannedBlocks;
 
+  /**
+   * IDs of the hot blocks cached by the previous scan.
+   */
+  private Set<Long> autoCachedBlocks = new HashSet<Long>();
+
   public CacheReplicationMonitor(FSNamesystem namesystem,
       CacheManager cacheManager, long intervalMs, ReentrantLock lock) {
     this.namesystem = namesystem;
@@ -299,6 +308,9 @@ private void rescan() throws InterruptedException {
 
       resetStatistics();
       rescanCacheDirectives();
+      if (cacheManager.isAutoCachingEnabled()) {
+        rescanHotBlocks();
+      }
       rescanCachedBlockMap();
       blockManager.getDatanodeManager().resetLastCachingDirectiveSentTime();
     } finally {
@@ -452,6 +464,79 @@ private void rescanFile(CacheDirective directive, INodeFile file) {
         file.getFullPathName(), cachedTotal, neededTotal);
   }
 
+  /**
+   * Cache the most read of the hot blocks reported by the datanodes, within
+   * the share of the cache capacity left to them.  The blocks of the cache
+   * directives have been marked first, so a hot block which is not marked
+   * again because it went cold or got out of the budget is uncached by
+   * {@link #rescanCachedBlockMap()}, as when a directive is removed.
+   */
+  private void rescanHotBlocks() {
+    final short replication = cacheManager.getAutoCacheReplication();
+    final long capacity = blockManager.getDatanodeManager()
+        .getDatanodeStatistics().getCacheCapacity();
+    long bytesNeededByDirectives = 0;
+    for (CachePool pool : cacheManager.getCachePools()) {
+      bytesNeededByDirectives += pool.getBytesNeeded();
+    }
+    long budget = Math.min(
+        (long) (capacity * (double) cacheManager.getAutoCacheCapacityPercent()
+            / 100),
+        capacity - bytesNeededByDirectives);
+
+    Set<Long> cachedNow = new HashSet<Long>();
+    for (CacheManager.HotBlock hotBlock :
+        cacheManager.getHotBlocks(Time.monotonicNow())) {
+      if (budget <= 0) {
+        break;
+      }
+      BlockInfoContiguous blockInfo = blockManager.getStoredBlock(
+          new Block(hotBlock.getBlockId()));
+      if (blockInfo == null || !blockInfo.isComplete()) {
+        LOG.trace("Hot block {}: can't cache block because it is {}",
+            hotBlock.getBlockId(),
+            blockInfo == null ? "not tracked by the BlockManager"
+                : "not complete");
+        continue;
+      }
+      CachedBlock ncblock = new CachedBlock(hotBlock.getBlockId(),
+          replication, mark);
+      CachedBlock ocblock = cachedBlocks.get(ncblock);
+      if (ocblock == null) {
+        cachedBlocks.put(ncblock);
+      } else if (ocblock.getMark() == mark
+          && ocblock.getReplication() >= replication
+          && !autoCachedBlocks.contains(hotBlock.getBlockId())) {
+        // Already cached by a directive, which does not use the budget.
+        continue;
+      } else if (ocblock.getMark() != mark
+          || ocblock.getReplication() < replication) {
+        ocblock.setReplicationAndMark(replication, mark);
+      }
+      budget -= blockInfo.getNumBytes() * replication;
+      cachedNow.add(hotBlock.getBlockId());
+      LOG.trace("Hot block {}: setting replication to {}, {} reads",
+          hotBlock.getBlockId(), replication, hotBlock.getReads());
+    }
+
+    int promoted = 0;
+    for (Long blockId : cachedNow) {
+      if (!autoCachedBlocks.remove(blockId)) {
+        promoted++;
+      }
+    }
+    int evicted = autoCachedBlocks.size();
+    autoCachedBlocks = cachedNow;
+    LOG.debug("Caching {} hot blocks: {} promoted, {} evicted",
+        cachedNow.size(), promoted, evicted);
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.setAutoCachedBlocks(cachedNow.size());
+      metrics.incrAutoCachePromotions(promoted);
+      metrics.incrAutoCacheEvictions(evicted);
+    }
+  }
+
   private String findReasonForNotCaching(CachedBlock cblock, 
           BlockInfoContiguous blockInfo) {
     if (blockInfo == null) {
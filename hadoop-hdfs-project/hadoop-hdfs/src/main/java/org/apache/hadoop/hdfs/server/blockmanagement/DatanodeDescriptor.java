@@ -580,14 +580,21 @@ Iterator<BlockInfoContiguous> getBlockIterator(final String storageID) {
     return new BlockIterator(getStorageInfo(storageID));
   }
 
-  void incrementPendingReplicationWithoutTargets() {
+  // synchronized since the targets may be chosen by several replication
+  // work threads
+  synchronized void incrementPendingReplicationWithoutTargets() {
     PendingReplicationWithoutTargets++;
   }
 
-  void decrementPendingReplicationWithoutTargets() {
+  synchronized void decrementPendingReplicationWithoutTargets() {
     PendingReplicationWithoutTargets--;
   }
 
+  @VisibleForTesting
+  synchronized int getPendingReplicationWithoutTargets() {
+    return PendingReplicationWithoutTargets;
+  }
+
   /**
    * Store block replication work.
    */
@@ -22,8 +22,10 @@
 import java.util.List;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 
 import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
@@ -84,7 +86,7 @@ class BlockIterator implements Iterator<BlockInfoContiguous> {
     private BlockInfoContiguous current;
 
     BlockIterator(BlockInfoContiguous head) {
-      this.current = head;
+      this.current = skipReportDelimiter(head);
     }
 
     public boolean hasNext() {
@@ -93,10 +95,18 @@ public boolean hasNext() {
 
     public BlockInfoContiguous next() {
       BlockInfoContiguous res = current;
-      current = current.getNext(current.findStorageInfo(DatanodeStorageInfo.this));
+      current = skipReportDelimiter(
+          current.getNext(current.findStorageInfo(DatanodeStorageInfo.this)));
       return res;
     }
 
+    private BlockInfoContiguous skipReportDelimiter(BlockInfoContiguous b) {
+      if (b != null && b == reportDelimiter) {
+        return b.getNext(b.findStorageInfo(DatanodeStorageInfo.this));
+      }
+      return b;
+    }
+
     public void remove() {
       throw new UnsupportedOperationException("Sorry. can't remove.");
     }
@@ -115,6 +125,14 @@ public void remove() {
   private volatile BlockInfoContiguous blockList = null;
   private int numBlocks = 0;
 
+  /**
+   * A block in the block list separating the blocks reported by the full
+   * block report being processed from those not reported yet. The report may
+   * release the namesystem lock while it is processed, so the delimiter is
+   * not counted in {@link #numBlocks} and is skipped by the block iterators.
+   */
+  private BlockInfoContiguous reportDelimiter = null;
+
   // The ID of the last full block report which updated this storage.
   private long lastBlockReportId = 0;
 
@@ -270,6 +288,44 @@ Iterator<BlockInfoContiguous> getBlockIterator() {
 
   }
 
+  /**
+   * Insert a report delimiter at the head of the block list.
+   * @return the delimiter
+   */
+  BlockInfoContiguous addReportDelimiter() {
+    Preconditions.checkState(reportDelimiter == null,
+        "A block report is already being processed for %s", this);
+    reportDelimiter = new BlockInfoContiguous(new Block(), (short) 1);
+    reportDelimiter.addStorage(this);
+    blockList = reportDelimiter.listInsert(blockList, this);
+    return reportDelimiter;
+  }
+
+  /**
+   * @return an iterator over the blocks following the report delimiter,
+   *         which have not been reported yet.
+   */
+  Iterator<BlockInfoContiguous> getBlocksAfterReportDelimiter() {
+    return new BlockIterator(reportDelimiter.getNext(
+        reportDelimiter.findStorageInfo(this)));
+  }
+
+  void removeReportDelimiter() {
+    if (reportDelimiter != null) {
+      blockList = reportDelimiter.listRemove(blockList, this);
+      reportDelimiter.removeStorage(this);
+      reportDelimiter = null;
+    }
+  }
+
+  /**
+   * @return the index of this storage in the head of the block list, as
+   *         expected by {@link #moveBlockToHead}.
+   */
+  int getHeadIndex() {
+    return blockList == null ? -1 : blockList.findStorageInfo(this);
+  }
+
   /**
    * Move block to the head of the list of blocks belonging to the data-node.
    * @return the index of the head of the blockList
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.net.NetworkTopology;
+import org.apache.hadoop.net.Node;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A block placement policy which places the replicas as
+ * {@link BlockPlacementPolicyDefault} does, but instead of a single random
+ * node, picks a few random candidates in the chosen scope and takes the
+ * least loaded of them.
+ * <p>
+ * A candidate is scored with what its heartbeats report: its active
+ * transfers relative to the cluster average, the used fraction of its
+ * capacity, and the blocks scheduled to be written to it or replicated from
+ * it. The lowest score wins. Taking the best of a few random candidates,
+ * rather than the best node of the scope, keeps the NameNode from piling
+ * every new block onto the same node between two of its heartbeats.
+ */
+public class LoadAwareBlockPlacementPolicy extends BlockPlacementPolicyDefault {
+  private FSClusterStats stats;
+  private int candidates;
+  private double loadWeight;
+  private double utilizationWeight;
+  private double pendingWeight;
+
+  protected LoadAwareBlockPlacementPolicy() {
+  }
+
+  @Override
+  public void initialize(Configuration conf, FSClusterStats stats,
+      NetworkTopology clusterMap, Host2NodesMap host2datanodeMap) {
+    super.initialize(conf, stats, clusterMap, host2datanodeMap);
+    this.stats = stats;
+    this.candidates = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_PLACEMENT_CANDIDATES_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_PLACEMENT_CANDIDATES_DEFAULT);
+    Preconditions.checkArgument(candidates > 0,
+        DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_PLACEMENT_CANDIDATES_KEY
+        + " = '" + candidates + "' is invalid. "
+        + "It should be a positive, non-zero integer value.");
+    this.loadWeight = conf.getDouble(
+        DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_PLACEMENT_LOAD_WEIGHT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_PLACEMENT_LOAD_WEIGHT_DEFAULT);
+    this.utilizationWeight = conf.getDouble(
+        DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_PLACEMENT_UTILIZATION_WEIGHT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_PLACEMENT_UTILIZATION_WEIGHT_DEFAULT);
+    this.pendingWeight = conf.getDouble(
+        DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_PLACEMENT_PENDING_WEIGHT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_PLACEMENT_PENDING_WEIGHT_DEFAULT);
+  }
+
+  @Override
+  protected DatanodeDescriptor chooseDataNode(String scope,
+      Set<Node> excludedNodes) {
+    DatanodeDescriptor best = null;
+    double bestScore = Double.MAX_VALUE;
+    for (int i = 0; i < candidates; i++) {
+      final DatanodeDescriptor node =
+          (DatanodeDescriptor)clusterMap.chooseRandom(scope);
+      if (node == null) {
+        break;
+      }
+      if (excludedNodes != null && excludedNodes.contains(node)) {
+        if (best == null) {
+          // only returned if no candidate can be chosen
+          best = node;
+        }
+        continue;
+      }
+      final double score = getScore(node);
+      if (score < bestScore) {
+        best = node;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Score a datanode with its load, utilization and pending transfers.
+   * @return the score, lower is better.
+   */
+  @VisibleForTesting
+  double getScore(DatanodeDescriptor node) {
+    // active transfers, 1 for a node as busy as the average
+    final double averageLoad = stats.getInServiceXceiverAverage();
+    final double load = node.getXceiverCount() / Math.max(averageLoad, 1.0);
+
+    // used fraction of the capacity, including non DFS usage
+    final long capacity = node.getCapacity();
+    final double utilization = capacity <= 0 ? 1.0
+        : (double)(capacity - node.getRemaining()) / capacity;
+
+    // blocks scheduled to be written to or replicated from the node, which
+    // are not counted as active transfers yet; 1/2 for a single block
+    final int pending = node.getBlocksScheduled()
+        + node.getNumberOfBlocksToBeReplicated();
+    final double pendingRatio = pending / (1.0 + pending);
+
+    return loadWeight * load + utilizationWeight * utilization
+        + pendingWeight * pendingRatio;
+  }
+}
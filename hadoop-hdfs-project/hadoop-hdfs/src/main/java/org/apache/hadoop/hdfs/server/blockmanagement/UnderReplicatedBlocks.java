@@ -109,6 +109,11 @@ synchronized int size() {
     return size;
   }
 
+  /** Return the number of under replication blocks of a priority level */
+  synchronized int size(int priority) {
+    return priorityQueues.get(priority).size();
+  }
+
   /** Return the number of under replication blocks excluding corrupt blocks */
   synchronized int getUnderReplicatedBlockCount() {
     int size = 0;
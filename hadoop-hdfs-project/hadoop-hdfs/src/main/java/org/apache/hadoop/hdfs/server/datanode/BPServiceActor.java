@@ -575,16 +575,18 @@ DatanodeCommand cacheReport() throws IOException {
 
       String bpid = bpos.getBlockPoolId();
       List<Long> blockIds = dn.getFSDataset().getCacheReport(bpid);
+      Map<Long, Long> hotBlocks = dn.getHotBlockTracker().getHotBlocks(bpid);
       long createTime = monotonicNow();
 
-      cmd = bpNamenode.cacheReport(bpRegistration, bpid, blockIds);
+      cmd = bpNamenode.cacheReport(bpRegistration, bpid, blockIds, hotBlocks);
       long sendTime = monotonicNow();
       long createCost = createTime - startTime;
       long sendCost = sendTime - createTime;
       dn.getMetrics().addCacheReport(sendCost);
       if (LOG.isDebugEnabled()) {
         LOG.debug("CacheReport of " + blockIds.size()
-            + " block(s) took " + createCost + " msec to generate and "
+            + " block(s) and " + hotBlocks.size() + " hot block(s) took "
+            + createCost + " msec to generate and "
             + sendCost + " msecs for RPC and NN processing");
       }
     }
@@ -48,8 +48,10 @@
 import org.apache.hadoop.hdfs.protocol.datatransfer.PipelineAck;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIOStats;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
@@ -124,6 +126,8 @@ class BlockReceiver implements Closeable {
   private long restartBudget;
   /** the reference of the volume where the block receiver writes to */
   private ReplicaHandler replicaHandler;
+  /** I/O accounting of the volume, null if it is not known */
+  private VolumeIOStats ioStats;
 
   /**
    * for replaceBlock response
@@ -219,6 +223,8 @@ class BlockReceiver implements Closeable {
         }
       }
       replicaInfo = replicaHandler.getReplica();
+      final FsVolumeSpi volume = replicaHandler.getVolume();
+      ioStats = volume != null ? volume.getIOStats() : null;
       this.dropCacheBehindWrites = (cachingStrategy.getDropBehind() == null) ?
         datanode.getDnConf().dropCacheBehindWrites :
           cachingStrategy.getDropBehind();
@@ -585,6 +591,8 @@ private int receivePacket() throws IOException {
 
       final boolean shouldNotWriteChecksum = checksumReceivedLen == 0
           && streams.isTransientStorage();
+      final long ioBegin = ioStats != null ? ioStats.beginIO() : 0;
+      long ioBytes = 0;
       try {
         long onDiskLen = replicaInfo.getBytesOnDisk();
         if (onDiskLen<offsetInBlock) {
@@ -612,6 +620,7 @@ private int receivePacket() throws IOException {
               + dataBuf.arrayOffset() + dataBuf.position();
 
           int numBytesToDisk = (int)(offsetInBlock-onDiskLen);
+          ioBytes = numBytesToDisk;
           
           // Write data to disk.
           long begin = Time.monotonicNow();
@@ -665,6 +674,11 @@ private int receivePacket() throws IOException {
       } catch (IOException iex) {
         datanode.checkDiskErrorAsync();
         throw iex;
+      } finally {
+        if (ioStats != null) {
+          datanode.metrics.addVolumeWriteNanos(
+              ioStats.endWrite(ioBegin, ioBytes));
+        }
       }
     }
 
@@ -30,6 +30,7 @@
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 
 import org.apache.commons.logging.Log;
@@ -39,6 +40,7 @@
 import org.apache.hadoop.hdfs.protocol.datatransfer.PacketHeader;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.LengthInputStream;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIOStats;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.LongWritable;
@@ -46,6 +48,7 @@
 import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.net.SocketOutputStream;
 import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.DirectBufferPool;
 import org.apache.htrace.Sampler;
 import org.apache.htrace.Trace;
 import org.apache.htrace.TraceScope;
@@ -100,12 +103,15 @@ class BlockSender implements java.io.Closeable {
       System.getProperty("sun.arch.data.model").equals("32");
   /**
    * Minimum buffer used while sending data to clients. Used only if
-   * transferTo() is enabled. 64KB is not that large. It could be larger, but
-   * not sure if there will be much more improvement.
+   * transferTo() or direct buffers are enabled. 64KB is not that large. It
+   * could be larger, but not sure if there will be much more improvement.
    */
   private static final int MIN_BUFFER_WITH_TRANSFERTO = 64*1024;
   private static final int TRANSFERTO_BUFFER_SIZE = Math.max(
       HdfsConstants.IO_FILE_BUFFER_SIZE, MIN_BUFFER_WITH_TRANSFERTO);
+  /** Pool of the packet buffers used when sending from direct buffers */
+  private static final DirectBufferPool directBufferPool =
+      new DirectBufferPool();
   
   /** the block to read from */
   private final ExtendedBlock block;
@@ -133,6 +139,15 @@ class BlockSender implements java.io.Closeable {
   private long seqno;
   /** Set to true if transferTo is allowed for sending data to the client */
   private final boolean transferToAllowed;
+  /**
+   * Set to true if data which cannot be sent with transferTo may be sent
+   * from direct buffers
+   */
+  private final boolean directBuffersAllowed;
+  /** Channel of the block file, when sending from direct buffers */
+  private FileChannel blockInChannel;
+  /** Checksums of a packet, when sending from direct buffers */
+  private byte[] checksumBuf;
   /** Set to true once entire requested byte range has been sent to the client */
   private boolean sentEntireByteRange;
   /** When true, verify checksum while reading from checksum file */
@@ -146,6 +161,8 @@ class BlockSender implements java.io.Closeable {
   private FileDescriptor blockInFd;
   /** The reference to the volume where the block is located */
   private FsVolumeReference volumeRef;
+  /** I/O accounting of the volume, null if it is not known */
+  private VolumeIOStats ioStats;
 
   // Cache-management related fields
   private final long readaheadLength;
@@ -229,12 +246,10 @@ class BlockSender implements java.io.Closeable {
             "If verifying checksum, currently must also send it.");
       }
       
-      final Replica replica;
-      final long replicaVisibleLength;
-      synchronized(datanode.data) { 
-        replica = getReplica(block, datanode);
-        replicaVisibleLength = replica.getVisibleLength();
-      }
+      // the replica map is concurrent, so the lookup does not need to wait
+      // for the dataset lock
+      final Replica replica = getReplica(block, datanode);
+      final long replicaVisibleLength = replica.getVisibleLength();
       // if there is a write in progress
       ChunkChecksum chunkChecksum = null;
       if (replica instanceof ReplicaBeingWritten) {
@@ -266,9 +281,13 @@ class BlockSender implements java.io.Closeable {
       // use normal transfer in those cases
       this.transferToAllowed = datanode.getDnConf().transferToAllowed &&
         (!is32Bit || length <= Integer.MAX_VALUE);
+      this.directBuffersAllowed = datanode.getDnConf().directBuffersAllowed;
 
       // Obtain a reference before reading data
       this.volumeRef = datanode.data.getVolume(block).obtainReference();
+      if (volumeRef != null) {
+        ioStats = volumeRef.getVolume().getIOStats();
+      }
 
       /* 
        * (corruptChecksumOK, meta_file_exist): operation
@@ -432,6 +451,7 @@ public void close() throws IOException {
       }
       blockIn = null;
       blockInFd = null;
+      blockInChannel = null;
     }
     if (volumeRef != null) {
       IOUtils.cleanup(null, volumeRef);
@@ -508,7 +528,9 @@ private int numberOfChunks(long datalen) {
   /**
    * Sends a packet with up to maxChunks chunks of data.
    * 
-   * @param pkt buffer used for writing packet data
+   * @param pkt buffer used for writing packet data. A direct buffer is
+   *        filled with the whole packet, data included, and written to
+   *        <code>out</code> as a {@link WritableByteChannel}.
    * @param maxChunks maximum number of chunks to send
    * @param out stream to send data to
    * @param transferTo use transferTo to send data
@@ -541,14 +563,17 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     int headerOff = pkt.position() - headerLen;
     
     int checksumOff = pkt.position();
-    byte[] buf = pkt.array();
+    // The checksums of a direct packet are read into checksumBuf first
+    final boolean direct = pkt.isDirect();
+    byte[] buf = direct ? checksumBuf : pkt.array();
+    int bufChecksumOff = direct ? 0 : checksumOff;
     
     if (checksumSize > 0 && checksumIn != null) {
-      readChecksum(buf, checksumOff, checksumDataLen);
+      readChecksum(buf, bufChecksumOff, checksumDataLen);
 
       // write in progress that we need to use to get last checksum
       if (lastDataPacket && lastChunkChecksum != null) {
-        int start = checksumOff + checksumDataLen - checksumSize;
+        int start = bufChecksumOff + checksumDataLen - checksumSize;
         byte[] updatedChecksum = lastChunkChecksum.getChecksum();
         
         if (updatedChecksum != null) {
@@ -558,8 +583,31 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     }
     
     int dataOff = checksumOff + checksumDataLen;
-    if (!transferTo) { // normal transfer
-      IOUtils.readFully(blockIn, buf, dataOff, dataLen);
+    if (direct) {
+      pkt.put(checksumBuf, 0, checksumDataLen);
+      pkt.limit(dataOff + dataLen);
+      final long ioBegin = beginVolumeRead();
+      try {
+        while (pkt.hasRemaining()) {
+          if (blockInChannel.read(pkt) < 0) {
+            throw new IOException("Premature EOF from " + block);
+          }
+        }
+      } finally {
+        endVolumeRead(ioBegin, dataLen);
+      }
+
+      if (verifyChecksum) {
+        verifyChecksum(pkt, dataOff, dataLen, checksumOff, checksumDataLen);
+      }
+      pkt.position(headerOff);
+    } else if (!transferTo) { // normal transfer
+      final long ioBegin = beginVolumeRead();
+      try {
+        IOUtils.readFully(blockIn, buf, dataOff, dataLen);
+      } finally {
+        endVolumeRead(ioBegin, dataLen);
+      }
 
       if (verifyChecksum) {
         verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
@@ -576,11 +624,28 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
         FileChannel fileCh = ((FileInputStream)blockIn).getChannel();
         LongWritable waitTime = new LongWritable();
         LongWritable transferTime = new LongWritable();
-        sockOut.transferToFully(fileCh, blockInPosition, dataLen, 
-            waitTime, transferTime);
+        if (ioStats != null) {
+          ioStats.beginIO();
+        }
+        try {
+          sockOut.transferToFully(fileCh, blockInPosition, dataLen, 
+              waitTime, transferTime);
+        } finally {
+          // the time blocked on the network is not the volume's
+          if (ioStats != null) {
+            ioStats.endReadWithLatency(dataLen, transferTime.get());
+            datanode.metrics.addVolumeReadNanos(transferTime.get());
+          }
+        }
         datanode.metrics.addSendDataPacketBlockedOnNetworkNanos(waitTime.get());
         datanode.metrics.addSendDataPacketTransferNanos(transferTime.get());
         blockInPosition += dataLen;
+      } else if (direct) {
+        // out is not a buffered stream either, see doSendBlock
+        WritableByteChannel outCh = (WritableByteChannel)out;
+        while (pkt.hasRemaining()) {
+          outCh.write(pkt);
+        }
       } else {
         // normal transfer
         out.write(buf, headerOff, dataOff + dataLen - headerOff);
@@ -622,6 +687,18 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     return dataLen;
   }
   
+  /** Start accounting a read from the volume of the block. */
+  private long beginVolumeRead() {
+    return ioStats != null ? ioStats.beginIO() : 0;
+  }
+
+  /** End accounting a read started with {@link #beginVolumeRead()}. */
+  private void endVolumeRead(long ioBegin, long bytes) {
+    if (ioStats != null) {
+      datanode.metrics.addVolumeReadNanos(ioStats.endRead(ioBegin, bytes));
+    }
+  }
+  
   /**
    * Read checksum into given buffer
    * @param buf buffer to read the checksum into
@@ -685,6 +762,26 @@ public void verifyChecksum(final byte[] buf, final int dataOffset,
     }
   }
   
+  /**
+   * Verify the checksums of the data of a direct packet buffer. The native
+   * checksum code is used when it is available.
+   * 
+   * @param pkt packet buffer, with checksums and data
+   * @param dataOffset position where data is written in the buffer
+   * @param datalen length of data
+   * @param checksumOffset offset where checksum is written in the buffer
+   * @param checksumLen length of the checksums
+   * @throws ChecksumException on failed checksum verification
+   */
+  private void verifyChecksum(ByteBuffer pkt, int dataOffset, int datalen,
+      int checksumOffset, int checksumLen) throws ChecksumException {
+    ByteBuffer data = pkt.duplicate();
+    data.limit(dataOffset + datalen).position(dataOffset);
+    ByteBuffer checksums = pkt.duplicate();
+    checksums.limit(checksumOffset + checksumLen).position(checksumOffset);
+    checksum.verifyChunkedSums(data, checksums, block.getBlockName(), offset);
+  }
+  
   /**
    * sendBlock() is used to read block and its metadata and stream the data to
    * either a client or to another datanode. 
@@ -694,7 +791,8 @@ public void verifyChecksum(final byte[] buf, final int dataOffset,
    *        be a wrapper over this stream. This enables optimizations for
    *        sending the data, e.g. 
    *        {@link SocketOutputStream#transferToFully(FileChannel, 
-   *        long, int)}.
+   *        long, int)}, or writing direct buffers to a
+   *        {@link WritableByteChannel}.
    * @param throttler for sending data.
    * @return total bytes read, including checksum data.
    */
@@ -731,12 +829,17 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
     manageOsCache();
 
     final long startTime = ClientTraceLog.isDebugEnabled() ? System.nanoTime() : 0;
+    ByteBuffer pktBuf = null;
     try {
       int maxChunksPerPacket;
       int pktBufSize = PacketHeader.PKT_MAX_HEADER_LEN;
       boolean transferTo = transferToAllowed && !verifyChecksum
           && baseStream instanceof SocketOutputStream
           && blockIn instanceof FileInputStream;
+      // Otherwise, e.g. for encrypted streams, avoid the copies to the heap
+      boolean directTransfer = !transferTo && directBuffersAllowed
+          && baseStream instanceof WritableByteChannel
+          && blockIn instanceof FileInputStream;
       if (transferTo) {
         FileChannel fileChannel = ((FileInputStream)blockIn).getChannel();
         blockInPosition = fileChannel.position();
@@ -745,6 +848,14 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
         
         // Smaller packet size to only hold checksum when doing transferTo
         pktBufSize += checksumSize * maxChunksPerPacket;
+      } else if (directTransfer) {
+        blockInChannel = ((FileInputStream)blockIn).getChannel();
+        // Send whatever was buffered before writing to the base stream
+        out.flush();
+        streamForSendChunks = baseStream;
+        maxChunksPerPacket = numberOfChunks(TRANSFERTO_BUFFER_SIZE);
+        checksumBuf = new byte[checksumSize * maxChunksPerPacket];
+        pktBufSize += (chunkSize + checksumSize) * maxChunksPerPacket;
       } else {
         maxChunksPerPacket = Math.max(1,
             numberOfChunks(HdfsConstants.IO_FILE_BUFFER_SIZE));
@@ -752,7 +863,8 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
         pktBufSize += (chunkSize + checksumSize) * maxChunksPerPacket;
       }
 
-      ByteBuffer pktBuf = ByteBuffer.allocate(pktBufSize);
+      pktBuf = directTransfer ? directBufferPool.getBuffer(pktBufSize)
+          : ByteBuffer.allocate(pktBufSize);
 
       while (endOffset > offset && !Thread.currentThread().isInterrupted()) {
         manageOsCache();
@@ -776,6 +888,9 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
         sentEntireByteRange = true;
       }
     } finally {
+      if (pktBuf != null && pktBuf.isDirect()) {
+        directBufferPool.returnBuffer(pktBuf);
+      }
       if ((clientTraceFmt != null) && ClientTraceLog.isDebugEnabled()) {
         final long endTime = System.nanoTime();
         ClientTraceLog.debug(String.format(clientTraceFmt, totalRead,
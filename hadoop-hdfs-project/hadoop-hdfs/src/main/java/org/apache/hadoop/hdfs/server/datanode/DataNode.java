@@ -294,6 +294,7 @@ public static InetSocketAddress createSocketAddr(String target) {
   DataXceiverServer xserver = null;
   Daemon localDataXceiverServer = null;
   ShortCircuitRegistry shortCircuitRegistry = null;
+  private HotBlockTracker hotBlockTracker = null;
   ThreadGroup threadGroup = null;
   private DNConf dnConf;
   private volatile boolean heartbeatsDisabledForTests = false;
@@ -924,7 +925,12 @@ private void initDataXceiver(Configuration conf) throws IOException {
     streamingAddr = tcpPeerServer.getStreamingAddr();
     LOG.info("Opened streaming server at " + streamingAddr);
     this.threadGroup = new ThreadGroup("dataXceiverServer");
-    xserver = new DataXceiverServer(tcpPeerServer, conf, this);
+    if (conf.getBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFER_NIO_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_NIO_ENABLED_DEFAULT)) {
+      xserver = new NioDataXceiverServer(tcpPeerServer, conf, this);
+    } else {
+      xserver = new DataXceiverServer(tcpPeerServer, conf, this);
+    }
     this.dataXceiverServer = new Daemon(threadGroup, xserver);
     this.threadGroup.setDaemon(true); // auto destroy when empty
 
@@ -1125,6 +1131,7 @@ void startDataNode(Configuration conf,
     }
     LOG.info("Starting DataNode with maxLockedMemory = " +
         dnConf.maxLockedMemory);
+    hotBlockTracker = new HotBlockTracker(conf, dnConf.maxLockedMemory > 0);
 
     storage = new DataStorage();
     
@@ -3157,6 +3164,22 @@ public ShortCircuitRegistry getShortCircuitRegistry() {
     return shortCircuitRegistry;
   }
 
+  public HotBlockTracker getHotBlockTracker() {
+    return hotBlockTracker;
+  }
+
+  /**
+   * Count a read of a block replica by a client, to find the hot blocks to
+   * report to the NameNode, and to compute the hit rate of the cache.
+   */
+  void recordBlockRead(ExtendedBlock block) {
+    if (hotBlockTracker != null && hotBlockTracker.isEnabled()) {
+      hotBlockTracker.recordRead(block.getBlockPoolId(), block.getBlockId());
+      metrics.incrBlockReads(
+          data.isCached(block.getBlockPoolId(), block.getBlockId()));
+    }
+  }
+
   /**
    * Check the disk error
    */
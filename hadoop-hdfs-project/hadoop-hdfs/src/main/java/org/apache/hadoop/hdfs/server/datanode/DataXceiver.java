@@ -110,6 +110,10 @@ class DataXceiver extends Receiver implements Runnable {
   private final InputStream socketIn;
   private OutputStream socketOut;
   private BlockReceiver blockReceiver = null;
+  /** Whether the handshake has been done on the connection. */
+  private boolean connectionStarted = false;
+  /** The number of operations processed on the connection. */
+  private int opsProcessed = 0;
   
   /**
    * Client Name used in previous operation. Not available on first request
@@ -175,42 +179,53 @@ public void sendOOB() throws IOException, InterruptedException {
       blockReceiver.sendOOB();
   }
   
+  /**
+   * Register with the server and do the SASL handshake on the connection.
+   * @return false if the client did not send the expected handshake
+   */
+  private boolean startConnection() throws IOException {
+    connectionStarted = true;
+    dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    InputStream input = socketIn;
+    try {
+      IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
+        socketIn, datanode.getXferAddress().getPort(),
+        datanode.getDatanodeId());
+      input = new BufferedInputStream(saslStreams.in,
+        HdfsConstants.SMALL_BUFFER_SIZE);
+      socketOut = saslStreams.out;
+    } catch (InvalidMagicNumberException imne) {
+      if (imne.isHandshake4Encryption()) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption");
+      } else {
+        LOG.info("Failed to read expected SASL data transfer protection " +
+            "handshake from client at " + peer.getRemoteAddressString() + 
+            ". Perhaps the client is running an older version of Hadoop " +
+            "which does not support SASL data transfer protection");
+      }
+      return false;
+    }
+    
+    super.initialize(new DataInputStream(input));
+    return true;
+  }
+
   /**
    * Read/write data from/to the DataXceiverServer.
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
     Op op = null;
 
     try {
-      dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-          HdfsConstants.SMALL_BUFFER_SIZE);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption");
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at " + peer.getRemoteAddressString() + 
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection");
-        }
+      if (!startConnection()) {
         return;
       }
       
-      super.initialize(new DataInputStream(input));
-      
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
@@ -253,40 +268,118 @@ public void run() {
       } while ((peer != null) &&
           (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0));
     } catch (Throwable t) {
-      String s = datanode.getDisplayName() + ":DataXceiver error processing "
-          + ((op == null) ? "unknown" : op.name()) + " operation "
-          + " src: " + remoteAddress + " dst: " + localAddress;
-      if (op == Op.WRITE_BLOCK && t instanceof ReplicaAlreadyExistsException) {
-        // For WRITE_BLOCK, it is okay if the replica already exists since
-        // client and replication may write the same block to the same datanode
-        // at the same time.
-        if (LOG.isTraceEnabled()) {
-          LOG.trace(s, t);
-        } else {
-          LOG.info(s + "; " + t);
-        }
-      } else if (op == Op.READ_BLOCK && t instanceof SocketTimeoutException) {
-        String s1 =
-            "Likely the client has stopped reading, disconnecting it";
-        s1 += " (" + s + ")";
-        if (LOG.isTraceEnabled()) {
-          LOG.trace(s1, t);
-        } else {
-          LOG.info(s1 + "; " + t);          
+      handleError(op, t);
+    } finally {
+      closeConnection();
+    }
+  }
+
+  /**
+   * Process the operations received on the connection, for a server which
+   * waits for the operations without holding a thread, see
+   * {@link NioDataXceiverServer}. The caller has seen the connection become
+   * readable; the operations already buffered are processed too.
+   *
+   * @return true if the connection stays open for the next operation;
+   *         false if it has been closed.
+   */
+  boolean processAvailableOps() {
+    Op op = null;
+    boolean keepOpen = false;
+
+    try {
+      if (!connectionStarted) {
+        if (!startConnection()) {
+          return false;
         }
       } else {
-        LOG.error(s, t);
+        dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
       }
+
+      do {
+        updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
+        peer.setReadTimeout(dnConf.socketTimeout);
+        try {
+          op = readOp();
+        } catch (IOException err) {
+          // A cached connection closed by the client is readable too.
+          if (opsProcessed > 0 &&
+              (err instanceof EOFException || err instanceof ClosedChannelException)) {
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Cached " + peer + " closing after " + opsProcessed + " ops");
+            }
+            return false;
+          }
+          incrDatanodeNetworkErrors();
+          throw err;
+        }
+
+        opStartTime = monotonicNow();
+        processOp(op);
+        ++opsProcessed;
+      } while ((peer != null) && !peer.isClosed() &&
+          dnConf.socketKeepaliveTimeout > 0 && in.available() > 0);
+      keepOpen = (peer != null) && !peer.isClosed() &&
+          dnConf.socketKeepaliveTimeout > 0;
+    } catch (Throwable t) {
+      handleError(op, t);
     } finally {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
-            + datanode.getXceiverCount());
+      if (!keepOpen) {
+        closeConnection();
+      }
+    }
+    return keepOpen;
+  }
+
+  /** @return true if an operation has been processed on the connection. */
+  boolean hasProcessedOps() {
+    return opsProcessed > 0;
+  }
+
+  /** Close a connection which is waiting for its next operation. */
+  void closeIdleConnection() {
+    if (peer != null) {
+      dataXceiverServer.closePeer(peer);
+      IOUtils.closeStream(in);
+    }
+  }
+
+  private void handleError(Op op, Throwable t) {
+    String s = datanode.getDisplayName() + ":DataXceiver error processing "
+        + ((op == null) ? "unknown" : op.name()) + " operation "
+        + " src: " + remoteAddress + " dst: " + localAddress;
+    if (op == Op.WRITE_BLOCK && t instanceof ReplicaAlreadyExistsException) {
+      // For WRITE_BLOCK, it is okay if the replica already exists since
+      // client and replication may write the same block to the same datanode
+      // at the same time.
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(s, t);
+      } else {
+        LOG.info(s + "; " + t);
       }
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+    } else if (op == Op.READ_BLOCK && t instanceof SocketTimeoutException) {
+      String s1 =
+          "Likely the client has stopped reading, disconnecting it";
+      s1 += " (" + s + ")";
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(s1, t);
+      } else {
+        LOG.info(s1 + "; " + t);          
       }
+    } else {
+      LOG.error(s, t);
+    }
+  }
+
+  private void closeConnection() {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
+          + datanode.getXceiverCount());
+    }
+    updateCurrentThreadName("Cleaning up");
+    if (peer != null) {
+      dataXceiverServer.closePeer(peer);
+      IOUtils.closeStream(in);
     }
   }
 
@@ -315,6 +408,7 @@ public void requestShortCircuitFds(final ExtendedBlock blk,
         }
         fis = datanode.requestShortCircuitFdsForRead(blk, token, maxVersion);
         Preconditions.checkState(fis != null);
+        datanode.recordBlockRead(blk);
         bld.setStatus(SUCCESS);
         bld.setShortCircuitAccessVersion(DataNode.CURRENT_BLOCK_FORMAT_VERSION);
       } catch (ShortCircuitFdsVersionException e) {
@@ -534,6 +628,8 @@ public void readBlock(final ExtendedBlock block,
         throw e;
       }
       
+      datanode.recordBlockRead(block);
+
       // send op status
       writeSuccessWithChecksumInfo(blockSender, new DataOutputStream(getOutputStream()));
 
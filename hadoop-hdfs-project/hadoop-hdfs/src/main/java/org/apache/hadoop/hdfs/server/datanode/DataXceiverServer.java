@@ -43,7 +43,7 @@ class DataXceiverServer implements Runnable {
   public static final Log LOG = DataNode.LOG;
   
   private final PeerServer peerServer;
-  private final DataNode datanode;
+  final DataNode datanode;
   private final HashMap<Peer, Thread> peers = new HashMap<Peer, Thread>();
   private final HashMap<Peer, DataXceiver> peersXceiver = new HashMap<Peer, DataXceiver>();
   private boolean closed = false;
@@ -142,9 +142,7 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        startXceiver(peer);
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -203,6 +201,13 @@ public void run() {
     closeAllPeers();
   }
 
+  /** Start serving the operations of a new connection. */
+  void startXceiver(Peer peer) throws IOException {
+    new Daemon(datanode.threadGroup,
+        DataXceiver.create(peer, datanode, this))
+        .start();
+  }
+
   void kill() {
     assert (datanode.shouldRun == false || datanode.shutdownForUpgrade) :
       "shoudRun should be set to false or restarting should be true"
@@ -120,6 +120,24 @@ public static File idToBlockDir(File root, long blockId) {
     return new File(root, path);
   }
 
+  /**
+   * Get the index of a block directory from its name, the reverse of the
+   * naming in {@link #idToBlockDir(File, long)}.
+   * @return the index, or -1 if the name is not the name of a block directory
+   */
+  public static int getBlockDirIndex(String name) {
+    if (!name.startsWith(DataStorage.BLOCK_SUBDIR_PREFIX)) {
+      return -1;
+    }
+    try {
+      int index = Integer.parseInt(
+          name.substring(DataStorage.BLOCK_SUBDIR_PREFIX.length()));
+      return index >= 0 && index <= 0xff ? index : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
   /**
    * @return the FileInputStream for the meta data of the given block.
    * @throws FileNotFoundException
@@ -19,6 +19,7 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -46,12 +47,19 @@
 import org.apache.hadoop.hdfs.server.common.GenerationStamp;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.Time;
 
 /**
  * Periodically scans the data directories for block and block metadata files.
  * Reconciles the differences with block information maintained in the dataset.
+ * <p>
+ * The block directories of the volumes may be split into slices, see
+ * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_SLICES_KEY}. Each scan then
+ * only lists the directories of one slice, and only reconciles the blocks
+ * which belong in these directories, so that the I/O of a full scan is
+ * spread over the scan interval.
  */
 @InterfaceAudience.Private
 public class DirectoryScanner implements Runnable {
@@ -61,6 +69,10 @@ public class DirectoryScanner implements Runnable {
   private final ExecutorService reportCompileThreadPool;
   private final ScheduledExecutorService masterThread;
   private final long scanPeriodMsecs;
+  private final int numSlices;
+  private final int throttleLimitMsPerSec;
+  /** The slice of the block directories compared by the next scan. */
+  private int nextSlice = 0;
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
   private final DataNode datanode;
@@ -314,7 +326,14 @@ public long getGenStamp() {
     this.dataset = dataset;
     int interval = conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INTERVAL_KEY,
         DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INTERVAL_DEFAULT);
-    scanPeriodMsecs = interval * 1000L; //msec
+    numSlices = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_SLICES_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_SLICES_DEFAULT));
+    // every slice is scanned once per interval
+    scanPeriodMsecs = Math.max(1000L, interval * 1000L / numSlices); //msec
+    throttleLimitMsPerSec = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT);
     int threads = 
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
@@ -330,11 +349,26 @@ void start() {
     long offset = DFSUtil.getRandom().nextInt((int) (scanPeriodMsecs/1000L)) * 1000L; //msec
     long firstScanTime = Time.now() + offset;
     LOG.info("Periodic Directory Tree Verification scan starting at " 
-        + firstScanTime + " with interval " + scanPeriodMsecs);
+        + firstScanTime + " with interval " + scanPeriodMsecs
+        + (numSlices > 1 ? " per slice, " + numSlices + " slices" : ""));
     masterThread.scheduleAtFixedRate(this, offset, scanPeriodMsecs, 
                                      TimeUnit.MILLISECONDS);
   }
   
+  /**
+   * Get the slice of a block: the index of the leaf directory of the block in
+   * the block ID-based layout, see {@link DatanodeUtil#idToBlockDir}, modulo
+   * the number of slices.
+   */
+  static int getSlice(long blockId, int numSlices) {
+    return (int) ((blockId >> 8) & 0xffff) % numSlices;
+  }
+
+  /** @return the slice compared by the next scan. */
+  int getNextSlice() {
+    return nextSlice;
+  }
+
   // for unit test
   boolean getRunStatus() {
     return shouldRun;
@@ -419,92 +453,122 @@ void reconcile() throws IOException {
   /**
    * Scan for the differences between disk and in-memory blocks
    * Scan only the "finalized blocks" lists of both disk and memory.
+   * <p>
+   * The dataset lock is only held to copy the finalized blocks of a block
+   * pool. The differences are computed on the copy, which may be stale, so
+   * {@link FsDatasetSpi#checkAndUpdate} checks each of them again against
+   * the current state of the dataset.
    */
   void scan() {
     clear();
-    Map<String, ScanInfo[]> diskReport = getDiskReport();
+    final int slice = nextSlice;
+    nextSlice = (nextSlice + 1) % numSlices;
+    final DataNodeMetrics metrics = datanode.getMetrics();
 
-    // Hold FSDataset lock to prevent further changes to the block map
-    synchronized(dataset) {
-      for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
-        String bpid = entry.getKey();
-        ScanInfo[] blockpoolReport = entry.getValue();
-        
-        Stats statsRecord = new Stats(bpid);
-        stats.put(bpid, statsRecord);
-        LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
-        diffs.put(bpid, diffRecord);
-        
-        statsRecord.totalBlocks = blockpoolReport.length;
-        List<FinalizedReplica> bl = dataset.getFinalizedBlocks(bpid);
-        FinalizedReplica[] memReport = bl.toArray(new FinalizedReplica[bl.size()]);
-        Arrays.sort(memReport); // Sort based on blockId
-  
-        int d = 0; // index for blockpoolReport
-        int m = 0; // index for memReprot
-        while (m < memReport.length && d < blockpoolReport.length) {
-          FinalizedReplica memBlock = memReport[m];
-          ScanInfo info = blockpoolReport[d];
-          if (info.getBlockId() < memBlock.getBlockId()) {
-            if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
-              // Block is missing in memory
-              statsRecord.missingMemoryBlocks++;
-              addDifference(diffRecord, statsRecord, info);
-            }
-            d++;
-            continue;
-          }
-          if (info.getBlockId() > memBlock.getBlockId()) {
-            // Block is missing on the disk
-            addDifference(diffRecord, statsRecord,
-                          memBlock.getBlockId(), info.getVolume());
-            m++;
-            continue;
-          }
-          // Block file and/or metadata file exists on the disk
-          // Block exists in memory
-          if (info.getBlockFile() == null) {
-            // Block metadata file exits and block file is missing
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getGenStamp() != memBlock.getGenerationStamp()
-              || info.getBlockFileLength() != memBlock.getNumBytes()) {
-            // Block metadata file is missing or has wrong generation stamp,
-            // or block file length is different than expected
-            statsRecord.mismatchBlocks++;
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getBlockFile().compareTo(memBlock.getBlockFile()) != 0) {
-            // volumeMap record and on-disk files don't match.
-            statsRecord.duplicateBlocks++;
+    long begin = Time.monotonicNow();
+    Map<String, ScanInfo[]> diskReport = getDiskReport(slice);
+    metrics.addDirectoryScanCompileMs(Time.monotonicNow() - begin);
+
+    begin = Time.monotonicNow();
+    for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
+      String bpid = entry.getKey();
+      ScanInfo[] blockpoolReport = entry.getValue();
+
+      Stats statsRecord = new Stats(bpid);
+      stats.put(bpid, statsRecord);
+      LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
+      diffs.put(bpid, diffRecord);
+
+      statsRecord.totalBlocks = blockpoolReport.length;
+      FinalizedReplica[] memReport = getMemReport(bpid, slice);
+
+      int d = 0; // index for blockpoolReport
+      int m = 0; // index for memReprot
+      while (m < memReport.length && d < blockpoolReport.length) {
+        FinalizedReplica memBlock = memReport[m];
+        ScanInfo info = blockpoolReport[d];
+        if (info.getBlockId() < memBlock.getBlockId()) {
+          if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
+            // Block is missing in memory
+            statsRecord.missingMemoryBlocks++;
             addDifference(diffRecord, statsRecord, info);
           }
           d++;
+          continue;
+        }
+        if (info.getBlockId() > memBlock.getBlockId()) {
+          // Block is missing on the disk
+          addDifference(diffRecord, statsRecord,
+                        memBlock.getBlockId(), info.getVolume());
+          m++;
+          continue;
+        }
+        // Block file and/or metadata file exists on the disk
+        // Block exists in memory
+        if (info.getBlockFile() == null) {
+          // Block metadata file exits and block file is missing
+          addDifference(diffRecord, statsRecord, info);
+        } else if (info.getGenStamp() != memBlock.getGenerationStamp()
+            || info.getBlockFileLength() != memBlock.getNumBytes()) {
+          // Block metadata file is missing or has wrong generation stamp,
+          // or block file length is different than expected
+          statsRecord.mismatchBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+        } else if (info.getBlockFile().compareTo(memBlock.getBlockFile()) != 0) {
+          // volumeMap record and on-disk files don't match.
+          statsRecord.duplicateBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+        }
+        d++;
 
-          if (d < blockpoolReport.length) {
-            // There may be multiple on-disk records for the same block, don't increment
-            // the memory record pointer if so.
-            ScanInfo nextInfo = blockpoolReport[Math.min(d, blockpoolReport.length - 1)];
-            if (nextInfo.getBlockId() != info.blockId) {
-              ++m;
-            }
-          } else {
+        if (d < blockpoolReport.length) {
+          // There may be multiple on-disk records for the same block, don't increment
+          // the memory record pointer if so.
+          ScanInfo nextInfo = blockpoolReport[Math.min(d, blockpoolReport.length - 1)];
+          if (nextInfo.getBlockId() != info.blockId) {
             ++m;
           }
+        } else {
+          ++m;
         }
-        while (m < memReport.length) {
-          FinalizedReplica current = memReport[m++];
-          addDifference(diffRecord, statsRecord,
-                        current.getBlockId(), current.getVolume());
+      }
+      while (m < memReport.length) {
+        FinalizedReplica current = memReport[m++];
+        addDifference(diffRecord, statsRecord,
+                      current.getBlockId(), current.getVolume());
+      }
+      while (d < blockpoolReport.length) {
+        if (!dataset.isDeletingBlock(bpid, blockpoolReport[d].getBlockId())) {
+          statsRecord.missingMemoryBlocks++;
+          addDifference(diffRecord, statsRecord, blockpoolReport[d]);
         }
-        while (d < blockpoolReport.length) {
-          if (!dataset.isDeletingBlock(bpid, blockpoolReport[d].getBlockId())) {
-            statsRecord.missingMemoryBlocks++;
-            addDifference(diffRecord, statsRecord, blockpoolReport[d]);
-          }
-          d++;
+        d++;
+      }
+      LOG.info(statsRecord.toString()
+          + (numSlices > 1 ? ", slice " + slice + " of " + numSlices : ""));
+    } //end for
+    metrics.addDirectoryScanDiffMs(Time.monotonicNow() - begin);
+  }
+
+  /**
+   * Get the finalized blocks of the given slice in memory, sorted by blockId.
+   */
+  private FinalizedReplica[] getMemReport(String bpid, int slice) {
+    // getFinalizedBlocks copies the replicas under the dataset lock
+    List<FinalizedReplica> bl = dataset.getFinalizedBlocks(bpid);
+    if (numSlices > 1) {
+      List<FinalizedReplica> inSlice =
+          new ArrayList<FinalizedReplica>(bl.size() / numSlices + 1);
+      for (FinalizedReplica b : bl) {
+        if (getSlice(b.getBlockId(), numSlices) == slice) {
+          inSlice.add(b);
         }
-        LOG.info(statsRecord.toString());
-      } //end for
-    } //end synchronized
+      }
+      bl = inSlice;
+    }
+    FinalizedReplica[] memReport = bl.toArray(new FinalizedReplica[bl.size()]);
+    Arrays.sort(memReport); // Sort based on blockId
+    return memReport;
   }
 
   /**
@@ -539,7 +603,7 @@ private static boolean isValid(final FsDatasetSpi<?> dataset,
   }
 
   /** Get lists of blocks on the disk sorted by blockId, per blockpool */
-  private Map<String, ScanInfo[]> getDiskReport() {
+  private Map<String, ScanInfo[]> getDiskReport(int slice) {
     // First get list of data directories
     final List<? extends FsVolumeSpi> volumes = dataset.getVolumes();
 
@@ -553,7 +617,8 @@ private Map<String, ScanInfo[]> getDiskReport() {
     for (int i = 0; i < volumes.size(); i++) {
       if (isValid(dataset, volumes.get(i))) {
         ReportCompiler reportCompiler =
-          new ReportCompiler(datanode,volumes.get(i));
+          new ReportCompiler(datanode, volumes.get(i), slice, numSlices,
+              throttleLimitMsPerSec);
         Future<ScanInfoPerBlockPool> result = 
           reportCompileThreadPool.submit(reportCompiler);
         compilersInProgress.put(i, result);
@@ -592,31 +657,93 @@ private static class ReportCompiler
   implements Callable<ScanInfoPerBlockPool> {
     private final FsVolumeSpi volume;
     private final DataNode datanode;
-
-    public ReportCompiler(DataNode datanode, FsVolumeSpi volume) {
+    private final int slice;
+    private final int numSlices;
+    private final int throttleLimitMsPerSec;
+
+    /** Start of the current throttling period. */
+    private long throttlePeriodStart;
+    private long dirsListed = 0;
+    private long blocksScanned = 0;
+    private long throttledMs = 0;
+
+    public ReportCompiler(DataNode datanode, FsVolumeSpi volume, int slice,
+        int numSlices, int throttleLimitMsPerSec) {
       this.datanode = datanode;
       this.volume = volume;
+      this.slice = slice;
+      this.numSlices = numSlices;
+      this.throttleLimitMsPerSec = throttleLimitMsPerSec;
     }
 
     @Override
     public ScanInfoPerBlockPool call() throws Exception {
       String[] bpList = volume.getBlockPoolList();
       ScanInfoPerBlockPool result = new ScanInfoPerBlockPool(bpList.length);
-      for (String bpid : bpList) {
-        LinkedList<ScanInfo> report = new LinkedList<ScanInfo>();
-        File bpFinalizedDir = volume.getFinalizedDir(bpid);
-        result.put(bpid,
-            compileReport(volume, bpFinalizedDir, bpFinalizedDir, report));
+      throttlePeriodStart = Time.monotonicNow();
+      try {
+        for (String bpid : bpList) {
+          LinkedList<ScanInfo> report = new LinkedList<ScanInfo>();
+          File bpFinalizedDir = volume.getFinalizedDir(bpid);
+          result.put(bpid,
+              compileReport(volume, bpFinalizedDir, bpFinalizedDir, report));
+        }
+      } finally {
+        DataNodeMetrics metrics = datanode.getMetrics();
+        metrics.incrDirectoryScanDirsListed(dirsListed);
+        metrics.incrDirectoryScanBlocksScanned(blocksScanned);
+        metrics.incrDirectoryScanThrottledMs(throttledMs);
       }
       return result;
     }
 
+    /**
+     * Limit the time spent listing directories to throttleLimitMsPerSec in
+     * each second, by sleeping for the rest of the second once the limit
+     * is reached.
+     */
+    private void throttle() throws InterruptedException {
+      if (throttleLimitMsPerSec <= 0 || throttleLimitMsPerSec >= 1000) {
+        return;
+      }
+      long elapsed = Time.monotonicNow() - throttlePeriodStart;
+      if (elapsed >= throttleLimitMsPerSec) {
+        if (elapsed < 1000) {
+          Thread.sleep(1000 - elapsed);
+          throttledMs += 1000 - elapsed;
+        }
+        throttlePeriodStart = Time.monotonicNow();
+      }
+    }
+
+    /**
+     * Is the given directory, a child of <dir>, a block directory of another
+     * slice? Only the leaf directories of the block ID-based layout are
+     * skipped, blocks in any other directory are filtered by their ID.
+     */
+    private boolean isOtherSlice(File bpFinalizedDir, File dir, File child) {
+      if (numSlices <= 1 || !bpFinalizedDir.equals(dir.getParentFile())) {
+        return false;
+      }
+      int d1 = DatanodeUtil.getBlockDirIndex(dir.getName());
+      int d2 = DatanodeUtil.getBlockDirIndex(child.getName());
+      return d1 >= 0 && d2 >= 0
+          && ((d1 << 8) | d2) % numSlices != slice;
+    }
+
+    private boolean isInSlice(long blockId) {
+      return numSlices <= 1 || getSlice(blockId, numSlices) == slice;
+    }
+
     /** Compile list {@link ScanInfo} for the blocks in the directory <dir> */
     private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
-        File bpFinalizedDir, File dir, LinkedList<ScanInfo> report) {
+        File bpFinalizedDir, File dir, LinkedList<ScanInfo> report)
+        throws InterruptedException {
+      throttle();
       File[] files;
       try {
         files = FileUtil.listFiles(dir);
+        dirsListed++;
       } catch (IOException ioe) {
         LOG.warn("Exception occured while compiling report: ", ioe);
         // Initiate a check on disk failure.
@@ -633,12 +760,17 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
        */
       for (int i = 0; i < files.length; i++) {
         if (files[i].isDirectory()) {
-          compileReport(vol, bpFinalizedDir, files[i], report);
+          if (!isOtherSlice(bpFinalizedDir, dir, files[i])) {
+            compileReport(vol, bpFinalizedDir, files[i], report);
+          }
           continue;
         }
         if (!Block.isBlockFilename(files[i])) {
           if (isBlockMetaFile(Block.BLOCK_FILE_PREFIX, files[i].getName())) {
             long blockId = Block.getBlockId(files[i].getName());
+            if (!isInSlice(blockId)) {
+              continue;
+            }
             verifyFileLocation(files[i].getParentFile(), bpFinalizedDir,
                 blockId);
             report.add(new ScanInfo(blockId, null, files[i], vol));
@@ -659,9 +791,13 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
             break;
           }
         }
+        if (!isInSlice(blockId)) {
+          continue;
+        }
         verifyFileLocation(blockFile.getParentFile(), bpFinalizedDir,
             blockId);
         report.add(new ScanInfo(blockId, blockFile, metaFile, vol));
+        blocksScanned++;
       }
       return report;
     }
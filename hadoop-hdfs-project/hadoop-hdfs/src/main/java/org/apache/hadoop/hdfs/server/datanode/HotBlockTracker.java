@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.ExtendedBlockId;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Counts the recent reads of the block replicas of a DataNode, so that the
+ * most read ones can be reported as hot to the NameNode in the cache
+ * reports.
+ *
+ * The read counts decay exponentially with a configurable half-life: a
+ * block is hot when its decayed count reaches the configured minimum
+ * number of reads.  The decay is applied lazily, when a block is read and
+ * when the hot blocks are computed, so recording a read is cheap.
+ */
+@InterfaceAudience.Private
+public class HotBlockTracker {
+  /**
+   * Bound on the number of tracked blocks, so that a scan of many blocks
+   * can't use up the heap.  Blocks which are not read any more are dropped
+   * each time the hot blocks are computed.
+   */
+  private static final int MAX_TRACKED_BLOCKS = 1 << 20;
+
+  /**
+   * Count below which a block is not tracked any more.
+   */
+  private static final double MIN_TRACKED_READS = 0.1;
+
+  private static class ReadCount {
+    private double reads;
+    private long lastUpdateMs;
+
+    ReadCount(long now) {
+      this.lastUpdateMs = now;
+    }
+
+    /**
+     * @return the number of reads, decayed to the given time.
+     */
+    synchronized double decay(long now, long halfLifeMs) {
+      if (now > lastUpdateMs) {
+        reads *= Math.pow(0.5, (double) (now - lastUpdateMs) / halfLifeMs);
+        lastUpdateMs = now;
+      }
+      return reads;
+    }
+
+    synchronized void add(long now, long halfLifeMs) {
+      decay(now, halfLifeMs);
+      reads++;
+    }
+  }
+
+  private final boolean enabled;
+  private final int minReads;
+  private final long halfLifeMs;
+  private final int maxReported;
+  private final ConcurrentHashMap<ExtendedBlockId, ReadCount> counts =
+      new ConcurrentHashMap<ExtendedBlockId, ReadCount>();
+
+  /**
+   * @param conf the configuration
+   * @param enabled whether to count the reads; this is only useful if the
+   *                DataNode can cache blocks
+   */
+  public HotBlockTracker(Configuration conf, boolean enabled) {
+    this.enabled = enabled;
+    this.minReads = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_MIN_READS_KEY,
+        DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_MIN_READS_DEFAULT);
+    this.halfLifeMs = Math.max(1, conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_HALF_LIFE_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_HALF_LIFE_MS_DEFAULT));
+    this.maxReported = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_MAX_REPORTED_KEY,
+        DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_MAX_REPORTED_DEFAULT);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Count a read of a block replica.
+   */
+  public void recordRead(String bpid, long blockId) {
+    if (!enabled) {
+      return;
+    }
+    recordRead(new ExtendedBlockId(blockId, bpid), Time.monotonicNow());
+  }
+
+  @VisibleForTesting
+  void recordRead(ExtendedBlockId key, long now) {
+    ReadCount count = counts.get(key);
+    if (count == null) {
+      if (counts.size() >= MAX_TRACKED_BLOCKS) {
+        return;
+      }
+      ReadCount newCount = new ReadCount(now);
+      count = counts.putIfAbsent(key, newCount);
+      if (count == null) {
+        count = newCount;
+      }
+    }
+    count.add(now, halfLifeMs);
+  }
+
+  /**
+   * Compute the hot blocks of a block pool, and drop the blocks which have
+   * not been read for a long time.
+   *
+   * @param bpid the block pool
+   * @return the IDs of the hot blocks mapped to their recent number of reads,
+   *         most read first
+   */
+  public Map<Long, Long> getHotBlocks(String bpid) {
+    return getHotBlocks(bpid, Time.monotonicNow());
+  }
+
+  @VisibleForTesting
+  Map<Long, Long> getHotBlocks(String bpid, long now) {
+    if (!enabled) {
+      return Collections.emptyMap();
+    }
+    List<Map.Entry<Long, Double>> hot =
+        new ArrayList<Map.Entry<Long, Double>>();
+    for (Iterator<Map.Entry<ExtendedBlockId, ReadCount>> it =
+        counts.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<ExtendedBlockId, ReadCount> e = it.next();
+      double reads = e.getValue().decay(now, halfLifeMs);
+      if (reads < MIN_TRACKED_READS) {
+        it.remove();
+      } else if (reads >= minReads
+          && e.getKey().getBlockPoolId().equals(bpid)) {
+        hot.add(new AbstractMap.SimpleImmutableEntry<Long, Double>(
+            e.getKey().getBlockId(), reads));
+      }
+    }
+    Collections.sort(hot, new Comparator<Map.Entry<Long, Double>>() {
+      @Override
+      public int compare(Map.Entry<Long, Double> a,
+          Map.Entry<Long, Double> b) {
+        return Double.compare(b.getValue(), a.getValue());
+      }
+    });
+    Map<Long, Long> hotBlocks = new LinkedHashMap<Long, Long>();
+    for (Map.Entry<Long, Double> e : hot) {
+      if (hotBlocks.size() >= maxReported) {
+        break;
+      }
+      hotBlocks.put(e.getKey(), Math.round(e.getValue()));
+    }
+    return hotBlocks;
+  }
+
+  @VisibleForTesting
+  int getNumTrackedBlocks() {
+    return counts.size();
+  }
+}
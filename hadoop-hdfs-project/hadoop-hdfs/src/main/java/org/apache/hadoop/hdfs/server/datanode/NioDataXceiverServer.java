@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.net.SocketInputStream;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A {@link DataXceiverServer} which does not hold a thread for each
+ * connection. Connections wait for their next operation on a selector, and
+ * the operations are processed by a bounded pool of workers. The workers run
+ * the same {@link DataXceiver} code as the threads of the parent class, so
+ * the wire protocol is unchanged.
+ *
+ * Clients cache their connections to the datanode, so most of the
+ * connections of a busy datanode are idle between two operations; they only
+ * cost a selection key here instead of a thread. Connections without a
+ * socket channel are served by a thread each, as in the parent class.
+ */
+class NioDataXceiverServer extends DataXceiverServer {
+  /** How often the idle connections are checked for timeouts. */
+  private static final long SELECT_TIMEOUT_MS = 1000;
+
+  private final Selector selector;
+  private final ThreadPoolExecutor workers;
+  private final Daemon selectorThread;
+  private final int socketTimeout;
+  private final int socketKeepaliveTimeout;
+
+  /** Connections to wait for on the selector, added by other threads. */
+  private final Queue<Connection> pending =
+      new ConcurrentLinkedQueue<Connection>();
+  /** All the open connections of the server. */
+  private final Set<Connection> connections = Collections.newSetFromMap(
+      new ConcurrentHashMap<Connection, Boolean>());
+  private volatile boolean running = true;
+
+  /** A connection and the xceiver processing its operations. */
+  private class Connection implements Runnable {
+    private final DataXceiver xceiver;
+    private final SocketChannel channel;
+    /** Only used by the selector thread. */
+    private SelectionKey key;
+    private long deadline;
+
+    Connection(DataXceiver xceiver, SocketChannel channel) {
+      this.xceiver = xceiver;
+      this.channel = channel;
+    }
+
+    /** Process the available operations on a worker. */
+    @Override
+    public void run() {
+      final String name = Thread.currentThread().getName();
+      boolean keepOpen = false;
+      try {
+        keepOpen = running && xceiver.processAvailableOps();
+      } finally {
+        Thread.currentThread().setName(name);
+        if (keepOpen && running) {
+          waitForOps(this);
+        } else {
+          close();
+        }
+      }
+    }
+
+    void close() {
+      connections.remove(this);
+      xceiver.closeIdleConnection();
+    }
+  }
+
+  NioDataXceiverServer(PeerServer peerServer, Configuration conf,
+      final DataNode datanode) throws IOException {
+    super(peerServer, conf, datanode);
+    this.socketTimeout = datanode.getDnConf().socketTimeout;
+    this.socketKeepaliveTimeout = datanode.getDnConf().socketKeepaliveTimeout;
+    this.selector = Selector.open();
+
+    final int numWorkers = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_NIO_WORKER_THREADS_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_NIO_WORKER_THREADS_DEFAULT);
+    // The workers belong to the thread group of the xceivers, so they are
+    // counted as xceivers and interrupted on shutdown.
+    final ThreadFactory threadFactory = new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Daemon(datanode.threadGroup, r);
+        t.setName("DataXceiverWorker-" + count.incrementAndGet());
+        return t;
+      }
+    };
+    // Operations wait in the queue when all the workers are busy, up to
+    // one per worker; beyond that new operations are refused.
+    this.workers = new ThreadPoolExecutor(numWorkers, numWorkers,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(numWorkers),
+        threadFactory);
+    this.workers.allowCoreThreadTimeOut(true);
+
+    this.selectorThread = new Daemon(datanode.threadGroup, new Runnable() {
+      @Override
+      public void run() {
+        select();
+      }
+    });
+    this.selectorThread.setName("DataXceiverSelector");
+    LOG.info("Serving data transfer connections with a selector and "
+        + numWorkers + " workers");
+  }
+
+  @Override
+  public void run() {
+    selectorThread.start();
+    try {
+      super.run();
+    } finally {
+      running = false;
+      selector.wakeup();
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+   * Wait for the operations of a new connection on the selector, if it has
+   * a socket channel.
+   */
+  @Override
+  void startXceiver(Peer peer) throws IOException {
+    final SocketChannel channel = getSocketChannel(peer);
+    if (channel == null) {
+      super.startXceiver(peer);
+      return;
+    }
+    final Connection c =
+        new Connection(DataXceiver.create(peer, datanode, this), channel);
+    connections.add(c);
+    waitForOps(c);
+  }
+
+  private static SocketChannel getSocketChannel(Peer peer) {
+    final ReadableByteChannel in = peer.getInputStreamChannel();
+    if (in instanceof SocketInputStream) {
+      final ReadableByteChannel channel = ((SocketInputStream) in).getChannel();
+      if (channel instanceof SocketChannel) {
+        return (SocketChannel) channel;
+      }
+    }
+    return null;
+  }
+
+  /** Hand a connection to the selector thread. */
+  private void waitForOps(Connection c) {
+    pending.add(c);
+    selector.wakeup();
+  }
+
+  /** Close the connections waiting for an operation before a restart. */
+  @Override
+  synchronized void restartNotifyPeers() {
+    super.restartNotifyPeers();
+    running = false;
+    selector.wakeup();
+  }
+
+  private void select() {
+    try {
+      while (running) {
+        registerPending();
+        selector.select(SELECT_TIMEOUT_MS);
+        final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          final SelectionKey key = it.next();
+          it.remove();
+          final Connection c = (Connection) key.attachment();
+          try {
+            if (key.isValid() && key.isReadable()) {
+              key.interestOps(0);
+              dispatch(c);
+            }
+          } catch (CancelledKeyException e) {
+            c.close();
+          }
+        }
+        closeIdleConnections(Time.monotonicNow());
+      }
+    } catch (Throwable t) {
+      LOG.error(datanode.getDisplayName() + ":NioDataXceiverServer: "
+          + "Exiting due to: ", t);
+    } finally {
+      // Close the connections which are not processing an operation; the
+      // busy ones are closed with the peers.
+      registerPending();
+      for (SelectionKey key : selector.keys()) {
+        if (key.isValid() && key.interestOps() != 0) {
+          ((Connection) key.attachment()).close();
+        }
+      }
+      IOUtils.cleanup(LOG, selector);
+    }
+  }
+
+  private void registerPending() {
+    final long now = Time.monotonicNow();
+    Connection c;
+    while ((c = pending.poll()) != null) {
+      if (!running) {
+        c.close();
+        continue;
+      }
+      try {
+        if (c.key == null) {
+          c.key = c.channel.register(selector, SelectionKey.OP_READ, c);
+        } else {
+          c.key.interestOps(SelectionKey.OP_READ);
+        }
+        c.deadline = now + (c.xceiver.hasProcessedOps() ?
+            socketKeepaliveTimeout : socketTimeout);
+      } catch (IOException e) {
+        // the channel was closed
+        c.close();
+      } catch (CancelledKeyException e) {
+        c.close();
+      }
+    }
+  }
+
+  private void dispatch(Connection c) {
+    try {
+      workers.execute(c);
+    } catch (RejectedExecutionException e) {
+      LOG.warn(datanode.getDisplayName() + ":NioDataXceiverServer: "
+          + "closing " + c.channel + " since all " + workers.getMaximumPoolSize()
+          + " workers are busy");
+      c.close();
+    }
+  }
+
+  /** Close the connections which have waited too long for an operation. */
+  private void closeIdleConnections(long now) {
+    for (SelectionKey key : selector.keys()) {
+      if (!key.isValid() || key.interestOps() == 0) {
+        continue;
+      }
+      final Connection c = (Connection) key.attachment();
+      if (now >= c.deadline) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Closing idle connection " + c.channel);
+        }
+        key.cancel();
+        c.close();
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int getNumConnections() {
+    return connections.size();
+  }
+
+  @VisibleForTesting
+  int getNumActiveWorkers() {
+    return workers.getActiveCount();
+  }
+}
@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.server.datanode;
 
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -46,4 +47,9 @@ public void close() throws IOException {
   public ReplicaInPipelineInterface getReplica() {
     return replica;
   }
+
+  /** @return the volume of the replica, null if it is not known. */
+  public FsVolumeSpi getVolume() {
+    return volumeReference != null ? volumeReference.getVolume() : null;
+  }
 }
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_KEY;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
+
+/**
+ * A DN volume choosing policy which takes into account how busy each volume
+ * is, so that a slow or overloaded disk does not slow down every pipeline it
+ * is part of. The load of a volume is the average latency of its recent I/O,
+ * scaled by the number of I/O in progress, see {@link VolumeIOStats}.
+ * Volumes with a load above a multiple of the least load are skipped, and
+ * new replicas are assigned round robin to the other volumes.
+ */
+public class DiskLoadAwareVolumeChoosingPolicy<V extends FsVolumeSpi>
+    implements VolumeChoosingPolicy<V>, Configurable {
+
+  private static final Log LOG =
+      LogFactory.getLog(DiskLoadAwareVolumeChoosingPolicy.class);
+
+  private float slowVolumeThreshold =
+      DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_DEFAULT;
+  private long minLoadNanos =
+      DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_DEFAULT * 1000;
+
+  private final VolumeChoosingPolicy<V> roundRobinPolicy =
+      new RoundRobinVolumeChoosingPolicy<V>();
+
+  @Override
+  public synchronized void setConf(Configuration conf) {
+    slowVolumeThreshold = conf.getFloat(
+        DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_KEY,
+        DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_DEFAULT);
+    minLoadNanos = conf.getLong(
+        DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_KEY,
+        DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_DEFAULT)
+        * 1000;
+
+    LOG.info("Disk load aware volume choosing policy initialized: " +
+        DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_KEY +
+        " = " + slowVolumeThreshold + ", " +
+        DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_KEY +
+        " = " + (minLoadNanos / 1000));
+
+    if (slowVolumeThreshold < 1.0) {
+      LOG.warn("The value of " +
+          DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_KEY +
+          " is less than 1.0, 1.0 is used instead");
+    }
+  }
+
+  @Override
+  public synchronized Configuration getConf() {
+    // Nothing to do. Only added to fulfill the Configurable contract.
+    return null;
+  }
+
+  @Override
+  public synchronized V chooseVolume(List<V> volumes, long replicaSize)
+      throws IOException {
+    if (volumes.size() < 1) {
+      throw new DiskOutOfSpaceException("No more available volumes");
+    }
+
+    // Only the volumes with room for the replica compete on load
+    final long[] loads = new long[volumes.size()];
+    long leastLoad = Long.MAX_VALUE;
+    for (int i = 0; i < loads.length; i++) {
+      final V volume = volumes.get(i);
+      if (volume.getAvailable() <= replicaSize) {
+        loads[i] = -1;
+        continue;
+      }
+      loads[i] = Math.max(getLoadNanos(volume), minLoadNanos);
+      leastLoad = Math.min(leastLoad, loads[i]);
+    }
+    if (leastLoad == Long.MAX_VALUE) {
+      // Let the round robin policy report that the volumes are full
+      return roundRobinPolicy.chooseVolume(volumes, replicaSize);
+    }
+
+    final long maxLoad = (long) (leastLoad * Math.max(1.0, slowVolumeThreshold));
+    final List<V> candidates = new ArrayList<V>(volumes.size());
+    for (int i = 0; i < loads.length; i++) {
+      if (loads[i] < 0) {
+        continue;
+      }
+      if (loads[i] <= maxLoad) {
+        candidates.add(volumes.get(i));
+      } else if (LOG.isDebugEnabled()) {
+        LOG.debug("Skipping slow volume " + volumes.get(i) + ": load "
+            + loads[i] + " ns > " + maxLoad + " ns");
+      }
+    }
+    return roundRobinPolicy.chooseVolume(candidates, replicaSize);
+  }
+
+  private static long getLoadNanos(FsVolumeSpi volume) {
+    final VolumeIOStats stats = volume.getIOStats();
+    return stats != null ? stats.getLoadNanos() : 0;
+  }
+}
@@ -179,4 +179,7 @@ public BlockIterator loadBlockIterator(String bpid, String name)
    * Get the FSDatasetSpi which this volume is a part of.
    */
   public FsDatasetSpi getDataset();
+
+  /** @return the I/O accounting of the volume. */
+  public VolumeIOStats getIOStats();
 }
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.util.Quantile;
+import org.apache.hadoop.metrics2.util.SampleQuantiles;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * I/O accounting of a volume: the operations in progress, the latency of the
+ * recent operations and the bytes read and written.
+ * <p/>
+ * An operation is started with {@link #beginIO()} and ended with
+ * {@link #endRead(long, long)} or {@link #endWrite(long, long)}, which must
+ * be called exactly once, e.g. in a finally block.
+ */
+@InterfaceAudience.Private
+public class VolumeIOStats {
+  /** Weight of a new latency sample in the moving average, as a shift. */
+  private static final int EWMA_SHIFT = 3;
+  /** Length of the windows of the latency percentiles. */
+  static final long PERCENTILE_WINDOW_MS = 60 * 1000;
+  /**
+   * A volume without any operation for this long is considered idle,
+   * whatever the latency of its last operations.
+   */
+  static final long IDLE_MS = 30 * 1000;
+
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final AtomicLong avgLatencyNanos = new AtomicLong();
+  private volatile long lastIOMs;
+
+  private final AtomicLong readOps = new AtomicLong();
+  private final AtomicLong writeOps = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+
+  private final SampleQuantiles latencies =
+      new SampleQuantiles(MutableQuantiles.quantiles);
+  private long windowStartMs = Time.monotonicNow();
+  private Map<Quantile, Long> lastWindowLatencies = Collections.emptyMap();
+
+  /**
+   * Start an operation.
+   * @return the start time, to pass to the method ending the operation.
+   */
+  public long beginIO() {
+    queueDepth.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * End a read started with {@link #beginIO()}.
+   * @return the latency of the read in ns.
+   */
+  public long endRead(long startNanos, long bytes) {
+    readOps.incrementAndGet();
+    bytesRead.addAndGet(bytes);
+    return endIO(startNanos);
+  }
+
+  /**
+   * End a write started with {@link #beginIO()}.
+   * @return the latency of the write in ns.
+   */
+  public long endWrite(long startNanos, long bytes) {
+    writeOps.incrementAndGet();
+    bytesWritten.addAndGet(bytes);
+    return endIO(startNanos);
+  }
+
+  /**
+   * End a read started with {@link #beginIO()}, whose latency was measured
+   * by the caller, e.g. to leave out the time blocked on the network.
+   */
+  public void endReadWithLatency(long bytes, long latencyNanos) {
+    readOps.incrementAndGet();
+    bytesRead.addAndGet(bytes);
+    queueDepth.decrementAndGet();
+    addLatency(latencyNanos);
+  }
+
+  private long endIO(long startNanos) {
+    final long latency = Math.max(0, System.nanoTime() - startNanos);
+    queueDepth.decrementAndGet();
+    addLatency(latency);
+    return latency;
+  }
+
+  @VisibleForTesting
+  void addLatency(long latencyNanos) {
+    long avg;
+    do {
+      avg = avgLatencyNanos.get();
+    } while (!avgLatencyNanos.compareAndSet(avg, avg == 0 ? latencyNanos
+        : avg + ((latencyNanos - avg) >> EWMA_SHIFT)));
+    final long now = Time.monotonicNow();
+    lastIOMs = now;
+    synchronized (latencies) {
+      rollWindow(now);
+      latencies.insert(latencyNanos);
+    }
+  }
+
+  /** Keep the percentiles of the last full window. */
+  private void rollWindow(long now) {
+    if (now - windowStartMs >= PERCENTILE_WINDOW_MS) {
+      final Map<Quantile, Long> snapshot = latencies.snapshot();
+      lastWindowLatencies = snapshot != null ? snapshot
+          : Collections.<Quantile, Long>emptyMap();
+      latencies.clear();
+      windowStartMs = now;
+    }
+  }
+
+  /** @return the number of operations in progress. */
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  /** @return the moving average of the latency of the operations, in ns. */
+  public long getAvgLatencyNanos() {
+    return avgLatencyNanos.get();
+  }
+
+  /**
+   * @return the load of the volume: the average latency of its operations,
+   *         scaled by the number of operations in progress. A volume idle
+   *         for a while has no load, so that a volume which has not been
+   *         chosen because it was slow gets tried again.
+   */
+  public long getLoadNanos() {
+    final int depth = queueDepth.get();
+    if (depth == 0 && Time.monotonicNow() - lastIOMs > IDLE_MS) {
+      return 0;
+    }
+    return avgLatencyNanos.get() * (1 + depth);
+  }
+
+  /**
+   * @return the latency percentiles in ns of the operations of the last
+   *         full window, empty if there were none.
+   */
+  public Map<Quantile, Long> getLatencyPercentiles() {
+    synchronized (latencies) {
+      rollWindow(Time.monotonicNow());
+      return lastWindowLatencies;
+    }
+  }
+
+  public long getReadOps() {
+    return readOps.get();
+  }
+
+  public long getWriteOps() {
+    return writeOps.get();
+  }
+
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+}
@@ -18,7 +18,9 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -28,8 +30,12 @@
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
@@ -42,6 +48,7 @@
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
 import org.apache.hadoop.hdfs.server.datanode.DataStorage;
 import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
@@ -81,7 +88,17 @@ class BlockPoolSlice {
   private static final int SHUTDOWN_HOOK_PRIORITY = 30;
   private final boolean deleteDuplicateReplicas;
   private static final String REPLICA_CACHE_FILE = "replicas";
-  private final long replicaCacheExpiry = 5*60*1000;
+  private final long replicaCacheExpiry;
+  private static final String REPLICA_CHECKPOINT_FILE = "replicas.checkpoint";
+  private static final int REPLICA_CHECKPOINT_VERSION = 1;
+  /**
+   * Directories modified less than this long before a checkpoint are walked
+   * again at restart, since a file system with a coarse modification time
+   * would not show a change made later in the same second.
+   */
+  private static final long DIR_MTIME_GRANULARITY_MS = 2000;
+  /** Set once the replicas have been saved at shutdown. */
+  private boolean replicasSaved = false;
 
   // TODO:FEDERATION scalability issue - a thread per DU is needed
   private final DU dfsUsage;
@@ -111,6 +128,9 @@ class BlockPoolSlice {
     this.deleteDuplicateReplicas = conf.getBoolean(
         DFSConfigKeys.DFS_DATANODE_DUPLICATE_REPLICA_DELETION,
         DFSConfigKeys.DFS_DATANODE_DUPLICATE_REPLICA_DELETION_DEFAULT);
+    this.replicaCacheExpiry = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_MS_DEFAULT);
 
     // Files that were being written when the datanode was last shutdown
     // are now moved back to the data directory. It is possible that
@@ -316,7 +336,13 @@ void getVolumeMap(ReplicaMap volumeMap,
           "Recovered " + numRecovered + " replicas from " + lazypersistDir);
     }
     
-    boolean  success = readReplicasFromCache(volumeMap, lazyWriteReplicaMap);
+    boolean success = readReplicasFromCache(volumeMap, lazyWriteReplicaMap);
+    if (success) {
+      // The cache of a clean shutdown is newer than any checkpoint
+      deleteReplicaCheckpoint();
+    } else {
+      success = readReplicasFromCheckpoint(volumeMap, lazyWriteReplicaMap);
+    }
     if (!success) {
       // add finalized replicas
       addToReplicasMap(volumeMap, finalizedDir, lazyWriteReplicaMap, true);
@@ -670,7 +696,10 @@ public String toString() {
   }
   
   void shutdown(BlockListAsLongs blocksListToPersist) {
-    saveReplicas(blocksListToPersist);
+    synchronized (this) {
+      saveReplicas(blocksListToPersist);
+      replicasSaved = true;
+    }
     saveDfsUsed();
     dfsUsedSaved = true;
     dfsUsage.shutdown();
@@ -786,4 +815,190 @@ private void saveReplicas(BlockListAsLongs blocksListToPersist) {
       }
     }
   }
+
+  /**
+   * Get the leaf directories of the finalized replicas, by their index in
+   * the block ID-based layout: the first and second level indexes of
+   * {@link DatanodeUtil#idToBlockDir(File, long)} in the high and low byte.
+   * @return the directories, or null if the finalized directory has entries
+   *         which are not in the layout.
+   */
+  private Map<Integer, File> getFinalizedLeafDirs() throws IOException {
+    Map<Integer, File> leafDirs = new HashMap<Integer, File>();
+    for (File dir1 : FileUtil.listFiles(finalizedDir)) {
+      int d1 = DatanodeUtil.getBlockDirIndex(dir1.getName());
+      if (d1 < 0) {
+        return null;
+      }
+      for (File dir2 : FileUtil.listFiles(dir1)) {
+        int d2 = DatanodeUtil.getBlockDirIndex(dir2.getName());
+        if (d2 < 0) {
+          return null;
+        }
+        leafDirs.put((d1 << 8) | d2, dir2);
+      }
+    }
+    return leafDirs;
+  }
+
+  private static int getLeafDirIndex(long blockId) {
+    return (int) ((blockId >> 8) & 0xffff);
+  }
+
+  /**
+   * Get the modification times of the leaf directories of the finalized
+   * replicas, to be saved with a checkpoint of the replicas. This must be
+   * called before the replicas are read from the replica map, so that a
+   * directory changed after the replicas were read looks changed at restart.
+   * @return the times by leaf directory index, or null if the finalized
+   *         directory is not in the block ID-based layout.
+   */
+  Map<Integer, Long> getFinalizedDirTimes() throws IOException {
+    final long now = Time.now();
+    Map<Integer, File> leafDirs = getFinalizedLeafDirs();
+    if (leafDirs == null) {
+      return null;
+    }
+    Map<Integer, Long> dirTimes = new HashMap<Integer, Long>(leafDirs.size());
+    for (Map.Entry<Integer, File> entry : leafDirs.entrySet()) {
+      long mtime = entry.getValue().lastModified();
+      if (mtime > 0 && mtime < now - DIR_MTIME_GRANULARITY_MS) {
+        dirTimes.put(entry.getKey(), mtime);
+      }
+    }
+    return dirTimes;
+  }
+
+  /**
+   * Save a checkpoint of the replicas, which is used at restart if the
+   * DataNode did not shut down cleanly. The checkpoint holds the times of
+   * the leaf directories, followed by the replicas.
+   * @param blocksList the replicas of this block pool slice
+   * @param dirTimes the times returned by {@link #getFinalizedDirTimes()}
+   *                 before the replicas were read
+   */
+  synchronized void saveReplicaCheckpoint(BlockListAsLongs blocksList,
+      Map<Integer, Long> dirTimes) {
+    if (replicasSaved) {
+      // Shutting down, the replica cache supersedes the checkpoint
+      return;
+    }
+    File tmpFile = new File(currentDir, REPLICA_CHECKPOINT_FILE + ".tmp");
+    File checkpointFile = new File(currentDir, REPLICA_CHECKPOINT_FILE);
+    FileOutputStream fos = null;
+    DataOutputStream out = null;
+    try {
+      fos = new FileOutputStream(tmpFile);
+      out = new DataOutputStream(new BufferedOutputStream(fos));
+      out.writeInt(REPLICA_CHECKPOINT_VERSION);
+      out.writeInt(dirTimes.size());
+      for (Map.Entry<Integer, Long> entry : dirTimes.entrySet()) {
+        out.writeInt(entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+      blocksList.writeTo(out);
+      out.flush();
+      // A checkpoint is only read after a crash, so it has to be on disk
+      fos.getFD().sync();
+      out.close();
+      out = null;
+      Files.move(tmpFile, checkpointFile);
+    } catch (IOException e) {
+      LOG.warn("Failed to write replica checkpoint " + checkpointFile, e);
+    } finally {
+      IOUtils.closeStream(out);
+      IOUtils.closeStream(fos);
+      if (tmpFile.exists() && !tmpFile.delete()) {
+        LOG.warn("Failed to delete tmp file in " + tmpFile.getPath());
+      }
+    }
+  }
+
+  private void deleteReplicaCheckpoint() {
+    File checkpointFile = new File(currentDir, REPLICA_CHECKPOINT_FILE);
+    if (checkpointFile.exists() && !checkpointFile.delete()) {
+      LOG.warn("Failed to delete replica checkpoint file: " +
+          checkpointFile.getPath());
+    }
+  }
+
+  /**
+   * Read the replicas from the last checkpoint. The replicas of the leaf
+   * directories which did not change since the checkpoint are taken from
+   * the checkpoint, and the other directories, as well as the rbw
+   * directory, are walked.
+   * @return false if there is no usable checkpoint.
+   */
+  private boolean readReplicasFromCheckpoint(ReplicaMap volumeMap,
+      final RamDiskReplicaTracker lazyWriteReplicaMap) {
+    File checkpointFile = new File(currentDir, REPLICA_CHECKPOINT_FILE);
+    if (!checkpointFile.exists()) {
+      return false;
+    }
+    ReplicaMap tmpReplicaMap = new ReplicaMap(this);
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(checkpointFile)));
+      int version = in.readInt();
+      if (version != REPLICA_CHECKPOINT_VERSION) {
+        LOG.info("Replica checkpoint file: " + checkpointFile.getPath()
+            + " has unknown version " + version);
+        return false;
+      }
+      int numDirs = in.readInt();
+      Map<Integer, Long> savedDirTimes = new HashMap<Integer, Long>(numDirs);
+      for (int i = 0; i < numDirs; i++) {
+        savedDirTimes.put(in.readInt(), in.readLong());
+      }
+      BlockListAsLongs blocksList = BlockListAsLongs.readFrom(in);
+      in.close();
+      in = null;
+
+      Map<Integer, File> leafDirs = getFinalizedLeafDirs();
+      if (leafDirs == null) {
+        LOG.info("Replica checkpoint file: " + checkpointFile.getPath()
+            + " cannot be used, " + finalizedDir
+            + " is not in the block ID-based layout");
+        return false;
+      }
+      Set<Integer> unchangedDirs = new HashSet<Integer>(leafDirs.size());
+      int numChangedDirs = 0;
+      for (Map.Entry<Integer, File> entry : leafDirs.entrySet()) {
+        Long savedTime = savedDirTimes.get(entry.getKey());
+        if (savedTime != null
+            && savedTime.longValue() == entry.getValue().lastModified()) {
+          unchangedDirs.add(entry.getKey());
+        } else {
+          addToReplicasMap(tmpReplicaMap, entry.getValue(),
+              lazyWriteReplicaMap, true);
+          numChangedDirs++;
+        }
+      }
+      for (BlockReportReplica replica : blocksList) {
+        if (replica.getState() == ReplicaState.FINALIZED
+            && unchangedDirs.contains(getLeafDirIndex(replica.getBlockId()))) {
+          addReplicaToReplicasMap(replica, tmpReplicaMap,
+              lazyWriteReplicaMap, true);
+        }
+      }
+      // The lengths of the rbw replicas have changed since the checkpoint
+      addToReplicasMap(tmpReplicaMap, rbwDir, lazyWriteReplicaMap, false);
+
+      for (ReplicaInfo info : tmpReplicaMap.replicas(bpid)) {
+        volumeMap.add(bpid, info);
+      }
+      LOG.info("Read replicas from checkpoint file: " + checkpointFile.getPath()
+          + ", walked " + numChangedDirs + " of " + leafDirs.size()
+          + " directories which changed since the checkpoint");
+      return true;
+    } catch (Exception e) {
+      LOG.info("Exception occured while reading the replica checkpoint file: "
+          + checkpointFile.getPath(), e);
+      return false;
+    } finally {
+      IOUtils.closeStream(in);
+      deleteReplicaCheckpoint();
+    }
+  }
 }
@@ -41,6 +41,7 @@
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
@@ -93,7 +94,9 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.RoundRobinVolumeChoosingPolicy;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeChoosingPolicy;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIOStats;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.RamDiskReplicaTracker.RamDiskReplica;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
 import org.apache.hadoop.hdfs.server.datanode.metrics.FSDatasetMBean;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
@@ -105,6 +108,7 @@
 import org.apache.hadoop.io.MultipleIOException;
 import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.metrics2.util.MBeans;
+import org.apache.hadoop.metrics2.util.Quantile;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
@@ -169,13 +173,13 @@ public StorageReport[] getStorageReports(String bpid)
   }
 
   @Override
-  public synchronized FsVolumeImpl getVolume(final ExtendedBlock b) {
+  public FsVolumeImpl getVolume(final ExtendedBlock b) {
     final ReplicaInfo r =  volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
     return r != null? (FsVolumeImpl)r.getVolume(): null;
   }
 
   @Override // FsDatasetSpi
-  public synchronized Block getStoredBlock(String bpid, long blkid)
+  public Block getStoredBlock(String bpid, long blkid)
       throws IOException {
     File blockfile = getFile(bpid, blkid, false);
     if (blockfile == null) {
@@ -231,12 +235,15 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
   final Map<String, DatanodeStorage> storageMap;
   final FsDatasetAsyncDiskService asyncDiskService;
   final Daemon lazyWriter;
+  /** Saves checkpoints of the replicas, null if disabled. */
+  private final Daemon replicaCacheSaver;
   final FsDatasetCache cacheManager;
   private final Configuration conf;
   private final int validVolsRequired;
   private volatile boolean fsRunning;
 
   final ReplicaMap volumeMap;
+  private final ReplicaLockStripes replicaLocks;
   final Map<String, Set<Long>> deletingBlock;
   final RamDiskReplicaTracker ramDiskReplicaTracker;
   final RamDiskAsyncLazyPersistService asyncLazyPersistService;
@@ -291,6 +298,9 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
 
     storageMap = new ConcurrentHashMap<String, DatanodeStorage>();
     volumeMap = new ReplicaMap(this);
+    replicaLocks = new ReplicaLockStripes(conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_LOCK_STRIPES_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_LOCK_STRIPES_DEFAULT));
     ramDiskReplicaTracker = RamDiskReplicaTracker.getInstance(conf, this);
 
     @SuppressWarnings("unchecked")
@@ -315,6 +325,16 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     // Start the lazy writer once we have built the replica maps.
     lazyWriter = new Daemon(new LazyWriter(conf));
     lazyWriter.start();
+    final long replicaCacheSaveInterval = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_SAVE_INTERVAL_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_SAVE_INTERVAL_MS_DEFAULT);
+    if (replicaCacheSaveInterval > 0) {
+      replicaCacheSaver = new Daemon(
+          new ReplicaCacheSaver(replicaCacheSaveInterval));
+      replicaCacheSaver.start();
+    } else {
+      replicaCacheSaver = null;
+    }
     registerMBean(datanode.getDatanodeUuid());
     localFS = FileSystem.getLocal(conf);
     blockPinningEnabled = conf.getBoolean(
@@ -679,10 +699,8 @@ File getBlockFile(String bpid, long blockId) throws IOException {
   private File getBlockFileNoExistsCheck(ExtendedBlock b,
                                          boolean touch)
       throws IOException {
-    final File f;
-    synchronized(this) {
-      f = getFile(b.getBlockPoolId(), b.getLocalBlock().getBlockId(), touch);
-    }
+    final File f = getFile(b.getBlockPoolId(), b.getLocalBlock().getBlockId(),
+        touch);
     if (f == null) {
       throw new IOException("Block " + b + " is not valid");
     }
@@ -746,7 +764,7 @@ private ReplicaInfo getReplicaInfo(String bpid, long blkid)
    * Returns handles to the block file and its metadata file
    */
   @Override // FsDatasetSpi
-  public synchronized ReplicaInputStreams getTmpInputStreams(ExtendedBlock b,
+  public ReplicaInputStreams getTmpInputStreams(ExtendedBlock b,
       long blkOffset, long metaOffset) throws IOException {
     ReplicaInfo info = getReplicaInfo(b);
     FsVolumeReference ref = info.getVolume().obtainReference();
@@ -1240,52 +1258,81 @@ private void bumpReplicaGS(ReplicaInfo replicaInfo,
     }
   }
 
+  /**
+   * Create a replica being written. The rbw file is created while holding
+   * the lock of the replica only, so that a slow disk does not hold up the
+   * other volumes; the replica is added to the map under the dataset lock.
+   */
   @Override // FsDatasetSpi
-  public synchronized ReplicaHandler createRbw(
+  public ReplicaHandler createRbw(
       StorageType storageType, ExtendedBlock b, boolean allowLazyPersist)
       throws IOException {
-    ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(),
-        b.getBlockId());
-    if (replicaInfo != null) {
-      throw new ReplicaAlreadyExistsException("Block " + b +
-      " already exists in state " + replicaInfo.getState() +
-      " and thus cannot be created.");
-    }
-    // create a new block
-    FsVolumeReference ref;
-    while (true) {
-      try {
-        if (allowLazyPersist) {
-          // First try to place the block on a transient volume.
-          ref = volumes.getNextTransientVolume(b.getNumBytes());
-          datanode.getMetrics().incrRamDiskBlocksWrite();
-        } else {
-          ref = volumes.getNextVolume(storageType, b.getNumBytes());
+    final ReentrantLock replicaLock =
+        lockReplica(b.getBlockPoolId(), b.getBlockId());
+    try {
+      ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(),
+          b.getBlockId());
+      if (replicaInfo != null) {
+        throw new ReplicaAlreadyExistsException("Block " + b +
+        " already exists in state " + replicaInfo.getState() +
+        " and thus cannot be created.");
+      }
+      // create a new block
+      FsVolumeReference ref;
+      while (true) {
+        try {
+          if (allowLazyPersist) {
+            // First try to place the block on a transient volume.
+            ref = volumes.getNextTransientVolume(b.getNumBytes());
+            datanode.getMetrics().incrRamDiskBlocksWrite();
+          } else {
+            ref = volumes.getNextVolume(storageType, b.getNumBytes());
+          }
+        } catch (DiskOutOfSpaceException de) {
+          if (allowLazyPersist) {
+            datanode.getMetrics().incrRamDiskBlocksWriteFallback();
+            allowLazyPersist = false;
+            continue;
+          }
+          throw de;
         }
-      } catch (DiskOutOfSpaceException de) {
-        if (allowLazyPersist) {
-          datanode.getMetrics().incrRamDiskBlocksWriteFallback();
-          allowLazyPersist = false;
-          continue;
+        break;
+      }
+      FsVolumeImpl v = (FsVolumeImpl) ref.getVolume();
+      // create an rbw file to hold block in the designated volume
+      File f;
+      try {
+        f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
+      } catch (IOException e) {
+        IOUtils.cleanup(null, ref);
+        throw e;
+      }
+
+      ReplicaBeingWritten newReplicaInfo = new ReplicaBeingWritten(
+          b.getBlockId(), b.getGenerationStamp(), v, f.getParentFile(),
+          b.getNumBytes());
+      final long startWait = System.nanoTime();
+      synchronized (this) {
+        addDatasetLockWait(startWait);
+        // the replica lock only excludes the other creators of rbw replicas,
+        // e.g. createTemporary may have added the replica in the meantime
+        replicaInfo = volumeMap.get(b.getBlockPoolId(), b.getBlockId());
+        if (replicaInfo == null) {
+          volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
+          return new ReplicaHandler(newReplicaInfo, ref);
         }
-        throw de;
       }
-      break;
-    }
-    FsVolumeImpl v = (FsVolumeImpl) ref.getVolume();
-    // create an rbw file to hold block in the designated volume
-    File f;
-    try {
-      f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
-    } catch (IOException e) {
+      newReplicaInfo.releaseAllBytesReserved();
+      if (!f.delete()) {
+        LOG.warn("Failed to delete rbw file " + f + " of " + b);
+      }
       IOUtils.cleanup(null, ref);
-      throw e;
+      throw new ReplicaAlreadyExistsException("Block " + b +
+          " already exists in state " + replicaInfo.getState() +
+          " and thus cannot be created.");
+    } finally {
+      replicaLock.unlock();
     }
-
-    ReplicaBeingWritten newReplicaInfo = new ReplicaBeingWritten(b.getBlockId(), 
-        b.getGenerationStamp(), v, f.getParentFile(), b.getNumBytes());
-    volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
-    return new ReplicaHandler(newReplicaInfo, ref);
   }
 
   @Override // FsDatasetSpi
@@ -1497,18 +1544,22 @@ public void adjustCrcChannelPosition(ExtendedBlock b, ReplicaOutputStreams strea
    * Complete the block write!
    */
   @Override // FsDatasetSpi
-  public synchronized void finalizeBlock(ExtendedBlock b) throws IOException {
-    if (Thread.interrupted()) {
-      // Don't allow data modifications from interrupted threads
-      throw new IOException("Cannot finalize block from Interrupted Thread");
-    }
-    ReplicaInfo replicaInfo = getReplicaInfo(b);
-    if (replicaInfo.getState() == ReplicaState.FINALIZED) {
-      // this is legal, when recovery happens on a file that has
-      // been opened for append but never modified
-      return;
+  public void finalizeBlock(ExtendedBlock b) throws IOException {
+    final long startWait = System.nanoTime();
+    synchronized (this) {
+      addDatasetLockWait(startWait);
+      if (Thread.interrupted()) {
+        // Don't allow data modifications from interrupted threads
+        throw new IOException("Cannot finalize block from Interrupted Thread");
+      }
+      ReplicaInfo replicaInfo = getReplicaInfo(b);
+      if (replicaInfo.getState() == ReplicaState.FINALIZED) {
+        // this is legal, when recovery happens on a file that has
+        // been opened for append but never modified
+        return;
+      }
+      finalizeReplica(b.getBlockPoolId(), replicaInfo);
     }
-    finalizeReplica(b.getBlockPoolId(), replicaInfo);
   }
   
   private synchronized FinalizedReplica finalizeReplica(String bpid,
@@ -1737,10 +1788,7 @@ private boolean isValid(final ExtendedBlock b, final ReplicaState state) {
    */
   File validateBlockFile(String bpid, long blockId) {
     //Should we check for metadata file too?
-    final File f;
-    synchronized(this) {
-      f = getFile(bpid, blockId, false);
-    }
+    final File f = getFile(bpid, blockId, false);
     
     if(f != null ) {
       if(f.exists())
@@ -1968,11 +2016,34 @@ public boolean isCached(String bpid, long blockId) {
   }
 
   @Override // FsDatasetSpi
-  public synchronized boolean contains(final ExtendedBlock block) {
+  public boolean contains(final ExtendedBlock block) {
     final long blockId = block.getLocalBlock().getBlockId();
     return getFile(block.getBlockPoolId(), blockId, false) != null;
   }
 
+  /**
+   * Acquire the lock of a replica, counting the acquisitions which have to
+   * wait for another thread.
+   */
+  private ReentrantLock lockReplica(String bpid, long blockId) {
+    final ReentrantLock lock = replicaLocks.get(bpid, blockId);
+    if (!lock.tryLock()) {
+      final DataNodeMetrics metrics = datanode.getMetrics();
+      if (metrics != null) {
+        metrics.incrReplicaLockContended();
+      }
+      lock.lock();
+    }
+    return lock;
+  }
+
+  private void addDatasetLockWait(long startNanos) {
+    final DataNodeMetrics metrics = datanode.getMetrics();
+    if (metrics != null) {
+      metrics.addDatasetLockWaitNanos(System.nanoTime() - startNanos);
+    }
+  }
+
   /**
    * Turn the block identifier into a filename
    * @param bpid Block pool Id
@@ -2034,6 +2105,10 @@ public void shutdown() {
 
     ((LazyWriter) lazyWriter.getRunnable()).stop();
     lazyWriter.interrupt();
+    if (replicaCacheSaver != null) {
+      ((ReplicaCacheSaver) replicaCacheSaver.getRunnable()).stop();
+      replicaCacheSaver.interrupt();
+    }
 
     if (mbeanName != null) {
       MBeans.unregister(mbeanName);
@@ -2053,6 +2128,9 @@ public void shutdown() {
 
     try {
       lazyWriter.join();
+      if (replicaCacheSaver != null) {
+        replicaCacheSaver.join();
+      }
     } catch (InterruptedException ie) {
       LOG.warn("FsDatasetImpl.shutdown ignoring InterruptedException " +
                "from LazyWriter.join");
@@ -2243,7 +2321,7 @@ public ReplicaInfo getReplica(String bpid, long blockId) {
   }
 
   @Override 
-  public synchronized String getReplicaString(String bpid, long blockId) {
+  public String getReplicaString(String bpid, long blockId) {
     final Replica r = volumeMap.get(bpid, blockId);
     return r == null? "null": r.toString();
   }
@@ -2458,7 +2536,7 @@ private File[] copyReplicaWithNewBlockIdAndGS(
   }
 
   @Override // FsDatasetSpi
-  public synchronized long getReplicaVisibleLength(final ExtendedBlock block)
+  public long getReplicaVisibleLength(final ExtendedBlock block)
   throws IOException {
     final Replica replica = getReplicaInfo(block.getBlockPoolId(), 
         block.getBlockId());
@@ -2497,12 +2575,14 @@ private static class VolumeInfo {
     final long usedSpace; // size of space used by HDFS
     final long freeSpace; // size of free space excluding reserved space
     final long reservedSpace; // size of space reserved for non-HDFS and RBW
+    final VolumeIOStats ioStats;
 
     VolumeInfo(FsVolumeImpl v, long usedSpace, long freeSpace) {
       this.directory = v.toString();
       this.usedSpace = usedSpace;
       this.freeSpace = freeSpace;
       this.reservedSpace = v.getReserved();
+      this.ioStats = v.getIOStats();
     }
   }  
 
@@ -2536,6 +2616,17 @@ public Map<String, Object> getVolumeInfoMap() {
       innerInfo.put("usedSpace", v.usedSpace);
       innerInfo.put("freeSpace", v.freeSpace);
       innerInfo.put("reservedSpace", v.reservedSpace);
+      innerInfo.put("ioQueueDepth", v.ioStats.getQueueDepth());
+      innerInfo.put("ioAvgLatencyNanos", v.ioStats.getAvgLatencyNanos());
+      for (Map.Entry<Quantile, Long> e :
+          v.ioStats.getLatencyPercentiles().entrySet()) {
+        innerInfo.put(String.format("ioLatencyNanos%dthPercentile",
+            (int) (e.getKey().quantile * 100)), e.getValue());
+      }
+      innerInfo.put("readOps", v.ioStats.getReadOps());
+      innerInfo.put("writeOps", v.ioStats.getWriteOps());
+      innerInfo.put("bytesRead", v.ioStats.getBytesRead());
+      innerInfo.put("bytesWritten", v.ioStats.getBytesWritten());
       info.put(v.directory, innerInfo);
     }
     return info;
@@ -2570,19 +2661,17 @@ public synchronized void deleteBlockPool(String bpid, boolean force)
   @Override // FsDatasetSpi
   public BlockLocalPathInfo getBlockLocalPathInfo(ExtendedBlock block)
       throws IOException {
-    synchronized(this) {
-      final Replica replica = volumeMap.get(block.getBlockPoolId(),
-          block.getBlockId());
-      if (replica == null) {
-        throw new ReplicaNotFoundException(block);
-      }
-      if (replica.getGenerationStamp() < block.getGenerationStamp()) {
-        throw new IOException(
-            "Replica generation stamp < block generation stamp, block="
-            + block + ", replica=" + replica);
-      } else if (replica.getGenerationStamp() > block.getGenerationStamp()) {
-        block.setGenerationStamp(replica.getGenerationStamp());
-      }
+    final Replica replica = volumeMap.get(block.getBlockPoolId(),
+        block.getBlockId());
+    if (replica == null) {
+      throw new ReplicaNotFoundException(block);
+    }
+    if (replica.getGenerationStamp() < block.getGenerationStamp()) {
+      throw new IOException(
+          "Replica generation stamp < block generation stamp, block="
+          + block + ", replica=" + replica);
+    } else if (replica.getGenerationStamp() > block.getGenerationStamp()) {
+      block.setGenerationStamp(replica.getGenerationStamp());
     }
 
     File datafile = getBlockFile(block);
@@ -2968,6 +3057,92 @@ public void stop() {
     }
   }
   
+  /**
+   * Save a checkpoint of the replicas of each block pool slice, so that a
+   * restart after a crash only has to walk the block directories which
+   * changed since the checkpoint.
+   */
+  @VisibleForTesting
+  void saveReplicaCheckpoints() {
+    for (String bpid : volumeMap.getBlockPoolList()) {
+      // Read the directory times before the replicas, see
+      // BlockPoolSlice#getFinalizedDirTimes
+      Map<FsVolumeImpl, Map<Integer, Long>> dirTimes =
+          new HashMap<FsVolumeImpl, Map<Integer, Long>>();
+      for (FsVolumeImpl v : getVolumes()) {
+        if (v.isTransientStorage()) {
+          continue;
+        }
+        try {
+          Map<Integer, Long> times =
+              v.getBlockPoolSlice(bpid).getFinalizedDirTimes();
+          if (times != null) {
+            dirTimes.put(v, times);
+          }
+        } catch (IOException e) {
+          LOG.warn("Failed to checkpoint the replicas of " + bpid + " on "
+              + v, e);
+        }
+      }
+      if (dirTimes.isEmpty()) {
+        continue;
+      }
+      Map<DatanodeStorage, BlockListAsLongs> blockReports =
+          getBlockReports(bpid);
+      for (Map.Entry<FsVolumeImpl, Map<Integer, Long>> entry
+          : dirTimes.entrySet()) {
+        FsVolumeImpl v = entry.getKey();
+        BlockListAsLongs blocksList =
+            blockReports.get(v.toDatanodeStorage());
+        if (blocksList == null) {
+          // the volume was removed
+          continue;
+        }
+        try {
+          v.getBlockPoolSlice(bpid).saveReplicaCheckpoint(blocksList,
+              entry.getValue());
+        } catch (IOException e) {
+          LOG.warn("Failed to checkpoint the replicas of " + bpid + " on "
+              + v, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Periodically saves a checkpoint of the replicas, see
+   * {@link #saveReplicaCheckpoints()}.
+   */
+  class ReplicaCacheSaver implements Runnable {
+    private volatile boolean shouldRun = true;
+    private final long intervalMs;
+
+    ReplicaCacheSaver(long intervalMs) {
+      this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public void run() {
+      while (fsRunning && shouldRun) {
+        try {
+          Thread.sleep(intervalMs);
+          if (fsRunning && shouldRun) {
+            saveReplicaCheckpoints();
+          }
+        } catch (InterruptedException e) {
+          LOG.info("ReplicaCacheSaver was interrupted, exiting");
+          break;
+        } catch (Exception e) {
+          LOG.warn("Ignoring exception in ReplicaCacheSaver:", e);
+        }
+      }
+    }
+
+    public void stop() {
+      shouldRun = false;
+    }
+  }
+
   @Override
   public void setPinning(ExtendedBlock block) throws IOException {
     if (!blockPinningEnabled) {
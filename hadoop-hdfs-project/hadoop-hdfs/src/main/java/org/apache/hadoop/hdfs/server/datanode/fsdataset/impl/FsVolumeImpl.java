@@ -57,6 +57,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIOStats;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.util.CloseableReferenceCount;
 import org.apache.hadoop.io.IOUtils;
@@ -89,6 +90,7 @@ public class FsVolumeImpl implements FsVolumeSpi {
   private final DF usage;           
   private final long reserved;
   private CloseableReferenceCount reference = new CloseableReferenceCount();
+  private final VolumeIOStats ioStats = new VolumeIOStats();
 
   // Disk space reserved for open blocks.
   private AtomicLong reservedForRbw;
@@ -752,6 +754,11 @@ public FsDatasetSpi getDataset() {
     return dataset;
   }
 
+  @Override
+  public VolumeIOStats getIOStats() {
+    return ioStats;
+  }
+
   /**
    * RBW files. They get moved to the finalized block directory when
    * the block is finalized.
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+
+/**
+ * A fixed number of locks shared by the replicas of a dataset. The lock of a
+ * replica is chosen by its block pool and block id, so the replicas of all
+ * the volumes and block pools are spread over the stripes.
+ *
+ * Operations which do disk I/O for a single replica hold its lock instead of
+ * the dataset lock, so a slow disk only delays the operations on replicas
+ * sharing the stripe. A replica lock must be acquired before the dataset
+ * lock, never while holding it.
+ */
+class ReplicaLockStripes {
+  private final ReentrantLock[] locks;
+
+  ReplicaLockStripes(int numStripes) {
+    if (numStripes <= 0) {
+      throw new HadoopIllegalArgumentException(
+          "The number of lock stripes must be positive: " + numStripes);
+    }
+    // round up to a power of two so a stripe is chosen with a mask
+    int n = Integer.highestOneBit(numStripes);
+    if (n < numStripes) {
+      n <<= 1;
+    }
+    locks = new ReentrantLock[n];
+    for (int i = 0; i < n; i++) {
+      locks[i] = new ReentrantLock();
+    }
+  }
+
+  /** @return the lock of the given replica. */
+  ReentrantLock get(String bpid, long blockId) {
+    int h = bpid.hashCode() * 31 + (int) (blockId ^ (blockId >>> 32));
+    h ^= (h >>> 16);
+    return locks[h & (locks.length - 1)];
+  }
+
+  int size() {
+    return locks.length;
+  }
+}
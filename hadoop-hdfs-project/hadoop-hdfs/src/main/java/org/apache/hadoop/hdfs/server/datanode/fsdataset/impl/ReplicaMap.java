@@ -18,8 +18,9 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
@@ -27,14 +28,21 @@
 
 /**
  * Maintains the replica map. 
+ *
+ * The map is concurrent: lookups, additions and removals of single replicas
+ * do not lock, and the per block pool maps are sharded internally, so they
+ * do not serialize the volumes of a datanode on one lock. The mutex is still
+ * used to add and remove block pools, and callers that need a consistent
+ * view across several operations, e.g. while iterating over the
+ * {@link #replicas(String)}, synchronize on it externally.
  */
 class ReplicaMap {
   // Object using which this class is synchronized
   private final Object mutex;
   
   // Map of block pool Id to another map of block Id to ReplicaInfo.
-  private final Map<String, Map<Long, ReplicaInfo>> map =
-    new HashMap<String, Map<Long, ReplicaInfo>>();
+  private final ConcurrentMap<String, ConcurrentMap<Long, ReplicaInfo>> map =
+    new ConcurrentHashMap<String, ConcurrentMap<Long, ReplicaInfo>>();
   
   ReplicaMap(Object mutex) {
     if (mutex == null) {
@@ -90,10 +98,8 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.get(blockId) : null;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.get(blockId) : null;
   }
   
   /**
@@ -107,22 +113,18 @@ ReplicaInfo get(String bpid, long blockId) {
   ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m == null) {
-        // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
-        map.put(bpid, m);
-      }
-      return  m.put(replicaInfo.getBlockId(), replicaInfo);
-    }
+    return getOrCreate(bpid).put(replicaInfo.getBlockId(), replicaInfo);
   }
 
   /**
    * Add all entries from the given replica map into the local replica map.
+   * The entries are merged into the block pools already in the map.
    */
   void addAll(ReplicaMap other) {
-    map.putAll(other.map);
+    for (Map.Entry<String, ConcurrentMap<Long, ReplicaInfo>> e :
+        other.map.entrySet()) {
+      getOrCreate(e.getKey()).putAll(e.getValue());
+    }
   }
   
   /**
@@ -136,18 +138,17 @@ void addAll(ReplicaMap other) {
   ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m != null) {
-        Long key = Long.valueOf(block.getBlockId());
-        ReplicaInfo replicaInfo = m.get(key);
-        if (replicaInfo != null &&
-            block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
-          return m.remove(key);
-        } 
+    ConcurrentMap<Long, ReplicaInfo> m = map.get(bpid);
+    if (m != null) {
+      Long key = Long.valueOf(block.getBlockId());
+      ReplicaInfo replicaInfo = m.get(key);
+      // only remove the replica that was checked, not one that replaced it
+      if (replicaInfo != null &&
+          block.getGenerationStamp() == replicaInfo.getGenerationStamp() &&
+          m.remove(key, replicaInfo)) {
+        return replicaInfo;
       }
     }
-    
     return null;
   }
   
@@ -159,13 +160,8 @@ ReplicaInfo remove(String bpid, Block block) {
    */
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m != null) {
-        return m.remove(blockId);
-      }
-    }
-    return null;
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.remove(blockId) : null;
   }
  
   /**
@@ -174,19 +170,17 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    Map<Long, ReplicaInfo> m = null;
-    synchronized(mutex) {
-      m = map.get(bpid);
-      return m != null ? m.size() : 0;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.size() : 0;
   }
   
   /**
    * Get a collection of the replicas for given block pool
-   * This method is <b>not synchronized</b>. It needs to be synchronized
-   * externally using the mutex, both for getting the replicas
-   * values from the map and iterating over it. Mutex can be accessed using
-   * {@link #getMutext()} method.
+   * This method is <b>not synchronized</b>. Iterating over the collection is
+   * safe while the map is modified, but callers that need a consistent
+   * snapshot must synchronize externally using the mutex, both for getting
+   * the replicas values from the map and iterating over it. Mutex can be
+   * accessed using {@link #getMutext()} method.
    * 
    * @param bpid block pool id
    * @return a collection of the replicas belonging to the block pool
@@ -199,14 +193,22 @@ Collection<ReplicaInfo> replicas(String bpid) {
 
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      if (m == null) {
-        // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
-        map.put(bpid, m);
+    getOrCreate(bpid);
+  }
+
+  private ConcurrentMap<Long, ReplicaInfo> getOrCreate(String bpid) {
+    ConcurrentMap<Long, ReplicaInfo> m = map.get(bpid);
+    if (m == null) {
+      // Add an entry for block pool if it does not exist already
+      synchronized(mutex) {
+        m = map.get(bpid);
+        if (m == null) {
+          m = new ConcurrentHashMap<Long, ReplicaInfo>();
+          map.put(bpid, m);
+        }
       }
     }
+    return m;
   }
   
   void cleanUpBlockPool(String bpid) {
@@ -63,6 +63,10 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong blockVerificationFailures;
   @Metric MutableCounterLong blocksCached;
   @Metric MutableCounterLong blocksUncached;
+  @Metric("Block reads of replicas cached in memory")
+  MutableCounterLong cachedBlockReads;
+  @Metric("Block reads of replicas not cached in memory")
+  MutableCounterLong uncachedBlockReads;
   @Metric MutableCounterLong readsFromLocalClient;
   @Metric MutableCounterLong readsFromRemoteClient;
   @Metric MutableCounterLong writesFromLocalClient;
@@ -123,6 +127,30 @@ public class DataNodeMetrics {
   @Metric MutableRate sendDataPacketTransferNanos;
   final MutableQuantiles[] sendDataPacketTransferNanosQuantiles;
 
+  @Metric("Time waiting for the dataset lock in ns")
+  MutableRate datasetLockWaitNanos;
+  final MutableQuantiles[] datasetLockWaitNanosQuantiles;
+  @Metric("Replica lock acquisitions which had to wait")
+  MutableCounterLong replicaLockContended;
+
+  @Metric("Volume read latency in ns")
+  MutableRate volumeReadNanos;
+  final MutableQuantiles[] volumeReadNanosQuantiles;
+  @Metric("Volume write latency in ns")
+  MutableRate volumeWriteNanos;
+  final MutableQuantiles[] volumeWriteNanosQuantiles;
+
+  @Metric("Time compiling the disk report of a directory scan in ms")
+  MutableRate directoryScanCompileMs;
+  @Metric("Time diffing a directory scan against the block map in ms")
+  MutableRate directoryScanDiffMs;
+  @Metric("Directories listed by the directory scanner")
+  MutableCounterLong directoryScanDirsListed;
+  @Metric("Block files found by the directory scanner")
+  MutableCounterLong directoryScanBlocksScanned;
+  @Metric("Time the directory scanner was throttled in ms")
+  MutableCounterLong directoryScanThrottledMs;
+
   final MetricsRegistry registry = new MetricsRegistry("datanode");
   final String name;
   JvmMetrics jvmMetrics = null;
@@ -141,6 +169,9 @@ public DataNodeMetrics(String name, String sessionId, int[] intervals,
     sendDataPacketTransferNanosQuantiles = new MutableQuantiles[len];
     ramDiskBlocksEvictionWindowMsQuantiles = new MutableQuantiles[len];
     ramDiskBlocksLazyPersistWindowMsQuantiles = new MutableQuantiles[len];
+    datasetLockWaitNanosQuantiles = new MutableQuantiles[len];
+    volumeReadNanosQuantiles = new MutableQuantiles[len];
+    volumeWriteNanosQuantiles = new MutableQuantiles[len];
     
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
@@ -169,6 +200,16 @@ public DataNodeMetrics(String name, String sessionId, int[] intervals,
           "ramDiskBlocksLazyPersistWindows" + interval + "s",
           "Time between the RamDisk block write and disk persist in ms",
           "ops", "latency", interval);
+      datasetLockWaitNanosQuantiles[i] = registry.newQuantiles(
+          "datasetLockWaitNanos" + interval + "s",
+          "Time waiting for the dataset lock in ns",
+          "ops", "latency", interval);
+      volumeReadNanosQuantiles[i] = registry.newQuantiles(
+          "volumeReadNanos" + interval + "s",
+          "Volume read latency in ns", "ops", "latency", interval);
+      volumeWriteNanosQuantiles[i] = registry.newQuantiles(
+          "volumeWriteNanos" + interval + "s",
+          "Volume write latency in ns", "ops", "latency", interval);
     }
   }
 
@@ -271,6 +312,14 @@ public void incrBlocksRead() {
     blocksRead.incr();
   }
 
+  public void incrBlockReads(boolean cached) {
+    if (cached) {
+      cachedBlockReads.incr();
+    } else {
+      uncachedBlockReads.incr();
+    }
+  }
+
   public void incrFsyncCount() {
     fsyncCount.incr();
   }
@@ -404,4 +453,49 @@ public void addRamDiskBlocksLazyPersistWindowMs(long latencyMs) {
       q.add(latencyMs);
     }
   }
+
+  public void addDatasetLockWaitNanos(long latencyNanos) {
+    datasetLockWaitNanos.add(latencyNanos);
+    for (MutableQuantiles q : datasetLockWaitNanosQuantiles) {
+      q.add(latencyNanos);
+    }
+  }
+
+  public void incrReplicaLockContended() {
+    replicaLockContended.incr();
+  }
+
+  public void addVolumeReadNanos(long latencyNanos) {
+    volumeReadNanos.add(latencyNanos);
+    for (MutableQuantiles q : volumeReadNanosQuantiles) {
+      q.add(latencyNanos);
+    }
+  }
+
+  public void addVolumeWriteNanos(long latencyNanos) {
+    volumeWriteNanos.add(latencyNanos);
+    for (MutableQuantiles q : volumeWriteNanosQuantiles) {
+      q.add(latencyNanos);
+    }
+  }
+
+  public void addDirectoryScanCompileMs(long latencyMs) {
+    directoryScanCompileMs.add(latencyMs);
+  }
+
+  public void addDirectoryScanDiffMs(long latencyMs) {
+    directoryScanDiffMs.add(latencyMs);
+  }
+
+  public void incrDirectoryScanDirsListed(long delta) {
+    directoryScanDirsListed.incr(delta);
+  }
+
+  public void incrDirectoryScanBlocksScanned(long delta) {
+    directoryScanBlocksScanned.incr(delta);
+  }
+
+  public void incrDirectoryScanThrottledMs(long delta) {
+    directoryScanThrottledMs.incr(delta);
+  }
 }
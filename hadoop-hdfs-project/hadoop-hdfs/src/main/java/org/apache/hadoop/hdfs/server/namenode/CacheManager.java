@@ -17,6 +17,14 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CACHING_AUTO_CAPACITY_PERCENT_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CACHING_AUTO_CAPACITY_PERCENT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CACHING_AUTO_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CACHING_AUTO_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CACHING_AUTO_EXPIRY_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CACHING_AUTO_EXPIRY_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CACHING_AUTO_REPLICATION_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CACHING_AUTO_REPLICATION_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_DIRECTIVES_NUM_RESPONSES;
@@ -32,11 +40,14 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -174,6 +185,87 @@ public final class CacheManager {
    */
   private CacheReplicationMonitor monitor;
 
+  /**
+   * Whether the hot blocks reported by the datanodes are cached.
+   */
+  private final boolean autoCachingEnabled;
+
+  /**
+   * Cache replication of the hot blocks.
+   */
+  private final short autoCacheReplication;
+
+  /**
+   * Percentage of the cluster cache capacity usable by the hot blocks.
+   */
+  private final float autoCacheCapacityPercent;
+
+  /**
+   * Time after which a hot block which is not reported any more is dropped.
+   */
+  private final long hotBlockExpiryMs;
+
+  /**
+   * The hot blocks reported by the datanodes, by block ID.  Protected by the
+   * FSN lock.
+   */
+  private final HashMap<Long, HotBlock> hotBlocks =
+      new HashMap<Long, HotBlock>();
+
+  /**
+   * The IDs of the hot blocks of the last cache report of each datanode, by
+   * datanode UUID.  Protected by the FSN lock.
+   */
+  private final HashMap<String, long[]> hotBlocksByDatanode =
+      new HashMap<String, long[]>();
+
+  /**
+   * A block which is frequently read on at least one datanode.
+   */
+  public static final class HotBlock {
+    private final long blockId;
+
+    /**
+     * Recent number of reads of the block, by datanode UUID.
+     */
+    private final Map<String, Long> readsByDatanode =
+        new HashMap<String, Long>(3);
+
+    private long lastReportedMs;
+
+    HotBlock(long blockId) {
+      this.blockId = blockId;
+    }
+
+    public long getBlockId() {
+      return blockId;
+    }
+
+    /**
+     * @return the recent number of reads of all the replicas of the block.
+     */
+    public long getReads() {
+      long reads = 0;
+      for (long r : readsByDatanode.values()) {
+        reads += r;
+      }
+      return reads;
+    }
+
+    @Override
+    public String toString() {
+      return "HotBlock(" + blockId + ", reads=" + getReads() + ")";
+    }
+  }
+
+  private static final Comparator<HotBlock> MOST_READ_FIRST =
+      new Comparator<HotBlock>() {
+        @Override
+        public int compare(HotBlock a, HotBlock b) {
+          return Long.compare(b.getReads(), a.getReads());
+        }
+      };
+
   public static final class PersistState {
     public final CacheManagerSection section;
     public final List<CachePoolInfoProto> pools;
@@ -212,7 +304,29 @@ public PersistState(CacheManagerSection section,
     this.cachedBlocks = new LightWeightGSet<CachedBlock, CachedBlock>(
           LightWeightGSet.computeCapacity(cachedBlocksPercent,
               "cachedBlocks"));
-
+    this.autoCachingEnabled = conf.getBoolean(
+        DFS_NAMENODE_CACHING_AUTO_ENABLED_KEY,
+        DFS_NAMENODE_CACHING_AUTO_ENABLED_DEFAULT);
+    short replication = (short) conf.getInt(
+        DFS_NAMENODE_CACHING_AUTO_REPLICATION_KEY,
+        DFS_NAMENODE_CACHING_AUTO_REPLICATION_DEFAULT);
+    if (replication < 1) {
+      LOG.info("Using minimum value 1 for {}",
+          DFS_NAMENODE_CACHING_AUTO_REPLICATION_KEY);
+      replication = 1;
+    }
+    this.autoCacheReplication = replication;
+    this.autoCacheCapacityPercent = Math.max(0.0f, Math.min(100.0f,
+        conf.getFloat(DFS_NAMENODE_CACHING_AUTO_CAPACITY_PERCENT_KEY,
+            DFS_NAMENODE_CACHING_AUTO_CAPACITY_PERCENT_DEFAULT)));
+    this.hotBlockExpiryMs = conf.getLong(
+        DFS_NAMENODE_CACHING_AUTO_EXPIRY_MS_KEY,
+        DFS_NAMENODE_CACHING_AUTO_EXPIRY_MS_DEFAULT);
+    if (autoCachingEnabled) {
+      LOG.info("Automatic caching of hot blocks is enabled, with replication"
+          + " {} and up to {}% of the cache capacity", autoCacheReplication,
+          autoCacheCapacityPercent);
+    }
   }
 
   /**
@@ -223,6 +337,8 @@ void clear() {
     directivesById.clear();
     directivesByPath.clear();
     cachePools.clear();
+    hotBlocks.clear();
+    hotBlocksByDatanode.clear();
     nextDirectiveId = 1;
   }
 
@@ -275,6 +391,42 @@ public Collection<CacheDirective> getCacheDirectives() {
     return Collections.unmodifiableCollection(directivesById.values());
   }
   
+  public boolean isAutoCachingEnabled() {
+    return autoCachingEnabled;
+  }
+
+  public short getAutoCacheReplication() {
+    return autoCacheReplication;
+  }
+
+  public float getAutoCacheCapacityPercent() {
+    return autoCacheCapacityPercent;
+  }
+
+  /**
+   * Drop the hot blocks which have not been reported for a while, and
+   * return the others.
+   *
+   * @param now the current monotonic time in milliseconds
+   * @return the hot blocks, most read first
+   */
+  public List<HotBlock> getHotBlocks(long now) {
+    assert namesystem.hasWriteLock();
+    List<HotBlock> blocks = new ArrayList<HotBlock>(hotBlocks.size());
+    for (Iterator<HotBlock> it = hotBlocks.values().iterator();
+        it.hasNext(); ) {
+      HotBlock hotBlock = it.next();
+      if (now - hotBlock.lastReportedMs > hotBlockExpiryMs) {
+        LOG.trace("Hot block {} expired", hotBlock.blockId);
+        it.remove();
+      } else {
+        blocks.add(hotBlock);
+      }
+    }
+    Collections.sort(blocks, MOST_READ_FIRST);
+    return blocks;
+  }
+
   @VisibleForTesting
   public GSet<CachedBlock, CachedBlock> getCachedBlocks() {
     assert namesystem.hasReadLock();
@@ -909,7 +1061,8 @@ public void setCachedLocations(LocatedBlock block) {
   }
 
   public final void processCacheReport(final DatanodeID datanodeID,
-      final List<Long> blockIds) throws IOException {
+      final List<Long> blockIds, final Map<Long, Long> hotBlockReads)
+      throws IOException {
     namesystem.writeLock();
     final long startTime = Time.monotonicNow();
     final long endTime;
@@ -922,6 +1075,9 @@ public final void processCacheReport(final DatanodeID datanodeID,
             datanode);
       }
       processCacheReportImpl(datanode, blockIds);
+      if (autoCachingEnabled) {
+        processHotBlocks(datanode, hotBlockReads);
+      }
     } finally {
       endTime = Time.monotonicNow();
       namesystem.writeUnlock();
@@ -972,6 +1128,48 @@ private void processCacheReportImpl(final DatanodeDescriptor datanode,
     }
   }
 
+  /**
+   * Replace the hot blocks previously reported by the datanode with the
+   * ones of its latest cache report.
+   */
+  private void processHotBlocks(final DatanodeDescriptor datanode,
+      final Map<Long, Long> hotBlockReads) {
+    final String uuid = datanode.getDatanodeUuid();
+    final long now = Time.monotonicNow();
+    final long[] previous = hotBlocksByDatanode.get(uuid);
+    if (previous != null) {
+      for (long blockId : previous) {
+        HotBlock hotBlock = hotBlocks.get(blockId);
+        if (hotBlock != null) {
+          hotBlock.readsByDatanode.remove(uuid);
+          if (hotBlock.readsByDatanode.isEmpty()
+              && !hotBlockReads.containsKey(blockId)) {
+            hotBlocks.remove(blockId);
+          }
+        }
+      }
+    }
+    final long[] reported = new long[hotBlockReads.size()];
+    int i = 0;
+    for (Map.Entry<Long, Long> e : hotBlockReads.entrySet()) {
+      reported[i++] = e.getKey();
+      HotBlock hotBlock = hotBlocks.get(e.getKey());
+      if (hotBlock == null) {
+        hotBlock = new HotBlock(e.getKey());
+        hotBlocks.put(e.getKey(), hotBlock);
+      }
+      hotBlock.readsByDatanode.put(uuid, e.getValue());
+      hotBlock.lastReportedMs = now;
+    }
+    if (reported.length > 0) {
+      hotBlocksByDatanode.put(uuid, reported);
+    } else {
+      hotBlocksByDatanode.remove(uuid);
+    }
+    LOG.trace("Datanode {} reported {} hot blocks", datanode,
+        hotBlockReads.size());
+  }
+
   /**
    * Saves the current state of the CacheManager to the DataOutput. Used
    * to persist CacheManager state in the FSImage.
@@ -136,6 +136,18 @@ public void addContents(ContentCounts that) {
     types.add(that.types);
   }
 
+  public void subtractContents(ContentCounts that) {
+    contents.subtract(that.contents);
+    types.subtract(that.types);
+  }
+
+  /** @return a copy of the counts. */
+  public ContentCounts copy() {
+    final ContentCounts c = new Builder().build();
+    c.addContents(this);
+    return c;
+  }
+
   public void addTypeSpace(StorageType t, long val) {
     types.add(t, val);
   }
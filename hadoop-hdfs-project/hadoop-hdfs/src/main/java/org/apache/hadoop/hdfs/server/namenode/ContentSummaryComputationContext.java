@@ -34,6 +34,28 @@ public class ContentSummaryComputationContext {
   private long yieldCount = 0;
   private long sleepMilliSec = 0;
   private int sleepNanoSec = 0;
+  /**
+   * The counts of a directory are cached if its subtree has at least this
+   * many files, directories and symlinks. 0 means no caching.
+   */
+  private long cacheThreshold = 0;
+  /** The number of inodes counted so far whose counts cannot be cached. */
+  private long uncacheableCount = 0;
+  private long cacheHits = 0;
+
+  /** The state of the computation before counting a directory. */
+  static final class CacheCheckpoint {
+    private final ContentCounts counts;
+    private final long yieldCount;
+    private final long uncacheableCount;
+
+    private CacheCheckpoint(ContentCounts counts, long yieldCount,
+        long uncacheableCount) {
+      this.counts = counts;
+      this.yieldCount = yieldCount;
+      this.uncacheableCount = uncacheableCount;
+    }
+  }
 
   /**
    * Constructor
@@ -53,6 +75,9 @@ public ContentSummaryComputationContext(FSDirectory dir,
     this.counts = new ContentCounts.Builder().build();
     this.sleepMilliSec = sleepMicroSec/1000;
     this.sleepNanoSec = (int)((sleepMicroSec%1000)*1000);
+    if (dir != null) {
+      this.cacheThreshold = dir.getContentSummaryCacheThreshold();
+    }
   }
 
   /** Constructor for blocking computation. */
@@ -120,6 +145,78 @@ public boolean yield() {
     return true;
   }
 
+  /** Return the number of directories whose cached counts were used. */
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  /**
+   * Add the cached counts of the given directory, if it has valid ones.
+   *
+   * @return true if the counts of the subtree have been added.
+   */
+  boolean addCachedCounts(INodeDirectory d) {
+    if (cacheThreshold <= 0) {
+      return false;
+    }
+    final DirectoryWithContentSummaryFeature f =
+        d.getDirectoryWithContentSummaryFeature();
+    final ContentCounts cached = f == null ? null
+        : f.getCounts(d.getStoragePolicyID());
+    if (cached == null) {
+      return false;
+    }
+    counts.addContents(cached);
+    cacheHits++;
+    return true;
+  }
+
+  /**
+   * Prevent caching the counts of the directories being counted, since they
+   * include an inode, such as a file under construction or a snapshot copy,
+   * whose counts may change without invalidating the cache.
+   */
+  void markUncacheable() {
+    uncacheableCount++;
+  }
+
+  /**
+   * Start counting a directory whose counts may be cached.
+   *
+   * @return the checkpoint to pass to {@link #finishCaching}, or null if
+   *         caching is disabled.
+   */
+  CacheCheckpoint startCaching() {
+    return cacheThreshold <= 0 ? null
+        : new CacheCheckpoint(counts.copy(), yieldCount, uncacheableCount);
+  }
+
+  /**
+   * Cache the counts of a directory after counting its subtree, unless the
+   * subtree has an uncacheable inode, or the locks have been released in the
+   * middle so that the counts may be inconsistent. A directory without the
+   * cache feature is only reported to the {@link FSDirectory} if its subtree
+   * is large enough, since features cannot be added under the read lock. A
+   * directory with the feature is always filled, even if its subtree has
+   * become small, since its ancestors may be filled by the same computation.
+   */
+  void finishCaching(INodeDirectory d, CacheCheckpoint checkpoint) {
+    if (checkpoint.yieldCount != yieldCount
+        || checkpoint.uncacheableCount != uncacheableCount) {
+      return;
+    }
+    final ContentCounts c = counts.copy();
+    c.subtractContents(checkpoint.counts);
+    final DirectoryWithContentSummaryFeature f =
+        d.getDirectoryWithContentSummaryFeature();
+    if (f != null) {
+      f.setCounts(c, d.getStoragePolicyID());
+    } else if (c.getFileCount() + c.getSymlinkCount() + c.getDirectoryCount()
+        >= cacheThreshold) {
+      dir.addContentSummaryCacheCandidate(d);
+    }
+  }
+
   /** Get the content counts */
   public ContentCounts getCounts() {
     return counts;
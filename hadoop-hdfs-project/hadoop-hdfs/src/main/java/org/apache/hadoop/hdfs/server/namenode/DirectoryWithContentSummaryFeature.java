@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+/**
+ * Content summary cache feature for {@link INodeDirectory}.
+ * <p>
+ * It holds the {@link ContentCounts} of the subtree of the directory, so that
+ * a content summary computation can add them without traversing the subtree.
+ * The counts are dropped by {@link INode#invalidateContentSummary()} whenever
+ * the subtree changes, and are refilled by the next computation.
+ * <p>
+ * The counts are filled while holding the read lock, hence they are published
+ * through a volatile field. Since the typespaces of the files depend on the
+ * storage policy they inherit, the counts are only valid as long as the
+ * directory has the same effective storage policy.
+ * <p>
+ * The ancestors of a directory which has the feature but no counts have no
+ * counts either, so that the invalidation can stop at such a directory.
+ */
+public final class DirectoryWithContentSummaryFeature implements INode.Feature {
+  /**
+   * Whether any directory ever had the feature, so that the invalidation is
+   * skipped altogether when the cache is disabled.
+   */
+  private static volatile boolean everUsed = false;
+
+  static boolean isEverUsed() {
+    return everUsed;
+  }
+
+  private static final class CachedCounts {
+    private final ContentCounts counts;
+    private final byte storagePolicyId;
+
+    CachedCounts(ContentCounts counts, byte storagePolicyId) {
+      this.counts = counts;
+      this.storagePolicyId = storagePolicyId;
+    }
+  }
+
+  private volatile CachedCounts cached;
+
+  DirectoryWithContentSummaryFeature() {
+    everUsed = true;
+  }
+
+  /**
+   * @return the cached counts of the subtree, or null if there are none
+   *         valid for the given effective storage policy of the directory.
+   */
+  ContentCounts getCounts(byte storagePolicyId) {
+    final CachedCounts c = cached;
+    return c != null && c.storagePolicyId == storagePolicyId ? c.counts : null;
+  }
+
+  void setCounts(ContentCounts counts, byte storagePolicyId) {
+    cached = new CachedCounts(counts, storagePolicyId);
+  }
+
+  void invalidate() {
+    cached = null;
+  }
+
+  boolean isValid() {
+    return cached != null;
+  }
+}
@@ -48,6 +48,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.protobuf.ByteString;
 
 /**
  * An implementation of the abstract class {@link EditLogInputStream}, which
@@ -121,6 +122,23 @@ public static EditLogInputStream fromUrl(
         startTxId, endTxId, inProgress);
   }
   
+  /**
+   * Open an EditLogInputStream over edits held in memory, e.g. fetched over
+   * RPC, which are prefixed by the header of an edit log file.
+   *
+   * @param bytes the header and the edits
+   * @param name the name of the stream
+   * @param startTxId the first txid in the edits
+   * @param endTxId the last txid to read, any further edit being skipped
+   * @param inProgress whether the edits are from an in-progress log
+   * @return a stream from which edits may be read
+   */
+  public static EditLogInputStream fromByteString(ByteString bytes,
+      String name, long startTxId, long endTxId, boolean inProgress) {
+    return new EditLogFileInputStream(new ByteStringLog(bytes, name),
+        startTxId, endTxId, inProgress);
+  }
+
   private EditLogFileInputStream(LogSource log,
       long firstTxId, long lastTxId,
       boolean isInProgress) {
@@ -435,6 +453,31 @@ public String getName() {
     }
   }
 
+  private static class ByteStringLog implements LogSource {
+    private final ByteString bytes;
+    private final String name;
+
+    public ByteStringLog(ByteString bytes, String name) {
+      this.bytes = bytes;
+      this.name = name;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return bytes.newInput();
+    }
+
+    @Override
+    public long length() {
+      return bytes.size();
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+  }
+
   private static class URLLog implements LogSource {
     private final URL url;
     private long advertisedSize = -1;
@@ -440,6 +440,8 @@ static void unprotectedSetStoragePolicy(
       }
       inode.asFile().setStoragePolicyID(policyId, snapshotId);
     } else if (inode.isDirectory()) {
+      // the files inheriting the policy change their typespaces
+      inode.invalidateContentSummary();
       setDirStoragePolicy(fsd, inode.asDirectory(), policyId, snapshotId);
     } else {
       throw new FileNotFoundException(iip.getPath()
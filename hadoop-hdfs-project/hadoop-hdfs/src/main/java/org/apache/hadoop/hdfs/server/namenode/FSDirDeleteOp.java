@@ -138,7 +138,23 @@ static void deleteForEditLog(FSDirectory fsd, String src, long mtime)
   static BlocksMapUpdateInfo deleteInternal(
       FSNamesystem fsn, String src, INodesInPath iip, boolean logRetryCache)
       throws IOException {
-    assert fsn.hasWriteLock();
+    BlocksMapUpdateInfo collectedBlocks =
+        deleteWithoutSync(fsn, src, iip, logRetryCache);
+    if (collectedBlocks != null) {
+      fsn.getFSDirectory().getEditLog().logSync();
+    }
+    return collectedBlocks;
+  }
+
+  /**
+   * Delete a path from the name space and log the edit, like
+   * {@link #deleteInternal}, but leave syncing the edit log to the caller,
+   * e.g. once it releases the lock.
+   */
+  static BlocksMapUpdateInfo deleteWithoutSync(
+      FSNamesystem fsn, String src, INodesInPath iip, boolean logRetryCache)
+      throws IOException {
+    assert fsn.hasWriteLock() || fsn.hasPathWriteLock();
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("DIR* NameSystem.delete: " + src);
     }
@@ -158,7 +174,6 @@ static BlocksMapUpdateInfo deleteInternal(
     incrDeletedFileCount(filesRemoved);
 
     fsn.removeLeasesAndINodes(src, removedINodes, true);
-    fsd.getEditLog().logSync();
 
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("DIR* Namesystem.delete: "
@@ -277,14 +277,17 @@ static void renameTo(FSDirectory fsd, FSPermissionChecker pc, String src,
           + dst);
     }
     final long mtime = Time.now();
-    fsd.writeLock();
+    // The quota usage of the common ancestors of the source and destination
+    // is shared with other subtrees, and must be verified and updated
+    // atomically even under path locks.
+    fsd.writeLockShared();
     try {
       if (unprotectedRenameTo(fsd, src, dst, srcIIP, dstIIP, mtime,
           collectedBlocks, options)) {
         FSDirDeleteOp.incrDeletedFileCount(1);
       }
     } finally {
-      fsd.writeUnlock();
+      fsd.writeUnlockShared();
     }
     fsd.getEditLog().logRename(src, dst, mtime, logRetryCache, options);
   }
@@ -469,11 +472,11 @@ private static boolean renameTo(FSDirectory fsd, FSPermissionChecker pc,
     }
     final long mtime = Time.now();
     boolean stat = false;
-    fsd.writeLock();
+    fsd.writeLockShared();
     try {
       stat = unprotectedRenameTo(fsd, src, actualDst, srcIIP, dstIIP, mtime);
     } finally {
-      fsd.writeUnlock();
+      fsd.writeUnlockShared();
     }
     if (stat) {
       fsd.getEditLog().logRename(src, dst, mtime, logRetryCache);
@@ -499,6 +499,7 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
                 fsd.getContentCountLimit(), fsd.getContentSleepMicroSec());
         ContentSummary cs = targetNode.computeAndConvertContentSummary(cscc);
         fsd.addYieldCount(cscc.getYieldCount());
+        fsd.addContentSummaryCacheHits(cscc.getCacheHits());
         return cs;
       }
     } finally {
@@ -74,8 +74,13 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.apache.hadoop.fs.BatchedRemoteIterator.BatchedListEntries;
@@ -137,8 +142,14 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
+  private final long contentSummaryCacheThreshold;
+  /** Directories to be given a content summary cache. */
+  private final Set<INodeDirectory> contentSummaryCacheCandidates =
+      Collections.newSetFromMap(
+          new ConcurrentHashMap<INodeDirectory, Boolean>());
   private final INodeMap inodeMap; // Synchronized by dirLock
   private long yieldCount = 0; // keep track of lock yield count.
+  private final AtomicLong contentSummaryCacheHits = new AtomicLong();
 
   private final int inodeXAttrsLimit; //inode xattrs max limit
 
@@ -174,29 +185,69 @@ public void setINodeAttributeProvider(INodeAttributeProvider provider) {
     attributeProvider = provider;
   }
 
-  // utility methods to acquire and release read lock and write lock
+  // utility methods to acquire and release read lock and write lock.
+  // Operations holding a namesystem path lock are already isolated from
+  // every other reader and writer of their subtree, so the directory lock is
+  // skipped for them. State shared between subtrees, i.e. the quota usage of
+  // their common ancestors, the inode map and the encryption zones, is only
+  // accessed under the directory lock itself, see readLockShared and
+  // writeLockShared.
   void readLock() {
-    this.dirLock.readLock().lock();
+    if (!namesystem.hasPathLock()) {
+      this.dirLock.readLock().lock();
+    }
   }
 
   void readUnlock() {
-    this.dirLock.readLock().unlock();
+    if (!namesystem.hasPathLock()) {
+      this.dirLock.readLock().unlock();
+    }
   }
 
   void writeLock() {
-    this.dirLock.writeLock().lock();
+    if (!namesystem.hasPathLock()) {
+      this.dirLock.writeLock().lock();
+    }
   }
 
   void writeUnlock() {
+    if (!namesystem.hasPathLock()) {
+      this.dirLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Acquire the directory lock for reading state shared between subtrees,
+   * even when holding a namesystem path lock.
+   */
+  void readLockShared() {
+    this.dirLock.readLock().lock();
+  }
+
+  void readUnlockShared() {
+    this.dirLock.readLock().unlock();
+  }
+
+  /**
+   * Acquire the directory lock for updating state shared between subtrees,
+   * even when holding a namesystem path lock.
+   */
+  void writeLockShared() {
+    this.dirLock.writeLock().lock();
+  }
+
+  void writeUnlockShared() {
     this.dirLock.writeLock().unlock();
   }
 
   boolean hasWriteLock() {
-    return this.dirLock.isWriteLockedByCurrentThread();
+    return this.dirLock.isWriteLockedByCurrentThread()
+        || namesystem.hasPathWriteLock();
   }
 
   boolean hasReadLock() {
-    return this.dirLock.getReadHoldCount() > 0 || hasWriteLock();
+    return this.dirLock.getReadHoldCount() > 0 || hasWriteLock()
+        || namesystem.hasPathLock();
   }
 
   public int getReadHoldCount() {
@@ -268,6 +319,9 @@ public int getWriteHoldCount() {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    this.contentSummaryCacheThreshold = conf.getLong(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_THRESHOLD_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_THRESHOLD_DEFAULT);
     
     // filesystem limits
     this.maxComponentLength = conf.getInt(
@@ -353,6 +407,33 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  long getContentSummaryCacheThreshold() {
+    return contentSummaryCacheThreshold;
+  }
+
+  void addContentSummaryCacheCandidate(INodeDirectory d) {
+    contentSummaryCacheCandidates.add(d);
+  }
+
+  boolean hasContentSummaryCacheCandidates() {
+    return !contentSummaryCacheCandidates.isEmpty();
+  }
+
+  /**
+   * Add a content summary cache to the directories which have been found
+   * large enough by a content summary computation. The caches are filled by
+   * the next computation, since the subtrees may have changed meanwhile.
+   */
+  void addContentSummaryCaches() {
+    assert hasWriteLock();
+    for (Iterator<INodeDirectory> i =
+        contentSummaryCacheCandidates.iterator(); i.hasNext();) {
+      final INodeDirectory d = i.next();
+      i.remove();
+      d.addDirectoryWithContentSummaryFeature();
+    }
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -650,7 +731,12 @@ void updateCountForDelete(final INode inode, final INodesInPath iip) {
     if (getFSNamesystem().isImageLoaded() &&
         !inode.isInLatestSnapshot(iip.getLatestSnapshotId())) {
       QuotaCounts counts = inode.computeQuotaUsage(getBlockStoragePolicySuite());
-      unprotectedUpdateCount(iip, iip.length() - 1, counts.negation());
+      writeLockShared();
+      try {
+        unprotectedUpdateCount(iip, iip.length() - 1, counts.negation());
+      } finally {
+        writeUnlockShared();
+      }
     }
   }
 
@@ -980,24 +1066,29 @@ public INodesInPath addLastINode(INodesInPath existing, INode inode,
     verifyINodeName(inode.getLocalNameBytes());
 
     final QuotaCounts counts = inode.computeQuotaUsage(getBlockStoragePolicySuite());
-    updateCount(existing, pos, counts, checkQuota);
-
-    boolean isRename = (inode.getParent() != null);
-    boolean added;
+    writeLockShared();
     try {
-      added = parent.addChild(inode, true, existing.getLatestSnapshotId());
-    } catch (QuotaExceededException e) {
-      updateCountNoQuotaCheck(existing, pos, counts.negation());
-      throw e;
-    }
-    if (!added) {
-      updateCountNoQuotaCheck(existing, pos, counts.negation());
-      return null;
-    } else {
-      if (!isRename) {
-        AclStorage.copyINodeDefaultAcl(inode);
+      updateCount(existing, pos, counts, checkQuota);
+
+      boolean isRename = (inode.getParent() != null);
+      boolean added;
+      try {
+        added = parent.addChild(inode, true, existing.getLatestSnapshotId());
+      } catch (QuotaExceededException e) {
+        updateCountNoQuotaCheck(existing, pos, counts.negation());
+        throw e;
+      }
+      if (!added) {
+        updateCountNoQuotaCheck(existing, pos, counts.negation());
+        return null;
+      } else {
+        if (!isRename) {
+          AclStorage.copyINodeDefaultAcl(inode);
+        }
+        addToInodeMap(inode);
       }
-      addToInodeMap(inode);
+    } finally {
+      writeUnlockShared();
     }
     return INodesInPath.append(existing, inode, inode.getLocalNameBytes());
   }
@@ -1049,6 +1140,15 @@ void addYieldCount(long value) {
     yieldCount += value;
   }
 
+  @VisibleForTesting
+  long getContentSummaryCacheHits() {
+    return contentSummaryCacheHits.get();
+  }
+
+  void addContentSummaryCacheHits(long value) {
+    contentSummaryCacheHits.addAndGet(value);
+  }
+
   public INodeMap getINodeMap() {
     return inodeMap;
   }
@@ -1188,15 +1288,21 @@ public final void addToInodeMap(INode inode) {
   }
   
   /**
-   * This method is always called with writeLock of FSDirectory held.
+   * This method is always called with writeLock of FSDirectory held, or with
+   * a namesystem path lock.
    */
   public final void removeFromInodeMap(List<? extends INode> inodes) {
     if (inodes != null) {
-      for (INode inode : inodes) {
-        if (inode != null && inode instanceof INodeWithAdditionalFields) {
-          inodeMap.remove(inode);
-          ezManager.removeEncryptionZone(inode.getId());
+      writeLockShared();
+      try {
+        for (INode inode : inodes) {
+          if (inode != null && inode instanceof INodeWithAdditionalFields) {
+            inodeMap.remove(inode);
+            ezManager.removeEncryptionZone(inode.getId());
+          }
         }
+      } finally {
+        writeUnlockShared();
       }
     }
   }
@@ -1207,11 +1313,11 @@ public final void removeFromInodeMap(List<? extends INode> inodes) {
    * @return The inode associated with the given id
    */
   public INode getInode(long id) {
-    readLock();
+    readLockShared();
     try {
       return inodeMap.get(id);
     } finally {
-      readUnlock();
+      readUnlockShared();
     }
   }
   
@@ -1221,12 +1327,12 @@ int getInodeMapSize() {
   }
 
   long totalInodes() {
-    readLock();
+    readLockShared();
     try {
       return rootDir.getDirectoryWithQuotaFeature().getSpaceConsumed()
           .getNameSpace();
     } finally {
-      readUnlock();
+      readUnlockShared();
     }
   }
 
@@ -1248,20 +1354,20 @@ void reset() {
 
   boolean isInAnEZ(INodesInPath iip)
       throws UnresolvedLinkException, SnapshotAccessControlException {
-    readLock();
+    readLockShared();
     try {
       return ezManager.isInAnEZ(iip);
     } finally {
-      readUnlock();
+      readUnlockShared();
     }
   }
 
   String getKeyName(INodesInPath iip) {
-    readLock();
+    readLockShared();
     try {
       return ezManager.getKeyName(iip);
     } finally {
-      readUnlock();
+      readUnlockShared();
     }
   }
 
@@ -1277,11 +1383,11 @@ XAttr createEncryptionZone(String src, CipherSuite suite,
   }
 
   EncryptionZone getEZForPath(INodesInPath iip) {
-    readLock();
+    readLockShared();
     try {
       return ezManager.getEZINodeForPath(iip);
     } finally {
-      readUnlock();
+      readUnlockShared();
     }
   }
 
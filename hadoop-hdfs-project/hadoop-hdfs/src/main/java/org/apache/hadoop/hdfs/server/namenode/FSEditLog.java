@@ -217,6 +217,24 @@ protected synchronized TransactionId initialValue() {
     }
   };
 
+  /**
+   * Create the edit log of a NameNode, which syncs edits asynchronously to
+   * RPC calls if so configured.
+   *
+   * @see FSEditLogAsync
+   */
+  static FSEditLog newInstance(Configuration conf, NNStorage storage,
+      List<URI> editsDirs) {
+    boolean asyncEditLogging = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT);
+    LOG.info("Edit logging is async: " + asyncEditLogging);
+    if (asyncEditLogging) {
+      return new FSEditLogAsync(conf, storage, editsDirs);
+    }
+    return new FSEditLog(conf, storage, editsDirs);
+  }
+
   /**
    * Constructor for FSEditLog. Underlying journals are constructed, but 
    * no streams are opened until open() is called.
@@ -539,12 +557,32 @@ synchronized void setNextTxId(long nextTxId) {
    */
   void logSyncAll() {
     // Record the most recent transaction ID as our own id
+    final long mytxid;
     synchronized (this) {
       TransactionId id = myTransactionId.get();
       id.txid = txid;
+      mytxid = txid;
     }
     // Then make sure we're synced up to this point
-    logSync();
+    logSync(mytxid);
+  }
+
+  /**
+   * Sync all modifications done by this thread and wait until they are
+   * persisted. Unlike {@link #logSync()}, the wait is never deferred to the
+   * response of the current RPC call, so this must be used before acting on
+   * the edits outside of the namespace, e.g. before invalidating the blocks
+   * of deleted files.
+   */
+  void logSyncAndWait() {
+    logSync(getThreadTxId());
+  }
+
+  /**
+   * @return the id of the last transaction written by the current thread.
+   */
+  long getThreadTxId() {
+    return myTransactionId.get().txid;
   }
   
   /**
@@ -576,11 +614,17 @@ void logSyncAll() {
    * waitForSyncToFinish() before assuming they are running alone.
    */
   public void logSync() {
+    // Fetch the transactionId of this thread.
+    logSync(myTransactionId.get().txid);
+  }
+
+  /**
+   * Sync the log up to the given transaction.
+   * @see #logSync()
+   */
+  void logSync(long mytxid) {
     long syncStart = 0;
 
-    // Fetch the transactionId of this thread. 
-    long mytxid = myTransactionId.get().txid;
-    
     boolean sync = false;
     try {
       EditLogOutputStream logStream = null;
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.util.ExitUtil.terminate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.Server;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * An edit log which does not block RPC handlers while their edits are synced.
+ * <p>
+ * Edits are still written to the in-memory buffer by the thread performing
+ * the operation, so transaction ids are assigned in the same order and under
+ * the same locks as in {@link FSEditLog}. When an RPC handler calls
+ * {@link #logSync()}, the response of its call is postponed and the call is
+ * handed over to a dedicated sync thread. The sync thread syncs the edits of
+ * all pending calls at once and only then sends their responses through the
+ * responder of the RPC server. A client thus never observes an operation
+ * whose edits are not durable, while the handler is free to serve the next
+ * call right away.
+ * <p>
+ * Threads which do not serve an RPC call, as well as threads holding the
+ * monitor of the edit log, sync their edits in place.
+ */
+class FSEditLogAsync extends FSEditLog implements Runnable {
+
+  /** An RPC call waiting for its edits to be synced. */
+  private static class PendingCall {
+    private final long txid;
+    private final Server.Call call;
+
+    PendingCall(long txid, Server.Call call) {
+      this.txid = txid;
+      this.call = call;
+    }
+  }
+
+  /** Guards the pending calls and the state of the sync thread. */
+  private final Object pendingLock = new Object();
+  private List<PendingCall> pendingCalls = new ArrayList<PendingCall>();
+  private Thread syncThread;
+  private boolean running = false;
+
+  FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
+    super(conf, storage, editsDirs);
+  }
+
+  @Override
+  synchronized void openForWrite() throws IOException {
+    super.openForWrite();
+    synchronized (pendingLock) {
+      if (syncThread == null) {
+        running = true;
+        syncThread = new Thread(this, "FSEditLogAsync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+      }
+    }
+  }
+
+  @Override
+  void close() {
+    stopSyncThread();
+    super.close();
+  }
+
+  /**
+   * Stop the sync thread after it has synced and answered all pending
+   * calls. Must not be called while holding the monitor of the edit log,
+   * which the sync thread needs to sync.
+   */
+  private void stopSyncThread() {
+    final Thread t;
+    synchronized (pendingLock) {
+      t = syncThread;
+      if (t == null) {
+        return;
+      }
+      running = false;
+      syncThread = null;
+      pendingLock.notifyAll();
+    }
+    try {
+      t.join();
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while waiting for the edit log sync thread", e);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @VisibleForTesting
+  boolean isSyncThreadRunning() {
+    synchronized (pendingLock) {
+      return running;
+    }
+  }
+
+  /**
+   * Sync all modifications done by this thread. If the thread serves an RPC
+   * call, this only postpones the response of the call until the edits are
+   * synced by the sync thread.
+   */
+  @Override
+  public void logSync() {
+    final Server.Call call = Server.getCurCall().get();
+    if (call == null || Thread.holdsLock(this)) {
+      super.logSync();
+      return;
+    }
+    // a handler which never logged an edit has to wait for all edits
+    final long txid = Math.min(getThreadTxId(), getLastWrittenTxId());
+    if (txid <= getSyncTxId()) {
+      return;
+    }
+    synchronized (pendingLock) {
+      if (running) {
+        call.postponeResponse();
+        pendingCalls.add(new PendingCall(txid, call));
+        pendingLock.notify();
+        return;
+      }
+    }
+    super.logSync();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        final List<PendingCall> calls;
+        synchronized (pendingLock) {
+          while (running && pendingCalls.isEmpty()) {
+            try {
+              pendingLock.wait();
+            } catch (InterruptedException ie) {
+            }
+          }
+          if (pendingCalls.isEmpty()) {
+            break;
+          }
+          calls = pendingCalls;
+          pendingCalls = new ArrayList<PendingCall>();
+        }
+        syncAndRespond(calls);
+      }
+    } catch (Throwable t) {
+      terminate(1, t);
+    }
+  }
+
+  private void syncAndRespond(List<PendingCall> calls) {
+    long txid = 0;
+    for (PendingCall p : calls) {
+      txid = Math.max(txid, p.txid);
+    }
+    // terminates the NameNode if the edits cannot be synced, so that no
+    // response is sent for an edit which is not durable
+    logSync(txid);
+    for (PendingCall p : calls) {
+      try {
+        p.call.sendResponse();
+      } catch (IOException e) {
+        LOG.warn("Failed to send the response of " + p.call, e);
+      }
+    }
+  }
+}
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.apache.hadoop.util.Time.monotonicNow;
 import static org.apache.hadoop.util.Time.now;
 
 import java.io.Closeable;
@@ -95,7 +96,9 @@ public class FSImage implements Closeable {
    * The last transaction ID that was either loaded from an image
    * or loaded by loading edits files.
    */
-  protected long lastAppliedTxId = 0;
+  protected volatile long lastAppliedTxId = 0;
+  /** Notified when the edits loaded advance lastAppliedTxId. */
+  private final Object appliedTxIdMonitor = new Object();
 
   final private Configuration conf;
 
@@ -143,7 +146,7 @@ protected FSImage(Configuration conf,
       storage.setRestoreFailedStorage(true);
     }
 
-    this.editLog = new FSEditLog(conf, storage, editsDirs);
+    this.editLog = FSEditLog.newInstance(conf, storage, editsDirs);
     
     archivalManager = new NNStorageRetentionManager(conf, storage, editLog);
   }
@@ -831,11 +834,11 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
         } finally {
           // Update lastAppliedTxId even in case of error, since some ops may
           // have been successfully applied before the error.
-          lastAppliedTxId = loader.getLastAppliedTxId();
+          setLastAppliedTxId(loader.getLastAppliedTxId());
         }
         // If we are in recovery mode, we may have skipped over some txids.
         if (editIn.getLastTxId() != HdfsConstants.INVALID_TXID) {
-          lastAppliedTxId = editIn.getLastTxId();
+          setLastAppliedTxId(editIn.getLastTxId());
         }
       }
     } finally {
@@ -976,7 +979,8 @@ void saveFSImage(SaveNamespaceContext context, StorageDirectory sd,
     File newFile = NNStorage.getStorageFile(sd, NameNodeFile.IMAGE_NEW, txid);
     File dstFile = NNStorage.getStorageFile(sd, dstType, txid);
     
-    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context);
+    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context,
+        conf);
     FSImageCompression compression = FSImageCompression.createCompression(conf);
     saver.save(newFile, compression);
     
@@ -1480,6 +1484,34 @@ public long getLastAppliedOrWrittenTxId() {
         editLog != null ? editLog.getLastWrittenTxId() : 0);
   }
 
+  private void setLastAppliedTxId(long txid) {
+    synchronized (appliedTxIdMonitor) {
+      lastAppliedTxId = txid;
+      appliedTxIdMonitor.notifyAll();
+    }
+  }
+
+  /**
+   * Wait for the given transaction to be applied or written, e.g. for a
+   * standby to tail the edits up to it.
+   * @return true if the transaction was applied or written within the
+   *         timeout, false otherwise
+   */
+  boolean waitForTxId(long txid, long timeoutMs) throws InterruptedException {
+    final long deadline = monotonicNow() + timeoutMs;
+    synchronized (appliedTxIdMonitor) {
+      for (long remaining = timeoutMs;
+          getLastAppliedOrWrittenTxId() < txid;
+          remaining = deadline - monotonicNow()) {
+        if (remaining <= 0) {
+          return false;
+        }
+        appliedTxIdMonitor.wait(remaining);
+      }
+    }
+    return true;
+  }
+
   public void updateLastAppliedTxIdFromWritten() {
     this.lastAppliedTxId = editLog.getLastWrittenTxId();
   }
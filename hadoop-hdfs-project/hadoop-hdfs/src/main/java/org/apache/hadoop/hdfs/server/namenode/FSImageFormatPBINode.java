@@ -18,13 +18,20 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -59,9 +66,11 @@
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.io.IOUtils;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
 
 @InterfaceAudience.Private
@@ -218,6 +227,9 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       }
     }
 
+    /** Number of inodes a loader thread adds to the inode map at once */
+    private static final int INODE_MAP_BATCH_SIZE = 1024;
+
     private final FSDirectory dir;
     private final FSNamesystem fsn;
     private final FSImageFormatProtobuf.Loader parent;
@@ -250,6 +262,36 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
       }
     }
 
+    /**
+     * Load the INODE_DIR sub-sections in parallel. Every directory appears in
+     * exactly one entry, so the threads never add children to the same
+     * directory; the name cache and the blocks map are shared and updated
+     * under the loader lock.
+     */
+    void loadINodeDirectorySectionInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, final String compressionCodec)
+        throws IOException {
+      LOG.info("Loading the INode directory section in " + sections.size()
+          + " sub-sections");
+      List<Future<Long>> futures = Lists.newArrayList();
+      for (final FileSummary.Section section : sections) {
+        futures.add(service.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws IOException {
+            InputStream in = parent.getInputStreamForSection(section,
+                compressionCodec);
+            try {
+              loadINodeDirectorySection(in);
+            } finally {
+              IOUtils.cleanup(LOG, in);
+            }
+            return 0L;
+          }
+        }));
+      }
+      waitForSubSections(futures);
+    }
+
     void loadINodeSection(InputStream in) throws IOException {
       INodeSection s = INodeSection.parseDelimitedFrom(in);
       fsn.dir.resetLastInodeId(s.getLastInodeId());
@@ -265,6 +307,101 @@ void loadINodeSection(InputStream in) throws IOException {
       }
     }
 
+    /**
+     * Load the INODE sub-sections in parallel. Only the section header is
+     * read from the given stream, the inodes are read by the loader threads
+     * and added to the inode map in batches.
+     */
+    void loadINodeSectionInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, final String compressionCodec,
+        InputStream in) throws IOException {
+      INodeSection s = INodeSection.parseDelimitedFrom(in);
+      fsn.dir.resetLastInodeId(s.getLastInodeId());
+      LOG.info("Loading " + s.getNumInodes() + " INodes in "
+          + sections.size() + " sub-sections.");
+      List<Future<Long>> futures = Lists.newArrayList();
+      for (final FileSummary.Section section : sections) {
+        futures.add(service.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws IOException {
+            InputStream in = parent.getInputStreamForSection(section,
+                compressionCodec);
+            try {
+              return loadINodeSubSection(in);
+            } finally {
+              IOUtils.cleanup(LOG, in);
+            }
+          }
+        }));
+      }
+      long loaded = waitForSubSections(futures);
+      if (loaded != s.getNumInodes()) {
+        throw new IOException("Expected to load " + s.getNumInodes()
+            + " INodes from the sub-sections but loaded " + loaded);
+      }
+    }
+
+    private long loadINodeSubSection(InputStream in) throws IOException {
+      List<INode> batch = Lists.newArrayListWithCapacity(INODE_MAP_BATCH_SIZE);
+      long count = 0;
+      while (true) {
+        INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        // note that in is a LimitedInputStream
+        if (p == null) {
+          break;
+        }
+        if (p.getId() == INodeId.ROOT_INODE_ID) {
+          synchronized (this) {
+            loadRootINode(p);
+          }
+        } else {
+          batch.add(loadINode(p));
+          if (batch.size() == INODE_MAP_BATCH_SIZE) {
+            addToInodeMap(batch);
+            batch.clear();
+          }
+        }
+        count++;
+      }
+      addToInodeMap(batch);
+      return count;
+    }
+
+    private synchronized void addToInodeMap(List<INode> inodes) {
+      for (INode n : inodes) {
+        dir.addToInodeMap(n);
+      }
+    }
+
+    /**
+     * Wait for all the sub-section loaders to finish.
+     * @return the sum of the values returned by the loaders
+     */
+    private static long waitForSubSections(List<Future<Long>> futures)
+        throws IOException {
+      long total = 0;
+      try {
+        for (Future<Long> f : futures) {
+          total += f.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while loading FSImage sub-sections",
+            e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException("Failed to load FSImage sub-section", cause);
+      } finally {
+        for (Future<Long> f : futures) {
+          f.cancel(true);
+        }
+      }
+      return total;
+    }
+
     /**
      * Load the under-construction files section, and update the lease map
      */
@@ -294,10 +431,12 @@ private void addToParent(INodeDirectory parent, INode child) {
       if (!parent.addChild(child)) {
         return;
       }
-      dir.cacheName(child);
+      synchronized (this) {
+        dir.cacheName(child);
 
-      if (child.isFile()) {
-        updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        if (child.isFile()) {
+          updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        }
       }
     }
 
@@ -504,6 +643,9 @@ public static INodeSection.INodeDirectory.Builder buildINodeDirectory(
       return b;
     }
 
+    /** The number of inodes serialized at once by a saver thread. */
+    private static final int SAVE_BATCH_SIZE = 1024;
+
     private final FSNamesystem fsn;
     private final FileSummary.Builder summary;
     private final SaveNamespaceContext context;
@@ -517,39 +659,18 @@ public static INodeSection.INodeDirectory.Builder buildINodeDirectory(
     }
 
     void serializeINodeDirectorySection(OutputStream out) throws IOException {
-      Iterator<INodeWithAdditionalFields> iter = fsn.getFSDirectory()
-          .getINodeMap().getMapIterator();
-      final ArrayList<INodeReference> refList = parent.getSaverContext()
-          .getRefList();
-      int i = 0;
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        if (!n.isDirectory()) {
-          continue;
-        }
-
-        ReadOnlyList<INode> children = n.asDirectory().getChildrenList(
-            Snapshot.CURRENT_STATE_ID);
-        if (children.size() > 0) {
-          INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
-              DirEntry.newBuilder().setParent(n.getId());
-          for (INode inode : children) {
-            if (!inode.isReference()) {
-              b.addChildren(inode.getId());
-            } else {
-              refList.add(inode.asReference());
-              b.addRefChildren(refList.size() - 1);
+      // sub-sections cover the same ranges of the inode map as in the INODE
+      // section, so that they hold similar numbers of directories
+      final long inodesPerSubSection = parent.getEntriesPerSubSection(
+          fsn.getFSDirectory().getINodeMap().size());
+      serializeEntries(out, inodesPerSubSection,
+          FSImageFormatProtobuf.SectionName.INODE_DIR_SUB, new EntryWriter() {
+            @Override
+            public void write(OutputStream out, INodeWithAdditionalFields n)
+                throws IOException {
+              saveDirEntry(out, n);
             }
-          }
-          INodeDirectorySection.DirEntry e = b.build();
-          e.writeDelimitedTo(out);
-        }
-
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
-        }
-      }
+          });
       parent.commitSection(summary,
           FSImageFormatProtobuf.SectionName.INODE_DIR);
     }
@@ -562,17 +683,171 @@ void serializeINodeSection(OutputStream out) throws IOException {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
+      final long inodesPerSubSection = parent.getEntriesPerSubSection(
+          inodesMap.size());
+      serializeEntries(out, inodesPerSubSection,
+          FSImageFormatProtobuf.SectionName.INODE_SUB, new EntryWriter() {
+            @Override
+            public void write(OutputStream out, INodeWithAdditionalFields n)
+                throws IOException {
+              save(out, n);
+            }
+          });
+      parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
+    }
+
+    /** Writes the entry of an inode, if it has one, to a section. */
+    private interface EntryWriter {
+      void write(OutputStream out, INodeWithAdditionalFields n)
+          throws IOException;
+    }
+
+    /**
+     * Write the entries of all the inodes in the inode map to the current
+     * section. If inodesPerSubSection is positive, the section is divided into
+     * sub-sections of that many inodes, and the entries are serialized by the
+     * saver threads if there are any: each thread serializes a batch of
+     * inodes into a buffer, and the buffers are written to the section, and
+     * compressed, by this thread in the order of the inode map.
+     */
+    private void serializeEntries(OutputStream out, long inodesPerSubSection,
+        FSImageFormatProtobuf.SectionName subSectionName, EntryWriter writer)
+        throws IOException {
+      Iterator<INodeWithAdditionalFields> iter =
+          fsn.dir.getINodeMap().getMapIterator();
       int i = 0;
-      Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        save(out, n);
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
+      if (inodesPerSubSection <= 0) {
+        while (iter.hasNext()) {
+          writer.write(out, iter.next());
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
         }
+        return;
+      }
+
+      parent.beginSubSections();
+      final ExecutorService service = parent.getSaverExecutor();
+      // bound the memory of the serialized batches waiting to be written
+      final int maxPending = service == null ? 0
+          : 2 * parent.getSaverThreads();
+      final LinkedList<Future<byte[]>> pending = Lists.newLinkedList();
+      List<INodeWithAdditionalFields> batch =
+          Lists.newArrayListWithCapacity(SAVE_BATCH_SIZE);
+      long subSectionInodes = 0;
+      try {
+        while (iter.hasNext()) {
+          if (++subSectionInodes > inodesPerSubSection) {
+            batch = serializeBatch(service, pending, batch, writer);
+            writePending(pending, 0);
+            parent.commitSubSection(summary, subSectionName);
+            subSectionInodes = 1;
+          }
+          batch.add(iter.next());
+          if (batch.size() == SAVE_BATCH_SIZE) {
+            batch = serializeBatch(service, pending, batch, writer);
+            writePending(pending, maxPending);
+          }
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+        }
+        serializeBatch(service, pending, batch, writer);
+        writePending(pending, 0);
+        parent.commitSubSection(summary, subSectionName);
+      } finally {
+        for (Future<byte[]> f : pending) {
+          f.cancel(true);
+        }
+      }
+    }
+
+    /**
+     * Serialize the entries of a batch of inodes, either by a saver thread
+     * or, without saver threads, straight to the current sub-section.
+     * @return an empty list for the next batch
+     */
+    private List<INodeWithAdditionalFields> serializeBatch(
+        ExecutorService service, List<Future<byte[]>> pending,
+        final List<INodeWithAdditionalFields> batch, final EntryWriter writer)
+        throws IOException {
+      if (batch.isEmpty()) {
+        return batch;
+      }
+      if (service == null) {
+        final OutputStream out = parent.getSectionOutputStream();
+        for (INodeWithAdditionalFields n : batch) {
+          writer.write(out, n);
+        }
+        batch.clear();
+        return batch;
+      }
+      pending.add(service.submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws IOException {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          for (INodeWithAdditionalFields n : batch) {
+            writer.write(out, n);
+          }
+          return out.toByteArray();
+        }
+      }));
+      return Lists.newArrayListWithCapacity(SAVE_BATCH_SIZE);
+    }
+
+    /**
+     * Write the serialized batches to the current sub-section, in order,
+     * until no more than maxPending batches are left.
+     */
+    private void writePending(LinkedList<Future<byte[]>> pending,
+        int maxPending) throws IOException {
+      while (pending.size() > maxPending) {
+        final byte[] data;
+        try {
+          data = pending.getFirst().get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while saving FSImage inodes", e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          throw new IOException("Failed to save FSImage inodes", cause);
+        }
+        pending.removeFirst();
+        parent.getSectionOutputStream().write(data);
+      }
+    }
+
+    private void saveDirEntry(OutputStream out, INodeWithAdditionalFields n)
+        throws IOException {
+      if (!n.isDirectory()) {
+        return;
+      }
+      ReadOnlyList<INode> children = n.asDirectory().getChildrenList(
+          Snapshot.CURRENT_STATE_ID);
+      if (children.size() > 0) {
+        final ArrayList<INodeReference> refList = parent.getSaverContext()
+            .getRefList();
+        INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
+            DirEntry.newBuilder().setParent(n.getId());
+        for (INode inode : children) {
+          if (!inode.isReference()) {
+            b.addChildren(inode.getId());
+          } else {
+            // the saver threads share the list
+            synchronized (refList) {
+              refList.add(inode.asReference());
+              b.addRefChildren(refList.size() - 1);
+            }
+          }
+        }
+        INodeDirectorySection.DirEntry e = b.build();
+        e.writeDelimitedTo(out);
       }
-      parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
     }
 
     void serializeFilesUCSection(OutputStream out) throws IOException {
@@ -37,11 +37,14 @@
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
@@ -66,6 +69,7 @@
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -97,7 +101,8 @@ static <T> DeduplicationMap<T> newMap() {
         return new DeduplicationMap<T>();
       }
 
-      int getId(E value) {
+      // the inode saver threads share the map
+      synchronized int getId(E value) {
         if (value == null) {
           return 0;
         }
@@ -147,6 +152,11 @@ public static final class Loader implements FSImageFormat.AbstractLoader {
      * when we're doing (rollingUpgrade rollback).
      */
     private final boolean requireSameLayoutVersion;
+    /** Whether to load the sub-sections of the image in parallel */
+    private final boolean loadInParallel;
+    private final int loaderThreads;
+    /** The image file being loaded, used to open sub-sections */
+    private File imageFile;
 
     Loader(Configuration conf, FSNamesystem fsn,
         boolean requireSameLayoutVersion) {
@@ -154,6 +164,12 @@ public static final class Loader implements FSImageFormat.AbstractLoader {
       this.fsn = fsn;
       this.ctx = new LoaderContext();
       this.requireSameLayoutVersion = requireSameLayoutVersion;
+      this.loaderThreads = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+      this.loadInParallel = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT) && loaderThreads > 1;
     }
 
     @Override
@@ -173,6 +189,7 @@ public LoaderContext getLoaderContext() {
     void load(File file) throws IOException {
       long start = Time.monotonicNow();
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
+      imageFile = file;
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
       try {
@@ -230,64 +247,132 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
        */
       Step currentStep = null;
 
-      for (FileSummary.Section s : sections) {
-        channel.position(s.getOffset());
-        InputStream in = new BufferedInputStream(new LimitInputStream(fin,
-            s.getLength()));
-
-        in = FSImageUtil.wrapInputStreamForCompression(conf,
-            summary.getCodec(), in);
-
-        String n = s.getName();
-
-        switch (SectionName.fromString(n)) {
-        case NS_INFO:
-          loadNameSystemSection(in);
-          break;
-        case STRING_TABLE:
-          loadStringTableSection(in);
-          break;
-        case INODE: {
-          currentStep = new Step(StepType.INODES);
-          prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
-          inodeLoader.loadINodeSection(in);
-        }
-          break;
-        case INODE_REFERENCE:
-          snapshotLoader.loadINodeReferenceSection(in);
-          break;
-        case INODE_DIR:
-          inodeLoader.loadINodeDirectorySection(in);
-          break;
-        case FILES_UNDERCONSTRUCTION:
-          inodeLoader.loadFilesUnderConstructionSection(in);
-          break;
-        case SNAPSHOT:
-          snapshotLoader.loadSnapshotSection(in);
-          break;
-        case SNAPSHOT_DIFF:
-          snapshotLoader.loadSnapshotDiffSection(in);
-          break;
-        case SECRET_MANAGER: {
-          prog.endStep(Phase.LOADING_FSIMAGE, currentStep);
-          Step step = new Step(StepType.DELEGATION_TOKENS);
-          prog.beginStep(Phase.LOADING_FSIMAGE, step);
-          loadSecretManagerSection(in);
-          prog.endStep(Phase.LOADING_FSIMAGE, step);
+      ArrayList<FileSummary.Section> inodeSubSections =
+          getSubSections(sections, SectionName.INODE_SUB);
+      ArrayList<FileSummary.Section> dirSubSections =
+          getSubSections(sections, SectionName.INODE_DIR_SUB);
+      ExecutorService executor = null;
+      if (loadInParallel && !inodeSubSections.isEmpty()) {
+        LOG.info("Loading FSImage sub-sections with " + loaderThreads
+            + " threads");
+        executor = Executors.newFixedThreadPool(loaderThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("FSImageLoader-%d").build());
+      }
+
+      try {
+        for (FileSummary.Section s : sections) {
+          String n = s.getName();
+          SectionName name = SectionName.fromString(n);
+          if (name == null) {
+            LOG.warn("Unrecognized section " + n);
+            continue;
+          }
+
+          channel.position(s.getOffset());
+          InputStream in = new BufferedInputStream(new LimitInputStream(fin,
+              s.getLength()));
+
+          in = FSImageUtil.wrapInputStreamForCompression(conf,
+              summary.getCodec(), in);
+
+          switch (name) {
+          case NS_INFO:
+            loadNameSystemSection(in);
+            break;
+          case STRING_TABLE:
+            loadStringTableSection(in);
+            break;
+          case INODE: {
+            currentStep = new Step(StepType.INODES);
+            prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
+            if (executor != null) {
+              inodeLoader.loadINodeSectionInParallel(executor,
+                  inodeSubSections, summary.getCodec(), in);
+            } else {
+              inodeLoader.loadINodeSection(in);
+            }
+          }
+            break;
+          case INODE_REFERENCE:
+            snapshotLoader.loadINodeReferenceSection(in);
+            break;
+          case INODE_DIR:
+            if (executor != null && !dirSubSections.isEmpty()) {
+              inodeLoader.loadINodeDirectorySectionInParallel(executor,
+                  dirSubSections, summary.getCodec());
+            } else {
+              inodeLoader.loadINodeDirectorySection(in);
+            }
+            break;
+          case FILES_UNDERCONSTRUCTION:
+            inodeLoader.loadFilesUnderConstructionSection(in);
+            break;
+          case SNAPSHOT:
+            snapshotLoader.loadSnapshotSection(in);
+            break;
+          case SNAPSHOT_DIFF:
+            snapshotLoader.loadSnapshotDiffSection(in);
+            break;
+          case SECRET_MANAGER: {
+            prog.endStep(Phase.LOADING_FSIMAGE, currentStep);
+            Step step = new Step(StepType.DELEGATION_TOKENS);
+            prog.beginStep(Phase.LOADING_FSIMAGE, step);
+            loadSecretManagerSection(in);
+            prog.endStep(Phase.LOADING_FSIMAGE, step);
+          }
+            break;
+          case CACHE_MANAGER: {
+            Step step = new Step(StepType.CACHE_POOLS);
+            prog.beginStep(Phase.LOADING_FSIMAGE, step);
+            loadCacheManagerSection(in);
+            prog.endStep(Phase.LOADING_FSIMAGE, step);
+          }
+            break;
+          case INODE_SUB:
+          case INODE_DIR_SUB:
+            // sub-sections are read with their parent sections
+            break;
+          default:
+            LOG.warn("Unrecognized section " + n);
+            break;
+          }
         }
-          break;
-        case CACHE_MANAGER: {
-          Step step = new Step(StepType.CACHE_POOLS);
-          prog.beginStep(Phase.LOADING_FSIMAGE, step);
-          loadCacheManagerSection(in);
-          prog.endStep(Phase.LOADING_FSIMAGE, step);
+      } finally {
+        if (executor != null) {
+          executor.shutdownNow();
         }
-          break;
-        default:
-          LOG.warn("Unrecognized section " + n);
-          break;
+      }
+    }
+
+    private static ArrayList<FileSummary.Section> getSubSections(
+        ArrayList<FileSummary.Section> sections, SectionName name) {
+      ArrayList<FileSummary.Section> subSections = Lists.newArrayList();
+      for (FileSummary.Section s : sections) {
+        if (name.name.equals(s.getName())) {
+          subSections.add(s);
         }
       }
+      return subSections;
+    }
+
+    /**
+     * Open a new stream over the given section of the image being loaded,
+     * independent of the stream used to read the other sections.
+     */
+    InputStream getInputStreamForSection(FileSummary.Section section,
+        String compressionCodec) throws IOException {
+      FileInputStream fin = new FileInputStream(imageFile);
+      try {
+        fin.getChannel().position(section.getOffset());
+        InputStream in = new BufferedInputStream(new LimitInputStream(fin,
+            section.getLength()));
+        return FSImageUtil.wrapInputStreamForCompression(conf,
+            compressionCodec, in);
+      } catch (IOException e) {
+        fin.close();
+        throw e;
+      }
     }
 
     private void loadNameSystemSection(InputStream in) throws IOException {
@@ -355,7 +440,15 @@ public static final class Saver {
     private final SaveNamespaceContext context;
     private final SaverContext saverContext;
     private long currentOffset = FSImageUtil.MAGIC_HEADER.length;
+    private long subSectionOffset = currentOffset;
     private MD5Hash savedDigest;
+    /** Whether to write an index of sub-sections for parallel loading */
+    private final boolean writeSubSections;
+    private final int targetSubSections;
+    private final long subSectionInodeThreshold;
+    /** The number of threads serializing the inodes into sub-sections */
+    private final int saverThreads;
+    private ExecutorService saverExecutor;
 
     private FileChannel fileChannel;
     // OutputStream for the section data
@@ -364,8 +457,24 @@ public static final class Saver {
     private OutputStream underlyingOutputStream;
 
     Saver(SaveNamespaceContext context) {
+      this(context, new Configuration(false));
+    }
+
+    Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
       this.saverContext = new SaverContext();
+      this.writeSubSections = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT);
+      this.targetSubSections = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT));
+      this.subSectionInodeThreshold = conf.getLong(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
+      this.saverThreads = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
     }
 
     public MD5Hash getSavedDigest() {
@@ -380,9 +489,78 @@ public SaverContext getSaverContext() {
       return saverContext;
     }
 
+    /**
+     * @return the pool serializing the inodes of the sub-sections, or null if
+     *         they are serialized by the saving thread
+     */
+    ExecutorService getSaverExecutor() {
+      return saverExecutor;
+    }
+
+    int getSaverThreads() {
+      return saverThreads;
+    }
+
+    /** @return the stream that the current (sub-)section is written to */
+    OutputStream getSectionOutputStream() {
+      return sectionOutputStream;
+    }
+
+    /**
+     * Get the number of entries to write to each sub-section of a section.
+     * @param numEntries the number of entries in the section
+     * @return the entries per sub-section, or 0 if the section should not be
+     *         divided into sub-sections
+     */
+    long getEntriesPerSubSection(long numEntries) {
+      if (!writeSubSections || numEntries < subSectionInodeThreshold) {
+        return 0;
+      }
+      return Math.max(1, numEntries / targetSubSections);
+    }
+
     public void commitSection(FileSummary.Builder summary, SectionName name)
         throws IOException {
       long oldOffset = currentOffset;
+      restartSectionOutputStream();
+      long length = fileChannel.position() - oldOffset;
+      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
+          .setLength(length).setOffset(currentOffset));
+      currentOffset += length;
+      subSectionOffset = currentOffset;
+    }
+
+    /**
+     * Mark the current position of the section being written as the start of
+     * its first sub-section. Anything written to the section before, such as
+     * a header, does not belong to any sub-section.
+     */
+    void beginSubSections() throws IOException {
+      restartSectionOutputStream();
+      subSectionOffset = fileChannel.position();
+    }
+
+    /**
+     * Record the data written since the previous sub-section as a sub-section
+     * of the section being written. A sub-section can be decoded on its own,
+     * and its data is still part of the enclosing section, so images with
+     * sub-sections can be loaded serially as well.
+     */
+    void commitSubSection(FileSummary.Builder summary, SectionName name)
+        throws IOException {
+      restartSectionOutputStream();
+      long position = fileChannel.position();
+      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
+          .setLength(position - subSectionOffset).setOffset(subSectionOffset));
+      subSectionOffset = position;
+    }
+
+    /**
+     * Flush the section data written so far and, if the image is compressed,
+     * start a new compressed stream so that the data following the current
+     * position can be decompressed independently.
+     */
+    private void restartSectionOutputStream() throws IOException {
       flushSectionOutputStream();
 
       if (codec != null) {
@@ -390,10 +568,6 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
       } else {
         sectionOutputStream = underlyingOutputStream;
       }
-      long length = fileChannel.position() - oldOffset;
-      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
-          .setLength(length).setOffset(currentOffset));
-      currentOffset += length;
     }
 
     private void flushSectionOutputStream() throws IOException {
@@ -426,8 +600,21 @@ private void saveInodes(FileSummary.Builder summary) throws IOException {
       FSImageFormatPBINode.Saver saver = new FSImageFormatPBINode.Saver(this,
           summary);
 
-      saver.serializeINodeSection(sectionOutputStream);
-      saver.serializeINodeDirectorySection(sectionOutputStream);
+      if (writeSubSections && saverThreads > 1) {
+        // the threads are only started if the sections are divided
+        saverExecutor = Executors.newFixedThreadPool(saverThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("FSImageSaver-%d").build());
+      }
+      try {
+        saver.serializeINodeSection(sectionOutputStream);
+        saver.serializeINodeDirectorySection(sectionOutputStream);
+      } finally {
+        if (saverExecutor != null) {
+          saverExecutor.shutdownNow();
+          saverExecutor = null;
+        }
+      }
       saver.serializeFilesUCSection(sectionOutputStream);
     }
 
@@ -584,7 +771,9 @@ public enum SectionName {
     FILES_UNDERCONSTRUCTION("FILES_UNDERCONSTRUCTION"),
     SNAPSHOT_DIFF("SNAPSHOT_DIFF"),
     SECRET_MANAGER("SECRET_MANAGER"),
-    CACHE_MANAGER("CACHE_MANAGER");
+    CACHE_MANAGER("CACHE_MANAGER"),
+    INODE_SUB("INODE_SUB"),
+    INODE_DIR_SUB("INODE_DIR_SUB");
 
     private static final SectionName[] values = SectionName.values();
 
@@ -60,10 +60,20 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_EDIT_LOG_AUTOROLL_MULTIPLIER_THRESHOLD_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ENABLE_RETRY_CACHE_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ENABLE_RETRY_CACHE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PATH_LOCK_DEPTH_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PATH_LOCK_DEPTH_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PATH_LOCK_STRIPES_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PATH_LOCK_STRIPES_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LAZY_PERSIST_FILE_SCRUB_INTERVAL_SEC;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LAZY_PERSIST_FILE_SCRUB_INTERVAL_SEC_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_REPLICATION_MIN_DEFAULT;
@@ -348,12 +358,35 @@ private void logAuditEvent(boolean succeeded, String cmd, String src)
   
   private void logAuditEvent(boolean succeeded, String cmd, String src,
       String dst, HdfsFileStatus stat) throws IOException {
+    if (lockDetailedMetrics && isExternalInvocation()) {
+      reportLockTimes(cmd);
+    }
     if (isAuditEnabled() && isExternalInvocation()) {
       logAuditEvent(succeeded, getRemoteUser(), getRemoteIp(),
                     cmd, src, dst, stat);
     }
   }
 
+  /**
+   * Charge the namesystem lock times of the current RPC call to the given
+   * operation and to the user of the call.
+   */
+  private void reportLockTimes(String cmd) throws IOException {
+    final FSNamesystemLock.LockTimes times = fsLock.takeLockTimes();
+    if (times == null) {
+      return;
+    }
+    final NameNodeMetrics nnMetrics = NameNode.getNameNodeMetrics();
+    if (nnMetrics != null) {
+      nnMetrics.addLockTimes(cmd, times.getWaitMicros(),
+          times.getHoldMicros());
+    }
+    if (topMetrics != null) {
+      topMetrics.reportLockHold(getRemoteUser().toString(), cmd,
+          times.getHoldMicros());
+    }
+  }
+
   private void logAuditEvent(boolean succeeded,
       UserGroupInformation ugi, InetAddress addr, String cmd, String src,
       String dst, HdfsFileStatus stat) {
@@ -484,6 +517,7 @@ private void logAuditEvent(boolean succeeded,
 
   private final long minBlockSize;         // minimum block size
   private final long maxBlocksPerFile;     // maximum # of blocks per file
+  private final int maxFilesPerBatch;      // maximum # of files per batch
 
   // precision of access times.
   private final long accessTimePrecision;
@@ -537,6 +571,8 @@ private void logAuditEvent(boolean succeeded,
 
   private final TopConf topConf;
   private TopMetrics topMetrics;
+  /** Whether the lock times of the client operations are measured. */
+  private final boolean lockDetailedMetrics;
 
   private INodeAttributeProvider inodeAttributeProvider;
 
@@ -735,7 +771,22 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
     }
     boolean fair = conf.getBoolean("dfs.namenode.fslock.fair", true);
     LOG.info("fsLock is fair:" + fair);
-    fsLock = new FSNamesystemLock(fair);
+    int pathLockStripes = conf.getInt(DFS_NAMENODE_FSLOCK_PATH_LOCK_STRIPES_KEY,
+        DFS_NAMENODE_FSLOCK_PATH_LOCK_STRIPES_DEFAULT);
+    int pathLockDepth = conf.getInt(DFS_NAMENODE_FSLOCK_PATH_LOCK_DEPTH_KEY,
+        DFS_NAMENODE_FSLOCK_PATH_LOCK_DEPTH_DEFAULT);
+    if (pathLockStripes > 0) {
+      LOG.info("Path locking enabled with " + pathLockStripes
+          + " stripes at depth " + pathLockDepth);
+    }
+    fsLock = new FSNamesystemLock(fair, pathLockStripes, pathLockDepth,
+        conf.getLong(DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_KEY,
+            DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_DEFAULT),
+        conf.getLong(DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY,
+            DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT));
+    lockDetailedMetrics = conf.getBoolean(
+        DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY,
+        DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT);
     cond = fsLock.writeLock().newCondition();
     cpLock = new ReentrantLock();
 
@@ -801,6 +852,8 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
           DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_DEFAULT);
       this.maxBlocksPerFile = conf.getLong(DFSConfigKeys.DFS_NAMENODE_MAX_BLOCKS_PER_FILE_KEY,
           DFSConfigKeys.DFS_NAMENODE_MAX_BLOCKS_PER_FILE_DEFAULT);
+      this.maxFilesPerBatch = conf.getInt(DFSConfigKeys.DFS_NAMENODE_MAX_FILES_PER_BATCH_KEY,
+          DFSConfigKeys.DFS_NAMENODE_MAX_FILES_PER_BATCH_DEFAULT);
       this.accessTimePrecision = conf.getLong(DFS_NAMENODE_ACCESSTIME_PRECISION_KEY,
           DFS_NAMENODE_ACCESSTIME_PRECISION_DEFAULT);
 
@@ -1482,23 +1535,23 @@ public static List<URI> getSharedEditsDirs(Configuration conf) {
 
   @Override
   public void readLock() {
-    this.fsLock.readLock().lock();
+    this.fsLock.lockRead();
   }
   @Override
   public void readUnlock() {
-    this.fsLock.readLock().unlock();
+    this.fsLock.unlockRead();
   }
   @Override
   public void writeLock() {
-    this.fsLock.writeLock().lock();
+    this.fsLock.lockWrite();
   }
   @Override
   public void writeLockInterruptibly() throws InterruptedException {
-    this.fsLock.writeLock().lockInterruptibly();
+    this.fsLock.lockWriteInterruptibly();
   }
   @Override
   public void writeUnlock() {
-    this.fsLock.writeLock().unlock();
+    this.fsLock.unlockWrite();
   }
   @Override
   public boolean hasWriteLock() {
@@ -1509,6 +1562,72 @@ public boolean hasReadLock() {
     return this.fsLock.getReadHoldCount() > 0 || hasWriteLock();
   }
 
+  /**
+   * Acquire the read lock for an operation confined to the given path. If
+   * path locking is enabled and the path belongs to a single subtree, only
+   * the lock of that subtree is taken exclusively of other writers; otherwise
+   * this is the same as {@link #readLock()}.
+   * @return true if a path lock was taken
+   */
+  boolean readLock(String src) {
+    final int index = fsLock.getPathLockIndex(src);
+    if (index < 0) {
+      readLock();
+      return false;
+    }
+    fsLock.readLockPath(index);
+    return true;
+  }
+
+  /** Release a lock taken by {@link #readLock(String)}. */
+  void readUnlock(String src) {
+    final int index = fsLock.getPathLockIndex(src);
+    if (index < 0) {
+      readUnlock();
+    } else {
+      fsLock.readUnlockPath(index);
+    }
+  }
+
+  /**
+   * Acquire the write lock for an operation confined to the given path. The
+   * operation must only modify inodes within the subtree of the path, and
+   * state shared with other subtrees only under the directory lock, since
+   * writers of other subtrees may run concurrently. It must not touch the
+   * block manager.
+   * @return true if a path lock was taken, false if the global write lock
+   *         was taken instead
+   */
+  boolean writeLock(String src) {
+    final int index = fsLock.getPathLockIndex(src);
+    if (index < 0) {
+      writeLock();
+      return false;
+    }
+    fsLock.writeLockPath(index);
+    return true;
+  }
+
+  /** Release a lock taken by {@link #writeLock(String)}. */
+  void writeUnlock(String src) {
+    final int index = fsLock.getPathLockIndex(src);
+    if (index < 0) {
+      writeUnlock();
+    } else {
+      fsLock.writeUnlockPath(index);
+    }
+  }
+
+  /** @return true if the current thread holds a path lock. */
+  boolean hasPathLock() {
+    return this.fsLock.hasPathLock();
+  }
+
+  /** @return true if the current thread holds a path lock for writing. */
+  boolean hasPathWriteLock() {
+    return this.fsLock.hasPathWriteLock();
+  }
+
   public int getReadHoldCount() {
     return this.fsLock.getReadHoldCount();
   }
@@ -1655,7 +1774,7 @@ private boolean isAccessTimeSupported() {
   void setPermission(String src, FsPermission permission) throws IOException {
     HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    writeLock(src);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot set permission for " + src);
@@ -1664,7 +1783,7 @@ void setPermission(String src, FsPermission permission) throws IOException {
       logAuditEvent(false, "setPermission", src);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlock(src);
     }
     getEditLog().logSync();
     logAuditEvent(true, "setPermission", src, null, auditStat);
@@ -1678,7 +1797,7 @@ void setOwner(String src, String username, String group)
       throws IOException {
     HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    writeLock(src);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot set owner for " + src);
@@ -1687,7 +1806,7 @@ void setOwner(String src, String username, String group)
       logAuditEvent(false, "setOwner", src);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlock(src);
     }
     getEditLog().logSync();
     logAuditEvent(true, "setOwner", src, null, auditStat);
@@ -1705,6 +1824,32 @@ private GetBlockLocationsResult(INodesInPath iip, LocatedBlocks blocks) {
     }
   }
 
+  /**
+   * A standby serving the reads of the clients which sent their last seen
+   * transaction id cannot update the access times, and may not have received
+   * the locations of the recent blocks yet. Send such reads to the active,
+   * unless stale reads are allowed anyway.
+   */
+  private void checkConsistentStandbyRead(GetBlockLocationsResult res)
+      throws StandbyException {
+    if (haContext == null || !isInStandbyState()
+        || haContext.allowStaleReads()) {
+      return;
+    }
+    if (res.updateAccessTime()) {
+      throw new StandbyException(
+          "The access time cannot be updated in state " + haContext.getState());
+    }
+    if (res.blocks != null) {
+      for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
+        if (b.getLocations().length == 0) {
+          throw new StandbyException("No location of " + b.getBlock()
+              + " is known in state " + haContext.getState());
+        }
+      }
+    }
+  }
+
   /**
    * Get block locations within the specified range.
    * @see ClientProtocol#getBlockLocations(String, long, long)
@@ -1717,6 +1862,7 @@ LocatedBlocks getBlockLocations(String clientMachine, String src,
     try {
       checkOperation(OperationCategory.READ);
       res = getBlockLocations(src, offset, length, true, true);
+      checkConsistentStandbyRead(res);
     } catch (AccessControlException e) {
       logAuditEvent(false, "open", src);
       throw e;
@@ -1885,7 +2031,7 @@ void concat(String target, String [] srcs, boolean logRetryCache)
   void setTimes(String src, long mtime, long atime) throws IOException {
     HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    writeLock(src);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot set times " + src);
@@ -1894,7 +2040,7 @@ void setTimes(String src, long mtime, long atime) throws IOException {
       logAuditEvent(false, "setTimes", src);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlock(src);
     }
     getEditLog().logSync();
     logAuditEvent(true, "setTimes", src, null, auditStat);
@@ -2422,9 +2568,11 @@ private HdfsFileStatus startFileInt(final String srcArg,
     }
 
     // Proceed with the create, using the computed cipher suite and 
-    // generated EDEK
+    // generated EDEK. A new file only modifies its subtree, while
+    // overwriting a file or recovering its lease needs the global lock.
     BlocksMapUpdateInfo toRemoveBlocks = null;
-    writeLock();
+    final String lockedSrc = src;
+    final boolean pathLocked = writeLockForCreate(lockedSrc, true);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create file" + src);
@@ -2447,7 +2595,11 @@ private HdfsFileStatus startFileInt(final String srcArg,
       skipSync = true;
       throw se;
     } finally {
-      writeUnlock();
+      if (pathLocked) {
+        writeUnlock(lockedSrc);
+      } else {
+        writeUnlock();
+      }
       // There might be transactions logged while trying to recover the lease.
       // They need to be sync'ed even when an exception was thrown.
       if (!skipSync) {
@@ -2463,6 +2615,192 @@ private HdfsFileStatus startFileInt(final String srcArg,
     return stat;
   }
 
+  /**
+   * Create many new file entries in the namespace under a single acquisition
+   * of the write lock, syncing their edits together.
+   *
+   * For description of parameters and exceptions thrown see
+   * {@link ClientProtocol#createFiles}
+   */
+  HdfsFileStatus[] startFiles(String[] srcArgs, PermissionStatus permissions,
+      String holder, String clientMachine, EnumSet<CreateFlag> flag,
+      boolean createParent, short replication, long blockSize,
+      boolean logRetryCache) throws IOException {
+    if (NameNode.stateChangeLog.isDebugEnabled()) {
+      NameNode.stateChangeLog.debug("DIR* NameSystem.startFiles: "
+          + srcArgs.length + " files, holder=" + holder
+          + ", clientMachine=" + clientMachine
+          + ", createParent=" + createParent
+          + ", replication=" + replication
+          + ", createFlag=" + flag
+          + ", blockSize=" + blockSize);
+    }
+    checkBatchSize(srcArgs.length);
+    // Existing files are never overwritten, so that a batch which fails can
+    // be undone by deleting the files it created.
+    if (!flag.contains(CreateFlag.CREATE)
+        || flag.contains(CreateFlag.OVERWRITE)) {
+      throw new HadoopIllegalArgumentException("The files of a batch can"
+          + " only be created, not overwritten: flag=" + flag);
+    }
+    final byte[][][] pathComponents = new byte[srcArgs.length][][];
+    for (int i = 0; i < srcArgs.length; i++) {
+      if (!DFSUtil.isValidName(srcArgs[i])) {
+        throw new InvalidPathException(srcArgs[i]);
+      }
+      blockManager.verifyReplication(srcArgs[i], replication, clientMachine);
+      pathComponents[i] =
+          FSDirectory.getPathComponentsForReservedPath(srcArgs[i]);
+    }
+
+    boolean skipSync = false;
+    final HdfsFileStatus[] stats = new HdfsFileStatus[srcArgs.length];
+    FSPermissionChecker pc = getPermissionChecker();
+    checkOperation(OperationCategory.WRITE);
+    if (blockSize < minBlockSize) {
+      throw new IOException("Specified block size is less than configured" +
+          " minimum value (" + DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY
+          + "): " + blockSize + " < " + minBlockSize);
+    }
+    boolean isLazyPersist = flag.contains(CreateFlag.LAZY_PERSIST);
+
+    waitForLoadingFSImage();
+
+    // the batch is validated before any file is created; if creating a file
+    // still fails, e.g. on a quota, the files created before it are deleted
+    int current = 0;
+    int created = 0;
+    final List<BlocksMapUpdateInfo> toRemoveBlocks =
+        new ArrayList<BlocksMapUpdateInfo>();
+    try {
+      writeLock();
+      try {
+        checkOperation(OperationCategory.WRITE);
+        checkNameNodeSafeMode("Cannot create files");
+        dir.writeLock();
+        try {
+          final String[] srcs = new String[srcArgs.length];
+          final Set<String> seen = new HashSet<String>();
+          for (; current < srcArgs.length; current++) {
+            srcs[current] = dir.resolvePath(pc, srcArgs[current],
+                pathComponents[current]);
+            if (!seen.add(srcs[current])) {
+              throw new IOException("Cannot create " + srcs[current]
+                  + " twice in a batch");
+            }
+            validateBatchFile(pc, dir.getINodesInPath4Write(srcs[current]),
+                createParent);
+          }
+          for (; created < srcs.length; created++) {
+            current = created;
+            final INodesInPath iip = dir.getINodesInPath4Write(srcs[created]);
+            startFileInternal(pc, iip, permissions, holder, clientMachine,
+                true, false, createParent, replication, blockSize,
+                isLazyPersist, null, null, null, logRetryCache);
+            stats[created] = FSDirStatAndListingOp.getFileInfo(dir,
+                srcs[created], false,
+                FSDirectory.isReservedRawName(srcArgs[created]), true);
+          }
+        } catch (IOException e) {
+          deleteBatchCreatedFiles(srcArgs, stats, created, toRemoveBlocks, e);
+          throw e;
+        } finally {
+          dir.writeUnlock();
+        }
+      } catch (StandbyException se) {
+        skipSync = true;
+        throw se;
+      } finally {
+        writeUnlock();
+        // The creates, and the deletes undoing them, are synced at once.
+        if (!skipSync) {
+          getEditLog().logSync();
+          for (BlocksMapUpdateInfo blocks : toRemoveBlocks) {
+            removeBlocks(blocks);
+            blocks.clear();
+          }
+        }
+      }
+    } catch (AccessControlException e) {
+      logAuditEvent(false, "create", srcArgs[current]);
+      throw e;
+    }
+
+    for (int i = 0; i < stats.length; i++) {
+      logAuditEvent(true, "create", srcArgs[i], null, stats[i]);
+    }
+    return stats;
+  }
+
+  /**
+   * Check that a file of a batch can be created, as far as the namespace
+   * allows to tell before creating the files of the batch.
+   */
+  private void validateBatchFile(FSPermissionChecker pc, INodesInPath iip,
+      boolean createParent) throws IOException {
+    assert hasWriteLock();
+    final String src = iip.getPath();
+    if (dir.getEZForPath(iip) != null) {
+      throw new IOException("Cannot create " + src + " in a batch,"
+          + " it is in an encryption zone");
+    }
+    final INode inode = iip.getLastINode();
+    if (inode != null) {
+      throw new FileAlreadyExistsException(src + " already exists"
+          + (inode.isDirectory() ? " as a directory" : ""));
+    }
+    for (int i = 0; i < iip.length() - 1; i++) {
+      final INode ancestor = iip.getINode(i);
+      if (ancestor != null && !ancestor.isDirectory()) {
+        throw new ParentNotDirectoryException("Ancestor path is not a"
+            + " directory: " + ancestor.getFullPathName());
+      }
+    }
+    if (isPermissionEnabled) {
+      dir.checkAncestorAccess(pc, iip, FsAction.WRITE);
+    }
+    if (!createParent) {
+      dir.verifyParentDir(iip, src);
+    }
+  }
+
+  /**
+   * Delete the first files of a batch which failed to be created. The
+   * deletes are logged without syncing them, which is left to the caller
+   * once it releases the lock. A failure to delete a file is added to the
+   * cause of the rollback rather than thrown.
+   */
+  private void deleteBatchCreatedFiles(String[] srcArgs,
+      HdfsFileStatus[] stats, int count,
+      List<BlocksMapUpdateInfo> toRemoveBlocks, IOException cause) {
+    for (int i = 0; i < count; i++) {
+      try {
+        final INode inode = dir.getInode(stats[i].getFileId());
+        if (inode == null) {
+          continue;
+        }
+        final INodesInPath iip = INodesInPath.fromINode(inode);
+        final BlocksMapUpdateInfo removed =
+            FSDirDeleteOp.deleteWithoutSync(this, iip.getPath(), iip, false);
+        if (removed != null) {
+          toRemoveBlocks.add(removed);
+        }
+      } catch (IOException | RuntimeException e) {
+        LOG.error("Failed to delete " + srcArgs[i] + " of a batch which"
+            + " failed to be created", e);
+        cause.addSuppressed(e);
+      }
+    }
+  }
+
+  private void checkBatchSize(int size) throws IOException {
+    if (size > maxFilesPerBatch) {
+      throw new IOException("Too many files in a batch: " + size + " > "
+          + maxFilesPerBatch + " (" + DFSConfigKeys
+          .DFS_NAMENODE_MAX_FILES_PER_BATCH_KEY + ")");
+    }
+  }
+
   /**
    * Create a new file or overwrite an existing file<br>
    * 
@@ -2479,7 +2817,7 @@ private BlocksMapUpdateInfo startFileInternal(FSPermissionChecker pc,
       boolean isLazyPersist, CipherSuite suite, CryptoProtocolVersion version,
       EncryptedKeyVersion edek, boolean logRetryEntry)
       throws IOException {
-    assert hasWriteLock();
+    assert hasWriteLock() || hasPathWriteLock();
     // Verify that the destination does not exist as a directory already.
     final INode inode = iip.getLastINode();
     final String src = iip.getPath();
@@ -3487,6 +3825,58 @@ boolean completeFile(final String srcArg, String holder,
     return success;
   }
 
+  /**
+   * Complete in-progress writes to many files under a single acquisition of
+   * the write lock, syncing their edits together.
+   *
+   * For description of parameters and exceptions thrown see
+   * {@link ClientProtocol#completeFiles}
+   */
+  boolean[] completeFiles(String[] srcArgs, String holder,
+      ExtendedBlock[] lasts, long[] fileIds) throws IOException {
+    if (lasts.length != srcArgs.length || fileIds.length != srcArgs.length) {
+      throw new HadoopIllegalArgumentException("Expected " + srcArgs.length
+          + " blocks and file ids, got " + lasts.length + " and "
+          + fileIds.length);
+    }
+    if (NameNode.stateChangeLog.isDebugEnabled()) {
+      NameNode.stateChangeLog.debug("DIR* NameSystem.completeFiles: "
+          + srcArgs.length + " files for " + holder);
+    }
+    checkBatchSize(srcArgs.length);
+    final byte[][][] pathComponents = new byte[srcArgs.length][][];
+    for (int i = 0; i < srcArgs.length; i++) {
+      checkBlock(lasts[i]);
+      pathComponents[i] =
+          FSDirectory.getPathComponentsForReservedPath(srcArgs[i]);
+    }
+    final boolean[] success = new boolean[srcArgs.length];
+    checkOperation(OperationCategory.WRITE);
+    FSPermissionChecker pc = getPermissionChecker();
+    waitForLoadingFSImage();
+    writeLock();
+    try {
+      checkOperation(OperationCategory.WRITE);
+      checkNameNodeSafeMode("Cannot complete files");
+      for (int i = 0; i < srcArgs.length; i++) {
+        final String src = dir.resolvePath(pc, srcArgs[i], pathComponents[i]);
+        success[i] = completeFileInternal(src, holder,
+            ExtendedBlock.getLocalBlock(lasts[i]), fileIds[i]);
+      }
+    } finally {
+      writeUnlock();
+      // the files completed before a failure must be synced
+      getEditLog().logSync();
+    }
+    for (int i = 0; i < srcArgs.length; i++) {
+      if (success[i]) {
+        NameNode.stateChangeLog.info("DIR* completeFile: " + srcArgs[i]
+            + " is closed by " + holder);
+      }
+    }
+    return success;
+  }
+
   private boolean completeFileInternal(String src, String holder, Block last,
       long fileId) throws IOException {
     assert hasWriteLock();
@@ -3606,7 +3996,7 @@ boolean renameTo(String src, String dst, boolean logRetryCache)
     waitForLoadingFSImage();
     checkOperation(OperationCategory.WRITE);
     FSDirRenameOp.RenameOldResult ret = null;
-    writeLock();
+    final boolean pathLocked = writeLockForDeleteOrRename(src, dst);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot rename " + src);
@@ -3615,7 +4005,7 @@ boolean renameTo(String src, String dst, boolean logRetryCache)
       logAuditEvent(false, "rename", src, dst, null);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlockForDeleteOrRename(src, dst, pathLocked);
     }
     boolean success = ret != null && ret.success;
     if (success) {
@@ -3632,7 +4022,7 @@ void renameTo(final String src, final String dst,
     waitForLoadingFSImage();
     checkOperation(OperationCategory.WRITE);
     Map.Entry<BlocksMapUpdateInfo, HdfsFileStatus> res = null;
-    writeLock();
+    final boolean pathLocked = writeLockForDeleteOrRename(src, dst);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot rename " + src);
@@ -3642,7 +4032,7 @@ void renameTo(final String src, final String dst,
           ")", src, dst, null);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlockForDeleteOrRename(src, dst, pathLocked);
     }
 
     getEditLog().logSync();
@@ -3669,7 +4059,7 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
     waitForLoadingFSImage();
     checkOperation(OperationCategory.WRITE);
     BlocksMapUpdateInfo toRemovedBlocks = null;
-    writeLock();
+    final boolean pathLocked = writeLockForDeleteOrRename(src, null);
     boolean ret = false;
     try {
       checkOperation(OperationCategory.WRITE);
@@ -3681,7 +4071,7 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
       logAuditEvent(false, "delete", src);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlockForDeleteOrRename(src, null, pathLocked);
     }
     if (toRemovedBlocks != null) {
       removeBlocks(toRemovedBlocks); // Incremental deletion of blocks
@@ -3706,6 +4096,11 @@ FSPermissionChecker getPermissionChecker()
    */
   void removeBlocks(BlocksMapUpdateInfo blocks) {
     List<Block> toDeleteList = blocks.getToDeleteList();
+    if (!toDeleteList.isEmpty()) {
+      // the blocks must not be invalidated before the edits deleting them are
+      // durable, even if the response to the client is deferred
+      getEditLog().logSyncAndWait();
+    }
     Iterator<Block> iter = toDeleteList.iterator();
     while (iter.hasNext()) {
       writeLock();
@@ -3728,7 +4123,7 @@ void removeBlocks(BlocksMapUpdateInfo blocks) {
    */
   void removeLeasesAndINodes(String src, List<INode> removedINodes,
       final boolean acquireINodeMapLock) {
-    assert hasWriteLock();
+    assert hasWriteLock() || hasPathWriteLock();
     leaseManager.removeLeaseWithPrefixPath(src);
     // remove inodes from inodesMap
     if (removedINodes != null) {
@@ -3813,7 +4208,7 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
     throws IOException {
     checkOperation(OperationCategory.READ);
     HdfsFileStatus stat = null;
-    readLock();
+    readLock(src);
     try {
       checkOperation(OperationCategory.READ);
       stat = FSDirStatAndListingOp.getFileInfo(dir, src, resolveLink);
@@ -3821,7 +4216,7 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
       logAuditEvent(false, "getfileinfo", src);
       throw e;
     } finally {
-      readUnlock();
+      readUnlock(src);
     }
     logAuditEvent(true, "getfileinfo", src);
     return stat;
@@ -3832,7 +4227,7 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
    */
   boolean isFileClosed(final String src) throws IOException {
     checkOperation(OperationCategory.READ);
-    readLock();
+    readLock(src);
     try {
       checkOperation(OperationCategory.READ);
       return FSDirStatAndListingOp.isFileClosed(dir, src);
@@ -3840,10 +4235,91 @@ boolean isFileClosed(final String src) throws IOException {
       logAuditEvent(false, "isFileClosed", src);
       throw e;
     } finally {
-      readUnlock();
+      readUnlock(src);
     }
   }
 
+  /**
+   * Acquire the write lock for creating inodes under the given path. Creating
+   * the top directory of a path lock subtree modifies its parent, which is
+   * outside of the subtree, so the global write lock is used in that case.
+   * If {@code mustNotExist} is set, it is also used if the path exists, as
+   * overwriting a file or recovering its lease involves the block manager.
+   * @return true if only the path lock of {@code src} is held
+   */
+  private boolean writeLockForCreate(String src, boolean mustNotExist) {
+    if (!writeLock(src)) {
+      return false;
+    }
+    boolean pathLocked = false;
+    try {
+      final String root = fsLock.getPathLockRoot(src);
+      pathLocked = dir.getINodesInPath(root, false).getLastINode() != null
+          && (!mustNotExist
+              || dir.getINodesInPath(src, false).getLastINode() == null);
+    } catch (UnresolvedLinkException e) {
+      // let the operation report it under the global lock
+    } finally {
+      if (!pathLocked) {
+        writeUnlock(src);
+      }
+    }
+    if (!pathLocked) {
+      writeLock();
+    }
+    return pathLocked;
+  }
+
+  /**
+   * Acquire the write lock for deleting {@code src}, or for renaming it to
+   * {@code dst} if that is not null. The path locks of the subtrees are only
+   * taken, in stripe order, if both paths lie strictly below the top
+   * directories of their subtrees, so that the parents being modified are
+   * within the subtrees, and if there is no snapshottable directory, so that
+   * no inode is referenced from another subtree. Otherwise the global write
+   * lock is taken.
+   * @return true if only path locks are held
+   */
+  private boolean writeLockForDeleteOrRename(String src, String dst) {
+    final int srcIndex = getPathLockIndexBelowRoot(src);
+    final int dstIndex = dst == null ? srcIndex
+        : getPathLockIndexBelowRoot(dst);
+    if (srcIndex >= 0 && dstIndex >= 0) {
+      fsLock.writeLockPaths(srcIndex, dstIndex);
+      if (getNumSnapshottableDirs() == 0) {
+        return true;
+      }
+      fsLock.writeUnlockPaths(srcIndex, dstIndex);
+    }
+    writeLock();
+    return false;
+  }
+
+  /** Release a lock taken by {@link #writeLockForDeleteOrRename}. */
+  private void writeUnlockForDeleteOrRename(String src, String dst,
+      boolean pathLocked) {
+    if (pathLocked) {
+      final int srcIndex = fsLock.getPathLockIndex(src);
+      fsLock.writeUnlockPaths(srcIndex,
+          dst == null ? srcIndex : fsLock.getPathLockIndex(dst));
+    } else {
+      writeUnlock();
+    }
+  }
+
+  /**
+   * @return the index of the path lock of {@code src} if it lies strictly
+   *         below the top directory of its subtree, or -1
+   */
+  private int getPathLockIndexBelowRoot(String src) {
+    final String root = fsLock.getPathLockRoot(src);
+    if (root == null || !DFSUtil.isValidName(src)
+        || src.length() <= root.length() + 1) {
+      return -1;
+    }
+    return fsLock.getPathLockIndex(src);
+  }
+
   /**
    * Create all the necessary directories
    */
@@ -3851,7 +4327,7 @@ boolean mkdirs(String src, PermissionStatus permissions,
       boolean createParent) throws IOException {
     HdfsFileStatus auditStat = null;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    final boolean pathLocked = writeLockForCreate(src, false);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create directory " + src);
@@ -3860,7 +4336,11 @@ boolean mkdirs(String src, PermissionStatus permissions,
       logAuditEvent(false, "mkdirs", src);
       throw e;
     } finally {
-      writeUnlock();
+      if (pathLocked) {
+        writeUnlock(src);
+      } else {
+        writeUnlock();
+      }
     }
     getEditLog().logSync();
     logAuditEvent(true, "mkdirs", src, null, auditStat);
@@ -3892,6 +4372,20 @@ ContentSummary getContentSummary(final String src) throws IOException {
     } finally {
       readUnlock();
       logAuditEvent(success, "contentSummary", src);
+      if (dir.hasContentSummaryCacheCandidates()) {
+        // features cannot be added while holding the read lock
+        writeLock();
+        try {
+          dir.writeLock();
+          try {
+            dir.addContentSummaryCaches();
+          } finally {
+            dir.writeUnlock();
+          }
+        } finally {
+          writeUnlock();
+        }
+      }
     }
   }
 
@@ -4438,7 +4932,7 @@ DirectoryListing getListing(String src, byte[] startAfter,
       throws IOException {
     checkOperation(OperationCategory.READ);
     DirectoryListing dl = null;
-    readLock();
+    readLock(src);
     try {
       checkOperation(NameNode.OperationCategory.READ);
       dl = FSDirStatAndListingOp.getListingInt(dir, src, startAfter,
@@ -4447,7 +4941,7 @@ DirectoryListing getListing(String src, byte[] startAfter,
       logAuditEvent(false, "listStatus", src);
       throw e;
     } finally {
-      readUnlock();
+      readUnlock(src);
     }
     logAuditEvent(true, "listStatus", src);
     return dl;
@@ -5951,6 +6445,12 @@ public long getPostponedMisreplicatedBlocks() {
   public int getPendingDataNodeMessageCount() {
     return blockManager.getPendingDataNodeMessageCount();
   }
+
+  @Metric({"BlockReportQueueLength",
+      "Number of full block reports waiting to be processed"})
+  public int getBlockReportQueueLength() {
+    return blockManager.getBlockReportQueueLength();
+  }
   
   // HA-only metric
   @Metric
@@ -6121,6 +6621,27 @@ public String getTopUserOpCounts() {
     return null;
   }
 
+  @Override // FSNamesystemMBean
+  public String getTopUserLockHoldTimes() {
+    if (!topConf.isEnabled || !lockDetailedMetrics) {
+      return null;
+    }
+
+    Date now = new Date();
+    final List<RollingWindowManager.TopWindow> topWindows =
+        topMetrics.getTopLockHoldWindows();
+    Map<String, Object> topMap = new TreeMap<String, Object>();
+    topMap.put("windows", topWindows);
+    topMap.put("timestamp", DFSUtil.dateToIso8601String(now));
+    ObjectMapper mapper = new ObjectMapper();
+    try {
+      return mapper.writeValueAsString(topMap);
+    } catch (IOException e) {
+      LOG.warn("Failed to fetch TopUser lock hold metrics", e);
+    }
+    return null;
+  }
+
   /**
    * Increments, logs and then returns the stamp
    */
@@ -6355,7 +6876,7 @@ private void updatePipelineInternal(String clientName, ExtendedBlock oldBlock,
   // rename was successful. If any part of the renamed subtree had
   // files that were being written to, update with new filename.
   void unprotectedChangeLease(String src, String dst) {
-    assert hasWriteLock();
+    assert hasWriteLock() || hasPathWriteLock();
     leaseManager.changeLease(src, dst);
   }
 
@@ -1,4 +1,3 @@
-
 /**
  * Licensed to the Apache Software Foundation (ASF) under one
  * or more contributor license agreements.  See the NOTICE file
@@ -19,44 +18,489 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.util.StringUtils;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 
 /**
  * Mimics a ReentrantReadWriteLock so more sophisticated locking capabilities
  * are possible.
+ * <p>
+ * When path locking is enabled, the namespace is additionally divided into
+ * subtrees rooted at a fixed depth below the root directory, and each subtree
+ * is hashed onto one of a fixed number of lock stripes. An operation confined
+ * to a single subtree holds the coarse lock in shared mode plus the read or
+ * write lock of its stripe, so that mutations of independent subtrees can
+ * proceed concurrently. The coarse write lock keeps its meaning of excluding
+ * everything else. Holders of the coarse read lock which are not path aware
+ * must not observe a subtree being modified either, so they are admitted
+ * together with each other but never together with path lock writers, see
+ * {@link ModeSync}. Path lock readers only exclude the writers of their own
+ * stripe.
+ * <p>
+ * The lock measures how long each thread waits for and holds it, from its
+ * outermost acquisition to its last release. Holds longer than a threshold
+ * are logged with the stack trace of the releasing thread, and the times
+ * accumulated during an RPC call can be taken by the namesystem to attribute
+ * them to the operation and the user of the call, see
+ * {@link #takeLockTimes()}.
  */
 class FSNamesystemLock implements ReadWriteLock {
+  static final Log LOG = LogFactory.getLog(FSNamesystemLock.class);
+
+  /**
+   * The lock wait and hold times of a thread, accumulated since the start of
+   * the RPC call it serves, or since it last took them.
+   */
+  static class LockTimes {
+    /**
+     * The RPC call the times belong to. The client id is compared by
+     * reference, as each call has its own copy, so that the call itself is
+     * not retained.
+     */
+    private int callId;
+    private byte[] clientId;
+    private boolean taken;
+    /** Number of locks held, of any kind. */
+    private int holds;
+    private boolean writeLocked;
+    private long holdStartNanos;
+    private long waitNanos;
+    private long holdNanos;
+
+    long getWaitMicros() {
+      return TimeUnit.NANOSECONDS.toMicros(waitNanos);
+    }
+
+    long getHoldMicros() {
+      return TimeUnit.NANOSECONDS.toMicros(holdNanos);
+    }
+
+    private boolean isCurrentCall() {
+      return callId == Server.getCallId() && clientId == Server.getClientId();
+    }
+
+    private void reset() {
+      callId = Server.getCallId();
+      clientId = Server.getClientId();
+      taken = false;
+      waitNanos = 0;
+      holdNanos = 0;
+    }
+  }
+
+  /**
+   * Admits either any number of global readers or any number of path lock
+   * writers at a time, but never both. Waiting threads are admitted in
+   * arrival order, so that neither kind starves the other. The state is the
+   * number of global readers if positive, or the negated number of path lock
+   * writers if negative.
+   */
+  private static final class ModeSync extends AbstractQueuedSynchronizer {
+    private static final long serialVersionUID = 1L;
+
+    static final int GLOBAL_READ = 1;
+    static final int PATH_WRITE = -1;
+
+    @Override
+    protected int tryAcquireShared(int mode) {
+      for (;;) {
+        if (hasQueuedPredecessors()) {
+          return -1;
+        }
+        final int c = getState();
+        if (c != 0 && (c > 0) != (mode > 0)) {
+          return -1;
+        }
+        if (compareAndSetState(c, c + mode)) {
+          return 1;
+        }
+      }
+    }
+
+    @Override
+    protected boolean tryReleaseShared(int mode) {
+      for (;;) {
+        final int c = getState();
+        final int next = c - mode;
+        if (compareAndSetState(c, next)) {
+          return next == 0;
+        }
+      }
+    }
+  }
+
+  /** Path lock holds of a thread. */
+  private static class PathLockHolds {
+    private int reads;
+    private int writes;
+    /** Number of holds of the mode sync, of any mode. */
+    private int modeHolds;
+    /** The mode the mode sync is held in, if {@code modeHolds > 0}. */
+    private int mode;
+    /** Global reads taken under a path read lock without the mode sync. */
+    private int unsyncedReads;
+  }
+
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
-  
+
+  /** Lock stripes for subtrees, or null if path locking is disabled. */
+  private final ReentrantReadWriteLock[] pathLocks;
+  /** Number of path components identifying a subtree. */
+  private final int pathLockDepth;
+  /** Separates global readers from path lock writers. */
+  private final ModeSync modeSync = new ModeSync();
+  private final ThreadLocal<PathLockHolds> pathLockHolds =
+      new ThreadLocal<PathLockHolds>() {
+    @Override
+    protected PathLockHolds initialValue() {
+      return new PathLockHolds();
+    }
+  };
+
+  private final ThreadLocal<LockTimes> lockTimes =
+      new ThreadLocal<LockTimes>() {
+    @Override
+    protected LockTimes initialValue() {
+      return new LockTimes();
+    }
+  };
+  private final long readLockReportingThresholdNanos;
+  private final long writeLockReportingThresholdNanos;
+
   FSNamesystemLock(boolean fair) {
+    this(fair, 0, 0);
+  }
+
+  FSNamesystemLock(boolean fair, int pathLockStripes, int pathLockDepth) {
+    this(fair, pathLockStripes, pathLockDepth, Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * @param fair whether the locks use a fair ordering policy
+   * @param pathLockStripes number of subtree lock stripes, or 0 to disable
+   *                        path locking
+   * @param pathLockDepth number of path components identifying a subtree
+   * @param readLockReportingThresholdMs read lock holds longer than this are
+   *                                     logged
+   * @param writeLockReportingThresholdMs write lock holds longer than this
+   *                                      are logged
+   */
+  FSNamesystemLock(boolean fair, int pathLockStripes, int pathLockDepth,
+      long readLockReportingThresholdMs, long writeLockReportingThresholdMs) {
     this.coarseLock = new ReentrantReadWriteLock(fair);
+    if (pathLockStripes > 0) {
+      Preconditions.checkArgument(pathLockDepth > 0,
+          "Path lock depth must be positive: %s", pathLockDepth);
+      this.pathLocks = new ReentrantReadWriteLock[pathLockStripes];
+      for (int i = 0; i < pathLockStripes; i++) {
+        pathLocks[i] = new ReentrantReadWriteLock(fair);
+      }
+    } else {
+      this.pathLocks = null;
+    }
+    this.pathLockDepth = pathLockDepth;
+    this.readLockReportingThresholdNanos =
+        toNanos(readLockReportingThresholdMs);
+    this.writeLockReportingThresholdNanos =
+        toNanos(writeLockReportingThresholdMs);
+  }
+
+  private static long toNanos(long ms) {
+    return ms >= TimeUnit.NANOSECONDS.toMillis(Long.MAX_VALUE) ?
+        Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(ms);
   }
-  
+
   @Override
   public Lock readLock() {
     return coarseLock.readLock();
   }
-  
+
   @Override
   public Lock writeLock() {
     return coarseLock.writeLock();
   }
 
+  /**
+   * Take the coarse read lock. If path locking is enabled, this also waits
+   * for the path lock writers to finish and keeps new ones out.
+   * <p>
+   * A thread which already holds a path lock is let in without waiting for
+   * other path lock writers, as it could deadlock with them otherwise. It
+   * must only read its own subtree then, which is the case for the nested
+   * reads of path aware operations.
+   */
+  void lockRead() {
+    final long start = System.nanoTime();
+    coarseLock.readLock().lock();
+    if (pathLocks != null) {
+      final PathLockHolds holds = pathLockHolds.get();
+      if (holds.modeHolds == 0 && holds.reads > 0) {
+        holds.unsyncedReads++;
+      } else {
+        acquireMode(holds, ModeSync.GLOBAL_READ);
+      }
+    }
+    lockAcquired(start, false);
+  }
+
+  void unlockRead() {
+    final long held = lockReleased();
+    if (pathLocks != null) {
+      final PathLockHolds holds = pathLockHolds.get();
+      if (holds.unsyncedReads > 0) {
+        holds.unsyncedReads--;
+      } else {
+        releaseMode(holds);
+      }
+    }
+    coarseLock.readLock().unlock();
+    reportLongHold(held);
+  }
+
+  void lockWrite() {
+    final long start = System.nanoTime();
+    coarseLock.writeLock().lock();
+    lockAcquired(start, true);
+  }
+
+  void lockWriteInterruptibly() throws InterruptedException {
+    final long start = System.nanoTime();
+    coarseLock.writeLock().lockInterruptibly();
+    lockAcquired(start, true);
+  }
+
+  void unlockWrite() {
+    final long held = lockReleased();
+    coarseLock.writeLock().unlock();
+    reportLongHold(held);
+  }
+
   public int getReadHoldCount() {
     return coarseLock.getReadHoldCount();
   }
-  
+
   public int getWriteHoldCount() {
     return coarseLock.getWriteHoldCount();
   }
-  
+
   public boolean isWriteLockedByCurrentThread() {
     return coarseLock.isWriteLockedByCurrentThread();
   }
+
+  boolean isPathLockingEnabled() {
+    return pathLocks != null;
+  }
+
+  int getPathLockDepth() {
+    return pathLockDepth;
+  }
+
+  /**
+   * Get the top directory of the subtree that a path belongs to.
+   * @return the subtree root, or null if the path is not confined to a single
+   *         subtree or path locking is disabled.
+   */
+  String getPathLockRoot(String src) {
+    if (pathLocks == null || src == null
+        || !src.startsWith(Path.SEPARATOR)
+        || src.startsWith(FSDirectory.DOT_RESERVED_PATH_PREFIX)) {
+      return null;
+    }
+    int end = 0;
+    for (int i = 0; i < pathLockDepth; i++) {
+      final int start = end + 1;
+      if (start >= src.length()) {
+        return null;
+      }
+      end = src.indexOf(Path.SEPARATOR_CHAR, start);
+      if (end < 0) {
+        end = src.length();
+      }
+      final int len = end - start;
+      // reject empty and relative components, they are invalid paths anyway
+      if (len == 0 || (len <= 2 && src.charAt(start) == '.'
+          && (len == 1 || src.charAt(start + 1) == '.'))) {
+        return null;
+      }
+      if (end == src.length() && i < pathLockDepth - 1) {
+        return null;
+      }
+    }
+    return src.substring(0, end);
+  }
+
+  /**
+   * @return the index of the lock stripe guarding the subtree of the given
+   *         path, or -1 if the path can only be protected by the coarse lock.
+   */
+  int getPathLockIndex(String src) {
+    final String root = getPathLockRoot(src);
+    if (root == null) {
+      return -1;
+    }
+    return (root.hashCode() & Integer.MAX_VALUE) % pathLocks.length;
+  }
+
+  void readLockPath(int index) {
+    final long start = System.nanoTime();
+    coarseLock.readLock().lock();
+    pathLocks[index].readLock().lock();
+    pathLockHolds.get().reads++;
+    lockAcquired(start, false);
+  }
+
+  void readUnlockPath(int index) {
+    final long held = lockReleased();
+    pathLockHolds.get().reads--;
+    pathLocks[index].readLock().unlock();
+    coarseLock.readLock().unlock();
+    reportLongHold(held);
+  }
+
+  void writeLockPath(int index) {
+    writeLockPaths(index, index);
+  }
+
+  void writeUnlockPath(int index) {
+    writeUnlockPaths(index, index);
+  }
+
+  /**
+   * Take the path locks of two stripes in write mode, e.g. for a rename
+   * between two subtrees. The stripes are locked in index order, so that
+   * concurrent callers cannot deadlock. The indexes may be equal.
+   */
+  void writeLockPaths(int index1, int index2) {
+    final long start = System.nanoTime();
+    coarseLock.readLock().lock();
+    final PathLockHolds holds = pathLockHolds.get();
+    acquireMode(holds, ModeSync.PATH_WRITE);
+    pathLocks[Math.min(index1, index2)].writeLock().lock();
+    if (index1 != index2) {
+      pathLocks[Math.max(index1, index2)].writeLock().lock();
+    }
+    holds.writes++;
+    lockAcquired(start, true);
+  }
+
+  void writeUnlockPaths(int index1, int index2) {
+    final long held = lockReleased();
+    final PathLockHolds holds = pathLockHolds.get();
+    holds.writes--;
+    if (index1 != index2) {
+      pathLocks[Math.max(index1, index2)].writeLock().unlock();
+    }
+    pathLocks[Math.min(index1, index2)].writeLock().unlock();
+    releaseMode(holds);
+    coarseLock.readLock().unlock();
+    reportLongHold(held);
+  }
+
+  /**
+   * Take the mode sync for the current thread, unless it already holds it.
+   * A nested acquisition keeps the mode of the outermost one, whatever its
+   * own mode is, as waiting for the other mode would deadlock.
+   */
+  private void acquireMode(PathLockHolds holds, int mode) {
+    if (holds.modeHolds == 0) {
+      modeSync.acquireShared(mode);
+      holds.mode = mode;
+    }
+    holds.modeHolds++;
+  }
+
+  private void releaseMode(PathLockHolds holds) {
+    if (--holds.modeHolds == 0) {
+      modeSync.releaseShared(holds.mode);
+    }
+  }
+
+  /** @return true if the current thread holds a path lock. */
+  boolean hasPathLock() {
+    if (pathLocks == null) {
+      return false;
+    }
+    final PathLockHolds holds = pathLockHolds.get();
+    return holds.reads > 0 || holds.writes > 0;
+  }
+
+  /** @return true if the current thread holds a path lock in write mode. */
+  boolean hasPathWriteLock() {
+    return pathLocks != null && pathLockHolds.get().writes > 0;
+  }
+
+  private void lockAcquired(long waitStartNanos, boolean write) {
+    final LockTimes times = lockTimes.get();
+    if (times.holds++ > 0) {
+      times.writeLocked |= write;
+      return;
+    }
+    if (times.taken || !times.isCurrentCall()) {
+      times.reset();
+    }
+    final long now = System.nanoTime();
+    times.waitNanos += now - waitStartNanos;
+    times.holdStartNanos = now;
+    times.writeLocked = write;
+  }
+
+  /**
+   * Account for the release of the lock by the current thread.
+   * @return the time the lock was held for in nanoseconds, if it is above
+   *         the reporting threshold and the lock is now fully released,
+   *         or -1.
+   */
+  private long lockReleased() {
+    final LockTimes times = lockTimes.get();
+    if (times.holds == 0 || --times.holds > 0) {
+      return -1;
+    }
+    final long held = System.nanoTime() - times.holdStartNanos;
+    times.holdNanos += held;
+    return held > (times.writeLocked ? writeLockReportingThresholdNanos
+        : readLockReportingThresholdNanos) ? held : -1;
+  }
+
+  /**
+   * Log a long hold of the lock. Must be called after the lock is released,
+   * so that building the stack trace does not make the hold even longer.
+   */
+  private void reportLongHold(long heldNanos) {
+    if (heldNanos < 0) {
+      return;
+    }
+    LOG.info("FSNamesystem " + (lockTimes.get().writeLocked ? "write" : "read")
+        + " lock held for " + TimeUnit.NANOSECONDS.toMillis(heldNanos)
+        + " ms via\n" + StringUtils.getStackTrace(Thread.currentThread()));
+  }
+
+  /**
+   * Take the lock times accumulated by the current thread during its current
+   * RPC call. The times are only taken once, and they are only valid until
+   * the thread takes the lock again.
+   * @return the lock times, or null if the thread has not taken the lock
+   *         during the call or the times have already been taken.
+   */
+  LockTimes takeLockTimes() {
+    final LockTimes times = lockTimes.get();
+    if (times.taken || !times.isCurrentCall()
+        || (times.waitNanos == 0 && times.holdNanos == 0)) {
+      return null;
+    }
+    times.taken = true;
+    return times;
+  }
 }
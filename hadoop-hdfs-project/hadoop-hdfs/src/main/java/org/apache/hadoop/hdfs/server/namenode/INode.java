@@ -628,6 +628,24 @@ public INodeReference getParentReference() {
     return parent == null || !parent.isReference()? null: (INodeReference)parent;
   }
 
+  /**
+   * Invalidate the cached content summaries of this inode, if it is a
+   * directory, and of all its ancestors. This must be called on any change
+   * of the {@link ContentCounts} of the inode.
+   */
+  public final void invalidateContentSummary() {
+    if (!DirectoryWithContentSummaryFeature.isEverUsed()) {
+      return;
+    }
+    for (INode inode = this; inode != null; inode = inode.getParent()) {
+      if (inode.isDirectory()
+          && !inode.asDirectory().invalidateCachedContentSummary()) {
+        // the ancestors have no cached counts either
+        return;
+      }
+    }
+  }
+
   /** Set parent directory */
   public final void setParent(INodeDirectory parent) {
     this.parent = parent;
@@ -201,6 +201,48 @@ DirectoryWithQuotaFeature addDirectoryWithQuotaFeature(
     return q;
   }
 
+  /**
+   * If the directory contains a {@link DirectoryWithContentSummaryFeature},
+   * return it; otherwise, return null.
+   */
+  public final DirectoryWithContentSummaryFeature
+      getDirectoryWithContentSummaryFeature() {
+    return getFeature(DirectoryWithContentSummaryFeature.class);
+  }
+
+  DirectoryWithContentSummaryFeature addDirectoryWithContentSummaryFeature() {
+    DirectoryWithContentSummaryFeature f =
+        getDirectoryWithContentSummaryFeature();
+    if (f == null) {
+      f = new DirectoryWithContentSummaryFeature();
+      addFeature(f);
+      // the ancestors must not have counts while this directory has none
+      final INodeDirectory parent = getParent();
+      if (parent != null) {
+        parent.invalidateContentSummary();
+      }
+    }
+    return f;
+  }
+
+  /**
+   * Drop the cached content summary of this directory, if any.
+   * @return false if the directory has the cache feature but no counts, in
+   *         which case its ancestors have no counts either.
+   */
+  final boolean invalidateCachedContentSummary() {
+    final DirectoryWithContentSummaryFeature f =
+        getDirectoryWithContentSummaryFeature();
+    if (f == null) {
+      return true;
+    }
+    if (!f.isValid()) {
+      return false;
+    }
+    f.invalidate();
+    return true;
+  }
+
   int searchChildren(byte[] name) {
     return children == null? -1: Collections.binarySearch(children, name);
   }
@@ -209,6 +251,7 @@ public DirectoryWithSnapshotFeature addSnapshotFeature(
       DirectoryDiffList diffs) {
     Preconditions.checkState(!isWithSnapshot(), 
         "Directory is already with snapshot");
+    invalidateContentSummary();
     DirectoryWithSnapshotFeature sf = new DirectoryWithSnapshotFeature(diffs);
     addFeature(sf);
     return sf;
@@ -281,6 +324,7 @@ public void renameSnapshot(String path, String oldName, String newName)
   public void addSnapshottableFeature() {
     Preconditions.checkState(!isSnapshottable(),
         "this is already snapshottable, this=%s", this);
+    invalidateContentSummary();
     DirectoryWithSnapshotFeature s = this.getDirectoryWithSnapshotFeature();
     final DirectorySnapshottableFeature snapshottable =
         new DirectorySnapshottableFeature(s);
@@ -319,6 +363,7 @@ public void replaceChild(INode oldChild, final INode newChild,
         || oldChild == children.get(i).asReference().getReferredINode()
             .asReference().getReferredINode());
     oldChild = children.get(i);
+    invalidateContentSummary();
     
     if (oldChild.isReference() && newChild.isReference()) {
       // both are reference nodes, e.g., DstReference -> WithName
@@ -506,6 +551,7 @@ public boolean removeChild(final INode child) {
       return false;
     }
 
+    invalidateContentSummary();
     final INode removed = children.remove(i);
     Preconditions.checkState(removed == child);
     return true;
@@ -528,6 +574,7 @@ public boolean addChild(INode node, final boolean setModTime,
       return false;
     }
 
+    invalidateContentSummary();
     if (isInLatestSnapshot(latestSnapshotId)) {
       // create snapshot feature if necessary
       DirectoryWithSnapshotFeature sf = this.getDirectoryWithSnapshotFeature();
@@ -544,6 +591,10 @@ public boolean addChild(INode node, final boolean setModTime,
     return true;
   }
 
+  /**
+   * Add a child inode to the directory without invalidating the cached content
+   * summaries, since it is only used while loading the namespace.
+   */
   public boolean addChild(INode node) {
     final int low = searchChildren(node.getLocalNameBytes());
     if (low >= 0) {
@@ -630,8 +681,12 @@ public QuotaCounts computeQuotaUsage4CurrentDirectory(
   @Override
   public ContentSummaryComputationContext computeContentSummary(
       ContentSummaryComputationContext summary) {
+    if (summary.addCachedCounts(this)) {
+      return summary;
+    }
     final DirectoryWithSnapshotFeature sf = getDirectoryWithSnapshotFeature();
     if (sf != null) {
+      summary.markUncacheable();
       sf.computeContentSummary4Snapshot(summary.getBlockStoragePolicySuite(),
           summary.getCounts());
     }
@@ -645,6 +700,9 @@ public ContentSummaryComputationContext computeContentSummary(
 
   protected ContentSummaryComputationContext computeDirectoryContentSummary(
       ContentSummaryComputationContext summary, int snapshotId) {
+    final ContentSummaryComputationContext.CacheCheckpoint checkpoint =
+        snapshotId == Snapshot.CURRENT_STATE_ID && !isWithSnapshot() ?
+            summary.startCaching() : null;
     ReadOnlyList<INode> childrenList = getChildrenList(snapshotId);
     // Explicit traversing is done to enable repositioning after relinquishing
     // and reacquiring locks.
@@ -675,6 +733,9 @@ protected ContentSummaryComputationContext computeDirectoryContentSummary(
 
     // Increment the directory count for this directory.
     summary.getCounts().addContent(Content.DIRECTORY, 1);
+    if (checkpoint != null) {
+      summary.finishCaching(this, checkpoint);
+    }
     // Relinquish and reacquire locks if necessary.
     summary.yield();
     return summary;
@@ -191,6 +191,8 @@ public boolean isUnderConstruction() {
   INodeFile toUnderConstruction(String clientName, String clientMachine) {
     Preconditions.checkState(!isUnderConstruction(),
         "file is already under construction");
+    // the content summary of a file under construction is not cached
+    invalidateContentSummary();
     FileUnderConstructionFeature uc = new FileUnderConstructionFeature(
         clientName, clientMachine);
     addFeature(uc);
@@ -276,6 +278,7 @@ boolean removeLastBlock(Block oldblock) {
   public FileWithSnapshotFeature addSnapshotFeature(FileDiffList diffs) {
     Preconditions.checkState(!isWithSnapshot(), 
         "File is already with snapshot");
+    invalidateContentSummary();
     FileWithSnapshotFeature sf = new FileWithSnapshotFeature(diffs);
     this.addFeature(sf);
     return sf;
@@ -368,6 +371,7 @@ public short getBlockReplication() {
 
   /** Set the replication factor of this file. */
   public final void setFileReplication(short replication) {
+    invalidateContentSummary();
     header = HeaderFormat.REPLICATION.BITS.combine(replication, header);
   }
 
@@ -401,6 +405,7 @@ public byte getStoragePolicyID() {
   }
 
   private void setStoragePolicyID(byte storagePolicyId) {
+    invalidateContentSummary();
     header = HeaderFormat.STORAGE_POLICY_ID.BITS.combine(storagePolicyId,
         header);
   }
@@ -490,6 +495,7 @@ void addBlock(BlockInfoContiguous newblock) {
 
   /** Set the blocks. */
   public void setBlocks(BlockInfoContiguous[] blocks) {
+    invalidateContentSummary();
     this.blocks = blocks;
   }
 
@@ -602,6 +608,9 @@ public final ContentSummaryComputationContext computeContentSummary(
       final ContentSummaryComputationContext summary) {
     final ContentCounts counts = summary.getCounts();
     FileWithSnapshotFeature sf = getFileWithSnapshotFeature();
+    if (sf != null || isUnderConstruction()) {
+      summary.markUncacheable();
+    }
     long fileLen = 0;
     if (sf == null) {
       fileLen = computeFileSize();
@@ -56,6 +56,7 @@
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.ipc.RefreshCallQueueProtocol;
 import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.ipc.RpcConstants;
 import org.apache.hadoop.ipc.StandbyException;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.util.MBeans;
@@ -312,6 +313,8 @@ public long getProtocolVersion(String protocol,
   private final boolean haEnabled;
   private final HAContext haContext;
   protected final boolean allowStaleStandbyReads;
+  private final boolean stateContextEnabled;
+  private final long stateContextMaxWaitMs;
   private AtomicBoolean started = new AtomicBoolean(false); 
 
   
@@ -805,6 +808,12 @@ protected NameNode(Configuration conf, NamenodeRole role)
     this.haEnabled = HAUtil.isHAEnabled(conf, nsId);
     state = createHAState(getStartupOption(conf));
     this.allowStaleStandbyReads = HAUtil.shouldAllowStandbyReads(conf);
+    this.stateContextEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_DEFAULT);
+    this.stateContextMaxWaitMs = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_MAX_WAIT_MS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_MAX_WAIT_MS_DEFAULT);
     this.haContext = createHAContext();
     try {
       initializeGenericKeys(conf, nsId, namenodeId);
@@ -1785,6 +1794,33 @@ public boolean allowStaleReads() {
       return allowStaleStandbyReads;
     }
 
+    /**
+     * Wait for the namespace to catch up with the last transaction seen by
+     * the client, unless the namesystem lock is held since the edits cannot
+     * be applied meanwhile.
+     */
+    @Override
+    public boolean allowConsistentReads() {
+      final long clientStateId = Server.getClientStateId();
+      if (!stateContextEnabled || namesystem == null
+          || clientStateId == RpcConstants.INVALID_STATE_ID) {
+        return false;
+      }
+      final FSImage fsImage = namesystem.getFSImage();
+      if (fsImage.getLastAppliedOrWrittenTxId() >= clientStateId) {
+        return true;
+      }
+      if (namesystem.hasReadLock()) {
+        return false;
+      }
+      try {
+        return fsImage.waitForTxId(clientStateId, stateContextMaxWaitMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
   }
   
   public boolean isStandbyState() {
@@ -33,6 +33,7 @@
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Lists;
@@ -373,6 +374,11 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
     DFSUtil.addPBProtocol(conf, TraceAdminProtocolPB.class,
         traceAdminService, clientRpcServer);
 
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_DEFAULT)) {
+      clientRpcServer.setAlignmentContext(new GlobalStateIdContext(namesystem));
+    }
+
     // set service-level authorization security policy
     if (serviceAuthEnabled =
           conf.getBoolean(
@@ -789,6 +795,86 @@ public boolean complete(String src, String clientName,
     return namesystem.completeFile(src, clientName, last, fileId);
   }
 
+  @Override // ClientProtocol
+  public HdfsFileStatus[] createFiles(String[] srcs, FsPermission masked,
+      String clientName, EnumSetWritable<CreateFlag> flag,
+      boolean createParent, short replication, long blockSize)
+      throws IOException {
+    checkNNStartup();
+    String clientMachine = getClientMachine();
+    if (stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* NameNode.createFiles: " + srcs.length
+          + " files for " + clientName + " at " + clientMachine);
+    }
+    for (String src : srcs) {
+      if (!checkPathLength(src)) {
+        throw new IOException("createFiles: Pathname too long.  Limit "
+            + MAX_PATH_LENGTH + " characters, " + MAX_PATH_DEPTH + " levels.");
+      }
+    }
+
+    CacheEntryWithPayload cacheEntry = RetryCache.waitForCompletion(retryCache, null);
+    if (cacheEntry != null && cacheEntry.isSuccess()) {
+      HdfsFileStatus[] retried = getRetriedFilesStatus(srcs,
+          cacheEntry.getPayload());
+      if (retried != null) {
+        return retried;
+      }
+    }
+
+    HdfsFileStatus[] status = null;
+    try {
+      PermissionStatus perm = new PermissionStatus(getRemoteUser()
+          .getShortUserName(), null, masked);
+      status = namesystem.startFiles(srcs, perm, clientName, clientMachine,
+          flag.get(), createParent, replication, blockSize,
+          cacheEntry != null);
+    } finally {
+      RetryCache.setState(cacheEntry, status != null, status);
+    }
+
+    for (int i = 0; i < status.length; i++) {
+      metrics.incrFilesCreated();
+      metrics.incrCreateFileOps();
+    }
+    return status;
+  }
+
+  /**
+   * Get the result of a retried {@link #createFiles} call from its retry
+   * cache entry. The entries rebuilt from the edit log after a failover only
+   * hold the status of one file of the batch, so the status of the files is
+   * looked up again then.
+   *
+   * @return the status of the files, or null if they do not all exist, e.g.
+   *         because the batch was undone after a file failed to be created
+   */
+  private HdfsFileStatus[] getRetriedFilesStatus(String[] srcs,
+      Object payload) throws IOException {
+    if (payload instanceof HdfsFileStatus[]) {
+      return (HdfsFileStatus[]) payload;
+    }
+    final HdfsFileStatus[] status = new HdfsFileStatus[srcs.length];
+    for (int i = 0; i < srcs.length; i++) {
+      status[i] = namesystem.getFileInfo(srcs[i], false);
+      if (status[i] == null) {
+        return null;
+      }
+    }
+    return status;
+  }
+
+  @Override // ClientProtocol
+  public boolean[] completeFiles(String[] srcs, String clientName,
+      ExtendedBlock[] lasts, long[] fileIds) throws IOException {
+    checkNNStartup();
+    if (stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* NameNode.completeFiles: " + srcs.length
+          + " files for " + clientName);
+    }
+    return namesystem.completeFiles(srcs, clientName, lasts, fileIds);
+  }
+
   /**
    * The client has detected an error on the specified located blocks 
    * and is reporting them to the server.  For now, the namenode will 
@@ -1293,9 +1379,9 @@ public HeartbeatResponse sendHeartbeat(DatanodeRegistration nodeReg,
   }
 
   @Override // DatanodeProtocol
-  public DatanodeCommand blockReport(DatanodeRegistration nodeReg,
-        String poolId, StorageBlockReport[] reports,
-        BlockReportContext context) throws IOException {
+  public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
+        String poolId, final StorageBlockReport[] reports,
+        final BlockReportContext context) throws IOException {
     checkNNStartup();
     verifyRequest(nodeReg);
     if(blockStateChangeLog.isDebugEnabled()) {
@@ -1303,19 +1389,31 @@ public DatanodeCommand blockReport(DatanodeRegistration nodeReg,
            + "from " + nodeReg + ", reports.length=" + reports.length);
     }
     final BlockManager bm = namesystem.getBlockManager(); 
-    boolean noStaleStorages = false;
-    for (int r = 0; r < reports.length; r++) {
-      final BlockListAsLongs blocks = reports[r].getBlocks();
-      //
-      // BlockManager.processReport accumulates information of prior calls
-      // for the same node and storage, so the value returned by the last
-      // call of this loop is the final updated value for noStaleStorage.
-      //
-      noStaleStorages = bm.processReport(nodeReg, reports[r].getStorage(),
-          blocks, context, (r == reports.length - 1));
-      metrics.incrStorageBlockReportOps();
-    }
+    // a report of a dead or unregistered node is rejected here, so that the
+    // DataNode registers again; the report itself is processed in the block
+    // report processing thread, after the handler has returned
+    final boolean noStaleStorages = bm.checkBlockReportNode(nodeReg);
+    bm.enqueueBlockOp(nodeReg, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (int r = 0; r < reports.length; r++) {
+            final BlockListAsLongs blocks = reports[r].getBlocks();
+            bm.processReport(nodeReg, reports[r].getStorage(),
+                blocks, context, (r == reports.length - 1));
+            metrics.incrStorageBlockReportOps();
+          }
+        } catch (IOException e) {
+          // the next full block report of the DataNode corrects the problem
+          blockStateChangeLog.warn("*BLOCK* NameNode.blockReport: failed "
+              + "from " + nodeReg + ": " + e.getMessage());
+        }
+      }
+    });
 
+    // the storages are those already reported before this report, so that
+    // the DataNode may be told to finalize one report later than it would be
+    // if the report was processed before returning
     if (nn.getFSImage().isUpgradeFinalized() &&
         !namesystem.isRollingUpgrade() &&
         !nn.isStandbyState() &&
@@ -1328,20 +1426,25 @@ public DatanodeCommand blockReport(DatanodeRegistration nodeReg,
 
   @Override
   public DatanodeCommand cacheReport(DatanodeRegistration nodeReg,
-      String poolId, List<Long> blockIds) throws IOException {
+      String poolId, List<Long> blockIds, Map<Long, Long> hotBlocks)
+      throws IOException {
     checkNNStartup();
     verifyRequest(nodeReg);
     if (blockStateChangeLog.isDebugEnabled()) {
       blockStateChangeLog.debug("*BLOCK* NameNode.cacheReport: "
-           + "from " + nodeReg + " " + blockIds.size() + " blocks");
+           + "from " + nodeReg + " " + blockIds.size() + " blocks, "
+           + hotBlocks.size() + " hot blocks");
     }
-    namesystem.getCacheManager().processCacheReport(nodeReg, blockIds);
+    namesystem.getCacheManager().processCacheReport(nodeReg, blockIds,
+        hotBlocks);
     return null;
   }
 
   @Override // DatanodeProtocol
-  public void blockReceivedAndDeleted(DatanodeRegistration nodeReg, String poolId,
-      StorageReceivedDeletedBlocks[] receivedAndDeletedBlocks) throws IOException {
+  public void blockReceivedAndDeleted(final DatanodeRegistration nodeReg,
+      String poolId,
+      final StorageReceivedDeletedBlocks[] receivedAndDeletedBlocks)
+      throws IOException {
     checkNNStartup();
     verifyRequest(nodeReg);
     metrics.incrBlockReceivedAndDeletedOps();
@@ -1350,6 +1453,26 @@ public void blockReceivedAndDeleted(DatanodeRegistration nodeReg, String poolId,
           +"from "+nodeReg+" "+receivedAndDeletedBlocks.length
           +" blocks.");
     }
+    final BlockManager bm = namesystem.getBlockManager();
+    if (bm.hasQueuedBlockOps(nodeReg)) {
+      // process the report after the queued full block report of the
+      // DataNode, which would otherwise undo it
+      bm.enqueueBlockOp(nodeReg, new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (StorageReceivedDeletedBlocks r : receivedAndDeletedBlocks) {
+              namesystem.processIncrementalBlockReport(nodeReg, r);
+            }
+          } catch (IOException e) {
+            // the next full block report of the DataNode corrects the problem
+            blockStateChangeLog.warn("*BLOCK* NameNode.blockReceivedAndDeleted:"
+                + " failed from " + nodeReg + ": " + e.getMessage());
+          }
+        }
+      });
+      return;
+    }
     for(StorageReceivedDeletedBlocks r : receivedAndDeletedBlocks) {
       namesystem.processIncrementalBlockReport(nodeReg, r);
     }
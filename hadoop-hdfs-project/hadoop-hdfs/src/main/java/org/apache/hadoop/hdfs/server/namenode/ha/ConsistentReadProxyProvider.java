@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.io.retry.ConsistentReadFailoverProxyProvider;
+import org.apache.hadoop.io.retry.ReadOnly;
+
+/**
+ * A NNFailoverProxyProvider implementation which sends the read-only
+ * {@link ClientProtocol} calls, i.e. those annotated as {@link ReadOnly}, to
+ * the standby NameNodes, and the other calls to the active NameNode, like
+ * {@link ConfiguredFailoverProxyProvider}.
+ * <p>
+ * The calls carry the last transaction id seen by the client, and a standby
+ * only serves a read once it has applied this transaction, hence the reads
+ * are consistent with the previous calls of the client. This requires
+ * dfs.namenode.state.context.enabled on the NameNodes. A read which a standby
+ * cannot serve in time is sent to the active NameNode.
+ */
+public class ConsistentReadProxyProvider<T> extends
+    AbstractNNFailoverProxyProvider<T> {
+  private static final Random RANDOM = new Random();
+
+  private final ConfiguredFailoverProxyProvider<T> activeProvider;
+  private final ConfiguredFailoverProxyProvider<T> readProvider;
+  private final ConsistentReadFailoverProxyProvider<T> proxyProvider;
+
+  public ConsistentReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface) {
+    activeProvider = new ConfiguredFailoverProxyProvider<T>(conf, uri, xface);
+    readProvider = new ConfiguredFailoverProxyProvider<T>(conf, uri, xface);
+
+    // spread the clients over the standby NameNodes
+    Map<String, ?> addressesInNN =
+        DFSUtil.getHaNnRpcAddresses(conf).get(uri.getHost());
+    final int numNameNodes = addressesInNN.size();
+    for (int i = RANDOM.nextInt(numNameNodes); i > 0; i--) {
+      readProvider.performFailover(null);
+    }
+    proxyProvider = new ConsistentReadFailoverProxyProvider<T>(
+        activeProvider, readProvider, numNameNodes);
+  }
+
+  /** @return the last transaction id seen by the client. */
+  public long getLastSeenStateId() {
+    return proxyProvider.getLastSeenStateId();
+  }
+
+  @Override
+  public Class<T> getInterface() {
+    return proxyProvider.getInterface();
+  }
+
+  @Override
+  public ProxyInfo<T> getProxy() {
+    return proxyProvider.getProxy();
+  }
+
+  @Override
+  public void performFailover(T currentProxy) {
+    proxyProvider.performFailover(currentProxy);
+  }
+
+  @Override
+  public synchronized void setFallbackToSimpleAuth(
+      AtomicBoolean fallbackToSimpleAuth) {
+    super.setFallbackToSimpleAuth(fallbackToSimpleAuth);
+    activeProvider.setFallbackToSimpleAuth(fallbackToSimpleAuth);
+    readProvider.setFallbackToSimpleAuth(fallbackToSimpleAuth);
+  }
+
+  @Override
+  public void close() throws IOException {
+    proxyProvider.close();
+  }
+
+  /**
+   * Logical URI is required for this failover proxy provider.
+   */
+  @Override
+  public boolean useLogicalURI() {
+    return true;
+  }
+}
@@ -96,8 +96,13 @@ public class EditLogTailer {
   private final long logRollPeriodMs;
 
   /**
-   * How often the Standby should check if there are new finalized segment(s)
-   * available to be read from.
+   * Whether the Standby also reads the edits of the in-progress segment.
+   */
+  private final boolean inProgressOk;
+
+  /**
+   * How often the Standby should check if there are new finalized segment(s),
+   * or new in-progress edits, available to be read from.
    */
   private final long sleepTimeMs;
   
@@ -123,8 +128,17 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
           DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY + " is negative.");
     }
     
-    sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
-        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000;
+    inProgressOk = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    if (inProgressOk) {
+      sleepTimeMs = conf.getLong(
+          DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_MS_KEY,
+          DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_MS_DEFAULT);
+    } else {
+      sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
+          DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000;
+    }
     
     LOG.debug("logRollPeriodMs=" + logRollPeriodMs +
         " sleepTime=" + sleepTimeMs);
@@ -213,7 +227,8 @@ void doTailEdits() throws IOException, InterruptedException {
       }
       Collection<EditLogInputStream> streams;
       try {
-        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null, false);
+        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null,
+            inProgressOk);
       } catch (IOException ioe) {
         // This is acceptable. If we try to tail edits in the middle of an edits
         // log roll, i.e. the last one has been finalized but the new inprogress
@@ -83,4 +83,11 @@ public interface HAContext {
    * while the namespace is not up to date)
    */
   boolean allowStaleReads();
+
+  /**
+   * @return true if the node should allow the reads of the current RPC call,
+   * since its namespace is up to date with the last transaction seen by the
+   * client of the call
+   */
+  boolean allowConsistentReads();
 }
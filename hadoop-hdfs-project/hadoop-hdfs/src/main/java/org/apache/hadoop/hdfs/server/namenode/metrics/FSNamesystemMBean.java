@@ -184,4 +184,14 @@ public interface FSNamesystemMBean {
    * @return JSON string
    */
   public String getTopUserOpCounts();
+
+  /**
+   * Returns a nested JSON object listing the users holding the namesystem
+   * lock the longest, in microseconds, for different RPC operations over
+   * tracked time windows.
+   *
+   * @return JSON string, or null if nntop or the detailed lock metrics are
+   *         disabled
+   */
+  public String getTopUserLockHoldTimes();
 }
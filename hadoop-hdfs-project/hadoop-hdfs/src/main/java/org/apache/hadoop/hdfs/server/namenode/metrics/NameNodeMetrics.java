@@ -20,6 +20,10 @@
 import static org.apache.hadoop.metrics2.impl.MsInfo.ProcessName;
 import static org.apache.hadoop.metrics2.impl.MsInfo.SessionId;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
@@ -109,8 +113,31 @@ public long totalFileOps(){
   MutableCounterLong transactionsBatchedInSync;
   @Metric("Block report") MutableRate blockReport;
   final MutableQuantiles[] blockReportQuantiles;
+  @Metric("Write lock held while processing a block report")
+  MutableRate blockReportLockHold;
+  @Metric("Number of times the write lock was released while processing " +
+      "a block report")
+  MutableCounterLong blockReportLockYields;
   @Metric("Cache report") MutableRate cacheReport;
   final MutableQuantiles[] cacheReportQuantiles;
+  @Metric("Number of hot blocks cached by the automatic caching")
+  MutableGaugeInt autoCachedBlocks;
+  @Metric("Number of hot blocks scheduled for caching")
+  MutableCounterLong autoCachePromotions;
+  @Metric("Number of blocks scheduled for uncaching since they went cold")
+  MutableCounterLong autoCacheEvictions;
+
+  /**
+   * The names of the priority levels of the under replicated blocks, in the
+   * order of the levels of UnderReplicatedBlocks.
+   */
+  private static final String[] REPLICATION_PRIORITIES = {"HighestPriority",
+      "VeryUnderReplicated", "UnderReplicated", "BadlyDistributed",
+      "Corrupt"};
+  /** Blocks waiting for replication at each priority level. */
+  final MutableGaugeInt[] neededReplications;
+  /** Blocks scheduled for replication at each priority level. */
+  final MutableCounterLong[] replicationsScheduled;
 
   @Metric("Duration in SafeMode at startup in msec")
   MutableGaugeInt safeModeTime;
@@ -124,11 +151,47 @@ public long totalFileOps(){
   @Metric("GetImageServlet putImage")
   MutableRate putImage;
 
+  /**
+   * The lock wait and hold times of a client operation, created on its first
+   * use.
+   */
+  private static class LockMetrics {
+    final MutableRate wait;
+    final MutableRate hold;
+    final MutableQuantiles[] waitQuantiles;
+    final MutableQuantiles[] holdQuantiles;
+
+    LockMetrics(MetricsRegistry registry, String op, int[] intervals) {
+      wait = registry.newRate("FSNLockWait" + op,
+          "Time waited for the namesystem lock by " + op + ", in micros");
+      hold = registry.newRate("FSNLockHold" + op,
+          "Time the namesystem lock was held by " + op + ", in micros");
+      waitQuantiles = new MutableQuantiles[intervals.length];
+      holdQuantiles = new MutableQuantiles[intervals.length];
+      for (int i = 0; i < intervals.length; i++) {
+        waitQuantiles[i] = registry.newQuantiles(
+            "FSNLockWait" + op + intervals[i] + "s",
+            "Namesystem lock wait of " + op, "ops", "waitMicros",
+            intervals[i]);
+        holdQuantiles[i] = registry.newQuantiles(
+            "FSNLockHold" + op + intervals[i] + "s",
+            "Namesystem lock hold of " + op, "ops", "holdMicros",
+            intervals[i]);
+      }
+    }
+  }
+
+  private final int[] intervals;
+  /** The lock metrics of the operations, keyed by their metrics name. */
+  private final ConcurrentMap<String, LockMetrics> lockMetrics =
+      new ConcurrentHashMap<String, LockMetrics>();
+
   JvmMetrics jvmMetrics = null;
   
   NameNodeMetrics(String processName, String sessionId, int[] intervals,
       final JvmMetrics jvmMetrics) {
     this.jvmMetrics = jvmMetrics;
+    this.intervals = intervals;
     registry.tag(ProcessName, processName).tag(SessionId, sessionId);
     
     final int len = intervals.length;
@@ -148,6 +211,21 @@ public long totalFileOps(){
           "cacheReport" + interval + "s",
           "Cache report", "ops", "latency", interval);
     }
+
+    neededReplications = new MutableGaugeInt[REPLICATION_PRIORITIES.length];
+    replicationsScheduled =
+        new MutableCounterLong[REPLICATION_PRIORITIES.length];
+    for (int i = 0; i < REPLICATION_PRIORITIES.length; i++) {
+      final String priority = REPLICATION_PRIORITIES[i];
+      neededReplications[i] = registry.newGauge(
+          "NeededReplications" + priority,
+          "Number of blocks waiting for replication at priority " + priority
+          + ", as of the last replication monitor iteration", 0);
+      replicationsScheduled[i] = registry.newCounter(
+          "ReplicationsScheduled" + priority,
+          "Number of blocks scheduled for replication at priority "
+          + priority, 0L);
+    }
   }
 
   public static NameNodeMetrics create(Configuration conf, NamenodeRole r) {
@@ -293,6 +371,22 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void addBlockReportLockHold(long lockHoldTime) {
+    blockReportLockHold.add(lockHoldTime);
+  }
+
+  public void incrBlockReportLockYields(long numYields) {
+    blockReportLockYields.incr(numYields);
+  }
+
+  public void setNeededReplications(int priority, int numBlocks) {
+    neededReplications[priority].set(numBlocks);
+  }
+
+  public void incrReplicationsScheduled(int priority, long numBlocks) {
+    replicationsScheduled[priority].incr(numBlocks);
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
@@ -300,6 +394,18 @@ public void addCacheBlockReport(long latency) {
     }
   }
 
+  public void setAutoCachedBlocks(int blocks) {
+    autoCachedBlocks.set(blocks);
+  }
+
+  public void incrAutoCachePromotions(long blocks) {
+    autoCachePromotions.incr(blocks);
+  }
+
+  public void incrAutoCacheEvictions(long blocks) {
+    autoCacheEvictions.incr(blocks);
+  }
+
   public void setSafeModeTime(long elapsed) {
     safeModeTime.set((int) elapsed);
   }
@@ -315,4 +421,44 @@ public void addGetImage(long latency) {
   public void addPutImage(long latency) {
     putImage.add(latency);
   }
+
+  /**
+   * Add the time that a client operation waited for and held the namesystem
+   * lock.
+   * @param cmd the operation, as named in the audit log
+   */
+  public void addLockTimes(String cmd, long waitMicros, long holdMicros) {
+    final String op = getLockMetricsOpName(cmd);
+    LockMetrics m = lockMetrics.get(op);
+    if (m == null) {
+      synchronized (lockMetrics) {
+        m = lockMetrics.get(op);
+        if (m == null) {
+          m = new LockMetrics(registry, op, intervals);
+          lockMetrics.put(op, m);
+        }
+      }
+    }
+    m.wait.add(waitMicros);
+    m.hold.add(holdMicros);
+    for (MutableQuantiles q : m.waitQuantiles) {
+      q.add(waitMicros);
+    }
+    for (MutableQuantiles q : m.holdQuantiles) {
+      q.add(holdMicros);
+    }
+  }
+
+  /**
+   * @return the name of an audit log command in the lock metrics, e.g.
+   *         "Rename" for "rename (options=[OVERWRITE])".
+   */
+  private static String getLockMetricsOpName(String cmd) {
+    int end = 0;
+    while (end < cmd.length()
+        && Character.isLetterOrDigit(cmd.charAt(end))) {
+      end++;
+    }
+    return StringUtils.capitalize(cmd.substring(0, end));
+  }
 }
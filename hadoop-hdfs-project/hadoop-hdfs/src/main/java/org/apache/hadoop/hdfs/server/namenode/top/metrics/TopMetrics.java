@@ -55,6 +55,11 @@
  * done by calling {@link org.apache.hadoop.hdfs.server.namenode.top.window
  * .RollingWindowManager#snapshot} on each RollingWindowManager.
  * <p/>
+ * When the NameNode measures the lock times of the operations, TopMetrics
+ * also sums the time each user holds the namesystem lock, in microseconds,
+ * in a separate set of RollingWindowManagers, to show the users holding the
+ * lock the longest.
+ * <p/>
  * Thread-safe: relies on thread-safety of RollingWindowManager
  */
 @InterfaceAudience.Private
@@ -77,11 +82,20 @@ private static void logConf(Configuration conf) {
   final Map<Integer, RollingWindowManager> rollingWindowManagers =
       new HashMap<Integer, RollingWindowManager>();
 
+  /**
+   * A map from reporting periods to the WindowManager of the lock hold times,
+   * with the same thread-safety as {@link #rollingWindowManagers}.
+   */
+  final Map<Integer, RollingWindowManager> lockHoldWindowManagers =
+      new HashMap<Integer, RollingWindowManager>();
+
   public TopMetrics(Configuration conf, int[] reportingPeriods) {
     logConf(conf);
     for (int i = 0; i < reportingPeriods.length; i++) {
       rollingWindowManagers.put(reportingPeriods[i], new RollingWindowManager(
           conf, reportingPeriods[i]));
+      lockHoldWindowManagers.put(reportingPeriods[i],
+          new RollingWindowManager(conf, reportingPeriods[i]));
     }
   }
 
@@ -90,11 +104,23 @@ public TopMetrics(Configuration conf, int[] reportingPeriods) {
    * time interval.
    */
   public List<TopWindow> getTopWindows() {
+    return getTopWindows(rollingWindowManagers);
+  }
+
+  /**
+   * Get a list of the current TopWindow statistics of the lock hold times,
+   * one TopWindow per tracked time interval. The counts are in microseconds.
+   */
+  public List<TopWindow> getTopLockHoldWindows() {
+    return getTopWindows(lockHoldWindowManagers);
+  }
+
+  private static List<TopWindow> getTopWindows(
+      Map<Integer, RollingWindowManager> managers) {
     long monoTime = Time.monotonicNow();
     List<TopWindow> windows = Lists.newArrayListWithCapacity
-        (rollingWindowManagers.size());
-    for (Entry<Integer, RollingWindowManager> entry : rollingWindowManagers
-        .entrySet()) {
+        (managers.size());
+    for (Entry<Integer, RollingWindowManager> entry : managers.entrySet()) {
       TopWindow window = entry.getValue().snapshot(monoTime);
       windows.add(window);
     }
@@ -128,4 +154,18 @@ public void report(long currTime, String userName, String cmd) {
           TopConf.ALL_CMDS, userName, 1);
     }
   }
+
+  /**
+   * Report the time a user held the namesystem lock for an operation.
+   */
+  public void reportLockHold(String userName, String cmd, long holdMicros) {
+    long currTime = Time.monotonicNow();
+    userName = UserGroupInformation.trimLoginMethod(userName);
+    for (RollingWindowManager rollingWindowManager : lockHoldWindowManagers
+        .values()) {
+      rollingWindowManager.recordMetric(currTime, cmd, userName, holdMicros);
+      rollingWindowManager.recordMetric(currTime,
+          TopConf.ALL_CMDS, userName, holdMicros);
+    }
+  }
 }
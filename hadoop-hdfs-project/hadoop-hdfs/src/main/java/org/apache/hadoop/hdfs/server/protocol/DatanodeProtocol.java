@@ -20,6 +20,7 @@
 
 import java.io.*;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
@@ -149,12 +150,15 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
    * @param            The datanode registration.
    * @param poolId     The block pool ID for the blocks.
    * @param blockIds   A list of block IDs.
+   * @param hotBlocks  The most read blocks of the pool on the datanode,
+   *                   mapped to their recent number of reads.
    * @return           The DatanodeCommand.
    * @throws IOException
    */
   @Idempotent
   public DatanodeCommand cacheReport(DatanodeRegistration registration,
-      String poolId, List<Long> blockIds) throws IOException;
+      String poolId, List<Long> blockIds, Map<Long, Long> hotBlocks)
+      throws IOException;
 
   /**
    * blockReceivedAndDeleted() allows the DataNode to tell the NameNode about
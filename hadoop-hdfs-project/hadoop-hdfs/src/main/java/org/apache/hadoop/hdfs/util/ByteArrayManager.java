@@ -21,6 +21,7 @@
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -51,6 +52,11 @@ private static void logDebugMessage() {
   static final int MIN_ARRAY_LENGTH = 32;
   static final byte[] EMPTY_BYTE_ARRAY = {};
 
+  // Statistics of the arrays, to watch the allocation rate.
+  private final AtomicLong numArraysCreated = new AtomicLong();
+  private final AtomicLong numBytesCreated = new AtomicLong();
+  private final AtomicLong numArraysReused = new AtomicLong();
+
   /**
    * @return the least power of two greater than or equal to n, i.e. return
    *         the least integer x with x >= n and x a power of two.
@@ -160,6 +166,8 @@ static class FixedLengthManager {
      * 
      * The byte array allocated by this method must be returned for recycling
      * via the {@link FixedLengthManager#recycle(byte[])} method.
+     *
+     * @return a recycled array, or null if a new array has to be created.
      */
     synchronized byte[] allocate() throws InterruptedException {
       if (LOG.isDebugEnabled()) {
@@ -183,7 +191,7 @@ synchronized byte[] allocate() throws InterruptedException {
       if (LOG.isDebugEnabled()) {
         debugMessage.get().append(", recycled? ").append(array != null);
       }
-      return array != null? array : new byte[byteArrayLength];
+      return array;
     }
 
     /**
@@ -295,6 +303,34 @@ public Conf(int countThreshold, int countLimit, long countResetTimePeriodMs) {
    */
   public abstract int release(byte[] array);
 
+  /** Create a new array, counting it in the statistics. */
+  byte[] createArray(int length) {
+    numArraysCreated.incrementAndGet();
+    numBytesCreated.addAndGet(length);
+    return new byte[length];
+  }
+
+  /** Count a recycled array in the statistics. */
+  byte[] reuseArray(byte[] array) {
+    numArraysReused.incrementAndGet();
+    return array;
+  }
+
+  /** @return the number of arrays created with new byte[]. */
+  public long getNumArraysCreated() {
+    return numArraysCreated.get();
+  }
+
+  /** @return the total length of the arrays created with new byte[]. */
+  public long getNumBytesCreated() {
+    return numBytesCreated.get();
+  }
+
+  /** @return the number of arrays which were recycled instead of created. */
+  public long getNumArraysReused() {
+    return numArraysReused.get();
+  }
+
   public static ByteArrayManager newInstance(Conf conf) {
     return conf == null? new NewByteArrayWithoutLimit(): new Impl(conf);
   }
@@ -305,7 +341,7 @@ public static ByteArrayManager newInstance(Conf conf) {
   static class NewByteArrayWithoutLimit extends ByteArrayManager {
     @Override
     public byte[] newByteArray(int size) throws InterruptedException {
-      return new byte[size];
+      return createArray(size);
     }
     
     @Override
@@ -367,7 +403,8 @@ public byte[] newByteArray(final int arrayLength) throws InterruptedException {
           debugMessage.get().append(": count=").append(count)
               .append(aboveThreshold? ", aboveThreshold": ", belowThreshold");
         }
-        array = manager != null? manager.allocate(): new byte[powerOfTwo];
+        final byte[] recycled = manager != null? manager.allocate(): null;
+        array = recycled != null? reuseArray(recycled): createArray(powerOfTwo);
       }
   
       if (LOG.isDebugEnabled()) {
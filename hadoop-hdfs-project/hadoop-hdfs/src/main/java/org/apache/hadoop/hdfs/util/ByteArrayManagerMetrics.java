@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+
+/**
+ * Links a {@link ByteArrayManager} to a {@link MetricsSource} to publish the
+ * statistics of the arrays it allocates, e.g. the allocation rate of the
+ * packet buffers of the clients of a client context.
+ */
+@InterfaceAudience.Private
+public class ByteArrayManagerMetrics implements MetricsSource {
+  private static final MetricsInfo ARRAYS_CREATED =
+      info("ArraysCreated", "Number of arrays created with new byte[]");
+  private static final MetricsInfo BYTES_CREATED =
+      info("BytesCreated", "Total length of the arrays created");
+  private static final MetricsInfo ARRAYS_REUSED =
+      info("ArraysReused", "Number of arrays recycled instead of created");
+
+  private final MetricsInfo recordInfo;
+  private final ByteArrayManager manager;
+
+  private ByteArrayManagerMetrics(String name, ByteArrayManager manager) {
+    this.recordInfo = info(name, "Byte array allocations of " + name);
+    this.manager = manager;
+  }
+
+  /**
+   * Registers the metrics of the given manager with the metrics system.
+   *
+   * @param name the unique name of the metrics source
+   * @param manager ByteArrayManager to link
+   */
+  public static ByteArrayManagerMetrics register(String name,
+      ByteArrayManager manager) {
+    ByteArrayManagerMetrics metrics =
+        new ByteArrayManagerMetrics(name, manager);
+    return DefaultMetricsSystem.instance().register(name,
+        metrics.recordInfo.description(), metrics);
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    collector.addRecord(recordInfo)
+        .setContext("dfs")
+        .addCounter(ARRAYS_CREATED, manager.getNumArraysCreated())
+        .addCounter(BYTES_CREATED, manager.getNumBytesCreated())
+        .addCounter(ARRAYS_REUSED, manager.getNumArraysReused());
+  }
+}
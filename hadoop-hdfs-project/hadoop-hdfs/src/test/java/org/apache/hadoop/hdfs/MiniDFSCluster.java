@@ -2221,6 +2221,13 @@ public void triggerBlockReports()
     for (DataNode dn : getDataNodes()) {
       DataNodeTestUtils.triggerBlockReport(dn);
     }
+    // the reports are processed asynchronously
+    for (NameNodeInfo nnInfo : nameNodes) {
+      if (nnInfo != null && nnInfo.nameNode != null) {
+        NameNodeAdapter.getNamesystem(nnInfo.nameNode).getBlockManager()
+            .flushBlockOps();
+      }
+    }
   }
 
 
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test creating many small files with
+ * {@link DistributedFileSystem#createFiles}.
+ */
+public class TestCreateFiles {
+  private static final int MAX_FILES_PER_BATCH = 5;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_MAX_FILES_PER_BATCH_KEY,
+        MAX_FILES_PER_BATCH);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static Path[] getPaths(String dir, int n) {
+    Path[] paths = new Path[n];
+    for (int i = 0; i < n; i++) {
+      paths[i] = new Path(dir, "file" + i);
+    }
+    return paths;
+  }
+
+  @Test(timeout = 60000)
+  public void testCreateFiles() throws IOException {
+    final Path[] paths = getPaths("/dir", MAX_FILES_PER_BATCH);
+    final byte[][] contents = new byte[paths.length][];
+    for (int i = 0; i < paths.length; i++) {
+      // the first file is empty
+      contents[i] = new byte[i * 1000];
+      for (int j = 0; j < contents[i].length; j++) {
+        contents[i][j] = (byte) (i + j);
+      }
+    }
+    fs.createFiles(paths, contents, null, (short) 1, 1024);
+
+    for (int i = 0; i < paths.length; i++) {
+      assertEquals(contents[i].length, fs.getFileStatus(paths[i]).getLen());
+      assertArrayEquals(contents[i], DFSTestUtil.readFileBuffer(fs, paths[i]));
+    }
+    // the files are closed
+    assertEquals(0, NameNodeAdapter.getLeaseManager(
+        cluster.getNamesystem()).countLease());
+  }
+
+  @Test(timeout = 60000)
+  public void testCreateExistingFile() throws IOException {
+    final Path[] paths = getPaths("/dir", 3);
+    DFSTestUtil.createFile(fs, paths[2], 10, (short) 1, 0);
+    final byte[][] contents = new byte[paths.length][];
+    for (int i = 0; i < paths.length; i++) {
+      contents[i] = new byte[10];
+    }
+    try {
+      fs.createFiles(paths, contents, null, (short) 1, 1024);
+      fail("Created an existing file");
+    } catch (FileAlreadyExistsException e) {
+      GenericTestUtils.assertExceptionContains(paths[2].toString(), e);
+    }
+    // the batch is checked before any file is created
+    assertFalse(fs.exists(paths[0]));
+    assertFalse(fs.exists(paths[1]));
+    assertEquals(10, fs.getFileStatus(paths[2]).getLen());
+
+    // files can't be overwritten in a batch
+    final String[] srcs = new String[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      srcs[i] = paths[i].toString();
+    }
+    try {
+      fs.getClient().createFiles(srcs, contents, null,
+          EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE), true,
+          (short) 1, 1024);
+      fail("Overwrote a file in a batch");
+    } catch (RemoteException e) {
+      assertEquals(HadoopIllegalArgumentException.class.getName(),
+          e.getClassName());
+    }
+    assertEquals(10, fs.getFileStatus(paths[2]).getLen());
+  }
+
+  @Test(timeout = 60000)
+  public void testUndoBatch() throws IOException {
+    final Path dir = new Path("/dir");
+    final Path[] paths = getPaths(dir.toString(), 3);
+    // the directory and two files fit in the quota, the third file does not
+    assertTrue(fs.mkdirs(dir));
+    fs.setQuota(dir, 3, HdfsConstants.QUOTA_DONT_SET);
+    try {
+      fs.createFiles(paths, new byte[paths.length][10], null, (short) 1,
+          1024);
+      fail("Exceeded the namespace quota");
+    } catch (NSQuotaExceededException e) {
+      // expected
+    }
+    // the files created before the failure are deleted, and so they are
+    // once the edits are replayed
+    for (int i = 0; i < 2; i++) {
+      for (Path p : paths) {
+        assertFalse(fs.exists(p));
+      }
+      assertEquals(0, NameNodeAdapter.getLeaseManager(
+          cluster.getNamesystem()).countLease());
+      cluster.restartNameNode();
+      fs = cluster.getFileSystem();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testMaxFilesPerBatch() throws IOException {
+    final Path[] paths = getPaths("/dir", MAX_FILES_PER_BATCH + 1);
+    try {
+      fs.createFiles(paths, new byte[paths.length][0], null, (short) 1,
+          1024);
+      fail("Created more files than the batch limit");
+    } catch (RemoteException e) {
+      GenericTestUtils.assertExceptionContains(
+          DFSConfigKeys.DFS_NAMENODE_MAX_FILES_PER_BATCH_KEY, e);
+    }
+    assertFalse(fs.exists(new Path("/dir")));
+    assertTrue(fs.mkdirs(new Path("/dir")));
+  }
+}
@@ -1116,9 +1116,7 @@ public void testPendingNodes() throws Exception {
     // Flush and trigger block reports so the block definitely shows up on NN
     open1.write(123);
     open1.hflush();
-    for (DataNode d: cluster.getDataNodes()) {
-      DataNodeTestUtils.triggerBlockReport(d);
-    }
+    cluster.triggerBlockReports();
     // Decom two nodes, so one is still alive
     ArrayList<DatanodeInfo> decommissionedNodes = Lists.newArrayList();
     for (int i=0; i<2; i++) {
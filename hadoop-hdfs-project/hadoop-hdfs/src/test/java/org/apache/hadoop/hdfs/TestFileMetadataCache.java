@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+
+public class TestFileMetadataCache {
+  private static final int BLOCK_SIZE = 1024;
+
+  private MiniDFSCluster cluster;
+  private Configuration conf;
+  private DistributedFileSystem fs;
+  private FileMetadataCache cache;
+
+  @Before
+  public void setup() throws IOException {
+    conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_ENABLED_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_KEY,
+        10 * 60 * 1000);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(HdfsClientConfigKeys.Retry.WINDOW_BASE_KEY, 10);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    cache = fs.getClient().getMetadataCache();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static String content(char c) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 3 * BLOCK_SIZE - 100; i++) {
+      sb.append((char) (c + i % 10));
+    }
+    return sb.toString();
+  }
+
+  @Test(timeout=60000)
+  public void testCachedLocationsAndStatus() throws Exception {
+    Path dir = new Path("/dir");
+    Path file = new Path(dir, "file");
+    String content = content('a');
+    DFSTestUtil.writeFile(fs, file, content);
+
+    // The locations are fetched from the namenode once
+    long misses = cache.getLocationsMisses();
+    long hits = cache.getLocationsHits();
+    assertEquals(content, DFSTestUtil.readFile(fs, file));
+    assertEquals(content, DFSTestUtil.readFile(fs, file));
+    assertEquals(misses + 1, cache.getLocationsMisses());
+    assertEquals(hits + 1, cache.getLocationsHits());
+
+    // So is the status of a file, but not the one of a directory
+    misses = cache.getStatusMisses();
+    hits = cache.getStatusHits();
+    assertEquals(content.length(), fs.getFileStatus(file).getLen());
+    assertEquals(content.length(), fs.getFileStatus(file).getLen());
+    fs.getFileStatus(dir);
+    fs.getFileStatus(dir);
+    assertEquals(misses + 3, cache.getStatusMisses());
+    assertEquals(hits + 1, cache.getStatusHits());
+
+    // The changes made by the client are seen at once
+    String newContent = content('k');
+    DFSTestUtil.appendFile(fs, file, newContent);
+    assertEquals(content + newContent, DFSTestUtil.readFile(fs, file));
+    assertEquals(content.length() + newContent.length(),
+        fs.getFileStatus(file).getLen());
+    fs.setReplication(file, (short) 2);
+    assertEquals(2, fs.getFileStatus(file).getReplication());
+    fs.delete(dir, true);
+    assertFalse(fs.exists(file));
+  }
+
+  @Test(timeout=60000)
+  public void testFileUnderConstruction() throws Exception {
+    Path file = new Path("/file");
+    String content = content('a');
+    FSDataOutputStream out = fs.create(file);
+    try {
+      out.writeBytes(content);
+      out.hflush();
+      // The status of a file under construction is not cached
+      long misses = cache.getStatusMisses();
+      fs.getFileStatus(file);
+      fs.getFileStatus(file);
+      assertEquals(misses + 2, cache.getStatusMisses());
+    } finally {
+      out.close();
+    }
+    assertEquals(content.length(), fs.getFileStatus(file).getLen());
+    assertEquals(content, DFSTestUtil.readFile(fs, file));
+    assertEquals(content.length(), fs.getFileStatus(file).getLen());
+  }
+
+  @Test(timeout=60000)
+  public void testAttributeChangesAreSeen() throws Exception {
+    Path file = new Path("/file");
+    DFSTestUtil.writeFile(fs, file, content('a'));
+    assertEquals(content('a'), DFSTestUtil.readFile(fs, file));
+    String src = file.toString();
+    DFSClient client = fs.getClient();
+
+    // Cache the status
+    client.getFileInfo(src);
+    long hits = cache.getStatusHits();
+    client.getFileInfo(src);
+    assertEquals(hits + 1, cache.getStatusHits());
+
+    fs.setStoragePolicy(file, HdfsConstants.COLD_STORAGE_POLICY_NAME);
+    assertEquals(HdfsConstants.COLD_STORAGE_POLICY_ID,
+        client.getFileInfo(src).getStoragePolicy());
+
+    client.getFileInfo(src);
+    fs.setAcl(file, Lists.newArrayList(
+        AclEntry.parseAclEntry("user::rwx", true),
+        AclEntry.parseAclEntry("user:foo:r--", true),
+        AclEntry.parseAclEntry("group::r--", true),
+        AclEntry.parseAclEntry("mask::r--", true),
+        AclEntry.parseAclEntry("other::---", true)));
+    assertTrue(fs.getFileStatus(file).getPermission().getAclBit());
+    fs.removeAcl(file);
+    assertFalse(fs.getFileStatus(file).getPermission().getAclBit());
+  }
+
+  @Test(timeout=60000)
+  public void testStaleLocationsAreInvalidated() throws Exception {
+    final Path file = new Path("/file");
+    DFSTestUtil.writeFile(fs, file, content('a'));
+    assertEquals(content('a'), DFSTestUtil.readFile(fs, file));
+
+    // Another client replaces the file, and the datanode deletes the old
+    // replica
+    final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, file);
+    FileSystem otherFs = FileSystem.newInstance(cluster.getURI(), conf);
+    try {
+      DFSTestUtil.writeFile(otherFs, file, content('k'));
+    } finally {
+      otherFs.close();
+    }
+    final DataNode dn = cluster.getDataNodes().get(0);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          cluster.triggerHeartbeats();
+          return dn.getFSDataset().getStoredBlock(block.getBlockPoolId(),
+              block.getBlockId()) == null;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 30000);
+
+    // The read from the stale locations fails, and drops them from the cache
+    try {
+      DFSTestUtil.readFile(fs, file);
+      fail("Read from stale locations should fail");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("has changed", e);
+    }
+    assertEquals(content('k'), DFSTestUtil.readFile(fs, file));
+  }
+}
@@ -19,9 +19,14 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -32,8 +37,10 @@
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
@@ -481,6 +488,120 @@ public void testPreadLocalFS() throws IOException {
     }
   }
 
+  /**
+   * Tests asynchronous positional reads in DFS, with several reads in flight
+   * spanning several blocks, into heap and direct buffers.
+   */
+  @Test(timeout=120000)
+  public void testReadAsync() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, blockSize);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    FileSystem fileSys = cluster.getFileSystem();
+    try {
+      Path file1 = new Path("preadasynctest.dat");
+      writeFile(fileSys, file1);
+      byte[] expected = new byte[12 * blockSize];
+      new Random(seed).nextBytes(expected);
+
+      FSDataInputStream stm = fileSys.open(file1);
+      long[] positions = {0, blockSize - 100, 3 * blockSize + 7,
+          10 * blockSize + 1};
+      int[] lengths = {100, 3 * blockSize, 1, 2 * blockSize};
+      ByteBuffer[] bufs = new ByteBuffer[positions.length];
+      List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < positions.length; i++) {
+        bufs[i] = (i % 2 == 0) ? ByteBuffer.allocate(lengths[i] + 10)
+            : ByteBuffer.allocateDirect(lengths[i] + 10);
+        bufs[i].position(10);
+        futures.add(stm.readAsync(positions[i], bufs[i]));
+      }
+      for (int i = 0; i < positions.length; i++) {
+        int expectedLen = (int) Math.min(lengths[i],
+            expected.length - positions[i]);
+        assertEquals(expectedLen, (int) futures.get(i).get());
+        assertEquals(10 + expectedLen, bufs[i].position());
+        bufs[i].flip();
+        bufs[i].position(10);
+        byte[] actual = new byte[expectedLen];
+        bufs[i].get(actual);
+        checkAndEraseData(actual, (int) positions[i], expected,
+            "Async read " + i);
+      }
+      // The stream position is not changed by asynchronous reads
+      assertEquals(0, stm.getPos());
+
+      // Reads at or after the end of the file
+      assertEquals(-1, (int) stm.readAsync(expected.length,
+          ByteBuffer.allocate(1)).get());
+      ByteBuffer tail = ByteBuffer.allocate(100);
+      assertEquals(10, (int) stm.readAsync(expected.length - 10, tail).get());
+      assertEquals(10, tail.position());
+      stm.close();
+      cleanupFile(fileSys, file1);
+    } finally {
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout=120000)
+  public void testReadVectored() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, blockSize);
+    conf.setInt(
+        CommonConfigurationKeysPublic.IO_VECTORED_READ_MAX_MERGE_GAP_KEY, 100);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    FileSystem fileSys = cluster.getFileSystem();
+    try {
+      Path file1 = new Path("preadvectoredtest.dat");
+      writeFile(fileSys, file1);
+      byte[] expected = new byte[12 * blockSize];
+      new Random(seed).nextBytes(expected);
+
+      FSDataInputStream stm = fileSys.open(file1);
+      // Unsorted ranges, some close enough to be merged, some overlapping,
+      // some across blocks
+      List<FileRange> ranges = Arrays.asList(
+          new FileRange(5 * blockSize, 10),
+          new FileRange(0, 100),
+          new FileRange(150, 50),
+          new FileRange(blockSize - 100, 3 * blockSize),
+          new FileRange(blockSize, 10),
+          new FileRange(12 * blockSize - 1, 1),
+          new FileRange(7, 0));
+      List<ByteBuffer> bufs = stm.readVectored(ranges);
+      assertEquals(ranges.size(), bufs.size());
+      for (int i = 0; i < ranges.size(); i++) {
+        FileRange range = ranges.get(i);
+        ByteBuffer buf = bufs.get(i);
+        assertEquals(0, buf.position());
+        assertEquals(range.getLength(), buf.remaining());
+        byte[] actual = new byte[range.getLength()];
+        buf.get(actual);
+        checkAndEraseData(actual, (int) range.getOffset(), expected,
+            "Vectored read " + i);
+      }
+      // The stream position is not changed by vectored reads
+      assertEquals(0, stm.getPos());
+
+      try {
+        stm.readVectored(Arrays.asList(new FileRange(0, 10),
+            new FileRange(12 * blockSize - 10, 11)));
+        fail("Vectored read past the end of the file should fail");
+      } catch (EOFException e) {
+        // expected
+      }
+      stm.close();
+      cleanupFile(fileSys, file1);
+    } finally {
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     new TestPread().testPreadDFS();
   }
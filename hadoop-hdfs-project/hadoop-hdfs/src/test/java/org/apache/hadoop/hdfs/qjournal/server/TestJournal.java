@@ -24,12 +24,14 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProtoOrBuilder;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -38,6 +40,7 @@
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
 import org.apache.hadoop.hdfs.server.common.StorageErrorReporter;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.io.IOUtils;
@@ -116,6 +119,41 @@ public void testScanEditLog() throws Exception {
     Assert.assertEquals(1, segmentState.getStartTxId());
   }
 
+  /**
+   * Test that the edits written to the journal are served from its cache,
+   * until a new writer may replace them.
+   */
+  @Test (timeout = 10000)
+  public void testJournaledEdits() throws Exception {
+    journal.newEpoch(FAKE_NSINFO, 1);
+    journal.startLogSegment(makeRI(1), 1,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    journal.journal(makeRI(2), 1, 1, 3, QJMTestUtil.createTxnData(1, 3));
+    journal.journal(makeRI(3), 1, 4, 3, QJMTestUtil.createTxnData(4, 3));
+
+    GetJournaledEditsResponseProto resp = journal.getJournaledEdits(2, 10);
+    assertEquals(1, resp.getFromTxnId());
+    assertEquals(6, resp.getTxnCount());
+    QJMTestUtil.verifyEdits(Collections.singletonList(
+        EditLogFileInputStream.fromByteString(resp.getEditLog(), "test",
+            1, 6, true)), 1, 6);
+
+    // the edits survive the roll of the segment
+    journal.finalizeLogSegment(makeRI(4), 1, 6);
+    journal.startLogSegment(makeRI(5), 7,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    journal.journal(makeRI(6), 7, 7, 3, QJMTestUtil.createTxnData(7, 3));
+    assertEquals(9, journal.getJournaledEdits(1, 10).getTxnCount());
+
+    journal.newEpoch(FAKE_NSINFO, 2);
+    try {
+      journal.getJournaledEdits(7, 10);
+      fail("The edits of the previous writer should have been dropped");
+    } catch (JournaledEditsCache.CacheMissException e) {
+      // expected
+    }
+  }
+
   @Test (timeout = 10000)
   public void testEpochHandling() throws Exception {
     assertEquals(0, journal.getLastPromisedEpoch());
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CacheMissException;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestJournaledEditsCache {
+  private static final int BATCH_SIZE = 10;
+
+  private JournaledEditsCache cache;
+  private int capacity;
+
+  @Before
+  public void setup() throws Exception {
+    // room for three batches
+    final int batchLength = QJMTestUtil.createTxnData(1, BATCH_SIZE).length;
+    capacity = batchLength * 3 + batchLength / 2;
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY, capacity);
+    cache = new JournaledEditsCache(conf);
+    cache.setLayoutVersion(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+  }
+
+  private void storeBatches(int firstTxId, int numBatches) throws Exception {
+    for (int i = 0; i < numBatches; i++) {
+      int txid = firstTxId + i * BATCH_SIZE;
+      cache.storeEdits(txid, txid + BATCH_SIZE - 1,
+          QJMTestUtil.createTxnData(txid, BATCH_SIZE));
+    }
+  }
+
+  /** Check that the response holds exactly the given transactions. */
+  private static void verifyResponse(GetJournaledEditsResponseProto resp,
+      int firstTxId, int lastTxId) throws Exception {
+    assertEquals(firstTxId, resp.getFromTxnId());
+    assertEquals(lastTxId - firstTxId + 1, resp.getTxnCount());
+    EditLogInputStream stream = EditLogFileInputStream.fromByteString(
+        resp.getEditLog(), "test", firstTxId, lastTxId, true);
+    QJMTestUtil.verifyEdits(Collections.singletonList(stream), firstTxId,
+        lastTxId);
+  }
+
+  private void assertCacheMiss(long sinceTxId) {
+    try {
+      cache.retrieveEdits(sinceTxId, 100);
+      fail("Expected a cache miss for txid " + sinceTxId);
+    } catch (CacheMissException e) {
+      // expected
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testRetrieveEdits() throws Exception {
+    assertCacheMiss(1);
+    storeBatches(1, 2);
+
+    verifyResponse(cache.retrieveEdits(1, 100), 1, 20);
+    // the edits start at the beginning of the batch
+    verifyResponse(cache.retrieveEdits(15, 100), 11, 20);
+    // whole batches are returned until maxTxns is reached
+    verifyResponse(cache.retrieveEdits(1, 5), 1, 10);
+    verifyResponse(cache.retrieveEdits(1, 11), 1, 20);
+
+    // no new edits
+    GetJournaledEditsResponseProto resp = cache.retrieveEdits(21, 100);
+    assertEquals(21, resp.getFromTxnId());
+    assertEquals(0, resp.getTxnCount());
+    assertFalse(resp.hasEditLog());
+  }
+
+  @Test(timeout = 10000)
+  public void testEviction() throws Exception {
+    storeBatches(1, 5);
+    assertTrue(cache.getSize() <= capacity);
+    assertCacheMiss(1);
+    assertCacheMiss(20);
+    verifyResponse(cache.retrieveEdits(21, 100), 21, 50);
+  }
+
+  @Test(timeout = 10000)
+  public void testClear() throws Exception {
+    storeBatches(1, 2);
+    // a batch which does not follow the cached edits replaces them
+    storeBatches(31, 1);
+    assertCacheMiss(1);
+    verifyResponse(cache.retrieveEdits(31, 100), 31, 40);
+
+    // so does a new layout version
+    cache.setLayoutVersion(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION - 1);
+    assertCacheMiss(31);
+    assertEquals(0, cache.getSize());
+
+    storeBatches(41, 1);
+    cache.clear();
+    assertCacheMiss(41);
+  }
+}
@@ -155,6 +155,47 @@ private void doBasicTest(int testIndex) {
   }
   
 
+  /**
+   * Test that the targets of the replication work are chosen by several
+   * threads.
+   */
+  @Test
+  public void testParallelReplicationWork() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY, "need to set a dummy value here so it assumes a multi-rack cluster");
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY, 4);
+    bm = new BlockManager(fsn, conf);
+    bm.maxReplicationStreams = 100;
+    bm.replicationStreamsHardLimit = 100;
+    addNodes(nodes);
+
+    final int numBlocks = 50;
+    List<Block> blocks = new ArrayList<Block>();
+    for (int i = 0; i < numBlocks; i++) {
+      blocks.add(addBlockOnNodes(i, getNodes(i % 3, 3 + i % 3)));
+    }
+    List<List<Block>> blocksToReplicate = new ArrayList<List<Block>>();
+    blocksToReplicate.add(new ArrayList<Block>());
+    blocksToReplicate.add(blocks);
+    try {
+      assertEquals(numBlocks,
+          bm.computeReplicationWorkForBlocks(blocksToReplicate));
+      for (Block block : blocks) {
+        assertEquals(1, bm.pendingReplications.getNumReplicas(block));
+      }
+      // the counts of the work without targets are all back to 0 and only
+      // the scheduled work is left queued on the source nodes
+      int queued = 0;
+      for (DatanodeDescriptor dn : nodes) {
+        assertEquals(0, dn.getPendingReplicationWithoutTargets());
+        queued += dn.getNumberOfBlocksToBeReplicated();
+      }
+      assertEquals(numBlocks, queued);
+    } finally {
+      bm.close();
+    }
+  }
+
   /**
    * Regression test for HDFS-1480
    * - Cluster has 2 racks, A and B, each with three nodes.
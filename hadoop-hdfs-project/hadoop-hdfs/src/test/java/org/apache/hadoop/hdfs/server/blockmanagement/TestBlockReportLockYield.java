@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportContext;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test processing full block reports which release the namesystem write lock
+ * while they are processed.
+ */
+public class TestBlockReportLockYield {
+  private static final int BLOCK_SIZE = 1024;
+  private static final int NUM_BLOCKS = 10;
+  /** Enough unknown blocks to hold the write lock for many milliseconds. */
+  private static final int NUM_UNKNOWN_BLOCKS = 200000;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private String bpid;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setLong(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).storagesPerDatanode(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    bpid = cluster.getNamesystem().getBlockPoolId();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testReportDiffWithLockYields() throws Exception {
+    final Path file = new Path("/testReportDiff");
+    final List<Block> blocks = createFile(file);
+    final DatanodeStorageInfo storage = getStorage();
+    assertEquals(NUM_BLOCKS, storage.numBlocks());
+
+    // leave out the last two blocks, which are removed from the storage
+    final long yields = getLockYields();
+    sendBlockReport(blocks.subList(0, NUM_BLOCKS - 2));
+    assertTrue(getLockYields() > yields);
+
+    assertEquals(NUM_BLOCKS - 2, storage.numBlocks());
+    assertEquals(NUM_BLOCKS - 2, countBlocks(storage));
+    LocatedBlocks lbs = cluster.getNameNodeRpc().getBlockLocations(
+        file.toString(), 0, NUM_BLOCKS * BLOCK_SIZE);
+    for (int i = 0; i < NUM_BLOCKS; i++) {
+      final LocatedBlock lb = lbs.get(i);
+      assertEquals(i < NUM_BLOCKS - 2 ? 1 : 0, lb.getLocations().length);
+    }
+
+    MetricsRecordBuilder rb = getMetrics("NameNodeActivity");
+    assertTrue(getLongCounter("BlockReportLockHoldNumOps", rb) > 0);
+    assertGauge("BlockReportQueueLength", 0, getMetrics("FSNamesystem"));
+  }
+
+  @Test(timeout = 120000)
+  public void testFirstReportWithLockYields() throws Exception {
+    final List<Block> blocks = createFile(new Path("/testFirstReport"));
+    final DatanodeStorageInfo storage = getStorage();
+
+    // an empty report removes all the blocks, so that the next report is
+    // processed as the first report of the storage
+    sendBlockReport(new ArrayList<Block>());
+    assertEquals(0, storage.numBlocks());
+
+    final long yields = getLockYields();
+    sendBlockReport(blocks);
+    assertTrue(getLockYields() > yields);
+    assertEquals(NUM_BLOCKS, storage.numBlocks());
+    assertEquals(NUM_BLOCKS, countBlocks(storage));
+  }
+
+  private List<Block> createFile(Path file) throws IOException {
+    DFSTestUtil.createFile(fs, file, NUM_BLOCKS * BLOCK_SIZE, (short) 1, 0L);
+    final List<Block> blocks = new ArrayList<Block>();
+    for (LocatedBlock lb : cluster.getNameNodeRpc().getBlockLocations(
+        file.toString(), 0, NUM_BLOCKS * BLOCK_SIZE).getLocatedBlocks()) {
+      blocks.add(lb.getBlock().getLocalBlock());
+    }
+    assertEquals(NUM_BLOCKS, blocks.size());
+    return blocks;
+  }
+
+  private DatanodeStorageInfo getStorage() throws IOException {
+    final DataNode dn = cluster.getDataNodes().get(0);
+    final DatanodeDescriptor dd = NameNodeAdapter.getDatanode(
+        cluster.getNamesystem(), dn.getDNRegistrationForBP(bpid));
+    return dd.getStorageInfos()[0];
+  }
+
+  /**
+   * Send a full block report of the given blocks, followed by many blocks
+   * which do not belong to any file.
+   */
+  private void sendBlockReport(List<Block> blocks) throws IOException {
+    final List<BlockReportReplica> replicas =
+        new ArrayList<BlockReportReplica>();
+    for (Block b : blocks) {
+      replicas.add(new BlockReportReplica(b));
+    }
+    if (!blocks.isEmpty()) {
+      for (int i = 0; i < NUM_UNKNOWN_BLOCKS; i++) {
+        replicas.add(new BlockReportReplica(
+            new Block(Long.MIN_VALUE / 2 + i, BLOCK_SIZE, 1000)));
+      }
+    }
+    final DataNode dn = cluster.getDataNodes().get(0);
+    final DatanodeRegistration reg = dn.getDNRegistrationForBP(bpid);
+    final StorageBlockReport[] reports = { new StorageBlockReport(
+        new DatanodeStorage(getStorage().getStorageID()),
+        BlockListAsLongs.encode(replicas)) };
+    cluster.getNameNodeRpc().blockReport(reg, bpid, reports,
+        new BlockReportContext(1, 0, System.nanoTime()));
+    cluster.getNamesystem().getBlockManager().flushBlockOps();
+  }
+
+  private static int countBlocks(DatanodeStorageInfo storage) {
+    int count = 0;
+    for (Iterator<BlockInfoContiguous> it = storage.getBlockIterator();
+        it.hasNext(); it.next()) {
+      count++;
+    }
+    return count;
+  }
+
+  private static long getLockYields() {
+    return getLongCounter("BlockReportLockYields",
+        getMetrics("NameNodeActivity"));
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.TestBlockStoragePolicy;
+import org.apache.hadoop.net.NetworkTopology;
+import org.apache.hadoop.util.Time;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compare the placement of {@link LoadAwareBlockPlacementPolicy} with the
+ * default policy on a simulated topology, where half of the datanodes are
+ * busy or almost full.
+ */
+public class TestLoadAwareBlockPlacementPolicy {
+  private static final Log LOG =
+      LogFactory.getLog(TestLoadAwareBlockPlacementPolicy.class);
+
+  private static final int NUM_RACKS = 10;
+  private static final int NODES_PER_RACK = 10;
+  private static final long BLOCK_SIZE = 1024;
+  private static final int NUM_BLOCKS = 2000;
+
+  private DatanodeDescriptor[] dataNodes;
+  private NetworkTopology cluster;
+  private FSClusterStats stats;
+
+  @Before
+  public void setupCluster() {
+    final String[] racks = new String[NUM_RACKS * NODES_PER_RACK];
+    for (int i = 0; i < racks.length; i++) {
+      racks[i] = "/rack" + (i / NODES_PER_RACK);
+    }
+    dataNodes = DFSTestUtil.toDatanodeDescriptor(
+        DFSTestUtil.createDatanodeStorageInfos(racks));
+    cluster = new NetworkTopology();
+    for (DatanodeDescriptor dn : dataNodes) {
+      cluster.add(dn);
+    }
+    stats = new FSClusterStats() {
+      @Override
+      public int getTotalLoad() {
+        int load = 0;
+        for (DatanodeDescriptor dn : dataNodes) {
+          load += dn.getXceiverCount();
+        }
+        return load;
+      }
+
+      @Override
+      public boolean isAvoidingStaleDataNodesForWrite() {
+        return false;
+      }
+
+      @Override
+      public int getNumDatanodesInService() {
+        return dataNodes.length;
+      }
+
+      @Override
+      public double getInServiceXceiverAverage() {
+        return (double) getTotalLoad() / dataNodes.length;
+      }
+    };
+  }
+
+  /** The odd datanodes are the bad ones. */
+  private static boolean isBad(int i) {
+    return i % 2 == 1;
+  }
+
+  private void updateHeartbeat(DatanodeDescriptor dn, long remaining,
+      int xceivers) {
+    final long capacity = 1000 * BLOCK_SIZE;
+    dn.getStorageInfos()[0].setUtilizationForTesting(capacity,
+        capacity - remaining, remaining, capacity - remaining);
+    dn.updateHeartbeat(BlockManagerTestUtil.getStorageReportsForDatanode(dn),
+        0L, 0L, xceivers, 0, null);
+  }
+
+  private BlockPlacementPolicy createPolicy(
+      Class<? extends BlockPlacementPolicy> clazz) {
+    Configuration conf = new HdfsConfiguration();
+    conf.setClass(DFSConfigKeys.DFS_BLOCK_REPLICATOR_CLASSNAME_KEY, clazz,
+        BlockPlacementPolicy.class);
+    return BlockPlacementPolicy.getInstance(conf, stats, cluster,
+        new Host2NodesMap());
+  }
+
+  /**
+   * Place blocks with three replicas from a client outside of the cluster.
+   * @return the fraction of the replicas placed on the bad datanodes
+   */
+  private double placeBlocks(Class<? extends BlockPlacementPolicy> clazz) {
+    final BlockPlacementPolicy policy = createPolicy(clazz);
+    int replicas = 0;
+    int onBad = 0;
+    final long start = Time.monotonicNow();
+    for (int b = 0; b < NUM_BLOCKS; b++) {
+      final DatanodeStorageInfo[] targets = policy.chooseTarget("/file", 3,
+          null, new ArrayList<DatanodeStorageInfo>(), false, null,
+          BLOCK_SIZE, TestBlockStoragePolicy.DEFAULT_STORAGE_POLICY);
+      assertEquals(3, targets.length);
+      for (DatanodeStorageInfo target : targets) {
+        replicas++;
+        for (int i = 0; i < dataNodes.length; i++) {
+          if (dataNodes[i] == target.getDatanodeDescriptor() && isBad(i)) {
+            onBad++;
+          }
+        }
+      }
+    }
+    final double fraction = (double) onBad / replicas;
+    LOG.info(clazz.getSimpleName() + ": " + NUM_BLOCKS + " blocks placed in "
+        + (Time.monotonicNow() - start) + " ms, " + fraction
+        + " of the replicas on the bad datanodes");
+    return fraction;
+  }
+
+  private void comparePolicies() {
+    final double defaultFraction =
+        placeBlocks(BlockPlacementPolicyDefault.class);
+    final double loadAwareFraction =
+        placeBlocks(LoadAwareBlockPlacementPolicy.class);
+    // about 1/2 at random, and 1/4 with the best of two candidates
+    assertTrue("default " + defaultFraction, defaultFraction > 0.4);
+    assertTrue("load aware " + loadAwareFraction, loadAwareFraction < 0.35);
+  }
+
+  @Test
+  public void testAvoidBusyNodes() {
+    for (int i = 0; i < dataNodes.length; i++) {
+      // not busy enough to be excluded by considerLoad
+      updateHeartbeat(dataNodes[i], 500 * BLOCK_SIZE, isBad(i) ? 30 : 2);
+    }
+    comparePolicies();
+  }
+
+  @Test
+  public void testAvoidFullNodes() {
+    for (int i = 0; i < dataNodes.length; i++) {
+      updateHeartbeat(dataNodes[i],
+          (isBad(i) ? 50 : 900) * BLOCK_SIZE, 5);
+    }
+    comparePolicies();
+  }
+
+  @Test
+  public void testScore() {
+    for (DatanodeDescriptor dn : dataNodes) {
+      updateHeartbeat(dn, 500 * BLOCK_SIZE, 4);
+    }
+    final LoadAwareBlockPlacementPolicy policy =
+        (LoadAwareBlockPlacementPolicy) createPolicy(
+            LoadAwareBlockPlacementPolicy.class);
+    final double score = policy.getScore(dataNodes[0]);
+    // average load, half full, no pending block
+    assertEquals(1.5, score, 0.0001);
+
+    // a block scheduled to be written
+    dataNodes[1].incrementBlocksScheduled(
+        dataNodes[1].getStorageInfos()[0].getStorageType());
+    assertEquals(score + 0.5, policy.getScore(dataNodes[1]), 0.0001);
+
+    updateHeartbeat(dataNodes[2], 500 * BLOCK_SIZE, 40);
+    assertTrue(policy.getScore(dataNodes[2]) > score);
+  }
+}
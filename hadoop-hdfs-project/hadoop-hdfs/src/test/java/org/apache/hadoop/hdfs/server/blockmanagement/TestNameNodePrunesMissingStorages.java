@@ -84,12 +84,14 @@ private static void runTest(final String testCaseName,
       final String bpid = cluster.getNamesystem().getBlockPoolId();
       final DatanodeRegistration dnReg = dn0.getDNRegistrationForBP(bpid);
       DataNodeTestUtils.triggerBlockReport(dn0);
+      cluster.getNamesystem().getBlockManager().flushBlockOps();
 
       if (createFiles) {
         final Path path = new Path("/", testCaseName);
         DFSTestUtil.createFile(
             cluster.getFileSystem(), path, 1024, (short) 1, 0x1BAD5EED);
         DataNodeTestUtils.triggerBlockReport(dn0);
+        cluster.getNamesystem().getBlockManager().flushBlockOps();
       }
 
       // Generate a fake StorageReport that is missing one storage.
@@ -162,9 +164,7 @@ public void testRemovingStorageDoesNotProduceZombies() throws Exception {
       final Path TEST_PATH = new Path("/foo1");
       DistributedFileSystem fs = cluster.getFileSystem();
       DFSTestUtil.createFile(fs, TEST_PATH, 1024, (short) 3, 0xcafecafe);
-      for (DataNode dn : cluster.getDataNodes()) {
-        DataNodeTestUtils.triggerBlockReport(dn);
-      }
+      cluster.triggerBlockReports();
       ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, new Path("/foo1"));
       cluster.getNamesystem().writeLock();
       final String storageIdToRemove;
@@ -52,6 +52,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.LengthInputStream;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIOStats;
 import org.apache.hadoop.hdfs.server.datanode.metrics.FSDatasetMBean;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
@@ -433,6 +434,7 @@ false, getCapacity(), getUsed(), getFree(),
   
   static class SimulatedVolume implements FsVolumeSpi {
     private final SimulatedStorage storage;
+    private final VolumeIOStats ioStats = new VolumeIOStats();
 
     SimulatedVolume(final SimulatedStorage storage) {
       this.storage = storage;
@@ -506,6 +508,11 @@ public BlockIterator loadBlockIterator(String bpid, String name)
     public FsDatasetSpi getDataset() {
       throw new UnsupportedOperationException();
     }
+
+    @Override
+    public VolumeIOStats getIOStats() {
+      return ioStats;
+    }
   }
 
   private final Map<String, Map<Block, BInfo>> blockMap
@@ -697,7 +704,7 @@ public synchronized long getLength(ExtendedBlock b) throws IOException {
 
   @Override
   @Deprecated
-  public Replica getReplica(String bpid, long blockId) {
+  public synchronized Replica getReplica(String bpid, long blockId) {
     final Map<Block, BInfo> map = blockMap.get(bpid);
     if (map != null) {
       return map.get(new Block(blockId));
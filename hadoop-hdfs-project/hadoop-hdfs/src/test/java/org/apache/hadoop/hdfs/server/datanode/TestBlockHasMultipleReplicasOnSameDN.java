@@ -125,6 +125,7 @@ public void testBlockHasMultipleReplicasOnSameDN() throws IOException {
     // Should not assert!
     cluster.getNameNodeRpc().blockReport(dnReg, bpid, reports,
         new BlockReportContext(1, 0, System.nanoTime()));
+    cluster.getNamesystem().getBlockManager().flushBlockOps();
 
     // Get the block locations once again.
     locatedBlocks = client.getLocatedBlocks(filename, 0, BLOCK_SIZE * NUM_BLOCKS);
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.util.Time;
+import org.junit.Test;
+
+/**
+ * Test sending blocks from direct buffers, on plain and encrypted
+ * connections, and compare the read throughput with the other ways of
+ * sending blocks.
+ */
+public class TestBlockSenderDirectBuffers {
+  static final Log LOG = LogFactory.getLog(TestBlockSenderDirectBuffers.class);
+
+  private static final int BLOCK_SIZE = 1024 * 1024;
+  private static final int FILE_SIZE = 4 * BLOCK_SIZE + 4321;
+  private static final int NUM_READS = 5;
+
+  @Test(timeout=120000)
+  public void testPlain() throws Exception {
+    checkRead(false, false, true);
+  }
+
+  @Test(timeout=120000)
+  public void testEncrypted() throws Exception {
+    checkRead(false, true, true);
+  }
+
+  /**
+   * Read the same file with each of the ways to send blocks. The throughput
+   * is only logged, the MiniDFSCluster is no place to assert on it.
+   */
+  @Test(timeout=300000)
+  public void testThroughput() throws Exception {
+    double transferTo = checkRead(true, false, false);
+    double plainHeap = checkRead(false, false, false);
+    double plainDirect = checkRead(false, false, true);
+    double encryptedHeap = checkRead(false, true, false);
+    double encryptedDirect = checkRead(false, true, true);
+    LOG.info(String.format("Read throughput in MB/s: transferTo %.1f, "
+        + "plain heap %.1f, plain direct %.1f, encrypted heap %.1f, "
+        + "encrypted direct %.1f", transferTo, plainHeap, plainDirect,
+        encryptedHeap, encryptedDirect));
+  }
+
+  /**
+   * Write a file, read it back a few times and check its data.
+   * @return the read throughput, in MB/s
+   */
+  private static double checkRead(boolean transferTo, boolean encrypted,
+      boolean directBuffers) throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFERTO_ALLOWED_KEY,
+        transferTo);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_DIRECT_BUFFERS_ENABLED_KEY,
+        directBuffers);
+    if (encrypted) {
+      conf.setBoolean(DFSConfigKeys.DFS_ENCRYPT_DATA_TRANSFER_KEY, true);
+      conf.setBoolean(DFSConfigKeys.DFS_BLOCK_ACCESS_TOKEN_ENABLE_KEY, true);
+      conf.set(DFSConfigKeys.DFS_ENCRYPT_DATA_TRANSFER_CIPHER_SUITES_KEY,
+          "AES/CTR/NoPadding");
+    }
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path p = new Path("/file");
+      byte[] data = new byte[FILE_SIZE];
+      new Random().nextBytes(data);
+      FSDataOutputStream out = fs.create(p, (short) 1);
+      out.write(data);
+      out.close();
+
+      long start = Time.monotonicNow();
+      for (int i = 0; i < NUM_READS; i++) {
+        assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, p));
+      }
+      long elapsed = Math.max(1, Time.monotonicNow() - start);
+
+      // reads starting and ending in the middle of chunks
+      FSDataInputStream in = fs.open(p);
+      try {
+        byte[] buf = new byte[BLOCK_SIZE / 2 + 1];
+        for (int pos = 1; pos < FILE_SIZE; pos += buf.length + 513) {
+          int len = Math.min(buf.length, FILE_SIZE - pos);
+          in.readFully(pos, buf, 0, len);
+          for (int k = 0; k < len; k++) {
+            assertEquals(data[pos + k], buf[k]);
+          }
+        }
+      } finally {
+        in.close();
+      }
+      return (double) FILE_SIZE * NUM_READS * 1000 / elapsed / (1 << 20);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
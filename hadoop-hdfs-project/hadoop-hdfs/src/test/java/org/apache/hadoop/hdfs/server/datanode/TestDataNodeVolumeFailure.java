@@ -187,6 +187,7 @@ public void testVolumeFailure() throws Exception {
     }
     
     cluster.getNameNodeRpc().blockReport(dnR, bpid, reports, null);
+    cluster.getNamesystem().getBlockManager().flushBlockOps();
 
     // verify number of blocks and files...
     verify(filename, filesize);
@@ -24,6 +24,8 @@
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -52,6 +54,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIOStats;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.FsDatasetTestUtil;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.test.GenericTestUtils;
@@ -508,6 +511,64 @@ public void runTest(int parallelism) throws Exception {
     }
   }
 
+  @Test (timeout=300000)
+  public void testSlicedScan() throws Exception {
+    final int numSlices = 4;
+    Configuration conf = new HdfsConfiguration(CONF);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_SLICES_KEY,
+        numSlices);
+    // keep the scanner of the datanode out of the way
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INTERVAL_KEY,
+        365 * 24 * 3600);
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        500);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      DataNode dataNode = cluster.getDataNodes().get(0);
+      fds = DataNodeTestUtils.getFSDataset(dataNode);
+      client = cluster.getFileSystem().getClient();
+      scanner = new DirectoryScanner(dataNode, fds, conf);
+      scanner.setRetainDiffs(true);
+
+      long[] inMemory = new long[numSlices];
+      for (LocatedBlock b : createFile(GenericTestUtils.getMethodName(),
+          BLOCK_LENGTH * 10, false)) {
+        inMemory[DirectoryScanner.getSlice(
+            b.getBlock().getBlockId(), numSlices)]++;
+      }
+      long[] onDiskOnly = new long[numSlices];
+      for (int i = 0; i < 20; i++) {
+        onDiskOnly[DirectoryScanner.getSlice(createBlockFile(), numSlices)]++;
+      }
+
+      // Each scan only finds the blocks of its slice
+      for (int slice = 0; slice < numSlices; slice++) {
+        assertEquals(slice, scanner.getNextSlice());
+        scan(inMemory[slice] + onDiskOnly[slice], (int) onDiskOnly[slice],
+            onDiskOnly[slice], 0, onDiskOnly[slice], 0);
+      }
+
+      // All the blocks have been added by the first pass
+      for (int slice = 0; slice < numSlices; slice++) {
+        scan(inMemory[slice] + onDiskOnly[slice], 0, 0, 0, 0, 0);
+      }
+      assertTrue(getLongCounter("DirectoryScanDirsListed",
+          getMetrics(dataNode.getMetrics().name())) > 0);
+      assertTrue(getLongCounter("DirectoryScanBlocksScanned",
+          getMetrics(dataNode.getMetrics().name())) >= 60);
+    } finally {
+      if (scanner != null) {
+        scanner.shutdown();
+        scanner = null;
+      }
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
   private void verifyAddition(long blockId, long genStamp, long size) {
     final ReplicaInfo replicainfo;
     replicainfo = FsDatasetTestUtil.fetchReplicaInfo(fds, bpid, blockId);
@@ -613,6 +674,11 @@ public BlockIterator loadBlockIterator(String bpid, String name)
     public FsDatasetSpi getDataset() {
       throw new UnsupportedOperationException();
     }
+
+    @Override
+    public VolumeIOStats getIOStats() {
+      return null;
+    }
   }
 
   private final static TestFsVolumeSpi TEST_VOLUME = new TestFsVolumeSpi();
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.ExtendedBlockId;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.junit.Test;
+
+public class TestHotBlockTracker {
+  private static final String BPID = "BP-1";
+  private static final long HALF_LIFE_MS = 1000;
+
+  private static HotBlockTracker createTracker(int maxReported) {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_MIN_READS_KEY, 3);
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_HALF_LIFE_MS_KEY,
+        HALF_LIFE_MS);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_MAX_REPORTED_KEY,
+        maxReported);
+    return new HotBlockTracker(conf, true);
+  }
+
+  private static void read(HotBlockTracker tracker, String bpid,
+      long blockId, int times, long now) {
+    for (int i = 0; i < times; i++) {
+      tracker.recordRead(new ExtendedBlockId(blockId, bpid), now);
+    }
+  }
+
+  @Test
+  public void testHotBlocks() {
+    HotBlockTracker tracker = createTracker(2);
+    read(tracker, BPID, 1, 4, 0);
+    read(tracker, BPID, 2, 8, 0);
+    read(tracker, BPID, 3, 2, 0);
+    read(tracker, BPID, 4, 6, 0);
+    read(tracker, "BP-2", 5, 10, 0);
+
+    // Only the most read blocks of the pool are reported, most read first
+    Map<Long, Long> hot = tracker.getHotBlocks(BPID, 0);
+    assertEquals(Arrays.asList(2L, 4L), new ArrayList<Long>(hot.keySet()));
+    assertEquals(8L, (long) hot.get(2L));
+    assertEquals(6L, (long) hot.get(4L));
+  }
+
+  @Test
+  public void testDecay() {
+    HotBlockTracker tracker = createTracker(10);
+    read(tracker, BPID, 1, 8, 0);
+    assertEquals(8L, (long) tracker.getHotBlocks(BPID, 0).get(1L));
+
+    // After a half-life, half of the reads are left
+    assertEquals(4L, (long) tracker.getHotBlocks(BPID, HALF_LIFE_MS).get(1L));
+    read(tracker, BPID, 1, 2, HALF_LIFE_MS);
+    assertEquals(6L, (long) tracker.getHotBlocks(BPID, HALF_LIFE_MS).get(1L));
+
+    // The block goes cold, and is forgotten after a while
+    assertTrue(tracker.getHotBlocks(BPID, 3 * HALF_LIFE_MS).isEmpty());
+    assertEquals(1, tracker.getNumTrackedBlocks());
+    tracker.getHotBlocks(BPID, 10 * HALF_LIFE_MS);
+    assertEquals(0, tracker.getNumTrackedBlocks());
+  }
+
+  @Test
+  public void testDisabled() {
+    HotBlockTracker tracker =
+        new HotBlockTracker(new HdfsConfiguration(), false);
+    tracker.recordRead(BPID, 1);
+    assertEquals(0, tracker.getNumTrackedBlocks());
+    assertTrue(tracker.getHotBlocks(BPID).isEmpty());
+  }
+}
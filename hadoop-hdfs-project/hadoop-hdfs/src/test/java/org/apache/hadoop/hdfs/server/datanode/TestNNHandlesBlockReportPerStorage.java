@@ -43,5 +43,6 @@ protected void sendBlockReports(DatanodeRegistration dnR, String poolId,
           new BlockReportContext(reports.length, i, System.nanoTime()));
       i++;
     }
+    cluster.getNamesystem().getBlockManager().flushBlockOps();
   }
 }
@@ -37,5 +37,6 @@ protected void sendBlockReports(DatanodeRegistration dnR, String poolId,
     LOG.info("Sending combined block reports for " + dnR);
     cluster.getNameNodeRpc().blockReport(dnR, poolId, reports,
         new BlockReportContext(1, 0, System.nanoTime()));
+    cluster.getNamesystem().getBlockManager().flushBlockOps();
   }
 }
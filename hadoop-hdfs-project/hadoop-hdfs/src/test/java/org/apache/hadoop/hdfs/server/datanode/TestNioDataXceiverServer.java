@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test data transfers through a {@link NioDataXceiverServer}.
+ */
+public class TestNioDataXceiverServer {
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  @Test(timeout=120000)
+  public void testReadWrite() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFER_NIO_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_TRANSFER_NIO_WORKER_THREADS_KEY, 4);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    try {
+      cluster.waitActive();
+      for (DataNode dn : cluster.getDataNodes()) {
+        assertTrue(dn.getXferServer() instanceof NioDataXceiverServer);
+      }
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Random r = new Random();
+
+      // write through pipelines of all the datanodes
+      final int numFiles = 5;
+      byte[][] data = new byte[numFiles][];
+      for (int i = 0; i < numFiles; i++) {
+        data[i] = new byte[BLOCK_SIZE * 2 + r.nextInt(BLOCK_SIZE)];
+        r.nextBytes(data[i]);
+        FSDataOutputStream out = fs.create(new Path("/file" + i), (short) 3);
+        out.write(data[i]);
+        out.close();
+      }
+
+      // read sequentially, then with positional reads, which reuse the
+      // connections cached by the client
+      for (int i = 0; i < numFiles; i++) {
+        Path p = new Path("/file" + i);
+        assertArrayEquals(data[i], DFSTestUtil.readFileBuffer(fs, p));
+        FSDataInputStream in = fs.open(p);
+        try {
+          byte[] buf = new byte[1024];
+          for (int j = 0; j < 20; j++) {
+            int pos = r.nextInt(data[i].length - buf.length);
+            in.readFully(pos, buf);
+            for (int k = 0; k < buf.length; k++) {
+              assertEquals(data[i][pos + k], buf[k]);
+            }
+          }
+        } finally {
+          in.close();
+        }
+      }
+
+      // the connections cached by the client do not hold a worker
+      for (DataNode dn : cluster.getDataNodes()) {
+        final NioDataXceiverServer server =
+            (NioDataXceiverServer) dn.getXferServer();
+        GenericTestUtils.waitFor(new Supplier<Boolean>() {
+          @Override
+          public Boolean get() {
+            return server.getNumActiveWorkers() == 0;
+          }
+        }, 100, 10000);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
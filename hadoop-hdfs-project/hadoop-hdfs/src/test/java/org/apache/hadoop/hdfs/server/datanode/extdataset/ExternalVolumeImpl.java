@@ -26,6 +26,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIOStats;
 
 public class ExternalVolumeImpl implements FsVolumeSpi {
   @Override
@@ -96,4 +97,9 @@ public BlockIterator loadBlockIterator(String bpid, String name)
   public FsDatasetSpi getDataset() {
     return null;
   }
+
+  @Override
+  public VolumeIOStats getIOStats() {
+    return null;
+  }
 }
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_KEY;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestDiskLoadAwareVolumeChoosingPolicy {
+
+  @SuppressWarnings("unchecked")
+  private static DiskLoadAwareVolumeChoosingPolicy<FsVolumeSpi> newPolicy() {
+    Configuration conf = new Configuration();
+    conf.setFloat(
+        DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_THRESHOLD_KEY,
+        2.0f);
+    conf.setLong(DFS_DATANODE_DISK_LOAD_AWARE_VOLUME_CHOOSING_POLICY_MIN_LOAD_US_KEY,
+        1000);
+    return ReflectionUtils.newInstance(
+        DiskLoadAwareVolumeChoosingPolicy.class, conf);
+  }
+
+  private static FsVolumeSpi mockVolume(long available, VolumeIOStats stats)
+      throws Exception {
+    FsVolumeSpi volume = Mockito.mock(FsVolumeSpi.class);
+    Mockito.when(volume.getAvailable()).thenReturn(available);
+    Mockito.when(volume.getIOStats()).thenReturn(stats);
+    return volume;
+  }
+
+  // Volumes without I/O stats, or all idle, are chosen round robin.
+  @Test(timeout=60000)
+  public void testRR() throws Exception {
+    TestRoundRobinVolumeChoosingPolicy.testRR(newPolicy());
+  }
+
+  // ChooseVolume should throw DiskOutOfSpaceException
+  // with volume and block sizes in exception message.
+  @Test(timeout=60000)
+  public void testRRPolicyExceptionMessage() throws Exception {
+    TestRoundRobinVolumeChoosingPolicy.testRRPolicyExceptionMessage(
+        newPolicy());
+  }
+
+  @Test(timeout=60000)
+  public void testSlowVolumeIsSkipped() throws Exception {
+    final DiskLoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy = newPolicy();
+    final VolumeIOStats fast = new VolumeIOStats();
+    final VolumeIOStats slow = new VolumeIOStats();
+    final VolumeIOStats busy = new VolumeIOStats();
+    fast.addLatency(2000000L);
+    slow.addLatency(50000000L);
+    busy.addLatency(2000000L);
+
+    List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    volumes.add(mockVolume(100, fast));
+    volumes.add(mockVolume(100, slow));
+    volumes.add(mockVolume(100, busy));
+
+    // With the same latency, the busy volume is not slow until it has
+    // operations queued up.
+    Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 0));
+    Assert.assertEquals(volumes.get(2), policy.chooseVolume(volumes, 0));
+    Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 0));
+
+    busy.beginIO();
+    busy.beginIO();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 0));
+    }
+
+    // A slow volume is still chosen when it is the only one with room
+    Mockito.when(volumes.get(0).getAvailable()).thenReturn(10L);
+    Mockito.when(volumes.get(2).getAvailable()).thenReturn(10L);
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 50));
+  }
+
+  @Test(timeout=60000)
+  public void testLoadsBelowMinimumAreEqual() throws Exception {
+    final DiskLoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy = newPolicy();
+    final VolumeIOStats idle = new VolumeIOStats();
+    final VolumeIOStats light = new VolumeIOStats();
+    light.addLatency(900000L);
+
+    List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    volumes.add(mockVolume(100, idle));
+    volumes.add(mockVolume(100, light));
+    volumes.add(mockVolume(100, null));
+
+    // 0.9ms is below the minimum load of 1ms
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 0));
+      Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 0));
+      Assert.assertEquals(volumes.get(2), policy.chooseVolume(volumes, 0));
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testVolumeIOStats() throws Exception {
+    final VolumeIOStats stats = new VolumeIOStats();
+    long begin = stats.beginIO();
+    Assert.assertEquals(1, stats.getQueueDepth());
+    stats.endWrite(begin, 1000);
+    begin = stats.beginIO();
+    stats.endRead(begin, 300);
+    stats.beginIO();
+    stats.endReadWithLatency(200, 5000);
+    Assert.assertEquals(0, stats.getQueueDepth());
+    Assert.assertEquals(2, stats.getReadOps());
+    Assert.assertEquals(1, stats.getWriteOps());
+    Assert.assertEquals(500, stats.getBytesRead());
+    Assert.assertEquals(1000, stats.getBytesWritten());
+
+    // the average moves an eighth of the way to each new latency
+    final VolumeIOStats avg = new VolumeIOStats();
+    avg.addLatency(8000);
+    Assert.assertEquals(8000, avg.getAvgLatencyNanos());
+    avg.addLatency(16000);
+    Assert.assertEquals(9000, avg.getAvgLatencyNanos());
+    Assert.assertEquals(9000, avg.getLoadNanos());
+    avg.beginIO();
+    Assert.assertEquals(18000, avg.getLoadNanos());
+  }
+}
@@ -22,8 +22,10 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
@@ -34,6 +36,7 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
@@ -42,6 +45,7 @@
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -181,6 +185,82 @@ private void testRbwReplicas(MiniDFSCluster cluster, boolean isCorrupt)
     }
   }
 
+  // test loading the replicas from a checkpoint after a crash
+  @Test public void testReplicaCheckpoint() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024L);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_SIZE_KEY, 512);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    cluster.waitActive();
+    GenericTestUtils.LogCapturer logs =
+        GenericTestUtils.LogCapturer.captureLogs(BlockPoolSlice.LOG);
+    try {
+      FileSystem fs = cluster.getFileSystem();
+      String bpid = cluster.getNamesystem().getBlockPoolId();
+      for (int i = 0; i < 4; i++) {
+        Path fileName = new Path("/test" + i);
+        DFSTestUtil.createFile(fs, fileName, 1, (short)1, 0L);
+        DFSTestUtil.waitReplication(fs, fileName, (short)1);
+      }
+      // only directories which have not changed lately are checkpointed
+      Thread.sleep(2500);
+      dataset(cluster.getDataNodes().get(0)).saveReplicaCheckpoints();
+
+      // a replica written after the checkpoint is found by walking its
+      // directory again
+      DFSTestUtil.createFile(fs, new Path("/test4"), 1, (short)1, 0L);
+      DFSTestUtil.waitReplication(fs, new Path("/test4"), (short)1);
+      crashAndRestart(cluster, bpid);
+      DataNode dn = cluster.getDataNodes().get(0);
+      Assert.assertTrue(logs.getOutput().contains(
+          "Read replicas from checkpoint file"));
+      Collection<ReplicaInfo> replicas = dataset(dn).volumeMap.replicas(bpid);
+      Assert.assertEquals(5, replicas.size());
+      for (ReplicaInfo replica : replicas) {
+        Assert.assertEquals(ReplicaState.FINALIZED, replica.getState());
+      }
+
+      // the replicas of a directory which did not change are taken from
+      // the checkpoint: a block file hidden by restoring the modification
+      // time of its directory is not found
+      Thread.sleep(2500);
+      dataset(dn).saveReplicaCheckpoints();
+      ReplicaInfo replica = replicas.iterator().next();
+      File dir = replica.getBlockFile().getParentFile();
+      long mtime = dir.lastModified();
+      long strayId = replica.getBlockId() + 100;
+      Assert.assertTrue(new File(dir, Block.BLOCK_FILE_PREFIX + strayId)
+          .createNewFile());
+      Assert.assertTrue(dir.setLastModified(mtime));
+      crashAndRestart(cluster, bpid);
+      dn = cluster.getDataNodes().get(0);
+      Assert.assertEquals(5, dataset(dn).volumeMap.replicas(bpid).size());
+      Assert.assertNull(dataset(dn).volumeMap.get(bpid, strayId));
+    } finally {
+      logs.stopCapturing();
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Restart the datanode without the replica cache saved at shutdown, as if
+   * it had crashed.
+   */
+  private static void crashAndRestart(MiniDFSCluster cluster, String bpid)
+      throws IOException {
+    List<File> bpCurrentDirs = new ArrayList<File>();
+    for (FsVolumeSpi v : dataset(cluster.getDataNodes().get(0)).getVolumes()) {
+      bpCurrentDirs.add(v.getFinalizedDir(bpid).getParentFile());
+    }
+    DataNodeProperties dnProps = cluster.stopDataNode(0);
+    for (File dir : bpCurrentDirs) {
+      File replicaCache = new File(dir, "replicas");
+      Assert.assertTrue(!replicaCache.exists() || replicaCache.delete());
+    }
+    cluster.restartDataNode(dnProps, true);
+    cluster.waitActive();
+  }
+
   private static FsDatasetImpl dataset(DataNode dn) {
     return (FsDatasetImpl)DataNodeTestUtils.getFSDataset(dn);
   }
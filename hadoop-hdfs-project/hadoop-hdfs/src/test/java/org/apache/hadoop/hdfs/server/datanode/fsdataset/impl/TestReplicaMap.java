@@ -17,10 +17,17 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
 import org.junit.Before;
@@ -107,4 +114,77 @@ public void testRemove() {
     map.add(bpid, new FinalizedReplica(block, null, null));
     assertNotNull(map.remove(bpid, block.getBlockId()));
   }
+
+  @Test
+  public void testRemoveReplacedReplica() {
+    // a replica replaced after the lookup is not removed
+    Block newer = new Block(block);
+    newer.setGenerationStamp(block.getGenerationStamp() + 1);
+    map.add(bpid, new FinalizedReplica(newer, null, null));
+    assertNull(map.remove(bpid, block));
+    assertNotNull(map.remove(bpid, newer));
+    assertEquals(0, map.size(bpid));
+  }
+
+  @Test
+  public void testAddAll() {
+    ReplicaMap other = new ReplicaMap(TestReplicaMap.class);
+    Block b = new Block(5678, 5678, 5678);
+    other.add(bpid, new FinalizedReplica(b, null, null));
+    other.add("BP-OTHER", new FinalizedReplica(b, null, null));
+    map.addAll(other);
+
+    // the replicas are merged into the existing block pool
+    assertEquals(2, map.size(bpid));
+    assertNotNull(map.get(bpid, block));
+    assertNotNull(map.get(bpid, b));
+    assertEquals(1, map.size("BP-OTHER"));
+  }
+
+  @Test(timeout=60000)
+  public void testConcurrentUpdates() throws Exception {
+    final int numThreads = 8;
+    final int numBlocks = 10000;
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < numThreads; t++) {
+      final String pool = "BP-" + (t % 2);
+      final long base = (t / 2) * numBlocks;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (long id = base; id < base + numBlocks; id++) {
+              Block b = new Block(id, 0, 1);
+              map.add(pool, new FinalizedReplica(b, null, null));
+              assertNotNull(map.get(pool, b));
+              if (id % 2 == 0) {
+                assertEquals(b.getBlockId(), map.remove(pool, b).getBlockId());
+              }
+            }
+          } catch (Throwable e) {
+            error.compareAndSet(null, e);
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(error.get());
+    assertEquals(numThreads / 2 * numBlocks / 2, map.size("BP-0"));
+    assertEquals(numThreads / 2 * numBlocks / 2, map.size("BP-1"));
+  }
+
+  @Test
+  public void testReplicaLockStripes() {
+    ReplicaLockStripes stripes = new ReplicaLockStripes(1000);
+    assertEquals(1024, stripes.size());
+    assertSame(stripes.get(bpid, 1), stripes.get(bpid, 1));
+    // consecutive block ids do not share a stripe
+    assertNotSame(stripes.get(bpid, 1), stripes.get(bpid, 2));
+  }
 }
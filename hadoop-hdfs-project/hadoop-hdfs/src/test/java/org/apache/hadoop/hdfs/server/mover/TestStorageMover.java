@@ -258,9 +258,7 @@ void migrate() throws Exception {
      * Verify block locations after running the migration tool.
      */
     void verify(boolean verifyAll) throws Exception {
-      for (DataNode dn : cluster.getDataNodes()) {
-        DataNodeTestUtils.triggerBlockReport(dn);
-      }
+      cluster.triggerBlockReports();
       if (verifyAll) {
         verifyNamespace();
       }
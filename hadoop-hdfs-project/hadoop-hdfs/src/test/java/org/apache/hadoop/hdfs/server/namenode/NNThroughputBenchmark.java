@@ -42,6 +42,7 @@
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.security.token.block.ExportedBlockKeys;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManagerTestUtil;
@@ -515,7 +516,7 @@ class CreateFileStats extends OperationStatsBase {
 
     protected FileNameGenerator nameGenerator;
     protected String[][] fileNames;
-    private boolean closeUponCreate;
+    protected boolean closeUponCreate;
 
     CreateFileStats(List<String> args) {
       super();
@@ -609,6 +610,89 @@ void printResults() {
     }
   }
 
+  /**
+   * Batched file creation statistics.
+   *
+   * Each operation creates a batch of files with a single createFiles call,
+   * and closes them with a single completeFiles call if requested.
+   */
+  class CreateFilesStats extends CreateFileStats {
+    // Operation types
+    static final String OP_CREATE_BATCH_NAME = "createBatch";
+    static final String OP_CREATE_BATCH_USAGE =
+      "-op createBatch [-threads T] [-files N] [-filesPerDir P] [-batch B]"
+      + " [-close]";
+
+    private int batchSize;
+
+    CreateFilesStats(List<String> args) {
+      super(args);
+    }
+
+    @Override
+    String getOpName() {
+      return OP_CREATE_BATCH_NAME;
+    }
+
+    @Override
+    void parseArguments(List<String> args) {
+      batchSize = 10;
+      int bIndex = args.indexOf("-batch");
+      if(bIndex >= 0) {
+        if(args.size() <= bIndex + 1)
+          printUsage();
+        batchSize = Integer.parseInt(args.get(bIndex+1));
+        args.remove(bIndex+1);
+        args.remove(bIndex);
+      }
+      super.parseArguments(args);
+      // one operation per batch
+      numOpsRequired = (numOpsRequired + batchSize - 1) / batchSize;
+    }
+
+    @Override
+    void generateInputs(int[] opsPerThread) throws IOException {
+      int[] filesPerThread = new int[opsPerThread.length];
+      for(int idx=0; idx < opsPerThread.length; idx++)
+        filesPerThread[idx] = opsPerThread[idx] * batchSize;
+      super.generateInputs(filesPerThread);
+    }
+
+    /**
+     * Do batched file create.
+     */
+    @Override
+    long executeOp(int daemonId, int inputIdx, String clientName)
+    throws IOException {
+      String[] srcs = Arrays.copyOfRange(fileNames[daemonId],
+          inputIdx * batchSize, (inputIdx + 1) * batchSize);
+      long start = Time.now();
+      HdfsFileStatus[] stats = nameNodeProto.createFiles(srcs,
+          FsPermission.getDefault(), clientName,
+          new EnumSetWritable<CreateFlag>(EnumSet.of(CreateFlag.CREATE)),
+          true, replication, BLOCK_SIZE);
+      long end = Time.now();
+      if(closeUponCreate) {
+        long[] fileIds = new long[stats.length];
+        for(int i = 0; i < stats.length; i++)
+          fileIds[i] = stats[i].getFileId();
+        nameNodeProto.completeFiles(srcs, clientName,
+            new ExtendedBlock[srcs.length], fileIds);
+      }
+      return end-start;
+    }
+
+    @Override
+    void printResults() {
+      LOG.info("--- " + getOpName() + " inputs ---");
+      LOG.info("nrFiles = " + numOpsRequired * batchSize);
+      LOG.info("nrThreads = " + numThreads);
+      LOG.info("nrFilesPerDir = " + nameGenerator.getFilesPerDirectory());
+      LOG.info("batchSize = " + batchSize);
+      printStats();
+    }
+  }
+
   /**
    * Directory creation statistics.
    *
@@ -1374,6 +1458,7 @@ static void printUsage() {
     System.err.println("Usage: NNThroughputBenchmark"
         + "\n\t"    + OperationStatsBase.OP_ALL_USAGE
         + " | \n\t" + CreateFileStats.OP_CREATE_USAGE
+        + " | \n\t" + CreateFilesStats.OP_CREATE_BATCH_USAGE
         + " | \n\t" + MkdirsStats.OP_MKDIRS_USAGE
         + " | \n\t" + OpenFileStats.OP_OPEN_USAGE
         + " | \n\t" + DeleteFileStats.OP_DELETE_USAGE
@@ -1424,6 +1509,10 @@ public int run(String[] aArgs) throws Exception {
         opStat = new CreateFileStats(args);
         ops.add(opStat);
       }
+      if(runAll || CreateFilesStats.OP_CREATE_BATCH_NAME.equals(type)) {
+        opStat = new CreateFilesStats(args);
+        ops.add(opStat);
+      }
       if(runAll || MkdirsStats.OP_MKDIRS_NAME.equals(type)) {
         opStat = new MkdirsStats(args);
         ops.add(opStat);
@@ -19,8 +19,11 @@
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SIZE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CACHEREPORT_INTERVAL_MSEC_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_HALF_LIFE_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_HOT_BLOCK_MIN_READS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CACHING_AUTO_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS;
 import static org.apache.hadoop.hdfs.protocol.CachePoolInfo.RELATIVE_EXPIRY_NEVER;
 import static org.apache.hadoop.test.GenericTestUtils.assertExceptionContains;
@@ -35,6 +38,7 @@
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.Iterator;
@@ -858,7 +862,8 @@ public Boolean get() {
     String bpid = cluster.getNamesystem().getBlockPoolId();
     LinkedList<Long> bogusBlockIds = new LinkedList<Long> ();
     bogusBlockIds.add(999999L);
-    nnRpc.cacheReport(dn0.getDNRegistrationForBP(bpid), bpid, bogusBlockIds);
+    nnRpc.cacheReport(dn0.getDNRegistrationForBP(bpid), bpid, bogusBlockIds,
+        Collections.<Long, Long>emptyMap());
 
     Path rootDir = helper.getDefaultWorkingDirectory(dfs);
     // Create the pool
@@ -1453,4 +1458,45 @@ public void testExceedsCapacity() throws Exception {
     Thread.sleep(1000);
     checkPendingCachedEmpty(cluster);
   }
+
+  @Test(timeout=120000)
+  public void testAutoCachingOfHotBlocks() throws Exception {
+    Configuration autoConf = createCachingConf();
+    autoConf.setBoolean(DFS_NAMENODE_CACHING_AUTO_ENABLED_KEY, true);
+    autoConf.setInt(DFS_DATANODE_CACHE_HOT_BLOCK_MIN_READS_KEY, 3);
+    autoConf.setLong(DFS_DATANODE_CACHE_HOT_BLOCK_HALF_LIFE_MS_KEY, 5000);
+    MiniDFSCluster autoCluster =
+        new MiniDFSCluster.Builder(autoConf).numDataNodes(1).build();
+    try {
+      autoCluster.waitActive();
+      final DistributedFileSystem autoFs = autoCluster.getFileSystem();
+      final Path hot = new Path("/hot");
+      final Path cold = new Path("/cold");
+      DFSTestUtil.createFile(autoFs, hot, BLOCK_SIZE, (short) 1, 0xFADED);
+      DFSTestUtil.createFile(autoFs, cold, BLOCK_SIZE, (short) 1, 0xFADED);
+      DFSTestUtil.readFile(autoFs, cold);
+
+      // Keep reading the hot file until its block gets cached
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          try {
+            DFSTestUtil.readFile(autoFs, hot);
+            return autoFs.getFileBlockLocations(hot, 0, BLOCK_SIZE)[0]
+                .getCachedHosts().length == 1;
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }, 500, 60000);
+      assertEquals(0, autoFs.getFileBlockLocations(cold, 0, BLOCK_SIZE)[0]
+          .getCachedHosts().length);
+
+      // Once the reads stop, the block goes cold and gets uncached
+      waitForCachedBlocks(autoCluster.getNameNode(), 0, 0,
+          "testAutoCachingOfHotBlocks");
+    } finally {
+      autoCluster.shutdown();
+    }
+  }
 }
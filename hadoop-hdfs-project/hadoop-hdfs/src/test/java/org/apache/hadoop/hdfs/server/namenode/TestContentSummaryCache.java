@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the content summaries cached by directories are used, and that
+ * they are invalidated by every change of the namespace.
+ */
+public class TestContentSummaryCache {
+  private static final long BLOCKSIZE = 1024;
+  private static final short REPLICATION = 1;
+
+  private final Path dir = new Path("/dir");
+  private final Path sub1 = new Path(dir, "sub1");
+  private final Path sub2 = new Path(dir, "sub2");
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private FSNamesystem fsn;
+  private FSDirectory fsdir;
+  private DistributedFileSystem hdfs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.setLong(DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_THRESHOLD_KEY, 2);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    fsn = cluster.getNamesystem();
+    fsdir = fsn.getFSDirectory();
+    hdfs = cluster.getFileSystem();
+
+    for (int i = 0; i < 3; i++) {
+      DFSTestUtil.createFile(hdfs, new Path(sub1, "file" + i),
+          BLOCKSIZE * (i + 1), REPLICATION, i);
+      DFSTestUtil.createFile(hdfs, new Path(sub2, "file" + i),
+          BLOCKSIZE / 2, REPLICATION, i);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /** Count the subtree of the path without using any cache. */
+  private ContentSummary computeWithoutCache(Path path) throws Exception {
+    fsn.readLock();
+    try {
+      return fsdir.getINode(path.toString()).computeContentSummary(
+          fsn.getBlockManager().getStoragePolicySuite());
+    } finally {
+      fsn.readUnlock();
+    }
+  }
+
+  private static void assertSummaryEquals(ContentSummary expected,
+      ContentSummary actual) {
+    assertEquals(expected.getLength(), actual.getLength());
+    assertEquals(expected.getFileCount(), actual.getFileCount());
+    assertEquals(expected.getDirectoryCount(), actual.getDirectoryCount());
+    assertEquals(expected.getSpaceConsumed(), actual.getSpaceConsumed());
+    for (StorageType t : StorageType.values()) {
+      assertEquals(expected.getTypeConsumed(t), actual.getTypeConsumed(t));
+    }
+  }
+
+  /**
+   * Compute the content summaries of the root and of the test directory
+   * several times, so that the caches are both added and filled, and check
+   * them against a computation without cache.
+   */
+  private void checkSummaries() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      for (Path p : new Path[] {new Path("/"), dir, sub1, sub2}) {
+        if (hdfs.exists(p)) {
+          assertSummaryEquals(computeWithoutCache(p),
+              hdfs.getContentSummary(p));
+        }
+      }
+    }
+  }
+
+  private DirectoryWithContentSummaryFeature getCache(Path path)
+      throws Exception {
+    return fsdir.getINode(path.toString()).asDirectory()
+        .getDirectoryWithContentSummaryFeature();
+  }
+
+  @Test(timeout = 60000)
+  public void testCachedSummary() throws Exception {
+    final ContentSummary expected = computeWithoutCache(dir);
+    assertEquals(6, expected.getFileCount());
+    assertEquals(3, expected.getDirectoryCount());
+
+    // the first computation only finds the large enough directories
+    assertSummaryEquals(expected, hdfs.getContentSummary(dir));
+    assertNotNull(getCache(dir));
+    assertFalse(getCache(dir).isValid());
+    // the second fills the caches, the third uses them
+    assertSummaryEquals(expected, hdfs.getContentSummary(dir));
+    assertTrue(getCache(dir).isValid());
+    assertTrue(getCache(sub1).isValid());
+    final long hits = fsdir.getContentSummaryCacheHits();
+    assertSummaryEquals(expected, hdfs.getContentSummary(dir));
+    assertEquals(hits + 1, fsdir.getContentSummaryCacheHits());
+
+    // a change of one subdirectory only invalidates it and its ancestors
+    hdfs.delete(new Path(sub1, "file0"), false);
+    assertFalse(getCache(dir).isValid());
+    assertFalse(getCache(sub1).isValid());
+    assertTrue(getCache(sub2).isValid());
+    assertSummaryEquals(computeWithoutCache(dir), hdfs.getContentSummary(dir));
+    assertEquals(hits + 2, fsdir.getContentSummaryCacheHits());
+    assertTrue(getCache(dir).isValid());
+  }
+
+  /**
+   * A cached directory whose subtree becomes small keeps being filled, so
+   * that the invalidation of its subtree still reaches its ancestors.
+   */
+  @Test(timeout = 60000)
+  public void testShrunkSubtree() throws Exception {
+    checkSummaries();
+    assertTrue(getCache(sub2).isValid());
+    for (int i = 0; i < 3; i++) {
+      hdfs.delete(new Path(sub2, "file" + i), false);
+    }
+    checkSummaries();
+    assertTrue(getCache(sub2).isValid());
+    assertTrue(getCache(dir).isValid());
+
+    DFSTestUtil.createFile(hdfs, new Path(sub2, "newfile"), BLOCKSIZE,
+        REPLICATION, 0);
+    assertFalse(getCache(sub2).isValid());
+    assertFalse(getCache(dir).isValid());
+    checkSummaries();
+  }
+
+  @Test(timeout = 120000)
+  public void testInvalidation() throws Exception {
+    checkSummaries();
+
+    // a file under construction prevents caching until it is closed
+    FSDataOutputStream out = hdfs.append(new Path(sub1, "file0"));
+    out.write(new byte[(int) BLOCKSIZE]);
+    out.hflush();
+    checkSummaries();
+    assertFalse(getCache(sub1).isValid());
+    assertTrue(getCache(sub2).isValid());
+    out.close();
+    checkSummaries();
+    assertTrue(getCache(sub1).isValid());
+
+    hdfs.mkdirs(new Path(sub1, "newdir"));
+    checkSummaries();
+    DFSTestUtil.createFile(hdfs, new Path(sub2, "newfile"), BLOCKSIZE,
+        REPLICATION, 0);
+    checkSummaries();
+    hdfs.setReplication(new Path(sub1, "file1"), (short) 3);
+    checkSummaries();
+    assertTrue(hdfs.truncate(new Path(sub1, "file2"), BLOCKSIZE));
+    checkSummaries();
+    hdfs.concat(new Path(sub1, "file1"),
+        new Path[] {new Path(sub1, "file2")});
+    checkSummaries();
+
+    // storage policies change the typespaces of the inheriting files
+    hdfs.setStoragePolicy(dir, HdfsConstants.ONESSD_STORAGE_POLICY_NAME);
+    checkSummaries();
+    hdfs.setStoragePolicy(sub2, HdfsConstants.ALLSSD_STORAGE_POLICY_NAME);
+    checkSummaries();
+    hdfs.setStoragePolicy(new Path(sub1, "file0"),
+        HdfsConstants.HOT_STORAGE_POLICY_NAME);
+    checkSummaries();
+
+    // moving a cached directory changes the policy it inherits
+    final Path moved = new Path("/moved");
+    assertTrue(hdfs.rename(sub1, moved));
+    checkSummaries();
+    assertSummaryEquals(computeWithoutCache(moved),
+        hdfs.getContentSummary(moved));
+    assertTrue(hdfs.rename(moved, sub1));
+    checkSummaries();
+
+    // snapshot data is never cached
+    hdfs.allowSnapshot(dir);
+    checkSummaries();
+    assertFalse(getCache(dir).isValid());
+    hdfs.createSnapshot(dir, "s1");
+    hdfs.delete(new Path(sub2, "file0"), false);
+    checkSummaries();
+    assertFalse(getCache(sub2).isValid());
+    hdfs.deleteSnapshot(dir, "s1");
+    checkSummaries();
+
+    hdfs.delete(sub1, true);
+    checkSummaries();
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.ipc.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the edit log which syncs edits asynchronously to RPC calls.
+ */
+public class TestFSEditLogAsync {
+  private static final int NUM_THREADS = 8;
+  private static final int OPS_PER_THREAD = 50;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_HANDLER_COUNT_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * The response of an RPC call is only released after its edits are synced,
+   * while other threads sync their edits in place.
+   */
+  @Test(timeout = 60000)
+  public void testResponseSentAfterSync() throws Exception {
+    final FSNamesystem fsn = cluster.getNamesystem();
+    final FSEditLog editLog = fsn.getEditLog();
+    assertTrue(editLog instanceof FSEditLogAsync);
+    final PermissionStatus perm = new PermissionStatus("user", "group",
+        FsPermission.getDefault());
+
+    Server.Call call = mock(Server.Call.class);
+    Server.getCurCall().set(call);
+    try {
+      assertTrue(fsn.mkdirs("/rpc", perm, true));
+    } finally {
+      Server.getCurCall().set(null);
+    }
+    final long txid = editLog.getThreadTxId();
+    verify(call).postponeResponse();
+    verify(call, timeout(10000)).sendResponse();
+    assertTrue(editLog.getSyncTxId() >= txid);
+
+    // a thread not serving an RPC call is synced in place
+    assertTrue(fsn.mkdirs("/local", perm, true));
+    assertTrue(editLog.getSyncTxId() >= editLog.getThreadTxId());
+    verify(call).postponeResponse();
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentMutations() throws Exception {
+    final DistributedFileSystem fs = cluster.getFileSystem();
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      final Path dir = new Path("/thread" + i);
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int j = 0; j < OPS_PER_THREAD; j++) {
+            assertTrue(fs.mkdirs(new Path(dir, "dir" + j)));
+            DFSTestUtil.createFile(fs, new Path(dir, "file" + j), 10,
+                (short) 1, j);
+            if (j % 2 == 1) {
+              assertTrue(fs.delete(new Path(dir, "file" + j), false));
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> f : futures) {
+      f.get();
+    }
+    executor.shutdown();
+
+    cluster.restartNameNode();
+    assertTrue(
+        cluster.getNamesystem().getEditLog() instanceof FSEditLogAsync);
+    DistributedFileSystem restarted = cluster.getFileSystem();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      for (int j = 0; j < OPS_PER_THREAD; j++) {
+        Path dir = new Path("/thread" + i);
+        assertTrue(restarted.isDirectory(new Path(dir, "dir" + j)));
+        assertEquals(j % 2 == 0, restarted.exists(new Path(dir, "file" + j)));
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testSyncThreadStoppedOnClose() throws Exception {
+    final FSEditLogAsync editLog =
+        (FSEditLogAsync) cluster.getNamesystem().getEditLog();
+    assertTrue(editLog.isSyncThreadRunning());
+    cluster.restartNameNode();
+    assertFalse(editLog.isSyncThreadRunning());
+    assertTrue(((FSEditLogAsync) cluster.getNamesystem().getEditLog())
+        .isSyncThreadRunning());
+  }
+}
@@ -22,6 +22,7 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.EnumSet;
 
 import org.junit.Assert;
@@ -33,6 +34,7 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSOutputStream;
+import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
@@ -42,6 +44,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
 import org.apache.hadoop.test.GenericTestUtils;
@@ -118,6 +121,153 @@ private void testPersistHelper(Configuration conf) throws IOException {
     }
   }
 
+  @Test
+  public void testParallelLoad() throws IOException {
+    testParallelLoadHelper(getParallelLoadConf(), true, true);
+  }
+
+  @Test
+  public void testParallelLoadWithCompression() throws IOException {
+    Configuration conf = getParallelLoadConf();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY, true);
+    conf.set(DFSConfigKeys.DFS_IMAGE_COMPRESSION_CODEC_KEY,
+        "org.apache.hadoop.io.compress.GzipCodec");
+    testParallelLoadHelper(conf, true, true);
+  }
+
+  /**
+   * An image with sub-sections must remain loadable by the serial loader.
+   */
+  @Test
+  public void testSerialLoadOfImageWithSubSections() throws IOException {
+    testParallelLoadHelper(getParallelLoadConf(), true, false);
+  }
+
+  /**
+   * Compressed sub-sections are stand-alone streams within the enclosing
+   * compressed section, which the serial loader must read through.
+   */
+  @Test
+  public void testSerialLoadOfCompressedImageWithSubSections()
+      throws IOException {
+    Configuration conf = getParallelLoadConf();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY, true);
+    conf.set(DFSConfigKeys.DFS_IMAGE_COMPRESSION_CODEC_KEY,
+        "org.apache.hadoop.io.compress.GzipCodec");
+    testParallelLoadHelper(conf, true, false);
+  }
+
+  /**
+   * Sub-sections serialized by the saving thread load the same way.
+   */
+  @Test
+  public void testParallelLoadOfSeriallySavedImage() throws IOException {
+    Configuration conf = getParallelLoadConf();
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 1);
+    testParallelLoadHelper(conf, true, true);
+  }
+
+  /**
+   * Images of namespaces below the threshold are not split.
+   */
+  @Test
+  public void testNoSubSectionsBelowThreshold() throws IOException {
+    Configuration conf = getParallelLoadConf();
+    conf.setLong(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 10000);
+    testParallelLoadHelper(conf, false, true);
+  }
+
+  private static Configuration getParallelLoadConf() {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 10);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 3);
+    return conf;
+  }
+
+  private void testParallelLoadHelper(Configuration conf,
+      boolean expectSubSections, boolean loadInParallel) throws IOException {
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+
+      for (int i = 0; i < 5; i++) {
+        for (int j = 0; j < 5; j++) {
+          Path dir = new Path("/dir" + i + "/sub" + j);
+          fs.mkdirs(dir);
+          FSDataOutputStream out = fs.create(new Path(dir, "file"));
+          out.writeBytes("file" + i + j);
+          out.close();
+        }
+      }
+      // the renamed file of the snapshot is saved as a reference
+      fs.allowSnapshot(new Path("/dir0"));
+      fs.createSnapshot(new Path("/dir0"), "s0");
+      fs.rename(new Path("/dir0/sub0/file"), new Path("/dir1/moved"));
+      final long numInodes = cluster.getNamesystem().dir.getINodeMap().size();
+
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      File currentDir = FSImageTestUtil.getNameNodeCurrentDirs(cluster, 0)
+          .get(0);
+      File fsimage = FSImageTestUtil.findNewestImageFile(currentDir
+          .getAbsolutePath());
+      int inodeSubSections = 0;
+      int dirSubSections = 0;
+      RandomAccessFile raf = new RandomAccessFile(fsimage, "r");
+      try {
+        FileSummary summary = FSImageUtil.loadSummary(raf);
+        for (FileSummary.Section s : summary.getSectionsList()) {
+          if (FSImageFormatProtobuf.SectionName.INODE_SUB.toString()
+              .equals(s.getName())) {
+            inodeSubSections++;
+          } else if (FSImageFormatProtobuf.SectionName.INODE_DIR_SUB
+              .toString().equals(s.getName())) {
+            dirSubSections++;
+          }
+        }
+      } finally {
+        raf.close();
+      }
+      if (expectSubSections) {
+        assertTrue(inodeSubSections > 1);
+        assertTrue(dirSubSections > 1);
+      } else {
+        assertEquals(0, inodeSubSections);
+        assertEquals(0, dirSubSections);
+      }
+
+      cluster.getConfiguration(0).setBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, loadInParallel);
+      cluster.getConfiguration(0).setInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 3);
+      cluster.restartNameNode();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+
+      assertEquals(numInodes,
+          cluster.getNamesystem().dir.getINodeMap().size());
+      for (int i = 0; i < 5; i++) {
+        for (int j = 0; j < 5; j++) {
+          Path file = i == 0 && j == 0 ? new Path("/dir1/moved")
+              : new Path("/dir" + i + "/sub" + j + "/file");
+          assertEquals("file" + i + j, DFSTestUtil.readFile(fs, file));
+        }
+      }
+      assertEquals("file00", DFSTestUtil.readFile(fs,
+          new Path("/dir0/.snapshot/s0/sub0/file")));
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   /**
    * Ensure that the digest written by the saver equals to the digest of the
    * file.
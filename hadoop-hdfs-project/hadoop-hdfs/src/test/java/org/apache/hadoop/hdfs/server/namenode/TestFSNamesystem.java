@@ -26,6 +26,7 @@
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
@@ -36,11 +37,15 @@
 import org.apache.hadoop.hdfs.server.namenode.ha.HAContext;
 import org.apache.hadoop.hdfs.server.namenode.ha.HAState;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
 import org.junit.After;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.mockito.internal.util.reflection.Whitebox;
 
+import com.google.common.base.Supplier;
+
 public class TestFSNamesystem {
 
   @After
@@ -196,6 +201,170 @@ public void testFSNamesystemLockCompatibility() {
     assertEquals(0, rwLock.getWriteHoldCount());
   }
 
+  @Test
+  public void testPathLockRoot() {
+    FSNamesystemLock rwLock = new FSNamesystemLock(true, 16, 2);
+    assertEquals("/user/alice", rwLock.getPathLockRoot("/user/alice"));
+    assertEquals("/user/alice", rwLock.getPathLockRoot("/user/alice/"));
+    assertEquals("/user/alice", rwLock.getPathLockRoot("/user/alice/a/b"));
+    assertNull(rwLock.getPathLockRoot("/"));
+    assertNull(rwLock.getPathLockRoot("/user"));
+    assertNull(rwLock.getPathLockRoot("/user/"));
+    assertNull(rwLock.getPathLockRoot("//user/alice"));
+    assertNull(rwLock.getPathLockRoot("/user/../alice"));
+    assertNull(rwLock.getPathLockRoot("/.reserved/.inodes/16386"));
+    assertNull(rwLock.getPathLockRoot("user/alice"));
+    assertEquals(rwLock.getPathLockIndex("/user/alice/a"),
+        rwLock.getPathLockIndex("/user/alice/b"));
+    assertEquals(-1, rwLock.getPathLockIndex("/user"));
+
+    FSNamesystemLock coarse = new FSNamesystemLock(true);
+    assertFalse(coarse.isPathLockingEnabled());
+    assertNull(coarse.getPathLockRoot("/user/alice"));
+    assertEquals(-1, coarse.getPathLockIndex("/user/alice"));
+  }
+
+  @Test(timeout = 30000)
+  public void testPathLockConcurrency() throws Exception {
+    final FSNamesystemLock rwLock = new FSNamesystemLock(true, 2, 1);
+    final int index = rwLock.getPathLockIndex("/a");
+    final int otherIndex = 1 - index;
+
+    rwLock.writeLockPath(index);
+    assertTrue(rwLock.hasPathLock());
+    assertTrue(rwLock.hasPathWriteLock());
+    assertFalse(rwLock.isWriteLockedByCurrentThread());
+    assertEquals(1, rwLock.getReadHoldCount());
+
+    // Writers of other subtrees are not blocked, the global lock is.
+    final AtomicBoolean otherPathLocked = new AtomicBoolean();
+    final AtomicBoolean globalReadLocked = new AtomicBoolean();
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        rwLock.writeLockPath(otherIndex);
+        otherPathLocked.set(true);
+        rwLock.writeUnlockPath(otherIndex);
+        rwLock.lockRead();
+        globalReadLocked.set(true);
+        rwLock.unlockRead();
+      }
+    };
+    other.start();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return otherPathLocked.get();
+      }
+    }, 10, 10000);
+    Thread.sleep(100);
+    assertFalse(globalReadLocked.get());
+
+    rwLock.writeUnlockPath(index);
+    other.join();
+    assertTrue(globalReadLocked.get());
+    assertFalse(rwLock.hasPathLock());
+    assertEquals(0, rwLock.getReadHoldCount());
+  }
+
+  @Test(timeout = 30000)
+  public void testGlobalReadersAndPathWriters() throws Exception {
+    final FSNamesystemLock rwLock = new FSNamesystemLock(true, 2, 1);
+    final int index = rwLock.getPathLockIndex("/a");
+    final int otherIndex = 1 - index;
+
+    // Global readers share with each other and with path readers, and a
+    // nested path lock of a global reader does not wait.
+    rwLock.lockRead();
+    final AtomicBoolean readLocked = new AtomicBoolean();
+    final AtomicBoolean pathWriteLocked = new AtomicBoolean();
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        rwLock.lockRead();
+        rwLock.readLockPath(otherIndex);
+        readLocked.set(true);
+        rwLock.readUnlockPath(otherIndex);
+        rwLock.unlockRead();
+      }
+    };
+    reader.start();
+    reader.join();
+    assertTrue(readLocked.get());
+    rwLock.writeLockPath(index);
+    assertTrue(rwLock.hasPathWriteLock());
+    rwLock.writeUnlockPath(index);
+
+    // Path writers wait for the global readers.
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        rwLock.writeLockPaths(otherIndex, index);
+        pathWriteLocked.set(true);
+        rwLock.writeUnlockPaths(otherIndex, index);
+      }
+    };
+    writer.start();
+    Thread.sleep(100);
+    assertFalse(pathWriteLocked.get());
+    rwLock.unlockRead();
+    writer.join();
+    assertTrue(pathWriteLocked.get());
+
+    // A path reader may read globally while another subtree is written.
+    rwLock.writeLockPath(otherIndex);
+    readLocked.set(false);
+    reader = new Thread() {
+      @Override
+      public void run() {
+        rwLock.readLockPath(index);
+        rwLock.lockRead();
+        readLocked.set(true);
+        rwLock.unlockRead();
+        rwLock.readUnlockPath(index);
+      }
+    };
+    reader.start();
+    reader.join();
+    assertTrue(readLocked.get());
+    rwLock.writeUnlockPath(otherIndex);
+    assertFalse(rwLock.hasPathLock());
+    assertEquals(0, rwLock.getReadHoldCount());
+  }
+
+  @Test
+  public void testLockTimes() throws Exception {
+    FSNamesystemLock rwLock = new FSNamesystemLock(true, 2, 1, 50, 50);
+    LogCapturer logs = LogCapturer.captureLogs(FSNamesystemLock.LOG);
+    try {
+      // nested holds are measured once, short holds are not logged
+      rwLock.lockRead();
+      rwLock.readLockPath(0);
+      rwLock.readUnlockPath(0);
+      rwLock.unlockRead();
+      assertFalse(logs.getOutput().contains("lock held for"));
+
+      rwLock.lockWrite();
+      Thread.sleep(100);
+      rwLock.unlockWrite();
+      assertTrue(logs.getOutput().contains("write lock held for"));
+      assertTrue(logs.getOutput().contains("testLockTimes"));
+    } finally {
+      logs.stopCapturing();
+    }
+
+    FSNamesystemLock.LockTimes times = rwLock.takeLockTimes();
+    assertNotNull(times);
+    assertTrue(times.getHoldMicros() >= 100000);
+    // the times are only taken once
+    assertNull(rwLock.takeLockTimes());
+    rwLock.lockRead();
+    rwLock.unlockRead();
+    times = rwLock.takeLockTimes();
+    assertNotNull(times);
+    assertTrue(times.getHoldMicros() < 100000);
+  }
+
   @Test
   public void testReset() throws Exception {
     Configuration conf = new Configuration();
@@ -0,0 +1,243 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test namespace operations running under subtree path locks.
+ */
+public class TestPathLocking {
+  private static final int NUM_SUBTREES = 4;
+  private static final int DIRS_PER_SUBTREE = 50;
+  private static final int FILES_PER_SUBTREE = 50;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PATH_LOCK_STRIPES_KEY, 8);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PATH_LOCK_DEPTH_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Creating the top directory of a subtree falls back to the global lock,
+   * creating directories below it only takes the subtree lock.
+   */
+  @Test
+  public void testMkdirsCreatesSubtreeRoot() throws Exception {
+    final Path deep = new Path("/newroot/a/b/c");
+    assertTrue(fs.mkdirs(deep));
+    assertTrue(fs.mkdirs(new Path("/newroot/a/d")));
+    assertTrue(fs.getFileStatus(deep).isDirectory());
+    assertEquals(2, fs.listStatus(new Path("/newroot/a")).length);
+    assertEquals(0, cluster.getNamesystem().getReadHoldCount());
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentSubtreeMutations() throws Exception {
+    for (int i = 0; i < NUM_SUBTREES; i++) {
+      fs.mkdirs(new Path("/subtree" + i));
+    }
+    fs.setQuota(new Path("/"), Long.MAX_VALUE - 1, Long.MAX_VALUE - 1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_SUBTREES * 2);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (int i = 0; i < NUM_SUBTREES; i++) {
+      final Path root = new Path("/subtree" + i);
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int j = 0; j < DIRS_PER_SUBTREE; j++) {
+            Path p = new Path(root, "dir" + j + "/child");
+            assertTrue(fs.mkdirs(p));
+            fs.setPermission(p, new FsPermission((short) 0700));
+            fs.setOwner(p, "user" + j, "group" + j);
+            fs.setTimes(p, j, -1);
+          }
+          return null;
+        }
+      }));
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int j = 0; j < DIRS_PER_SUBTREE; j++) {
+            for (FileStatus st : fs.listStatus(root)) {
+              fs.getFileStatus(st.getPath());
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> f : futures) {
+      f.get();
+    }
+    executor.shutdown();
+
+    verifyNamespace();
+    // the edits logged by concurrent writers must replay to the same tree
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    verifyNamespace();
+  }
+
+  /**
+   * Files are created, renamed within their subtree and into the next one,
+   * and every other one is deleted, concurrently in all subtrees.
+   */
+  @Test(timeout = 120000)
+  public void testConcurrentCreateRenameDelete() throws Exception {
+    for (int i = 0; i < NUM_SUBTREES; i++) {
+      fs.mkdirs(new Path("/subtree" + i + "/dir"));
+      fs.mkdirs(new Path("/subtree" + i + "/in"));
+    }
+    fs.setQuota(new Path("/"), Long.MAX_VALUE - 1, Long.MAX_VALUE - 1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_SUBTREES);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (int i = 0; i < NUM_SUBTREES; i++) {
+      final int subtree = i;
+      final Path root = new Path("/subtree" + i);
+      final Path next = new Path("/subtree" + (i + 1) % NUM_SUBTREES, "in");
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int j = 0; j < FILES_PER_SUBTREE; j++) {
+            Path file = new Path(root, "file" + j);
+            Path renamed = new Path(root, "dir/renamed" + j);
+            Path moved = new Path(next, "from" + subtree + "_" + j);
+            fs.create(file).close();
+            assertTrue(fs.rename(file, renamed));
+            assertTrue(fs.rename(renamed, moved));
+            if (j % 2 == 0) {
+              assertTrue(fs.delete(moved, false));
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> f : futures) {
+      f.get();
+    }
+    executor.shutdown();
+
+    verifyMovedFiles();
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    verifyMovedFiles();
+  }
+
+  /**
+   * Deleting and renaming the top directory of a subtree, or with a
+   * snapshottable directory, fall back to the global lock.
+   */
+  @Test
+  public void testDeleteAndRenameFallBackToGlobalLock() throws Exception {
+    final Path dir = new Path("/top/dir");
+    fs.mkdirs(dir);
+    fs.create(new Path(dir, "file")).close();
+    assertTrue(fs.rename(new Path("/top"), new Path("/top2")));
+    assertTrue(fs.exists(new Path("/top2/dir/file")));
+
+    fs.mkdirs(new Path("/snap/dir"));
+    fs.allowSnapshot(new Path("/snap"));
+    fs.createSnapshot(new Path("/snap"), "s0");
+    assertTrue(fs.rename(new Path("/top2/dir"), new Path("/snap/dir/moved")));
+    assertTrue(fs.delete(new Path("/snap/dir"), true));
+    assertTrue(fs.exists(new Path("/snap/.snapshot/s0/dir")));
+    assertFalse(fs.exists(new Path("/snap/dir")));
+    fs.deleteSnapshot(new Path("/snap"), "s0");
+    fs.disallowSnapshot(new Path("/snap"));
+
+    assertTrue(fs.delete(new Path("/top2"), true));
+    assertFalse(fs.exists(new Path("/top2")));
+    assertEquals(0, cluster.getNamesystem().getReadHoldCount());
+  }
+
+  private void verifyMovedFiles() throws Exception {
+    // root, subtree roots with two directories, and the odd files
+    final long expected = 1 + NUM_SUBTREES * (3 + FILES_PER_SUBTREE / 2);
+    assertEquals(expected, cluster.getNamesystem().getFSDirectory()
+        .getRoot().getDirectoryWithQuotaFeature().getSpaceConsumed()
+        .getNameSpace());
+    for (int i = 0; i < NUM_SUBTREES; i++) {
+      final Path in = new Path("/subtree" + (i + 1) % NUM_SUBTREES, "in");
+      assertEquals(0, fs.listStatus(new Path("/subtree" + i, "dir")).length);
+      for (int j = 0; j < FILES_PER_SUBTREE; j++) {
+        assertEquals(j % 2 == 1, fs.exists(new Path(in, "from" + i + "_" + j)));
+      }
+    }
+  }
+
+  private void verifyNamespace() throws Exception {
+    ContentSummary summary = fs.getContentSummary(new Path("/"));
+    // root, subtree roots, and two directories per mkdirs call
+    final long expected = 1 + NUM_SUBTREES * (1 + 2 * DIRS_PER_SUBTREE);
+    assertEquals(expected, summary.getDirectoryCount());
+    assertEquals(expected, cluster.getNamesystem().getFSDirectory()
+        .getRoot().getDirectoryWithQuotaFeature().getSpaceConsumed()
+        .getNameSpace());
+    for (int i = 0; i < NUM_SUBTREES; i++) {
+      for (int j = 0; j < DIRS_PER_SUBTREE; j++) {
+        FileStatus st = fs.getFileStatus(
+            new Path("/subtree" + i + "/dir" + j + "/child"));
+        assertEquals((short) 0700, st.getPermission().toShort());
+        assertEquals("user" + j, st.getOwner());
+        assertEquals("group" + j, st.getGroup());
+        assertEquals(j, st.getModificationTime());
+      }
+    }
+  }
+}
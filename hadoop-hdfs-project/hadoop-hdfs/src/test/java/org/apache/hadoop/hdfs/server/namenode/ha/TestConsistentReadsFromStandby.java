@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_FAILOVER_PROXY_PROVIDER_KEY_PREFIX;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the read-only calls of the clients using
+ * {@link ConsistentReadProxyProvider} are served by the standby NameNode,
+ * unless it has not applied the last transaction seen by the client.
+ */
+public class TestConsistentReadsFromStandby {
+  private static final String RPC_DETAILED_METRICS =
+      "RpcDetailedActivityForPort";
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private NameNode active;
+  private NameNode standby;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .numDataNodes(1)
+        .build();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+    active = cluster.getNameNode(0);
+    standby = cluster.getNameNode(1);
+
+    // the RPC metrics of a method exist once it has been called
+    DFSClient client = new DFSClient(active.getNameNodeAddress(), conf);
+    client.getFileInfo("/");
+    client.close();
+
+    String logicalName = HATestUtil.getLogicalHostname(cluster);
+    HATestUtil.setFailoverConfigurations(cluster, conf, logicalName);
+    conf.set(DFS_CLIENT_FAILOVER_PROXY_PROVIDER_KEY_PREFIX + "." + logicalName,
+        ConsistentReadProxyProvider.class.getName());
+    fs = FileSystem.get(new URI("hdfs://" + logicalName), conf);
+    assertTrue(fs.getFileStatus(new Path("/")).isDirectory());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (fs != null) {
+      fs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static long getFileInfoOps(NameNode nn) {
+    return getLongCounter("GetFileInfoNumOps", getMetrics(
+        RPC_DETAILED_METRICS + nn.getNameNodeAddress().getPort()));
+  }
+
+  @Test(timeout = 60000)
+  public void testReadsFromStandby() throws Exception {
+    final Path dir = new Path("/dir");
+    final Path file = new Path(dir, "file");
+    assertTrue(fs.mkdirs(dir));
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0);
+    HATestUtil.waitForStandbyToCatchUp(active, standby);
+
+    final long activeOps = getFileInfoOps(active);
+    final long standbyOps = getFileInfoOps(standby);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(1024, fs.getFileStatus(file).getLen());
+    }
+    assertEquals(activeOps, getFileInfoOps(active));
+    assertEquals(standbyOps + 10, getFileInfoOps(standby));
+    assertEquals(1, fs.listStatus(dir).length);
+  }
+
+  @Test(timeout = 60000)
+  public void testFirstReadFromActive() throws Exception {
+    HATestUtil.waitForStandbyToCatchUp(active, standby);
+    final long activeOps = getFileInfoOps(active);
+    final long standbyOps = getFileInfoOps(standby);
+    FileSystem newFs = FileSystem.newInstance(fs.getUri(), conf);
+    try {
+      // a new client has not seen any state, its first read goes to the
+      // active, and the next ones to the standby
+      assertTrue(newFs.getFileStatus(new Path("/")).isDirectory());
+      assertEquals(activeOps + 1, getFileInfoOps(active));
+      assertTrue(newFs.getFileStatus(new Path("/")).isDirectory());
+      assertEquals(standbyOps + 1, getFileInfoOps(standby));
+      assertEquals(activeOps + 1, getFileInfoOps(active));
+    } finally {
+      newFs.close();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testReadYourWrites() throws Exception {
+    final Path dir = new Path("/dir");
+    assertTrue(fs.mkdirs(dir));
+    HATestUtil.waitForStandbyToCatchUp(active, standby);
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+
+    // the standby has not applied the new file, the read goes to the active
+    final Path file = new Path(dir, "file");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0);
+    final long activeOps = getFileInfoOps(active);
+    assertEquals(1024, fs.getFileStatus(file).getLen());
+    assertEquals(activeOps + 1, getFileInfoOps(active));
+
+    // once the standby catches up, it serves the reads again
+    HATestUtil.waitForStandbyToCatchUp(active, standby);
+    final long standbyOps = getFileInfoOps(standby);
+    assertEquals(1024, fs.getFileStatus(file).getLen());
+    assertEquals(standbyOps + 1, getFileInfoOps(standby));
+    assertEquals(activeOps + 1, getFileInfoOps(active));
+  }
+}
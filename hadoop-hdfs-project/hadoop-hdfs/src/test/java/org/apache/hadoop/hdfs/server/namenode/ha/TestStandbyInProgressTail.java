@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
+import org.apache.hadoop.hdfs.server.namenode.NNStorage;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test that the StandbyNode tails the edits of the in-progress segment from
+ * the caches of the JournalNodes, without waiting for the segment to be
+ * finalized.
+ */
+public class TestStandbyInProgressTail {
+  private MiniQJMHACluster qjmhaCluster;
+  private MiniDFSCluster cluster;
+  private NameNode nn0;
+  private NameNode nn1;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    // the edit logs are never rolled by the standby
+    conf.setInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY, -1);
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_MS_KEY, 10);
+    qjmhaCluster = new MiniQJMHACluster.Builder(conf).build();
+    cluster = qjmhaCluster.getDfsCluster();
+    cluster.transitionToActive(0);
+    nn0 = cluster.getNameNode(0);
+    nn1 = cluster.getNameNode(1);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (qjmhaCluster != null) {
+      qjmhaCluster.shutdown();
+    }
+  }
+
+  private static void waitForFile(final NameNode nn, final String path)
+      throws TimeoutException, InterruptedException {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return NameNodeAdapter.getFileInfo(nn, path, true) != null;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+    }, 10, 10000);
+  }
+
+  @Test(timeout = 60000)
+  public void testTailInProgressEdits() throws Exception {
+    // the active just started its segment
+    final long segmentTxId =
+        nn0.getNamesystem().getEditLog().getLastWrittenTxId();
+    FileSystem fs = cluster.getFileSystem(0);
+    for (int i = 0; i < 3; i++) {
+      assertTrue(fs.mkdirs(new Path("/dir" + i)));
+      waitForFile(nn1, "/dir" + i);
+    }
+    // the standby did not wait for the segment to be finalized
+    GenericTestUtils.assertExists(new File(
+        qjmhaCluster.getJournalCluster().getCurrentDir(0,
+            MiniQJMHACluster.NAMESERVICE),
+        NNStorage.getInProgressEditsFileName(segmentTxId)));
+    assertEquals(nn0.getNamesystem().getEditLog().getLastWrittenTxId(),
+        nn1.getNamesystem().getFSImage().getLastAppliedTxId());
+  }
+
+  @Test(timeout = 60000)
+  public void testTailAfterFailover() throws Exception {
+    FileSystem fs = cluster.getFileSystem(0);
+    assertTrue(fs.mkdirs(new Path("/dir0")));
+    waitForFile(nn1, "/dir0");
+
+    // the new active recovers the in-progress segment, which clears the
+    // caches, and the new standby reads the finalized segment instead
+    cluster.transitionToStandby(0);
+    cluster.transitionToActive(1);
+    assertTrue(NameNodeAdapter.getFileInfo(nn1, "/dir0", true) != null);
+    fs = cluster.getFileSystem(1);
+    for (int i = 1; i < 3; i++) {
+      assertTrue(fs.mkdirs(new Path("/dir" + i)));
+      waitForFile(nn0, "/dir" + i);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testTailAfterJournalNodeRestart() throws Exception {
+    FileSystem fs = cluster.getFileSystem(0);
+    assertTrue(fs.mkdirs(new Path("/dir0")));
+    waitForFile(nn1, "/dir0");
+
+    // a restarted JournalNode does not hold the edits of the current segment
+    // in its cache, the other two still hold a majority
+    qjmhaCluster.getJournalCluster().restartJournalNode(0);
+    for (int i = 1; i < 3; i++) {
+      assertTrue(fs.mkdirs(new Path("/dir" + i)));
+      waitForFile(nn1, "/dir" + i);
+    }
+  }
+}
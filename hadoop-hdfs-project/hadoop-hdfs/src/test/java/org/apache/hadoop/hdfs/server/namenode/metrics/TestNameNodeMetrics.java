@@ -21,6 +21,7 @@
 import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
 import static org.apache.hadoop.test.MetricsAsserts.assertGauge;
 import static org.apache.hadoop.test.MetricsAsserts.assertQuantileGauges;
+import static org.apache.hadoop.test.MetricsAsserts.getLongGauge;
 import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -94,6 +95,7 @@ public class TestNameNodeMetrics {
         DFS_REPLICATION_INTERVAL);
     CONF.set(DFSConfigKeys.DFS_METRICS_PERCENTILES_INTERVALS_KEY, 
         "" + PERCENTILES_INTERVAL);
+    CONF.setBoolean(DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY, true);
     // Enable stale DataNodes checking
     CONF.setBoolean(DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_READ_KEY, true);
     ((Log4JLogger)LogFactory.getLog(MetricsAsserts.class))
@@ -548,6 +550,30 @@ public void testSyncAndBlockReportMetric() throws Exception {
     assertQuantileGauges("BlockReport1s", rb);
   }
 
+  /**
+   * Test that the namesystem lock times of the client operations are
+   * published per operation, and per user by nntop.
+   */
+  @Test
+  public void testLockTimeMetrics() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      assertTrue(fs.mkdirs(getTestPath("testLockTimeMetrics" + i)));
+    }
+    MetricsRecordBuilder rb = getMetrics(NN_METRICS);
+    assertCounter("FSNLockWaitMkdirsNumOps", 3L, rb);
+    assertCounter("FSNLockHoldMkdirsNumOps", 3L, rb);
+
+    // Sleep for an interval+slop to let the percentiles rollover
+    Thread.sleep((PERCENTILES_INTERVAL+1)*1000);
+    rb = getMetrics(NN_METRICS);
+    assertTrue(getLongGauge("FSNLockHoldMkdirs1sNumOps", rb) >= 0);
+    assertTrue(getLongGauge("FSNLockHoldMkdirs1s99thPercentileHoldMicros",
+        rb) >= 0);
+
+    String topLockHolds = namesystem.getTopUserLockHoldTimes();
+    assertTrue(topLockHolds, topLockHolds.contains("\"mkdirs\""));
+  }
+
   /**
    * Test NN ReadOps Count and WriteOps Count
    */
@@ -17,6 +17,9 @@
  */
 package org.apache.hadoop.hdfs.util;
 
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -40,6 +43,7 @@
 import org.apache.hadoop.hdfs.util.ByteArrayManager.CounterMap;
 import org.apache.hadoop.hdfs.util.ByteArrayManager.FixedLengthManager;
 import org.apache.hadoop.hdfs.util.ByteArrayManager.ManagerMap;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.util.Time;
 import org.apache.log4j.Level;
 import org.junit.Assert;
@@ -305,6 +309,38 @@ void verify(final int expectedSize) throws Exception {
   }
 
 
+  @Test
+  public void testStatistics() throws Exception {
+    final ByteArrayManager.Impl bam = new ByteArrayManager.Impl(
+        new ByteArrayManager.Conf(2, 8, 10000L));
+    final byte[][] arrays = new byte[3][];
+    for(int i = 0; i < arrays.length; i++) {
+      arrays[i] = bam.newByteArray(1000);
+      Assert.assertEquals(1024, arrays[i].length);
+    }
+    Assert.assertEquals(3, bam.getNumArraysCreated());
+    Assert.assertEquals(3 * 1024, bam.getNumBytesCreated());
+    Assert.assertEquals(0, bam.getNumArraysReused());
+
+    // once the arrays are released, they are reused instead of created
+    for(byte[] array : arrays) {
+      bam.release(array);
+    }
+    final byte[] reused = bam.newByteArray(1024);
+    Assert.assertTrue(reused == arrays[0] || reused == arrays[1]
+        || reused == arrays[2]);
+    Assert.assertEquals(3, bam.getNumArraysCreated());
+    Assert.assertEquals(1, bam.getNumArraysReused());
+
+    // the statistics are published through the metrics system
+    final String name = "ByteArrayManager-testStatistics";
+    ByteArrayManagerMetrics.register(name, bam);
+    final MetricsRecordBuilder rb = getMetrics(name);
+    assertCounter("ArraysCreated", 3L, rb);
+    assertCounter("BytesCreated", 3L * 1024, rb);
+    assertCounter("ArraysReused", 1L, rb);
+  }
+
   @Test
   public void testByteArrayManager() throws Exception {
     final int countThreshold = 32;
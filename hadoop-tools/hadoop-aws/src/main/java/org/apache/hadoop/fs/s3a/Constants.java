@@ -95,6 +95,18 @@ public class Constants {
   public static final String FAST_BUFFER_SIZE = "fs.s3a.fast.buffer.size";
   public static final int DEFAULT_FAST_BUFFER_SIZE = 1048576; //1MB
 
+  // largest gap in bytes between two ranges of a vectored read for which the
+  // ranges are fetched with a single GET request
+  public static final String VECTORED_READ_MAX_MERGE_GAP =
+    "fs.s3a.vectored.read.max.merge.gap";
+  public static final int DEFAULT_VECTORED_READ_MAX_MERGE_GAP = 65536; //64K
+
+  // largest size in bytes of the merged ranges of a vectored read
+  public static final String VECTORED_READ_MAX_MERGED_SIZE =
+    "fs.s3a.vectored.read.max.merged.size";
+  public static final int DEFAULT_VECTORED_READ_MAX_MERGED_SIZE =
+    8388608; //8MB
+
   // private | public-read | public-read-write | authenticated-read | 
   // log-delivery-write | bucket-owner-read | bucket-owner-full-control
   public static final String CANNED_ACL = "fs.s3a.acl.default";
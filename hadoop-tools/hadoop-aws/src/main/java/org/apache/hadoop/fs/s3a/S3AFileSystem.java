@@ -88,6 +88,8 @@ public class S3AFileSystem extends FileSystem {
   private TransferManager transfers;
   private ThreadPoolExecutor threadPoolExecutor;
   private int multiPartThreshold;
+  private int vectoredReadMaxMergeGap;
+  private int vectoredReadMaxMergedSize;
   public static final Logger LOG = LoggerFactory.getLogger(S3AFileSystem.class);
   private CannedAccessControlList cannedACL;
   private String serverSideEncryptionAlgorithm;
@@ -259,6 +261,11 @@ public void initialize(URI name, Configuration conf) throws IOException {
       multiPartThreshold = 5 * 1024 * 1024;
     }
 
+    vectoredReadMaxMergeGap = conf.getInt(VECTORED_READ_MAX_MERGE_GAP,
+      DEFAULT_VECTORED_READ_MAX_MERGE_GAP);
+    vectoredReadMaxMergedSize = conf.getInt(VECTORED_READ_MAX_MERGED_SIZE,
+      DEFAULT_VECTORED_READ_MAX_MERGED_SIZE);
+
     int maxThreads = conf.getInt(MAX_THREADS, DEFAULT_MAX_THREADS);
     int coreThreads = conf.getInt(CORE_THREADS, DEFAULT_CORE_THREADS);
     if (maxThreads == 0) {
@@ -376,7 +383,8 @@ public FSDataInputStream open(Path f, int bufferSize)
     }
 
     return new FSDataInputStream(new S3AInputStream(bucket, pathToKey(f), 
-      fileStatus.getLen(), s3, statistics));
+      fileStatus.getLen(), s3, statistics, vectoredReadMaxMergeGap,
+      vectoredReadMaxMergedSize));
   }
 
   /**
@@ -24,7 +24,9 @@
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import org.apache.hadoop.fs.FSExceptionMessages;
 import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.VectoredReadUtils;
 
 import org.slf4j.Logger;
 
@@ -32,6 +34,12 @@
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class S3AInputStream extends FSInputStream {
   private long pos;
@@ -42,11 +50,21 @@ public class S3AInputStream extends FSInputStream {
   private String bucket;
   private String key;
   private long contentLength;
+  private int vectoredReadMaxMergeGap;
+  private int vectoredReadMaxMergedSize;
   public static final Logger LOG = S3AFileSystem.LOG;
   public static final long CLOSE_THRESHOLD = 4096;
 
   public S3AInputStream(String bucket, String key, long contentLength, AmazonS3Client client,
                         FileSystem.Statistics stats) {
+    this(bucket, key, contentLength, client, stats,
+        Constants.DEFAULT_VECTORED_READ_MAX_MERGE_GAP,
+        Constants.DEFAULT_VECTORED_READ_MAX_MERGED_SIZE);
+  }
+
+  public S3AInputStream(String bucket, String key, long contentLength, AmazonS3Client client,
+                        FileSystem.Statistics stats, int vectoredReadMaxMergeGap,
+                        int vectoredReadMaxMergedSize) {
     this.bucket = bucket;
     this.key = key;
     this.contentLength = contentLength;
@@ -55,6 +73,8 @@ public S3AInputStream(String bucket, String key, long contentLength, AmazonS3Cli
     this.pos = 0;
     this.closed = false;
     this.wrappedStream = null;
+    this.vectoredReadMaxMergeGap = vectoredReadMaxMergeGap;
+    this.vectoredReadMaxMergedSize = vectoredReadMaxMergedSize;
   }
 
   private void openIfNeeded() throws IOException {
@@ -179,6 +199,61 @@ public synchronized int read(byte[] buf, int off, int len) throws IOException {
     return byteRead;
   }
 
+  /**
+   * Fetch each merged range with its own ranged GET request, without
+   * touching the stream used by the sequential reads.
+   */
+  @Override
+  public List<ByteBuffer> readVectored(List<FileRange> ranges)
+      throws IOException {
+    checkNotClosed();
+
+    ByteBuffer[] results = new ByteBuffer[ranges.size()];
+    for (VectoredReadUtils.CombinedRange combined :
+        VectoredReadUtils.mergeRanges(ranges, vectoredReadMaxMergeGap,
+            vectoredReadMaxMergedSize)) {
+      if (combined.getOffset() + combined.getLength() > contentLength) {
+        throw new EOFException(FSExceptionMessages.CANNOT_SEEK_PAST_EOF
+            + " " + combined);
+      }
+      ByteBuffer data = ByteBuffer.allocateDirect(combined.getLength());
+      if (combined.getLength() > 0) {
+        readRange(combined.getOffset(), data);
+      }
+      data.flip();
+      VectoredReadUtils.sliceCombinedRange(ranges, combined, data, results);
+    }
+    return Collections.unmodifiableList(Arrays.asList(results));
+  }
+
+  private void readRange(long offset, ByteBuffer data) throws IOException {
+    LOG.debug("Reading range [" + offset + ","
+        + (offset + data.remaining()) + ") of " + key);
+
+    GetObjectRequest request = new GetObjectRequest(bucket, key);
+    request.setRange(offset, offset + data.remaining() - 1);
+    S3ObjectInputStream in = client.getObject(request).getObjectContent();
+    if (in == null) {
+      throw new IOException("Null IO stream");
+    }
+
+    ReadableByteChannel channel = Channels.newChannel(in);
+    try {
+      while (data.hasRemaining()) {
+        int byteRead = channel.read(data);
+        if (byteRead < 0) {
+          throw new EOFException("End of object " + key
+              + " reached before reading range fully");
+        }
+        if (stats != null) {
+          stats.incrementBytesRead(byteRead);
+        }
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
   private void checkNotClosed() throws IOException {
     if (closed) {
       throw new IOException(FSExceptionMessages.STREAM_IS_CLOSED);